@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides which archive entries are stored without compression because their
+ * content is already compressed (e.g. jars, images, gzip files), so that
+ * deflating them again would cost time for little or no size gain.
+ * <p/>
+ * Content is considered compressed if the entry name has one of the stored
+ * extensions, if it starts with the signature of a compressed format, or if
+ * the distribution of its first bytes is close to random.
+ * <p/>
+ * The default policy can be changed with the {@link #DETECT_PROPERTY} system
+ * property (false to deflate all entries) and the
+ * {@link #STORED_EXTENSIONS_PROPERTY} system property (comma-separated list of
+ * extensions, without the dot).
+ */
+public class ArchiveCompressionPolicy {
+
+	public static final String DETECT_PROPERTY = "org.cloudfoundry.ide.eclipse.archive.detectCompressed";
+
+	public static final String STORED_EXTENSIONS_PROPERTY = "org.cloudfoundry.ide.eclipse.archive.storedExtensions";
+
+	public static final Set<String> DEFAULT_STORED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<String>(
+			Arrays.asList("jar", "war", "ear", "zip", "gz", "tgz", "bz2", "xz", "7z", "png", "jpg", "jpeg", "gif",
+					"webp", "mp3", "mp4", "ogg", "woff", "woff2", "swf")));
+
+	/**
+	 * Entropy, in bits per byte, above which content is considered
+	 * compressed. Text and class files are typically below 6.
+	 */
+	public static final double DEFAULT_ENTROPY_THRESHOLD = 7.5;
+
+	/**
+	 * Minimum number of bytes sampled to estimate entropy. Smaller samples
+	 * cannot reach a high entropy, and small entries are cheap to deflate
+	 * anyway.
+	 */
+	static final int MIN_ENTROPY_SAMPLE = 1024;
+
+	/**
+	 * Does not look for compressed content. Entries are still stored if
+	 * deflating them does not make them smaller.
+	 */
+	public static final ArchiveCompressionPolicy DEFLATE_ALL = new ArchiveCompressionPolicy(false,
+			Collections.<String> emptySet(), DEFAULT_ENTROPY_THRESHOLD);
+
+	private static final byte[][] SIGNATURES = new byte[][] {
+			// Zip, including jars and wars
+			{ 'P', 'K', 3, 4 },
+			// gzip
+			{ (byte) 0x1F, (byte) 0x8B },
+			// PNG
+			{ (byte) 0x89, 'P', 'N', 'G' },
+			// JPEG
+			{ (byte) 0xFF, (byte) 0xD8, (byte) 0xFF },
+			// GIF
+			{ 'G', 'I', 'F', '8' },
+			// bzip2
+			{ 'B', 'Z', 'h' },
+			// xz
+			{ (byte) 0xFD, '7', 'z', 'X', 'Z', 0 },
+			// 7z
+			{ '7', 'z', (byte) 0xBC, (byte) 0xAF, (byte) 0x27, (byte) 0x1C },
+			// WOFF and WOFF2
+			{ 'w', 'O', 'F', 'F' }, { 'w', 'O', 'F', '2' } };
+
+	private static ArchiveCompressionPolicy defaultPolicy;
+
+	private final boolean detect;
+
+	private final Set<String> storedExtensions;
+
+	private final double entropyThreshold;
+
+	/**
+	 * @param detect whether to check the content of entries for signatures
+	 * of compressed formats and for high entropy
+	 * @param storedExtensions lower case extensions, without the dot, of
+	 * entries that are always stored
+	 * @param entropyThreshold entropy in bits per byte, between 0 and 8,
+	 * above which content is considered compressed
+	 */
+	public ArchiveCompressionPolicy(boolean detect, Set<String> storedExtensions, double entropyThreshold) {
+		this.detect = detect;
+		this.storedExtensions = storedExtensions != null ? storedExtensions : Collections.<String> emptySet();
+		this.entropyThreshold = entropyThreshold;
+	}
+
+	public static synchronized ArchiveCompressionPolicy getDefault() {
+		if (defaultPolicy == null) {
+			String detectValue = System.getProperty(DETECT_PROPERTY);
+			if (detectValue != null && !Boolean.valueOf(detectValue)) {
+				defaultPolicy = DEFLATE_ALL;
+			}
+			else {
+				Set<String> extensions = DEFAULT_STORED_EXTENSIONS;
+				String extensionsValue = System.getProperty(STORED_EXTENSIONS_PROPERTY);
+				if (extensionsValue != null) {
+					extensions = new HashSet<String>();
+					for (String extension : extensionsValue.split(",")) {
+						extension = extension.trim().toLowerCase(Locale.ENGLISH);
+						if (extension.startsWith(".")) {
+							extension = extension.substring(1);
+						}
+						if (extension.length() > 0) {
+							extensions.add(extension);
+						}
+					}
+				}
+				defaultPolicy = new ArchiveCompressionPolicy(true, extensions, DEFAULT_ENTROPY_THRESHOLD);
+			}
+		}
+		return defaultPolicy;
+	}
+
+	/**
+	 * @return true if entries with the given name are stored without
+	 * looking at their content
+	 */
+	public boolean isStored(String entryName) {
+		if (storedExtensions.isEmpty()) {
+			return false;
+		}
+		int index = entryName.lastIndexOf('.');
+		if (index < 0 || index < entryName.lastIndexOf('/')) {
+			return false;
+		}
+		return storedExtensions.contains(entryName.substring(index + 1).toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * @param head first bytes of the content of an entry
+	 * @param length number of bytes in head
+	 * @return true if the content appears to be already compressed
+	 */
+	public boolean isStored(byte[] head, int length) {
+		if (!detect) {
+			return false;
+		}
+		for (byte[] signature : SIGNATURES) {
+			if (startsWith(head, length, signature)) {
+				return true;
+			}
+		}
+		return length >= MIN_ENTROPY_SAMPLE && getEntropy(head, length) > entropyThreshold;
+	}
+
+	/**
+	 * @return Shannon entropy of the given bytes, in bits per byte, between
+	 * 0 and 8
+	 */
+	public static double getEntropy(byte[] data, int length) {
+		if (length <= 0) {
+			return 0;
+		}
+		int[] counts = new int[256];
+		for (int i = 0; i < length; i++) {
+			counts[data[i] & 0xFF]++;
+		}
+		double entropy = 0;
+		for (int count : counts) {
+			if (count > 0) {
+				double p = (double) count / length;
+				entropy -= p * Math.log(p);
+			}
+		}
+		return entropy / Math.log(2);
+	}
+
+	private static boolean startsWith(byte[] data, int length, byte[] prefix) {
+		if (length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -28,6 +28,8 @@ import org.cloudfoundry.client.lib.archive.ApplicationArchive;
 import org.cloudfoundry.ide.eclipse.internal.server.core.DeployedResourceCache.CachedDeployedApplication;
 import org.cloudfoundry.ide.eclipse.internal.server.core.DeployedResourceCache.DeployedResourceEntry;
 import org.cloudfoundry.ide.eclipse.internal.server.core.application.AbstractModuleResourceArchive;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.PublishMetrics;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.PublishMetrics.Phase;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.wst.server.core.IModule;
 import org.eclipse.wst.server.core.model.IModuleFile;
@@ -59,6 +61,16 @@ import org.eclipse.wst.server.core.model.IModuleResource;
  * indicates have not changed. This is done through a callback handler, which
  * then builds the partial war file with only those resources that have changed.
  * 
+ * <p/>
+ * To reduce the size of the resource match request, resources that the server
+ * still did not have after they were uploaded, and that have not changed
+ * since, are left out of the entries used for the resource match. Such
+ * resources would not be matched anyway, and are always included in the
+ * partial war file. Resources uploaded for the first time are sent in the
+ * next resource match, as the server may have kept them. A full resource
+ * match is performed if no match has been recorded for the application, or
+ * the application had to be created in the server.
+ * 
  */
 public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 
@@ -68,10 +80,46 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 
 	private final CachedDeployedApplication appID;
 
+	/**
+	 * All entries of the archive. The entries used for the resource match may
+	 * be a subset of these.
+	 */
+	private List<Entry> allEntries;
+
+	/**
+	 * Entries sent to the server for the resource match.
+	 */
+	private List<Entry> resourceMatchEntries;
+
+	/**
+	 * Entries of the partial war file, once generated.
+	 */
+	private List<Entry> partialEntries;
+
+	private boolean fullResourceMatch = true;
+
+	private boolean requireFullResourceMatch;
+
+	private List<DeployedResourceEntry> matchedEntries;
+
+	private Set<String> knownResourceNames;
+
+	private PublishMetrics publishMetrics;
+
 	public CachingApplicationArchive(List<IModuleResource> allResources, List<IModuleResource> changedResources,
 			IModule module, String appName) {
+		this(allResources, changedResources, module, appName, null);
+	}
+
+	/**
+	 * @param serverId ID of the server where the application is deployed.
+	 * Cached entries are kept separately for applications with the same name
+	 * in different servers. May be null.
+	 */
+	public CachingApplicationArchive(List<IModuleResource> allResources, List<IModuleResource> changedResources,
+			IModule module, String appName, String serverId) {
 		super(module, allResources);
-		this.appID = new CachedDeployedApplication(appName);
+		this.appID = new CachedDeployedApplication(appName, serverId);
 		this.changedResources = changedResourcesAsZipNames(changedResources);
 	}
 
@@ -87,6 +135,92 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 		return fileName;
 	}
 
+	/**
+	 * Sets the metrics where SHA-1 computation time, bytes hashed and files
+	 * skipped by the deployed resources cache are recorded.
+	 * @param publishMetrics may be null
+	 */
+	public void setPublishMetrics(PublishMetrics publishMetrics) {
+		this.publishMetrics = publishMetrics;
+	}
+
+	@Override
+	public Iterable<Entry> getEntries() {
+		if (entries == null) {
+			allEntries = new ArrayList<ApplicationArchive.Entry>();
+			collectEntriesPriorToDeployment(allEntries, getModuleResources().toArray(new IModuleResource[0]));
+			resourceMatchEntries = getResourceMatchEntries(allEntries);
+			entries = resourceMatchEntries;
+		}
+		return entries;
+	}
+
+	/**
+	 * Prepares the archive to be uploaded again after a failed upload. The
+	 * resource match is sent again with the digests already computed, and
+	 * the partial war file is reused if the server reports the same known
+	 * resources as in the failed upload.
+	 */
+	public void prepareRetry() {
+		if (resourceMatchEntries != null) {
+			entries = resourceMatchEntries;
+		}
+	}
+
+	/**
+	 * Requires all entries to be sent to the server for the resource match,
+	 * regardless of recorded match results. Must be invoked before entries are
+	 * collected.
+	 */
+	public void requireFullResourceMatch() {
+		requireFullResourceMatch = true;
+	}
+
+	/**
+	 * 
+	 * @return entries to send to the server for the resource match. All
+	 * entries are returned if recorded match results for the application
+	 * cannot be used.
+	 */
+	protected List<Entry> getResourceMatchEntries(List<Entry> allEntries) {
+		DeployedResourceCache cache = CloudFoundryPlugin.getDefault().getDeployedResourcesCache();
+		if (requireFullResourceMatch) {
+			cache.resetResourceMatch(appID);
+			return allEntries;
+		}
+		if (!cache.canPrecheckResourceMatch(appID)) {
+			return allEntries;
+		}
+
+		List<Entry> matchEntries = new ArrayList<ApplicationArchive.Entry>(allEntries.size());
+		for (Entry entry : allEntries) {
+			if (entry instanceof ZipModuleFileEntryAdapter) {
+				// Resolve the entry first, as changed content resets the
+				// recorded match state
+				DeployedResourceEntry resourceEntry = ((ZipModuleFileEntryAdapter) entry).getDeployedResourcesEntry();
+				if (resourceEntry != null
+						&& cache.getMatchState(appID, entry.getName()) == DeployedResourceCache.MATCH_NOT_FOUND) {
+					continue;
+				}
+			}
+			matchEntries.add(entry);
+		}
+		fullResourceMatch = matchEntries.size() == allEntries.size();
+		return matchEntries;
+	}
+
+	/**
+	 * Records the result of the resource match in the deployed resources
+	 * cache. Should only be invoked once the application has been
+	 * successfully uploaded.
+	 */
+	public void recordResourceMatch() {
+		if (matchedEntries != null && knownResourceNames != null) {
+			CloudFoundryPlugin.getDefault().getDeployedResourcesCache()
+					.recordResourceMatch(appID, matchedEntries, knownResourceNames, fullResourceMatch);
+		}
+	}
+
 	protected ModuleFolderEntryAdapter getModuleFolderAdapter(IModuleFolder folder) {
 		return new ZipModuleFolderEntryAdapter(folder);
 	}
@@ -98,7 +232,30 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 	}
 
 	public void generatePartialWarFile(Set<String> knownResourceNames) {
-		Iterable<Entry> localEntries = getEntries();
+		if (partialEntries != null && knownResourceNames.equals(this.knownResourceNames)) {
+			// Retry of a failed upload
+			entries = partialEntries;
+			return;
+		}
+		partialEntries = null;
+
+		List<DeployedResourceEntry> sentEntries = new ArrayList<DeployedResourceEntry>();
+		for (Entry entry : getEntries()) {
+			if (entry instanceof ZipModuleFileEntryAdapter) {
+				DeployedResourceEntry resourceEntry = ((ZipModuleFileEntryAdapter) entry).getDeployedResourcesEntry();
+				if (resourceEntry != null) {
+					sentEntries.add(resourceEntry);
+				}
+			}
+		}
+		this.matchedEntries = sentEntries;
+		this.knownResourceNames = knownResourceNames;
+
+		// Entries left out of the resource match are handled like any other
+		// resource that the server does not have.
+		List<Entry> localEntries = allEntries;
+		entries = allEntries;
+
 		Map<String, AbstractModuleResourceEntryAdapter> missingChangedEntries = new HashMap<String, AbstractModuleResourceEntryAdapter>();
 		Set<IModuleResource> missingChangedResources = new HashSet<IModuleResource>();
 
@@ -133,6 +290,7 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 
 				}
 				entries = toDeploy;
+				partialEntries = toDeploy;
 			}
 		}
 		catch (CoreException e) {
@@ -231,6 +389,12 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 
 		private final boolean recalculate;
 
+		/**
+		 * Entry resolved for this adapter. Both the size and the sha1 digest
+		 * are requested for each file, so the entry is only resolved once.
+		 */
+		private DeployedResourceEntry resolvedEntry;
+
 		public ZipModuleFileEntryAdapter(IModuleFile moduleFile, CachedDeployedApplication appName, boolean recalculate) {
 			super(moduleFile);
 
@@ -244,18 +408,48 @@ public class CachingApplicationArchive extends AbstractModuleResourceArchive {
 			return entry != null ? entry.getFileSize() : UNDEFINED_SIZE;
 		}
 
-		public DeployedResourceEntry getDeployedResourcesEntry() {
+		public synchronized DeployedResourceEntry getDeployedResourcesEntry() {
+			if (resolvedEntry != null) {
+				return resolvedEntry;
+			}
 
-			DeployedResourceEntry deployedResourcesEntry = CloudFoundryPlugin.getDefault().getDeployedResourcesCache()
-					.getEntry(appName, getName());
+			DeployedResourceCache cache = CloudFoundryPlugin.getDefault().getDeployedResourcesCache();
+			DeployedResourceEntry deployedResourcesEntry = cache.getEntry(appName, getName());
+
+			// Changed files may already have been digested in the background
+			// since they were saved
+			boolean current = deployedResourcesEntry != null && deployedResourcesEntry.isCurrent(file);
+			if (canComputeResourceEntry() && ((recalculate && !current) || deployedResourcesEntry == null)) {
+				long start = System.nanoTime();
+				long timeStamp = file.lastModified();
+				// The same file may have been hashed for another application
+				FileDigestStore digestStore = CloudFoundryPlugin.getDefault().getFileDigestStore();
+				long fileSize = file.length();
+				byte[] sha1 = digestStore.getSha1(file);
+				boolean hashed = sha1 == null;
+				if (hashed) {
+					sha1 = super.getSha1Digest();
+					fileSize = super.getSize();
+					digestStore.add(file, fileSize, timeStamp, sha1);
+				}
+				deployedResourcesEntry = new DeployedResourceEntry(sha1, fileSize, getName(), timeStamp);
+				cache.add(appName, deployedResourcesEntry);
 
-			if (canComputeResourceEntry() && (recalculate || deployedResourcesEntry == null)) {
-				byte[] sha1 = super.getSha1Digest();
-				long fileSize = super.getSize();
-				deployedResourcesEntry = new DeployedResourceEntry(sha1, fileSize, getName());
-				CloudFoundryPlugin.getDefault().getDeployedResourcesCache().add(appName, deployedResourcesEntry);
+				if (publishMetrics != null) {
+					if (hashed) {
+						publishMetrics.addPhaseTime(Phase.SHA1, start);
+						publishMetrics.addBytesHashed(fileSize);
+					}
+					else {
+						publishMetrics.incrementFilesSkipped();
+					}
+				}
+			}
+			else if (deployedResourcesEntry != null && publishMetrics != null) {
+				publishMetrics.incrementFilesSkipped();
 			}
 
+			resolvedEntry = deployedResourcesEntry;
 			return deployedResourcesEntry;
 		}
 
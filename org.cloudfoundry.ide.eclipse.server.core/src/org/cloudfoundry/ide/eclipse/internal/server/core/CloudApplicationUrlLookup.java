@@ -17,37 +17,110 @@ import org.cloudfoundry.client.lib.domain.CloudDomain;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.wst.server.core.IServer;
 
 /**
  * Verifies if a given application URL is valid, and checks if the host and
  * domain portions of the URL are correct. In particular, it verifies that the
  * domain portion (the last segments of the URL: e.g, "cfapps.io" in
  * "myapp.cfapps.io") actually exists in the server.
+ * <p/>
+ * Domains are indexed for fast URL matching, and cached. Once the cached
+ * domains are older than {@link #DOMAIN_CACHE_TTL}, they are refreshed in the
+ * background the next time they are accessed, while the cached domains
+ * continue to be used.
  */
 public class CloudApplicationUrlLookup {
 
+	/**
+	 * Time in milliseconds after which cached domains are refreshed.
+	 */
+	public static final long DOMAIN_CACHE_TTL = 5 * 60 * 1000;
+
 	private final CloudFoundryServer cloudServer;
 
-	private List<CloudDomain> domainsPerActiveSpace;
+	private volatile DomainIndex domainIndex;
 
 	private ApplicationUrlValidator validator;
 
+	private Job refreshJob;
+
 	public CloudApplicationUrlLookup(CloudFoundryServer cloudServer) {
 		this.cloudServer = cloudServer;
 		validator = new ApplicationUrlValidator();
 	}
 
 	public void refreshDomains(IProgressMonitor monitor) throws CoreException {
-		domainsPerActiveSpace = cloudServer.getBehaviour().getDomainsForSpace(monitor);
+		domainIndex = new DomainIndex(cloudServer.getBehaviour().getDomainsForSpace(monitor));
+	}
+
+	/**
+	 * Refreshes the list of domains only if it has not been retrieved yet, or
+	 * the cached list has expired.
+	 */
+	public void updateDomains(IProgressMonitor monitor) throws CoreException {
+		if (isExpired()) {
+			refreshDomains(monitor);
+		}
+	}
+
+	/**
+	 * 
+	 * @return true if domains have not been retrieved yet, or the cached
+	 * domains are older than {@link #DOMAIN_CACHE_TTL}
+	 */
+	public boolean isExpired() {
+		DomainIndex index = domainIndex;
+		return index == null || System.currentTimeMillis() - index.getTimestamp() > DOMAIN_CACHE_TTL;
 	}
 
 	/**
 	 * Returns cached list of domains. If null or empty, refresh the list of
-	 * domains separately.
+	 * domains separately. If the cached list has expired, it is refreshed in
+	 * the background.
 	 * @return
 	 */
 	public List<CloudDomain> getDomains() {
-		return domainsPerActiveSpace;
+		DomainIndex index = getDomainIndex();
+		return index != null ? index.getDomains() : null;
+	}
+
+	protected DomainIndex getDomainIndex() {
+		DomainIndex index = domainIndex;
+		if (index != null && isExpired()) {
+			scheduleRefresh();
+		}
+		return index;
+	}
+
+	protected synchronized void scheduleRefresh() {
+		IServer server = cloudServer.getServer();
+		if (server == null || server.getServerState() != IServer.STATE_STARTED) {
+			// Do not connect to the server only to refresh domains
+			return;
+		}
+		if (refreshJob == null) {
+			refreshJob = new Job("Refreshing Cloud domains") {
+
+				@Override
+				protected IStatus run(IProgressMonitor monitor) {
+					try {
+						refreshDomains(monitor);
+					}
+					catch (CoreException e) {
+						// Keep using the cached domains
+						CloudFoundryPlugin.logError(e);
+					}
+					return Status.OK_STATUS;
+				}
+			};
+			refreshJob.setSystem(true);
+		}
+		if (refreshJob.getState() == Job.NONE) {
+			refreshJob.schedule();
+		}
 	}
 
 	/**
@@ -114,7 +187,8 @@ public class CloudApplicationUrlLookup {
 			throw new CoreException(isValidStatus);
 		}
 
-		if (domainsPerActiveSpace == null || domainsPerActiveSpace.isEmpty()) {
+		DomainIndex index = getDomainIndex();
+		if (index == null || index.isEmpty()) {
 			throw new CoreException(
 					CloudFoundryPlugin
 							.getErrorStatus("No domains found for the current active space. Unable to map the URL to the application."));
@@ -133,13 +207,11 @@ public class CloudApplicationUrlLookup {
 		String authority = newUri.getScheme() != null ? newUri.getAuthority() : newUri.getPath();
 		String domainName = null;
 		String host = null;
-		for (CloudDomain domain : domainsPerActiveSpace) {
-			if (authority != null && authority.endsWith(domain.getName())) {
-				domainName = domain.getName();
-				if (domainName.length() < authority.length()) {
-					host = authority.substring(0, authority.indexOf(domainName) - 1);
-				}
-				break;
+		CloudDomain domain = index.findDomain(authority);
+		if (domain != null) {
+			domainName = domain.getName();
+			if (domainName.length() < authority.length()) {
+				host = authority.substring(0, authority.length() - domainName.length() - 1);
 			}
 		}
 		if (domainName == null || domainName.trim().length() == 0) {
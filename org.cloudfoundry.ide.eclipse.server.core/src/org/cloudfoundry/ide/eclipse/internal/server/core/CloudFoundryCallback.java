@@ -15,6 +15,7 @@ import java.util.List;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.BehaviourEvent;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.BehaviourListener;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.PublishMetrics;
 import org.cloudfoundry.ide.eclipse.internal.server.core.tunnel.CaldecottTunnelDescriptor;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -122,6 +123,19 @@ public abstract class CloudFoundryCallback implements BehaviourListener {
 
 	}
 
+	/**
+	 * Invoked once an application push, start or restart operation has
+	 * completed, successfully or not, with the timings and counters recorded
+	 * during the operation.
+	 * @param server
+	 * @param cloudModule
+	 * @param metrics completed publish metrics
+	 */
+	public void publishCompleted(CloudFoundryServer server, CloudFoundryApplicationModule cloudModule,
+			PublishMetrics metrics) {
+
+	}
+
 	public abstract void deleteServices(List<String> services, CloudFoundryServer cloudServer);
 
 	public abstract void deleteApplication(CloudFoundryApplicationModule cloudModule, CloudFoundryServer cloudServer);
@@ -11,17 +11,20 @@
 package org.cloudfoundry.ide.eclipse.internal.server.core;
 
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.cloudfoundry.client.lib.CloudFoundryException;
 import org.cloudfoundry.client.lib.CloudFoundryOperations;
 import org.cloudfoundry.client.lib.HttpProxyConfiguration;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryClientFactory;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RetryPolicy;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.WaitWithProgressJob;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
 
 public class CloudFoundryLoginHandler {
 
@@ -33,6 +36,14 @@ public class CloudFoundryLoginHandler {
 
 	private static final int DEFAULT_PROGRESS_TICKS = 100;
 
+	/**
+	 * Proxy last set in each client, to avoid reconfiguring clients whose
+	 * proxy has not changed. Clients are weakly referenced. The map is only
+	 * locked while it is read or written, never while a client is
+	 * reconfigured.
+	 */
+	private static final Map<CloudFoundryOperations, HttpProxyConfiguration> appliedProxies = new WeakHashMap<CloudFoundryOperations, HttpProxyConfiguration>();
+
 	/**
 	 * 
 	 * @param operations must not be null
@@ -47,22 +58,32 @@ public class CloudFoundryLoginHandler {
 	 * Attempts to log in once. If login fails, Core exception is thrown
 	 * @throws CoreException if login failed. The reason for the login failure
 	 * is contained in the core exception's
+	 * @return access token obtained by the login, or null if the server did
+	 * not return one
 	 */
-	public void login(IProgressMonitor monitor) throws CoreException {
-		login(monitor, 1, 0);
+	public OAuth2AccessToken login(IProgressMonitor monitor) throws CoreException {
+		return login(monitor, 1, 0);
 	}
 
 	/**
-	 * Attempts a log in for the specified amount of attempts, and waits by the
-	 * specified sleep time between each attempt. If at the end of the attempts,
-	 * login has failed, Core exception is thrown.
+	 * Attempts a log in for the specified amount of attempts, and waits up to
+	 * the specified sleep time between each attempt. Waits are randomly
+	 * shortened, so that clients that failed together do not retry in
+	 * lockstep, but do not grow, so that invalid credentials are reported as
+	 * quickly as before. If at the end of the attempts, login has failed, Core
+	 * exception is thrown.
+	 * @return access token obtained by the login, or null if the server did
+	 * not return one
 	 */
-	public void login(IProgressMonitor monitor, int tries, long sleep) throws CoreException {
-		internalLogin(monitor, tries, sleep);
+	public OAuth2AccessToken login(IProgressMonitor monitor, int tries, long sleep) throws CoreException {
+		return internalLogin(monitor, tries, sleep);
 	}
 
-	protected boolean internalLogin(IProgressMonitor monitor, int tries, long sleep) throws CoreException {
-		Boolean result = new WaitWithProgressJob(tries, sleep) {
+	protected OAuth2AccessToken internalLogin(IProgressMonitor monitor, int tries, long sleep) throws CoreException {
+		final OAuth2AccessToken[] token = new OAuth2AccessToken[1];
+		RetryPolicy retryPolicy = new RetryPolicy(sleep, sleep, 1, RetryPolicy.DEFAULT_JITTER, Math.max(1, tries), 0,
+				null);
+		new WaitWithProgressJob(retryPolicy) {
 
 			@Override
 			protected boolean internalRunInWait(IProgressMonitor monitor) throws CoreException {
@@ -70,7 +91,7 @@ public class CloudFoundryLoginHandler {
 				// CoreException.
 				// as they are uncaught exceptions and can be inspected directly
 				// by the shouldRetryOnError(..) method.
-				operations.login();
+				token[0] = operations.login();
 				return true;
 			}
 
@@ -80,7 +101,7 @@ public class CloudFoundryLoginHandler {
 			}
 
 		}.run(monitor);
-		return result != null ? result.booleanValue() : false;
+		return token[0];
 	}
 
 	protected SubMonitor getProgressMonitor(IProgressMonitor progressMonitor) {
@@ -93,17 +114,31 @@ public class CloudFoundryLoginHandler {
 	}
 
 	/**
-	 * 
+	 * Sets the proxy for the cloud URL in the given client, if it differs
+	 * from the proxy last set in the client. Proxies are cached per URL by
+	 * {@link CloudFoundryClientFactory}, so this is inexpensive to call
+	 * before every request.
+	 * <p/>
+	 * Updates of the same client are serialised by locking the client, so
+	 * that requests of other clients are not held up while a client is
+	 * reconfigured.
 	 * @return true if there was a proxy update. False any other case.
 	 * @throws CoreException
 	 */
 	public boolean updateProxyInClient(CloudFoundryOperations client) throws CoreException {
 		if (client != null && cloudURL != null) {
 			try {
-				URL actualUrl = new URL(cloudURL);
-				HttpProxyConfiguration proxyConfiguration = CloudFoundryClientFactory.getProxy(actualUrl);
-
-				client.updateHttpProxyConfiguration(proxyConfiguration);
+				HttpProxyConfiguration proxyConfiguration = getProxy(cloudURL);
+
+				synchronized (client) {
+					if (isAppliedProxy(client, proxyConfiguration)) {
+						return false;
+					}
+					client.updateHttpProxyConfiguration(proxyConfiguration);
+					synchronized (appliedProxies) {
+						appliedProxies.put(client, proxyConfiguration);
+					}
+				}
 				return true;
 			}
 			catch (MalformedURLException e) {
@@ -114,4 +149,28 @@ public class CloudFoundryLoginHandler {
 		return false;
 	}
 
+	/**
+	 * Returns the proxy to set in clients for the given cloud URL.
+	 * @param cloudURL
+	 * @return proxy for the cloud URL, or null if no proxy should be used
+	 * @throws MalformedURLException if the cloud URL is invalid
+	 */
+	protected HttpProxyConfiguration getProxy(String cloudURL) throws MalformedURLException {
+		return CloudFoundryClientFactory.getProxy(cloudURL);
+	}
+
+	private static boolean isAppliedProxy(CloudFoundryOperations client, HttpProxyConfiguration proxyConfiguration) {
+		synchronized (appliedProxies) {
+			return appliedProxies.containsKey(client) && isSameProxy(appliedProxies.get(client), proxyConfiguration);
+		}
+	}
+
+	private static boolean isSameProxy(HttpProxyConfiguration proxy1, HttpProxyConfiguration proxy2) {
+		if (proxy1 == null || proxy2 == null) {
+			return proxy1 == proxy2;
+		}
+		return proxy1.getProxyPort() == proxy2.getProxyPort() && proxy1.getProxyHost() != null
+				&& proxy1.getProxyHost().equals(proxy2.getProxyHost());
+	}
+
 }
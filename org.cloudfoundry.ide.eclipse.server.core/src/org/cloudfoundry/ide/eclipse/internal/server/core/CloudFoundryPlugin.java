@@ -14,11 +14,15 @@ import java.util.List;
 
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryClientFactory;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryClientPool;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.PooledHttpTransport;
 import org.cloudfoundry.ide.eclipse.internal.server.core.tunnel.CaldecottTunnelCache;
 import org.cloudfoundry.ide.eclipse.internal.server.core.tunnel.CaldecottTunnelDescriptor;
 import org.cloudfoundry.ide.eclipse.internal.server.core.tunnel.PredefinedServiceCommands;
 import org.cloudfoundry.ide.eclipse.internal.server.core.tunnel.TunnelServiceCommandStore;
 import org.eclipse.core.net.proxy.IProxyService;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IExtension;
@@ -186,34 +190,49 @@ public class CloudFoundryPlugin extends Plugin {
 
 	public static final boolean DEFAULT_INCREMENTAL_PUBLISH_PREFERENCE_VAL = true;
 
-	private static CloudFoundryCallback callback;
+	// Lazily created singletons are volatile so that they can be read without
+	// acquiring the plugin lock once published. The lock is only taken when
+	// a singleton is first created.
 
-	private static ModuleCache moduleCache;
+	private static volatile CloudFoundryCallback callback;
+
+	private static volatile ModuleCache moduleCache;
 
 	private static CloudFoundryPlugin plugin;
 
 	private static IProxyService proxyService;
 
-	private DeployedResourceCache sha1Cache = new DeployedResourceCache();
+	private final DeployedResourceCache sha1Cache = new DeployedResourceCache();
+
+	private final FileDigestStore fileDigests = new FileDigestStore();
+
+	private ResourcePreDigester preDigester;
 
 	private InstanceScope INSTANCE_SCOPE = new InstanceScope();
 
 	private static CaldecottTunnelCache caldecottCache = new CaldecottTunnelCache();
 
-	private TunnelServiceCommandStore serviceCommandsStore;
+	private volatile TunnelServiceCommandStore serviceCommandsStore;
 
 	public static CaldecottTunnelCache getCaldecottTunnelCache() {
 		return caldecottCache;
 	}
 
-	public static synchronized CloudFoundryCallback getCallback() {
-		if (callback == null) {
-			callback = ExtensionPointReader.readExtension();
-			if (callback == null) {
-				callback = new NullCallback();
+	public static CloudFoundryCallback getCallback() {
+		CloudFoundryCallback result = callback;
+		if (result == null) {
+			synchronized (CloudFoundryPlugin.class) {
+				result = callback;
+				if (result == null) {
+					result = ExtensionPointReader.readExtension();
+					if (result == null) {
+						result = new NullCallback();
+					}
+					callback = result;
+				}
 			}
 		}
-		return callback;
+		return result;
 	}
 
 	public synchronized void setIncrementalPublish(boolean incrementalPublish) {
@@ -236,10 +255,21 @@ public class CloudFoundryPlugin extends Plugin {
 		return INSTANCE_SCOPE.getNode(PLUGIN_ID);
 	}
 
-	public synchronized DeployedResourceCache getDeployedResourcesCache() {
+	/**
+	 * @return non-null deployed resources cache. It is created with the plugin
+	 * instance, so no locking is required to access it.
+	 */
+	public DeployedResourceCache getDeployedResourcesCache() {
 		return sha1Cache;
 	}
 
+	/**
+	 * @return non-null store of file digests shared by all applications
+	 */
+	public FileDigestStore getFileDigestStore() {
+		return fileDigests;
+	}
+
 	public static synchronized void setCallback(CloudFoundryCallback callback) {
 		CloudFoundryPlugin.callback = callback;
 	}
@@ -248,23 +278,37 @@ public class CloudFoundryPlugin extends Plugin {
 		return plugin;
 	}
 
-	public static synchronized ModuleCache getModuleCache() {
-		if (moduleCache == null) {
-			moduleCache = new ModuleCache();
+	public static ModuleCache getModuleCache() {
+		ModuleCache result = moduleCache;
+		if (result == null) {
+			synchronized (CloudFoundryPlugin.class) {
+				result = moduleCache;
+				if (result == null) {
+					result = new ModuleCache();
+					moduleCache = result;
+				}
+			}
 		}
-		return moduleCache;
+		return result;
 	}
 
-	public synchronized TunnelServiceCommandStore getTunnelCommandsStore() {
-		if (serviceCommandsStore == null) {
-			serviceCommandsStore = new TunnelServiceCommandStore(new PredefinedServiceCommands());
+	public TunnelServiceCommandStore getTunnelCommandsStore() {
+		TunnelServiceCommandStore result = serviceCommandsStore;
+		if (result == null) {
+			synchronized (this) {
+				result = serviceCommandsStore;
+				if (result == null) {
+					result = new TunnelServiceCommandStore(new PredefinedServiceCommands());
+					serviceCommandsStore = result;
+				}
+			}
 		}
-		return serviceCommandsStore;
+		return result;
 	}
 
 	private ServiceTracker tracker;
 
-	private static CloudFoundryClientFactory factory;
+	private static volatile CloudFoundryClientFactory factory;
 
 	public CloudFoundryPlugin() {
 	}
@@ -274,11 +318,18 @@ public class CloudFoundryPlugin extends Plugin {
 	 * factory has not been defined
 	 * @return non-null client factory
 	 */
-	public static synchronized CloudFoundryClientFactory getCloudFoundryClientFactory() {
-		if (factory == null) {
-			factory = new CloudFoundryClientFactory();
+	public static CloudFoundryClientFactory getCloudFoundryClientFactory() {
+		CloudFoundryClientFactory result = factory;
+		if (result == null) {
+			synchronized (CloudFoundryPlugin.class) {
+				result = factory;
+				if (result == null) {
+					result = new CloudFoundryClientFactory();
+					factory = result;
+				}
+			}
 		}
-		return factory;
+		return result;
 	}
 
 	public static synchronized void setCloudFoundryClientFactory(CloudFoundryClientFactory factory) {
@@ -302,6 +353,10 @@ public class CloudFoundryPlugin extends Plugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+
+		// Digests of changed files are computed ahead of the next publish
+		preDigester = new ResourcePreDigester(sha1Cache, fileDigests);
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(preDigester, IResourceChangeEvent.POST_CHANGE);
 	}
 
 	@Override
@@ -311,17 +366,43 @@ public class CloudFoundryPlugin extends Plugin {
 			tracker = null;
 		}
 
-		if (moduleCache != null) {
-			moduleCache.dispose();
-			moduleCache = null;
+		if (preDigester != null) {
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(preDigester);
+			preDigester.dispose();
+			preDigester = null;
+		}
+
+		synchronized (CloudFoundryPlugin.class) {
+			if (moduleCache != null) {
+				moduleCache.dispose();
+				moduleCache = null;
+			}
 		}
 
+		ServerEventHandler.getDefault().dispose();
+		ModuleJarCache.disposeDefault();
+		ParallelWarWriter.disposeExecutor();
+		CloudFoundryClientPool.disposeDefault();
+		PooledHttpTransport.getDefault().dispose();
+
 		plugin = null;
 		super.stop(context);
 	}
 
 	public static void trace(String string) {
-		// System.err.println(string);
+		if (isTracing()) {
+			System.err.println(string);
+		}
+	}
+
+	/**
+	 * @return true if trace messages are written, i.e. if the plug-in is
+	 * debugging. Messages that are costly to build should only be built if
+	 * true.
+	 */
+	public static boolean isTracing() {
+		CloudFoundryPlugin current = plugin;
+		return current != null && current.isDebugging();
 	}
 
 	public static void log(CoreException ce) {
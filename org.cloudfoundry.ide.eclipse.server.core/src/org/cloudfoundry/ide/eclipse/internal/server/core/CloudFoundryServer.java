@@ -433,6 +433,16 @@ public class CloudFoundryServer extends ServerDelegate {
 					throw e;
 				}
 			}
+
+			// The jars assembled for the child modules are no longer needed
+			for (IModule module : remove) {
+				IModule[] children = getServer().getChildModules(new IModule[] { module }, monitor);
+				if (children != null) {
+					for (IModule child : children) {
+						ModuleJarCache.getDefault().remove(getServer().getId(), child.getId());
+					}
+				}
+			}
 		}
 
 		if (add != null && add.length > 0) {
@@ -10,30 +10,25 @@
  *******************************************************************************/
 package org.cloudfoundry.ide.eclipse.internal.server.core;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.cloudfoundry.client.lib.domain.CloudService;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ModuleJarCache.ModuleJar;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
-import org.eclipse.core.resources.IContainer;
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jst.server.core.IJ2EEModule;
@@ -45,7 +40,6 @@ import org.eclipse.wst.server.core.internal.Messages;
 import org.eclipse.wst.server.core.internal.ProgressUtil;
 import org.eclipse.wst.server.core.internal.Server;
 import org.eclipse.wst.server.core.internal.ServerPlugin;
-import org.eclipse.wst.server.core.model.IModuleFile;
 import org.eclipse.wst.server.core.model.IModuleFolder;
 import org.eclipse.wst.server.core.model.IModuleResource;
 import org.eclipse.wst.server.core.util.ModuleFile;
@@ -121,88 +115,123 @@ public class CloudUtil {
 		}
 	}
 
+	/**
+	 * Returns a war file with all the resources of the given module and the
+	 * jars of its child modules. The war is only built again if the module
+	 * changed since it was last built, and must not be modified or deleted
+	 * by the caller.
+	 * @see WarFileCache
+	 */
 	public static File createWarFile(IModule[] modules, Server server, IProgressMonitor monitor) throws CoreException {
 		List<IStatus> result = new ArrayList<IStatus>();
 		try {
-			File tempFile = getTempFolder(modules[0]);
-			// tempFile needs to be in the same location as the war file
-			// otherwise PublishHelper will fail
-			File targetFile = new File(tempFile, modules[0].getName() + ".war");
-			targetFile.deleteOnExit();
-			PublishHelper helper = new PublishHelper(tempFile);
-
 			ArrayList<IModuleResource> resources = new ArrayList<IModuleResource>(Arrays.asList(server
 					.getResources(modules)));
-
-			IWebModule webModule = getWebModule(modules);
-
-			if (webModule != null) {
-
-				IModule[] children = webModule.getModules();
-
-				if (children != null) {
-					for (IModule child : children) {
-						String childUri = null;
-						if (webModule != null) {
-							childUri = webModule.getURI(child);
-						}
-						IJ2EEModule childModule = (IJ2EEModule) child.loadAdapter(IJ2EEModule.class, monitor);
-						boolean isBinary = false;
-						if (childModule != null) {
-							isBinary = childModule.isBinary();
-						}
-						if (isBinary) {
-							// binaries are copied to the destination
-							// directory
-							if (childUri == null) {
-								childUri = "WEB-INF/lib/" + child.getName();
-							}
-							IPath jarPath = new Path(childUri);
-							File jarFile = new File(tempFile, jarPath.lastSegment());
-							jarPath = jarPath.removeLastSegments(1);
-
-							IModuleResource[] mr = server.getResources(new IModule[] { child });
-							IStatus[] status = helper.publishToPath(mr, new Path(jarFile.getAbsolutePath()), monitor);
-							merge(result, status);
-							resources.add(new ModuleFile(jarFile, jarFile.getName(), jarPath));
-						}
-						else {
-							// other modules are assembled into a jar
-							if (childUri == null) {
-								childUri = "WEB-INF/lib/" + child.getName() + ".jar";
-							}
-							IPath jarPath = new Path(childUri);
-							File jarFile = new File(tempFile, jarPath.lastSegment());
-							jarPath = jarPath.removeLastSegments(1);
-
-							IModuleResource[] mr = server.getResources(new IModule[] { child });
-							IStatus[] status = helper.publishZip(mr, new Path(jarFile.getAbsolutePath()), monitor);
-							merge(result, status);
-							resources.add(new ModuleFile(jarFile, jarFile.getName(), jarPath));
-						}
-					}
-				}
-			}
+			resources.addAll(getChildModuleJars(modules, server, result, null, monitor).values());
 
 			List<IModuleResource> newResources = new ArrayList<IModuleResource>();
 			for (IModuleResource mr : resources) {
 				newResources.add(processModuleResource(mr));
 			}
 
-			IStatus[] status = helper.publishZip(newResources.toArray(new IModuleResource[0]),
-					new Path(targetFile.getAbsolutePath()), monitor);
-			merge(result, status);
 			throwException(result, NLS.bind("Publishing of ''{0}'' failed", modules[0].getName()));
 
-			return targetFile;
+			return WarFileCache.getDefault().getWar(server.getId(), modules[0].getId(), newResources, monitor);
 		}
-		catch (IOException e) {
-			throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID, NLS.bind(
-					"Failed to create war file: {0}", e.getMessage()), e));
+		catch (OperationCanceledException e) {
+			throw new CoreException(Status.CANCEL_STATUS);
 		}
 
 	}
 
+	/**
+	 * Creates the jars of the child modules of a web module (e.g. utility
+	 * projects), as they are added to the module's WAR file. Binary child
+	 * modules are copied to a new temporary folder. Other child modules are
+	 * assembled into jars, which are cached until the child module changes.
+	 * @param modules web module
+	 * @param server
+	 * @param result statuses of child modules that failed are added to this
+	 * list
+	 * @param assembled if not null, child modules whose jar was assembled by
+	 * this call, rather than reused from the cache, are added to this set
+	 * @param monitor
+	 * @return jar resources by child module, in the order of the child
+	 * modules. Empty if the module is not a web module or has no child
+	 * modules.
+	 */
+	public static Map<IModule, IModuleResource> getChildModuleJars(IModule[] modules, Server server,
+			List<IStatus> result, Set<IModule> assembled, IProgressMonitor monitor) {
+		Map<IModule, IModuleResource> jars = new LinkedHashMap<IModule, IModuleResource>();
+		IWebModule webModule = getWebModule(modules);
+		IModule[] children = webModule != null ? webModule.getModules() : null;
+		if (children == null) {
+			return jars;
+		}
+
+		// Only created if there are binary child modules
+		File tempFolder = null;
+		for (IModule child : children) {
+			String childUri = webModule.getURI(child);
+			IJ2EEModule childModule = (IJ2EEModule) child.loadAdapter(IJ2EEModule.class, monitor);
+			boolean isBinary = false;
+			if (childModule != null) {
+				isBinary = childModule.isBinary();
+			}
+			if (isBinary) {
+				// binaries are copied to the destination
+				// directory
+				if (childUri == null) {
+					childUri = "WEB-INF/lib/" + child.getName();
+				}
+				if (tempFolder == null) {
+					try {
+						tempFolder = getTempFolder(modules[0]);
+					}
+					catch (IOException e) {
+						merge(result, new IStatus[] { new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID, NLS.bind(
+								"Failed to create temporary folder: {0}", e.getMessage()), e) });
+						return jars;
+					}
+				}
+				IPath jarPath = new Path(childUri);
+				File jarFile = new File(tempFolder, jarPath.lastSegment());
+				jarPath = jarPath.removeLastSegments(1);
+
+				IModuleResource[] mr = server.getResources(new IModule[] { child });
+				IStatus[] status = new PublishHelper(tempFolder).publishToPath(mr,
+						new Path(jarFile.getAbsolutePath()), monitor);
+				merge(result, status);
+				jars.put(child, new ModuleFile(jarFile, jarFile.getName(), jarPath));
+			}
+			else {
+				// other modules are assembled into a jar
+				if (childUri == null) {
+					childUri = "WEB-INF/lib/" + child.getName() + ".jar";
+				}
+				IPath jarPath = new Path(childUri);
+				String jarName = jarPath.lastSegment();
+				jarPath = jarPath.removeLastSegments(1);
+
+				// Jars are only assembled again if the child module
+				// changed since the last publish
+				IModuleResource[] mr = server.getResources(new IModule[] { child });
+				try {
+					ModuleJar jar = ModuleJarCache.getDefault().getModuleJar(server.getId(), child.getId(),
+							Arrays.asList(mr), monitor);
+					jars.put(child, new ModuleFile(jar.getFile(), jarName, jarPath));
+					if (assembled != null && jar.isWritten()) {
+						assembled.add(child);
+					}
+				}
+				catch (CoreException e) {
+					merge(result, new IStatus[] { e.getStatus() });
+				}
+			}
+		}
+		return jars;
+	}
+
 	private static IModuleResource processModuleResource(IModuleResource or) {
 		if (or instanceof IModuleFolder) {
 			IModuleFolder of = (IModuleFolder) or;
@@ -221,7 +250,11 @@ public class CloudUtil {
 		return or;
 	}
 
-	private static File getTempFolder(IModule module) throws IOException {
+	/**
+	 * Creates a new temporary folder for the files published for the given
+	 * module.
+	 */
+	public static File getTempFolder(IModule module) throws IOException {
 		File tempFile = File.createTempFile("tempFileForWar", null);
 		tempFile.delete();
 		tempFile.mkdirs();
@@ -236,17 +269,18 @@ public class CloudUtil {
 				message, null));
 	}
 
+	/**
+	 * Writes the given resources to a zip file, including only the files in
+	 * the filter in list. Entries are compressed in parallel.
+	 * @see ParallelWarWriter
+	 */
 	public static IStatus[] publishZip(List<IModuleResource> allResources, File tempFile,
 			Set<IModuleResource> filterInFiles, IProgressMonitor monitor) {
 
 		monitor = ProgressUtil.getMonitorFor(monitor);
 
 		try {
-			BufferedOutputStream bout = new BufferedOutputStream(new FileOutputStream(tempFile));
-			ZipOutputStream zout = new ZipOutputStream(bout);
-			addZipEntries(zout, allResources, filterInFiles);
-			zout.close();
-
+			new ParallelWarWriter().write(allResources, tempFile, filterInFiles, monitor);
 		}
 		catch (CoreException e) {
 			return new IStatus[] { e.getStatus() };
@@ -263,10 +297,6 @@ public class CloudUtil {
 		return EMPTY_STATUS;
 	}
 
-	private static final int BUFFER = 65536;
-
-	private static byte[] buf = new byte[BUFFER];
-
 	public static String getZipRelativeName(IModuleResource resource) {
 		IPath path = resource.getModuleRelativePath().append(resource.getName());
 		String entryPath = path.toPortableString();
@@ -278,83 +308,6 @@ public class CloudUtil {
 
 	}
 
-	private static void addZipEntries(ZipOutputStream out, List<IModuleResource> allResources,
-			Set<IModuleResource> filterInFiles) throws Exception {
-		if (allResources == null)
-			return;
-
-		for (IModuleResource resource : allResources) {
-			if (resource instanceof IModuleFolder) {
-
-				IModuleResource[] folderResources = ((IModuleFolder) resource).members();
-
-				String entryPath = getZipRelativeName(resource);
-
-				ZipEntry zipEntry = new ZipEntry(entryPath);
-
-				long timeStamp = 0;
-				IContainer folder = (IContainer) resource.getAdapter(IContainer.class);
-				if (folder != null) {
-					timeStamp = folder.getLocalTimeStamp();
-				}
-
-				if (timeStamp != IResource.NULL_STAMP && timeStamp != 0) {
-					zipEntry.setTime(timeStamp);
-				}
-
-				out.putNextEntry(zipEntry);
-				out.closeEntry();
-
-				addZipEntries(out, Arrays.asList(folderResources), filterInFiles);
-				continue;
-			}
-
-			IModuleFile moduleFile = (IModuleFile) resource;
-			// Only add files that are in the filterInList
-			if (!filterInFiles.contains(moduleFile)) {
-				continue;
-			}
-
-			String entryPath = getZipRelativeName(resource);
-
-			ZipEntry zipEntry = new ZipEntry(entryPath);
-
-			InputStream input = null;
-			long timeStamp = 0;
-			IFile iFile = (IFile) moduleFile.getAdapter(IFile.class);
-			if (iFile != null) {
-				timeStamp = iFile.getLocalTimeStamp();
-				input = iFile.getContents();
-			}
-			else {
-				File file = (File) moduleFile.getAdapter(File.class);
-				timeStamp = file.lastModified();
-				input = new FileInputStream(file);
-			}
-
-			if (timeStamp != IResource.NULL_STAMP && timeStamp != 0) {
-				zipEntry.setTime(timeStamp);
-			}
-
-			out.putNextEntry(zipEntry);
-
-			try {
-				int n = 0;
-				while (n > -1) {
-					n = input.read(buf);
-					if (n > 0) {
-						out.write(buf, 0, n);
-					}
-				}
-			}
-			finally {
-				input.close();
-			}
-
-			out.closeEntry();
-		}
-	}
-
 	/**
 	 * @param cloudService
 	 * @return
@@ -10,33 +10,612 @@
  *******************************************************************************/
 package org.cloudfoundry.ide.eclipse.internal.server.core;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Cache for sha1 hash entries and file sizes for incremental publishing of
  * deployed resources. This avoid recalculating hash entries for resources that
  * have not changed in the server. A server poll may still required to obtain a
  * list of unchanged resources.
- * 
+ * <p/>
+ * The cache is accessed concurrently by archive hashing threads, and is
+ * therefore backed by concurrent maps per application rather than a global
+ * lock.
+ * <p/>
+ * The cache is bounded by a maximum number of entries across all
+ * applications. When the bound is exceeded, entries for the least recently
+ * used applications are evicted. Entries for an application are stored
+ * compactly: zip-relative names are mapped to a slot index, and the sha1
+ * digests and file sizes for all slots are packed in primitive arrays.
+ * Entries of files that were not part of the last full resource match of an
+ * application, e.g. files deleted from the application, are removed and the
+ * remaining slots are compacted. Entries should also be invalidated
+ * explicitly when an application is deleted or renamed, or the server it is
+ * deployed to is removed.
+ * <p/>
+ * In addition, the cache records the outcome of the last successful resource
+ * match for each entry, i.e. whether the server confirmed that it already had
+ * the resource. A resource that the server did not have is uploaded, and may
+ * be kept by the server from then on, so it is sent in the next resource
+ * match again. Only resources that the server still did not have after they
+ * were uploaded, e.g. files too small for the server to keep, and that have
+ * not changed since, are left out of the following resource matches, as they
+ * will be uploaded regardless.
+ *
  */
 public class DeployedResourceCache {
-	private final Map<CachedDeployedApplication, Map<String, DeployedResourceEntry>> cacheMap = new HashMap<CachedDeployedApplication, Map<String, DeployedResourceEntry>>();
 
-	public synchronized void add(CachedDeployedApplication applicationID, DeployedResourceEntry entry) {
-		Map<String, DeployedResourceEntry> appEntries = cacheMap.get(applicationID);
+	/**
+	 * Default maximum number of entries across all applications.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 200000;
+
+	/**
+	 * Number of consecutive resource matches that can be pre-checked against
+	 * recorded match results before a full match is required again. Full
+	 * matches are needed periodically as the server may start accepting
+	 * resources it previously did not know about.
+	 */
+	public static final int DEFAULT_MAX_PARTIAL_MATCHES = 10;
+
+	/**
+	 * No resource match result is recorded for the entry, or the entry has
+	 * changed since the last resource match.
+	 */
+	public static final int MATCH_UNKNOWN = 0;
+
+	/**
+	 * The server confirmed it had the entry in the last resource match.
+	 */
+	public static final int MATCH_CONFIRMED = 1;
+
+	/**
+	 * The server did not have the entry in the last resource match, even
+	 * though the entry had been uploaded before. The entry can be left out of
+	 * resource matches until it changes.
+	 */
+	public static final int MATCH_NOT_FOUND = 2;
+
+	/**
+	 * The server did not have the entry in the last resource match, and the
+	 * entry was uploaded. The server may have kept it, so it is sent in the
+	 * next resource match.
+	 */
+	public static final int MATCH_UPLOADED = 3;
+
+	static final int SHA1_LENGTH = 20;
+
+	private final ConcurrentMap<CachedDeployedApplication, ApplicationEntries> cacheMap = new ConcurrentHashMap<CachedDeployedApplication, ApplicationEntries>();
+
+	private final AtomicInteger entryCount = new AtomicInteger();
+
+	/**
+	 * Logical clock used to record application access order for LRU eviction.
+	 */
+	private final AtomicLong accessClock = new AtomicLong();
+
+	private final Object evictionLock = new Object();
+
+	private final int maxEntries;
+
+	public DeployedResourceCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	public DeployedResourceCache(int maxEntries) {
+		this.maxEntries = maxEntries > 0 ? maxEntries : DEFAULT_MAX_ENTRIES;
+	}
+
+	public void add(CachedDeployedApplication applicationID, DeployedResourceEntry entry) {
+		byte[] sha1 = entry.getSha1();
+		// Only complete sha1 digests can be packed in the cache
+		if (sha1 == null || sha1.length != SHA1_LENGTH) {
+			return;
+		}
+
+		boolean added = false;
+		while (!added) {
+			ApplicationEntries appEntries = getOrCreateEntries(applicationID);
+			int result = appEntries.put(entry.getZipRelativeFileName(), sha1, entry.getFileSize(),
+					entry.getTimeStamp(), accessClock.incrementAndGet());
+			if (result == ApplicationEntries.DISPOSED) {
+				// Application was invalidated concurrently. Remove the stale
+				// entries from the map, if still there, and try again.
+				cacheMap.remove(applicationID, appEntries);
+			}
+			else {
+				added = true;
+				if (result == ApplicationEntries.ADDED && entryCount.get() > maxEntries) {
+					evict(applicationID);
+				}
+			}
+		}
+	}
+
+	public DeployedResourceEntry getEntry(CachedDeployedApplication applicationID, String zipRelativeFileName) {
+		ApplicationEntries appEntries = cacheMap.get(applicationID);
+
+		return appEntries != null ? appEntries.get(zipRelativeFileName, accessClock.incrementAndGet()) : null;
+	}
+
+	/**
+	 * 
+	 * @return true if recorded match results for the given application can be
+	 * used to leave entries out of the next resource match. False if a full
+	 * resource match is required, for example if no match has been recorded
+	 * yet for the application.
+	 */
+	public boolean canPrecheckResourceMatch(CachedDeployedApplication applicationID) {
+		ApplicationEntries appEntries = cacheMap.get(applicationID);
+		return appEntries != null && appEntries.canPrecheckMatch(DEFAULT_MAX_PARTIAL_MATCHES);
+	}
+
+	/**
+	 * 
+	 * @return the match state recorded for the given entry in the last
+	 * successful resource match, or {@link #MATCH_UNKNOWN} if there is none.
+	 */
+	public int getMatchState(CachedDeployedApplication applicationID, String zipRelativeFileName) {
+		ApplicationEntries appEntries = cacheMap.get(applicationID);
+		return appEntries != null ? appEntries.getMatchState(zipRelativeFileName) : MATCH_UNKNOWN;
+	}
+
+	/**
+	 * Records the result of a resource match once the application has been
+	 * successfully uploaded. Results are only recorded for entries whose sha1
+	 * digest has not changed since they were sent to the server.
+	 * <p/>
+	 * If the server no longer has an entry that it previously confirmed, all
+	 * recorded results for the application are discarded, and the next
+	 * resource match will be a full match.
+	 * <p/>
+	 * A full match contains all the application's entries, so cached entries
+	 * that are not in a full match are removed.
+	 * @param applicationID
+	 * @param matchedEntries entries sent in the resource match
+	 * @param knownResourceNames names of entries that the server already had
+	 * @param fullMatch true if all the application's entries were sent in the
+	 * resource match
+	 */
+	public void recordResourceMatch(CachedDeployedApplication applicationID,
+			Collection<DeployedResourceEntry> matchedEntries, Set<String> knownResourceNames, boolean fullMatch) {
+		ApplicationEntries appEntries = cacheMap.get(applicationID);
+		if (appEntries != null) {
+			appEntries.recordMatch(matchedEntries, knownResourceNames, fullMatch);
+		}
+	}
+
+	/**
+	 * Discards recorded resource match results for the given application, so
+	 * that the next resource match is a full match.
+	 */
+	public void resetResourceMatch(CachedDeployedApplication applicationID) {
+		ApplicationEntries appEntries = cacheMap.get(applicationID);
+		if (appEntries != null) {
+			appEntries.resetMatch();
+		}
+	}
+
+	/**
+	 * Removes all cached entries for the given application.
+	 * @param applicationID
+	 */
+	public void invalidate(CachedDeployedApplication applicationID) {
+		if (applicationID == null) {
+			return;
+		}
+		ApplicationEntries appEntries = cacheMap.remove(applicationID);
+		if (appEntries != null) {
+			appEntries.dispose();
+		}
+	}
+
+	/**
+	 * Removes all cached entries for applications deployed to the server with
+	 * the given server ID.
+	 * @param serverId
+	 */
+	public void invalidateServer(String serverId) {
+		if (serverId == null) {
+			return;
+		}
+		for (CachedDeployedApplication applicationID : new ArrayList<CachedDeployedApplication>(cacheMap.keySet())) {
+			if (serverId.equals(applicationID.getServerId())) {
+				invalidate(applicationID);
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached entries.
+	 */
+	public void clear() {
+		for (CachedDeployedApplication applicationID : new ArrayList<CachedDeployedApplication>(cacheMap.keySet())) {
+			invalidate(applicationID);
+		}
+	}
+
+	/**
+	 *
+	 * @return non-null snapshot of the current size of the cache.
+	 */
+	public CacheStatistics getStatistics() {
+		int applications = 0;
+		int entries = 0;
+		long bytes = 0;
+		for (ApplicationEntries appEntries : cacheMap.values()) {
+			applications++;
+			synchronized (appEntries) {
+				entries += appEntries.size();
+				bytes += appEntries.getByteSize();
+			}
+		}
+		return new CacheStatistics(applications, entries, bytes);
+	}
+
+	protected ApplicationEntries getOrCreateEntries(CachedDeployedApplication applicationID) {
+		ApplicationEntries appEntries = cacheMap.get(applicationID);
 		if (appEntries == null) {
-			appEntries = new HashMap<String, DeployedResourceCache.DeployedResourceEntry>();
-			cacheMap.put(applicationID, appEntries);
+			ApplicationEntries newEntries = new ApplicationEntries(entryCount);
+			appEntries = cacheMap.putIfAbsent(applicationID, newEntries);
+			if (appEntries == null) {
+				appEntries = newEntries;
+			}
+		}
+		return appEntries;
+	}
+
+	/**
+	 * Evicts the least recently used applications, other than the given
+	 * application being currently added to, until the number of entries falls
+	 * within the cache bound.
+	 */
+	protected void evict(CachedDeployedApplication current) {
+		synchronized (evictionLock) {
+			while (entryCount.get() > maxEntries) {
+				CachedDeployedApplication leastRecent = null;
+				long leastAccess = Long.MAX_VALUE;
+				for (Map.Entry<CachedDeployedApplication, ApplicationEntries> entry : cacheMap.entrySet()) {
+					long lastAccess = entry.getValue().getLastAccess();
+					if (!entry.getKey().equals(current) && lastAccess < leastAccess) {
+						leastAccess = lastAccess;
+						leastRecent = entry.getKey();
+					}
+				}
+				if (leastRecent == null) {
+					// Only the current application is cached. Keep it, as its
+					// entries are needed for the ongoing publish.
+					return;
+				}
+				invalidate(leastRecent);
+			}
 		}
-		appEntries.put(entry.getZipRelativeFileName(), entry);
 	}
 
-	public synchronized DeployedResourceEntry getEntry(CachedDeployedApplication applicationID,
-			String zipRelativeFileName) {
-		Map<String, DeployedResourceEntry> appEntries = cacheMap.get(applicationID);
+	/**
+	 * Compact storage of the cached entries for one application. Each
+	 * zip-relative name is assigned a slot, and the slot indexes into packed
+	 * arrays of sha1 digests, file sizes, file time stamps and resource match
+	 * states.
+	 */
+	static class ApplicationEntries {
+
+		static final int UPDATED = 0;
+
+		static final int ADDED = 1;
+
+		static final int DISPOSED = -1;
+
+		private static final int INITIAL_CAPACITY = 64;
+
+		/**
+		 * Approximate number of bytes used for each entry in the slot map,
+		 * besides the characters of its name: the map node (32), the boxed
+		 * slot index (16), the name's String and char array headers (40), and
+		 * the map table reference, at the default load factor (12).
+		 */
+		private static final int SLOT_OVERHEAD = 100;
+
+		private Map<String, Integer> slots = new HashMap<String, Integer>();
+
+		/**
+		 * Count of entries across all applications, updated while holding
+		 * the lock for this application so that it stays consistent with
+		 * concurrent invalidation.
+		 */
+		private final AtomicInteger totalCount;
+
+		private byte[] digests = new byte[INITIAL_CAPACITY * SHA1_LENGTH];
+
+		private long[] sizes = new long[INITIAL_CAPACITY];
+
+		private long[] timeStamps = new long[INITIAL_CAPACITY];
 
-		return appEntries != null ? appEntries.get(zipRelativeFileName) : null;
+		private byte[] matchStates = new byte[INITIAL_CAPACITY];
+
+		/**
+		 * Number of partial resource matches since the last full match, or -1
+		 * if no full match has been recorded.
+		 */
+		private int partialMatches = -1;
+
+		private long pathChars;
+
+		private volatile long lastAccess;
+
+		private boolean disposed;
+
+		ApplicationEntries(AtomicInteger totalCount) {
+			this.totalCount = totalCount;
+		}
+
+		synchronized int put(String zipRelativeFileName, byte[] sha1, long fileSize, long timeStamp, long access) {
+			if (disposed) {
+				return DISPOSED;
+			}
+			lastAccess = access;
+
+			Integer slot = slots.get(zipRelativeFileName);
+			int result = UPDATED;
+			if (slot == null) {
+				slot = slots.size();
+				ensureCapacity(slot + 1);
+				slots.put(zipRelativeFileName, slot);
+				pathChars += zipRelativeFileName.length();
+				totalCount.incrementAndGet();
+				result = ADDED;
+			}
+			else if (!hasDigest(slot, sha1)) {
+				// The server's knowledge of the previous content does not
+				// apply to the changed content
+				matchStates[slot] = MATCH_UNKNOWN;
+			}
+
+			System.arraycopy(sha1, 0, digests, slot * SHA1_LENGTH, SHA1_LENGTH);
+			sizes[slot] = fileSize;
+			timeStamps[slot] = timeStamp;
+			return result;
+		}
+
+		synchronized int getMatchState(String zipRelativeFileName) {
+			Integer slot = slots.get(zipRelativeFileName);
+			return slot != null ? matchStates[slot] : MATCH_UNKNOWN;
+		}
+
+		synchronized boolean canPrecheckMatch(int maxPartialMatches) {
+			return !disposed && partialMatches >= 0 && partialMatches < maxPartialMatches;
+		}
+
+		synchronized void recordMatch(Collection<DeployedResourceEntry> matchedEntries, Set<String> knownResourceNames,
+				boolean fullMatch) {
+			if (disposed) {
+				return;
+			}
+			boolean lostConfirmed = false;
+			for (DeployedResourceEntry entry : matchedEntries) {
+				Integer slot = slots.get(entry.getZipRelativeFileName());
+				if (slot == null || !hasDigest(slot, entry.getSha1())) {
+					continue;
+				}
+				if (knownResourceNames.contains(entry.getZipRelativeFileName())) {
+					matchStates[slot] = MATCH_CONFIRMED;
+				}
+				else {
+					lostConfirmed |= matchStates[slot] == MATCH_CONFIRMED;
+					// The entry was uploaded after the match. If the server
+					// did not keep it after the previous upload, it is not
+					// expected to keep it this time either.
+					if (matchStates[slot] == MATCH_UPLOADED || matchStates[slot] == MATCH_NOT_FOUND) {
+						matchStates[slot] = MATCH_NOT_FOUND;
+					}
+					else {
+						matchStates[slot] = MATCH_UPLOADED;
+					}
+				}
+			}
+
+			if (fullMatch) {
+				Set<String> matchedNames = new HashSet<String>();
+				for (DeployedResourceEntry entry : matchedEntries) {
+					matchedNames.add(entry.getZipRelativeFileName());
+				}
+				retain(matchedNames);
+			}
+
+			if (lostConfirmed) {
+				resetMatch();
+			}
+			else if (fullMatch) {
+				partialMatches = 0;
+			}
+			else if (partialMatches >= 0) {
+				partialMatches++;
+			}
+		}
+
+		synchronized void resetMatch() {
+			for (int i = 0; i < matchStates.length; i++) {
+				matchStates[i] = MATCH_UNKNOWN;
+			}
+			partialMatches = -1;
+		}
+
+		/**
+		 * Removes the entries whose names are not in the given set, and moves
+		 * the remaining entries to the first slots of smaller arrays, so that
+		 * the storage of removed entries is released.
+		 */
+		private void retain(Set<String> names) {
+			int count = 0;
+			for (String name : slots.keySet()) {
+				if (names.contains(name)) {
+					count++;
+				}
+			}
+			int removed = slots.size() - count;
+			if (removed == 0) {
+				return;
+			}
+
+			int capacity = Math.max(INITIAL_CAPACITY, count);
+			Map<String, Integer> newSlots = new HashMap<String, Integer>();
+			byte[] newDigests = new byte[capacity * SHA1_LENGTH];
+			long[] newSizes = new long[capacity];
+			long[] newTimeStamps = new long[capacity];
+			byte[] newMatchStates = new byte[capacity];
+			long newPathChars = 0;
+			for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+				String name = entry.getKey();
+				if (!names.contains(name)) {
+					continue;
+				}
+				int from = entry.getValue();
+				int to = newSlots.size();
+				System.arraycopy(digests, from * SHA1_LENGTH, newDigests, to * SHA1_LENGTH, SHA1_LENGTH);
+				newSizes[to] = sizes[from];
+				newTimeStamps[to] = timeStamps[from];
+				newMatchStates[to] = matchStates[from];
+				newSlots.put(name, to);
+				newPathChars += name.length();
+			}
+
+			slots = newSlots;
+			digests = newDigests;
+			sizes = newSizes;
+			timeStamps = newTimeStamps;
+			matchStates = newMatchStates;
+			pathChars = newPathChars;
+			totalCount.addAndGet(-removed);
+		}
+
+		private boolean hasDigest(int slot, byte[] sha1) {
+			if (sha1 == null || sha1.length != SHA1_LENGTH) {
+				return false;
+			}
+			int offset = slot * SHA1_LENGTH;
+			for (int i = 0; i < SHA1_LENGTH; i++) {
+				if (digests[offset + i] != sha1[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		synchronized DeployedResourceEntry get(String zipRelativeFileName, long access) {
+			Integer slot = slots.get(zipRelativeFileName);
+			if (slot == null) {
+				return null;
+			}
+			lastAccess = access;
+			byte[] sha1 = new byte[SHA1_LENGTH];
+			System.arraycopy(digests, slot * SHA1_LENGTH, sha1, 0, SHA1_LENGTH);
+			return new DeployedResourceEntry(sha1, sizes[slot], zipRelativeFileName, timeStamps[slot]);
+		}
+
+		/**
+		 * Releases the storage for this application.
+		 */
+		synchronized void dispose() {
+			if (disposed) {
+				return;
+			}
+			totalCount.addAndGet(-slots.size());
+			disposed = true;
+			slots.clear();
+			digests = new byte[0];
+			sizes = new long[0];
+			timeStamps = new long[0];
+			matchStates = new byte[0];
+			partialMatches = -1;
+			pathChars = 0;
+		}
+
+		synchronized int size() {
+			return slots.size();
+		}
+
+		/**
+		 *
+		 * @return approximate number of bytes used by the entries, including
+		 * packed arrays, zip-relative names and the map of names to slots.
+		 */
+		synchronized long getByteSize() {
+			return digests.length + (sizes.length * 8L) + (timeStamps.length * 8L) + matchStates.length
+					+ (pathChars * 2L) + ((long) slots.size() * SLOT_OVERHEAD);
+		}
+
+		long getLastAccess() {
+			return lastAccess;
+		}
+
+		private void ensureCapacity(int slotCount) {
+			if (slotCount > sizes.length) {
+				int capacity = Math.max(slotCount, sizes.length * 2);
+				long[] newSizes = new long[capacity];
+				System.arraycopy(sizes, 0, newSizes, 0, sizes.length);
+				sizes = newSizes;
+
+				long[] newTimeStamps = new long[capacity];
+				System.arraycopy(timeStamps, 0, newTimeStamps, 0, timeStamps.length);
+				timeStamps = newTimeStamps;
+
+				byte[] newDigests = new byte[capacity * SHA1_LENGTH];
+				System.arraycopy(digests, 0, newDigests, 0, digests.length);
+				digests = newDigests;
+
+				byte[] newMatchStates = new byte[capacity];
+				System.arraycopy(matchStates, 0, newMatchStates, 0, matchStates.length);
+				matchStates = newMatchStates;
+			}
+		}
+	}
+
+	/**
+	 * Snapshot of the size of the cache.
+	 */
+	public static class CacheStatistics {
+
+		private final int applicationCount;
+
+		private final int entryCount;
+
+		private final long byteSize;
+
+		public CacheStatistics(int applicationCount, int entryCount, long byteSize) {
+			this.applicationCount = applicationCount;
+			this.entryCount = entryCount;
+			this.byteSize = byteSize;
+		}
+
+		public int getApplicationCount() {
+			return applicationCount;
+		}
+
+		public int getEntryCount() {
+			return entryCount;
+		}
+
+		/**
+		 *
+		 * @return approximate number of bytes used by cached entries
+		 */
+		public long getByteSize() {
+			return byteSize;
+		}
+
+		public String toString() {
+			return "Applications: " + applicationCount + ", entries: " + entryCount + ", bytes: " + byteSize;
+		}
 	}
 
 	public static class DeployedResourceEntry {
@@ -46,10 +625,21 @@ public class DeployedResourceCache {
 
 		private final String zipRelativeFileName;
 
+		private final long timeStamp;
+
 		public DeployedResourceEntry(byte[] sha1, long fileSize, String zipRelativeFileName) {
+			this(sha1, fileSize, zipRelativeFileName, 0);
+		}
+
+		/**
+		 * @param timeStamp last modification time of the file when the sha1
+		 * digest was computed, or 0 if not known
+		 */
+		public DeployedResourceEntry(byte[] sha1, long fileSize, String zipRelativeFileName, long timeStamp) {
 			this.sha1 = sha1;
 			this.fileSize = fileSize;
 			this.zipRelativeFileName = zipRelativeFileName;
+			this.timeStamp = timeStamp;
 		}
 
 		public String getZipRelativeFileName() {
@@ -63,29 +653,64 @@ public class DeployedResourceCache {
 		public long getFileSize() {
 			return fileSize;
 		}
+
+		/**
+		 * @return last modification time of the file when the sha1 digest was
+		 * computed, or 0 if not known
+		 */
+		public long getTimeStamp() {
+			return timeStamp;
+		}
+
+		/**
+		 * @return true if the sha1 digest was computed for the current content
+		 * of the given file, judging by its size and modification time
+		 */
+		public boolean isCurrent(File file) {
+			return timeStamp != 0 && file != null && file.lastModified() == timeStamp && file.length() == fileSize;
+		}
 	}
 
 	/**
 	 * Light-weight representation of an app only for purposes of caching
-	 * deployed resources for that app.
-	 * 
+	 * deployed resources for that app. Apps are identified by name and,
+	 * optionally, the ID of the server they are deployed to, as apps with the
+	 * same name may be deployed to different servers.
+	 *
 	 */
 	public static class CachedDeployedApplication {
 
 		private final String appName;
 
+		private final String serverId;
+
 		public CachedDeployedApplication(String appName) {
+			this(appName, null);
+		}
+
+		public CachedDeployedApplication(String appName, String serverId) {
 			this.appName = appName;
+			this.serverId = serverId;
 		}
 
 		public String getAppName() {
 			return appName;
 		}
 
+		/**
+		 *
+		 * @return ID of the server where the app is deployed, or null if not
+		 * specified.
+		 */
+		public String getServerId() {
+			return serverId;
+		}
+
 		public int hashCode() {
 			final int prime = 31;
 			int result = 1;
 			result = prime * result + ((appName == null) ? 0 : appName.hashCode());
+			result = prime * result + ((serverId == null) ? 0 : serverId.hashCode());
 			return result;
 		}
 
@@ -109,11 +734,19 @@ public class DeployedResourceCache {
 			else if (!appName.equals(other.appName)) {
 				return false;
 			}
+			if (serverId == null) {
+				if (other.serverId != null) {
+					return false;
+				}
+			}
+			else if (!serverId.equals(other.serverId)) {
+				return false;
+			}
 			return true;
 		}
 
 		public String toString() {
-			return appName.toString();
+			return serverId != null ? appName + "@" + serverId : appName;
 		}
 
 	}
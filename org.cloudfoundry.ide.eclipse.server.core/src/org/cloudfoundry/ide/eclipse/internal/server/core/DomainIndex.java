@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudfoundry.client.lib.domain.CloudDomain;
+
+/**
+ * Immutable index of a list of Cloud domains, to find the domain of an
+ * application URL authority (e.g. "cfapps.io" in "myapp.cfapps.io") without
+ * checking every domain.
+ * <p/>
+ * Domains are stored in a trie keyed on domain labels, starting with the last
+ * label ("io", then "cfapps"), so a lookup only visits as many nodes as the
+ * authority has labels. Labels are compared ignoring case. If several domains
+ * match, the longest one is returned.
+ */
+public class DomainIndex {
+
+	private final List<CloudDomain> domains;
+
+	private final Node root = new Node();
+
+	private final long timestamp;
+
+	public DomainIndex(List<CloudDomain> domains) {
+		this.domains = domains != null ? Collections.unmodifiableList(new ArrayList<CloudDomain>(domains))
+				: Collections.<CloudDomain> emptyList();
+		this.timestamp = System.currentTimeMillis();
+
+		for (CloudDomain domain : this.domains) {
+			String name = domain.getName();
+			if (name == null || name.length() == 0) {
+				continue;
+			}
+			String[] labels = getLabels(name);
+			Node node = root;
+			for (int i = labels.length - 1; i >= 0; i--) {
+				node = node.getOrCreateChild(labels[i]);
+			}
+			// Keep the first domain in the list if names are duplicated
+			if (node.domain == null) {
+				node.domain = domain;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return non-null, unmodifiable list of the indexed domains, in their
+	 * original order
+	 */
+	public List<CloudDomain> getDomains() {
+		return domains;
+	}
+
+	public boolean isEmpty() {
+		return domains.isEmpty();
+	}
+
+	/**
+	 *
+	 * @return time when the index was built, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Finds the longest domain that the given authority ends with, on a label
+	 * boundary. The authority may be the domain itself, in which case it has
+	 * no host.
+	 * @param authority host and domain, e.g. "myapp.cfapps.io"
+	 * @return matching domain, or null if none match
+	 */
+	public CloudDomain findDomain(String authority) {
+		if (authority == null || authority.length() == 0) {
+			return null;
+		}
+		String[] labels = getLabels(authority);
+		CloudDomain match = null;
+		Node node = root;
+		for (int i = labels.length - 1; i >= 0 && node != null; i--) {
+			node = node.children != null ? node.children.get(labels[i]) : null;
+			if (node != null && node.domain != null) {
+				match = node.domain;
+			}
+		}
+		return match;
+	}
+
+	private static String[] getLabels(String name) {
+		return name.toLowerCase().split("\\.");
+	}
+
+	private static class Node {
+
+		private Map<String, Node> children;
+
+		private CloudDomain domain;
+
+		Node getOrCreateChild(String label) {
+			if (children == null) {
+				children = new HashMap<String, Node>(4);
+			}
+			Node child = children.get(label);
+			if (child == null) {
+				child = new Node();
+				children.put(label, child);
+			}
+			return child;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sha1 digests of local files, shared by all applications and servers. Files
+ * are identified by their canonical path, size and modification time, so a
+ * jar used by many applications deployed from the same workspace is hashed
+ * once, regardless of where it is placed in each application.
+ * <p/>
+ * The {@link DeployedResourceCache} keeps a per-application view of the
+ * digests, by zip-relative name, along with the resource match results for
+ * each application. This store is consulted when a digest is missing or out
+ * of date in that view.
+ * <p/>
+ * The store is bounded. When the bound is exceeded, the least recently used
+ * digests are evicted.
+ */
+public class FileDigestStore {
+
+	/**
+	 * Default maximum number of digests.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+	private final LinkedHashMap<FileKey, byte[]> digests;
+
+	private long hits;
+
+	private long misses;
+
+	public FileDigestStore() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	public FileDigestStore(final int maxEntries) {
+		final int max = maxEntries > 0 ? maxEntries : DEFAULT_MAX_ENTRIES;
+		this.digests = new LinkedHashMap<FileKey, byte[]>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<FileKey, byte[]> eldest) {
+				return size() > max;
+			}
+		};
+	}
+
+	/**
+	 * @return sha1 digest of the current content of the file, or null if it
+	 * is not known
+	 */
+	public byte[] getSha1(File file) {
+		FileKey key = FileKey.get(file, file.length(), file.lastModified());
+		if (key == null) {
+			return null;
+		}
+		synchronized (this) {
+			byte[] sha1 = digests.get(key);
+			if (sha1 != null) {
+				hits++;
+			}
+			else {
+				misses++;
+			}
+			return sha1;
+		}
+	}
+
+	/**
+	 * Records the digest of a file.
+	 * @param file
+	 * @param size size of the file when the digest was computed
+	 * @param timeStamp modification time of the file, read before the digest
+	 * was computed
+	 * @param sha1
+	 */
+	public void add(File file, long size, long timeStamp, byte[] sha1) {
+		if (sha1 == null || timeStamp == 0) {
+			return;
+		}
+		FileKey key = FileKey.get(file, size, timeStamp);
+		if (key != null) {
+			synchronized (this) {
+				digests.put(key, sha1);
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return digests.size();
+	}
+
+	/**
+	 * @return number of look-ups that found a digest
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of look-ups that did not find a digest
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized void clear() {
+		digests.clear();
+	}
+
+	static class FileKey {
+
+		private final String path;
+
+		private final long size;
+
+		private final long timeStamp;
+
+		private FileKey(String path, long size, long timeStamp) {
+			this.path = path;
+			this.size = size;
+			this.timeStamp = timeStamp;
+		}
+
+		/**
+		 * @return key of the file, or null if its canonical path cannot be
+		 * resolved
+		 */
+		static FileKey get(File file, long size, long timeStamp) {
+			try {
+				return new FileKey(file.getCanonicalPath(), size, timeStamp);
+			}
+			catch (IOException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			int result = path.hashCode();
+			result = 31 * result + (int) (size ^ (size >>> 32));
+			result = 31 * result + (int) (timeStamp ^ (timeStamp >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof FileKey)) {
+				return false;
+			}
+			FileKey other = (FileKey) obj;
+			return size == other.size && timeStamp == other.timeStamp && path.equals(other.path);
+		}
+	}
+}
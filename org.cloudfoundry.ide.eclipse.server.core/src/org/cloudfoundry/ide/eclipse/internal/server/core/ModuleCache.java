@@ -19,6 +19,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.ide.eclipse.internal.server.core.DeployedResourceCache.CachedDeployedApplication;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -56,6 +57,11 @@ public class ModuleCache {
 
 		private final Map<String, RepublishModule> automaticRepublishModules = new HashMap<String, RepublishModule>();
 
+		/**
+		 * Deployed names of applications in continuous deploy mode.
+		 */
+		private final Set<String> continuousDeployApplications = new HashSet<String>();
+
 		private int[] applicationMemoryChoices;
 
 		ServerData(IServer server) {
@@ -86,8 +92,18 @@ public class ModuleCache {
 			// Update the map of module ID -> Deployed Application name
 			if (module.getLocalModule() != null) {
 				Map<String, String> mapping = getLocalModuleToCloudModuleMapping();
-				mapping.put(module.getLocalModule().getId(), module.getDeployedApplicationName());
+				String oldName = mapping.put(module.getLocalModule().getId(), module.getDeployedApplicationName());
 				setLocalModuleToCloudModuleMapping(mapping);
+
+				// Cached resource entries under the old deployed name are
+				// no longer valid if the application was renamed
+				if (oldName != null && !oldName.equals(module.getDeployedApplicationName())) {
+					CloudFoundryPlugin plugin = CloudFoundryPlugin.getDefault();
+					if (plugin != null) {
+						plugin.getDeployedResourcesCache().invalidate(
+								new CachedDeployedApplication(oldName, getServerId()));
+					}
+				}
 			}
 		}
 
@@ -109,6 +125,7 @@ public class ModuleCache {
 
 		public synchronized void remove(CloudFoundryApplicationModule module) {
 			cloudModules.remove(module);
+			continuousDeployApplications.remove(module.getDeployedApplicationName());
 			if (module.getLocalModule() != null) {
 				Map<String, String> mapping = getLocalModuleToCloudModuleMapping();
 				mapping.remove(module.getLocalModule().getId());
@@ -155,6 +172,27 @@ public class ModuleCache {
 			return automaticRepublishModules.remove(module.getName());
 		}
 
+		public synchronized void setContinuousDeploy(String appName, boolean enabled) {
+			if (enabled) {
+				continuousDeployApplications.add(appName);
+			}
+			else {
+				continuousDeployApplications.remove(appName);
+			}
+		}
+
+		public synchronized boolean isContinuousDeploy(String appName) {
+			return continuousDeployApplications.contains(appName);
+		}
+
+		/**
+		 * 
+		 * @return never null. May be empty
+		 */
+		public synchronized Set<String> getContinuousDeployApplications() {
+			return new HashSet<String>(continuousDeployApplications);
+		}
+
 		private void add(CloudFoundryApplicationModule module) {
 			cloudModules.add(module);
 		}
@@ -365,6 +403,12 @@ public class ModuleCache {
 
 		String serverId = server.getAttribute(CloudFoundryServer.PROP_SERVER_ID, (String) null);
 		if (serverId != null) {
+			// Release cached resource entries for the server's applications
+			CloudFoundryPlugin plugin = CloudFoundryPlugin.getDefault();
+			if (plugin != null) {
+				plugin.getDeployedResourcesCache().invalidateServer(serverId);
+			}
+
 			IEclipsePreferences node = new InstanceScope().getNode(CloudFoundryPlugin.PLUGIN_ID);
 			node.remove(KEY_MODULE_MAPPING_LIST + ":" + serverId);
 			try {
@@ -0,0 +1,523 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.wst.server.core.IServer;
+import org.eclipse.wst.server.core.IServerLifecycleListener;
+import org.eclipse.wst.server.core.ServerCore;
+import org.eclipse.wst.server.core.model.IModuleFile;
+import org.eclipse.wst.server.core.model.IModuleFolder;
+import org.eclipse.wst.server.core.model.IModuleResource;
+
+/**
+ * Keeps the jars assembled from child modules of web applications (e.g.
+ * utility projects), so that they are only assembled again when the child
+ * module changes.
+ * <p/>
+ * Each jar is identified by a digest of the names, sizes and time stamps of
+ * the child module's resources. If a jar with the current digest exists, it
+ * is reused as is. Otherwise a new jar is written, copying the entries of
+ * unchanged files from the previous jar of the module, and the previous jar
+ * is deleted.
+ * <p/>
+ * Jars are kept separately for each server, so that assembling the jar of a
+ * module again for one server does not delete a jar that is still read by a
+ * publish to another server. The jars of a server are deleted when the server
+ * is removed, and the jar of a child module when it is removed from a server
+ * with its web module.
+ * <p/>
+ * The total size of the cached jars is bounded. When the bound is exceeded,
+ * the least recently used jars of other modules are deleted.
+ * <p/>
+ * Jars of different modules are assembled concurrently. Only requests for
+ * the jar of the same module on the same server wait for each other.
+ */
+public class ModuleJarCache {
+
+	/**
+	 * Changed when the jar format changes, so that jars written by earlier
+	 * versions are not reused.
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * Default maximum total size in bytes of the cached jars.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+	private static final String JAR_EXTENSION = ".jar";
+
+	private static final String TEMP_EXTENSION = ".tmp";
+
+	private static ModuleJarCache cache;
+
+	private final File root;
+
+	private final long maxSize;
+
+	private final AtomicInteger reused = new AtomicInteger();
+
+	private final AtomicInteger written = new AtomicInteger();
+
+	/**
+	 * Locks by cache folder, held while the jar of a module is looked up or
+	 * assembled.
+	 */
+	private final ConcurrentMap<File, Object> locks = new ConcurrentHashMap<File, Object>();
+
+	/**
+	 * Guards the deletion of jars and the {@link #building} folders.
+	 */
+	private final Object evictionLock = new Object();
+
+	/**
+	 * Folders in which a jar is being assembled, which are skipped when
+	 * deleting jars, as their previous jar is still read.
+	 */
+	private final Set<File> building = new HashSet<File>();
+
+	private IServerLifecycleListener listener;
+
+	/**
+	 * @param root folder in which jars are kept. Created if it does not
+	 * exist.
+	 */
+	public ModuleJarCache(File root) {
+		this(root, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param root folder in which jars are kept. Created if it does not
+	 * exist.
+	 * @param maxSize maximum total size in bytes of the cached jars. The most
+	 * recently used jar is kept even if it is larger.
+	 */
+	public ModuleJarCache(File root, long maxSize) {
+		this.root = root;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return cache in the plug-in state location, or in the temporary
+	 * folder if the plug-in is not running
+	 */
+	public static synchronized ModuleJarCache getDefault() {
+		if (cache == null) {
+			File root;
+			CloudFoundryPlugin plugin = CloudFoundryPlugin.getDefault();
+			if (plugin != null) {
+				root = plugin.getStateLocation().append("moduleJars").toFile();
+			}
+			else {
+				root = new File(System.getProperty("java.io.tmpdir"), "cloudfoundryModuleJars");
+			}
+			cache = new ModuleJarCache(root);
+			if (plugin != null) {
+				cache.addServerLifecycleListener();
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Stops deleting the jars of removed servers from the cache returned by
+	 * {@link #getDefault()}, if it was created.
+	 */
+	public static synchronized void disposeDefault() {
+		if (cache != null) {
+			cache.dispose();
+			cache = null;
+		}
+	}
+
+	private void addServerLifecycleListener() {
+		listener = new IServerLifecycleListener() {
+
+			public void serverAdded(IServer server) {
+				// ignore
+			}
+
+			public void serverChanged(IServer server) {
+				// ignore
+			}
+
+			public void serverRemoved(IServer server) {
+				remove(server.getId());
+			}
+		};
+		ServerCore.addServerLifecycleListener(listener);
+	}
+
+	public void dispose() {
+		if (listener != null) {
+			ServerCore.removeServerLifecycleListener(listener);
+			listener = null;
+		}
+	}
+
+	/**
+	 * Returns the jar for the given child module resources, assembling it if
+	 * the resources changed since the jar was last assembled. The returned
+	 * file must not be modified or deleted by the caller.
+	 * @param serverId identifies the server the jar is published to
+	 * @param moduleId identifies the child module, e.g. the module id
+	 * @param resources resources of the child module
+	 * @param monitor may be null
+	 * @return jar with the given resources
+	 * @throws CoreException if the jar could not be written
+	 */
+	public File getJar(String serverId, String moduleId, List<IModuleResource> resources, IProgressMonitor monitor)
+			throws CoreException {
+		return getModuleJar(serverId, moduleId, resources, monitor).getFile();
+	}
+
+	/**
+	 * Returns the jar for the given child module resources, like
+	 * {@link #getJar(String, String, List, IProgressMonitor)}, and whether it
+	 * was assembled by this call.
+	 */
+	public ModuleJar getModuleJar(String serverId, String moduleId, List<IModuleResource> resources,
+			IProgressMonitor monitor) throws CoreException {
+		File folder = getFolder(serverId, moduleId);
+		String digest = toHex(getDigest(resources));
+		File jar = new File(folder, digest + JAR_EXTENSION);
+		synchronized (getLock(folder)) {
+			synchronized (evictionLock) {
+				if (jar.isFile()) {
+					reused.incrementAndGet();
+					// Marks the jar as recently used
+					jar.setLastModified(System.currentTimeMillis());
+					return new ModuleJar(jar, false);
+				}
+				if (!folder.isDirectory() && !folder.mkdirs()) {
+					throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID, NLS.bind(
+							"Failed to create folder {0}", folder.getAbsolutePath())));
+				}
+				building.add(folder);
+			}
+			try {
+				assemble(folder, jar, digest, moduleId, resources, monitor);
+			}
+			finally {
+				synchronized (evictionLock) {
+					building.remove(folder);
+				}
+			}
+		}
+		evict(jar);
+		return new ModuleJar(jar, true);
+	}
+
+	/**
+	 * Deletes the jars kept for the given server.
+	 * @param serverId identifies the server
+	 */
+	public void remove(String serverId) {
+		synchronized (evictionLock) {
+			File serverFolder = new File(root, toHex(digest(serverId)));
+			File[] folders = serverFolder.listFiles();
+			if (folders != null) {
+				for (File folder : folders) {
+					delete(folder);
+				}
+			}
+			serverFolder.delete();
+		}
+	}
+
+	/**
+	 * Deletes the jar kept for the given child module on the given server.
+	 * @param serverId identifies the server
+	 * @param moduleId identifies the child module
+	 */
+	public void remove(String serverId, String moduleId) {
+		synchronized (evictionLock) {
+			delete(getFolder(serverId, moduleId));
+		}
+	}
+
+	private File getFolder(String serverId, String moduleId) {
+		return new File(new File(root, toHex(digest(serverId))), toHex(digest(moduleId)));
+	}
+
+	private Object getLock(File folder) {
+		Object lock = locks.get(folder);
+		if (lock == null) {
+			lock = new Object();
+			Object existing = locks.putIfAbsent(folder, lock);
+			if (existing != null) {
+				lock = existing;
+			}
+		}
+		return lock;
+	}
+
+	/**
+	 * Deletes the given module folder with its jar, unless a jar is being
+	 * assembled in it. Must be called holding the eviction lock.
+	 */
+	private void delete(File folder) {
+		if (building.contains(folder)) {
+			return;
+		}
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		folder.delete();
+	}
+
+	private void assemble(File folder, File jar, String digest, String moduleId, List<IModuleResource> resources,
+			IProgressMonitor monitor) throws CoreException {
+		File previous = null;
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().endsWith(JAR_EXTENSION)) {
+					previous = file;
+				}
+			}
+		}
+
+		File temp = new File(folder, digest + TEMP_EXTENSION);
+		try {
+			write(resources, temp, previous, monitor);
+		}
+		catch (IOException e) {
+			temp.delete();
+			throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID, NLS.bind(
+					"Failed to create jar for module {0}: {1}", moduleId, e.getMessage()), e));
+		}
+		if (!temp.renameTo(jar)) {
+			temp.delete();
+			throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID, NLS.bind(
+					"Failed to create jar for module {0}: {1} could not be renamed", moduleId,
+					temp.getAbsolutePath())));
+		}
+		written.incrementAndGet();
+
+		// Only the latest jar of each module is kept
+		files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (!file.equals(jar)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the jar with the given resources.
+	 * @param resources resources of the child module
+	 * @param jar file to write
+	 * @param previous previous jar of the module whose unchanged entries are
+	 * copied, or null
+	 * @param monitor may be null
+	 */
+	protected void write(List<IModuleResource> resources, File jar, File previous, IProgressMonitor monitor)
+			throws IOException, CoreException {
+		new ParallelWarWriter().write(resources, jar, null, previous, monitor);
+	}
+
+	/**
+	 * Deletes the least recently used jars until the total size of the
+	 * cached jars is within the bound. Jars of modules whose jar is being
+	 * assembled are kept, as they are still read.
+	 * @param current jar that is kept regardless of its size
+	 */
+	private void evict(File current) {
+		synchronized (evictionLock) {
+			List<File> jars = new ArrayList<File>();
+			long size = 0;
+			File[] serverFolders = root.listFiles();
+			if (serverFolders == null) {
+				return;
+			}
+			for (File serverFolder : serverFolders) {
+				File[] folders = serverFolder.listFiles();
+				if (folders == null) {
+					continue;
+				}
+				for (File folder : folders) {
+					File[] files = building.contains(folder) ? null : folder.listFiles();
+					if (files == null) {
+						continue;
+					}
+					for (File file : files) {
+						if (file.getName().endsWith(JAR_EXTENSION)) {
+							jars.add(file);
+							size += file.length();
+						}
+					}
+				}
+			}
+			if (size <= maxSize) {
+				return;
+			}
+
+			Collections.sort(jars, new Comparator<File>() {
+				public int compare(File file1, File file2) {
+					long time1 = file1.lastModified();
+					long time2 = file2.lastModified();
+					return time1 < time2 ? -1 : (time1 == time2 ? 0 : 1);
+				}
+			});
+			for (File jar : jars) {
+				if (size <= maxSize) {
+					break;
+				}
+				if (jar.equals(current)) {
+					continue;
+				}
+				long length = jar.length();
+				if (jar.delete()) {
+					size -= length;
+					File folder = jar.getParentFile();
+					if (folder.delete()) {
+						folder.getParentFile().delete();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of jars reused since the cache was created
+	 */
+	public int getReusedCount() {
+		return reused.get();
+	}
+
+	/**
+	 * @return number of jars written since the cache was created
+	 */
+	public int getWrittenCount() {
+		return written.get();
+	}
+
+	/**
+	 * @return digest of the names, sizes and time stamps of the given
+	 * resources and their members
+	 */
+	static byte[] getDigest(List<IModuleResource> resources) {
+		MessageDigest digest = newDigest();
+		update(digest, FORMAT_VERSION);
+		update(digest, resources.toArray(new IModuleResource[0]));
+		return digest.digest();
+	}
+
+	private static void update(MessageDigest digest, IModuleResource[] resources) {
+		for (IModuleResource resource : resources) {
+			update(digest, CloudUtil.getZipRelativeName(resource));
+			if (resource instanceof IModuleFolder) {
+				update(digest, ((IModuleFolder) resource).members());
+			}
+			else if (resource instanceof IModuleFile) {
+				update(digest, ParallelWarWriter.getSize((IModuleFile) resource));
+				update(digest, ParallelWarWriter.getTimeStamp((IModuleFile) resource));
+			}
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		try {
+			digest.update(value.getBytes("UTF-8"));
+		}
+		catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+		digest.update((byte) 0);
+	}
+
+	private static void update(MessageDigest digest, long value) {
+		for (int i = 0; i < 8; i++) {
+			digest.update((byte) (value >>> (i * 8)));
+		}
+	}
+
+	static byte[] digest(String... values) {
+		MessageDigest digest = newDigest();
+		for (String value : values) {
+			update(digest, value);
+		}
+		return digest.digest();
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e) {
+			// SHA-1 is always available
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+			builder.append(Character.forDigit(b & 0xF, 16));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Jar of a child module, as returned by the cache.
+	 */
+	public static class ModuleJar {
+
+		private final File file;
+
+		private final boolean written;
+
+		ModuleJar(File file, boolean written) {
+			this.file = file;
+			this.written = written;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return true if the jar was assembled when it was requested, false
+		 * if an existing jar was reused
+		 */
+		public boolean isWritten() {
+			return written;
+		}
+	}
+}
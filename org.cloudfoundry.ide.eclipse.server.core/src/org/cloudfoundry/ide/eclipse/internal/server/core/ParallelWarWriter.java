@@ -0,0 +1,1115 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.wst.server.core.model.IModuleFile;
+import org.eclipse.wst.server.core.model.IModuleFolder;
+import org.eclipse.wst.server.core.model.IModuleResource;
+
+/**
+ * Writes module resources into a zip archive (e.g. a WAR), compressing the
+ * entries concurrently on a pool of worker threads. Compressed entries are
+ * appended to the archive in the same order as the resources, so the archive
+ * is byte-identical regardless of the number of threads.
+ * <p/>
+ * Entries whose content is already compressed, as determined by an
+ * {@link ArchiveCompressionPolicy}, are stored rather than deflated again, as
+ * are entries that deflating would not make smaller.
+ * <p/>
+ * When a previous version of the archive is given, entries for files that
+ * have the same size and time stamp as in the previous archive are copied
+ * from it as they are, without reading and compressing the files again.
+ * <p/>
+ * Only a bounded number of entries, of a bounded total size, are compressed
+ * ahead of the entry being written, to limit the memory held by compressed
+ * entries that are waiting to be written. Entries of large files are never
+ * held in memory: they are compressed, or copied from the previous archive,
+ * directly to the archive on the calling thread once the entries before them
+ * are written.
+ * <p/>
+ * Entries are compressed on a pool of threads shared by all writers, of at
+ * most one thread per available processor, so that concurrent writes do not
+ * each start their own threads.
+ * <p/>
+ * Archives are written without Zip64 extensions, so they are limited to
+ * 65535 entries and 4 GB. Larger archives are written again with
+ * {@link ZipOutputStream}, which adds Zip64 extensions where needed, on the
+ * calling thread and without copying entries from the previous archive.
+ */
+public class ParallelWarWriter {
+
+	/**
+	 * Number of entries compressed ahead of the written entry, per thread.
+	 */
+	private static final int ENTRIES_AHEAD_PER_THREAD = 4;
+
+	/**
+	 * Maximum total size in bytes of the entries compressed ahead of the
+	 * written entry.
+	 */
+	private static final long MAX_PENDING_BYTES = 16L * 1024 * 1024;
+
+	/**
+	 * Maximum size in bytes of a file whose entry is compressed ahead in
+	 * memory. Entries of larger files are written directly to the archive.
+	 */
+	private static final long MAX_BUFFERED_ENTRY_SIZE = 1024 * 1024;
+
+	private static final int BUFFER = 65536;
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+	private static final int END_SIGNATURE = 0x06054b50;
+
+	private static final int LOCAL_HEADER_LENGTH = 30;
+
+	private static final int CENTRAL_HEADER_LENGTH = 46;
+
+	private static final int END_LENGTH = 22;
+
+	/**
+	 * Resolution of time stamps in zip entries, in milliseconds.
+	 */
+	private static final long DOS_TIME_RESOLUTION = 2000;
+
+	/**
+	 * Entry names are encoded in UTF-8.
+	 */
+	private static final int UTF8_FLAG = 0x0800;
+
+	private static final int STORED = 0;
+
+	private static final int DEFLATED = 8;
+
+	private static final long MAX_ZIP_SIZE = 0xFFFFFFFFL;
+
+	private static final int MAX_ZIP_ENTRIES = 0xFFFF;
+
+	/**
+	 * Time in milliseconds after which idle compression threads end.
+	 */
+	private static final long THREAD_KEEP_ALIVE = 60 * 1000;
+
+	private static ThreadPoolExecutor executor;
+
+	private final int threads;
+
+	private final int level;
+
+	private final ArchiveCompressionPolicy policy;
+
+	/**
+	 * Uses one thread per available processor.
+	 */
+	public ParallelWarWriter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public ParallelWarWriter(int threads) {
+		this(threads, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param threads number of threads compressing entries. If 1, entries are
+	 * compressed on the calling thread.
+	 * @param level compression level, as defined by {@link Deflater}
+	 */
+	public ParallelWarWriter(int threads, int level) {
+		this(threads, level, ArchiveCompressionPolicy.getDefault());
+	}
+
+	/**
+	 * @param threads number of threads compressing entries. If 1, entries are
+	 * compressed on the calling thread.
+	 * @param level compression level, as defined by {@link Deflater}
+	 * @param policy determines which entries are stored without compression
+	 */
+	public ParallelWarWriter(int threads, int level, ArchiveCompressionPolicy policy) {
+		this.threads = Math.max(1, threads);
+		this.level = level;
+		this.policy = policy != null ? policy : ArchiveCompressionPolicy.DEFLATE_ALL;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return executor shared by all writers to compress entries
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			int poolSize = Runtime.getRuntime().availableProcessors();
+			executor = new ThreadPoolExecutor(poolSize, poolSize, THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	/**
+	 * Stops the threads that compress entries. Writes that are in progress
+	 * fail.
+	 */
+	public static synchronized void disposeExecutor() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Writes the given resources to a zip file, and reports failures as
+	 * statuses, like {@link CloudUtil#publishZip(List, File, Set, IProgressMonitor)}.
+	 * @return non-null statuses of failures. Empty if the archive was
+	 * written successfully.
+	 */
+	public IStatus[] publishZip(List<IModuleResource> resources, File zipFile, Set<IModuleResource> filterInFiles,
+			IProgressMonitor monitor) {
+		try {
+			write(resources, zipFile, filterInFiles, monitor);
+		}
+		catch (CoreException e) {
+			return new IStatus[] { e.getStatus() };
+		}
+		catch (OperationCanceledException e) {
+			return new IStatus[] { Status.CANCEL_STATUS };
+		}
+		catch (IOException e) {
+			return new IStatus[] { new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID, NLS.bind(
+					"Failed to create archive {0}: {1}", zipFile.getName(), e.getMessage()), e) };
+		}
+		return new IStatus[0];
+	}
+
+	/**
+	 * Writes the given resources, and the members of folder resources, to a
+	 * zip file. Folder entries are always written.
+	 * @param resources resources to write
+	 * @param zipFile archive to create or overwrite
+	 * @param filterInFiles files to write. If null, all files are written.
+	 * @param monitor may be null
+	 * @throws IOException if a resource could not be read or the archive
+	 * could not be written
+	 * @throws CoreException if the contents of a workspace file could not be
+	 * read
+	 * @throws OperationCanceledException if the monitor is cancelled
+	 */
+	public void write(List<IModuleResource> resources, File zipFile, Set<IModuleResource> filterInFiles,
+			IProgressMonitor monitor) throws IOException, CoreException {
+		write(resources, zipFile, filterInFiles, null, monitor);
+	}
+
+	/**
+	 * Writes the given resources, and the members of folder resources, to a
+	 * zip file, copying the entries of unchanged files from a previous
+	 * version of the archive. Folder entries are always written.
+	 * @param resources resources to write
+	 * @param zipFile archive to create or overwrite. Must not be the previous
+	 * archive.
+	 * @param filterInFiles files to write. If null, all files are written.
+	 * @param previousArchive archive previously written from the same
+	 * resources, with the same compression settings, or null. If it cannot be
+	 * read, all entries are compressed again.
+	 * @param monitor may be null
+	 * @throws IOException if a resource could not be read or the archive
+	 * could not be written
+	 * @throws CoreException if the contents of a workspace file could not be
+	 * read
+	 * @throws OperationCanceledException if the monitor is cancelled
+	 */
+	public void write(List<IModuleResource> resources, File zipFile, Set<IModuleResource> filterInFiles,
+			File previousArchive, IProgressMonitor monitor) throws IOException, CoreException {
+		List<PendingEntry> entries = new ArrayList<PendingEntry>();
+		collectEntries(resources, filterInFiles, entries, new HashSet<String>());
+
+		// Entries without a valid time stamp, typically folders, get the time
+		// of the newest entry, so that the same resources always produce the
+		// same archive
+		long newestTime = 0;
+		for (PendingEntry entry : entries) {
+			newestTime = Math.max(newestTime, entry.time);
+		}
+		if (newestTime == 0) {
+			newestTime = System.currentTimeMillis();
+		}
+		for (PendingEntry entry : entries) {
+			if (entry.time == 0) {
+				entry.time = newestTime;
+			}
+		}
+
+		if (requiresZip64(entries)) {
+			writeZip64(entries, zipFile, monitor);
+			return;
+		}
+		try {
+			writeZip(entries, zipFile, previousArchive, monitor);
+		}
+		catch (Zip64RequiredException e) {
+			// Compressed sizes are only known once entries are written
+			writeZip64(entries, zipFile, monitor);
+		}
+	}
+
+	/**
+	 * @return true if the archive of the given entries is known to need Zip64
+	 * extensions before it is written
+	 */
+	private static boolean requiresZip64(List<PendingEntry> entries) {
+		if (entries.size() > MAX_ZIP_ENTRIES) {
+			return true;
+		}
+		long size = 0;
+		for (PendingEntry entry : entries) {
+			if (entry.file != null) {
+				size += Math.max(0, getSize(entry.file));
+			}
+		}
+		return size > MAX_ZIP_SIZE;
+	}
+
+	/**
+	 * Writes the entries without Zip64 extensions, compressing them
+	 * concurrently.
+	 * @throws Zip64RequiredException if the archive is too large to be
+	 * written without Zip64 extensions
+	 */
+	private void writeZip(List<PendingEntry> entries, File zipFile, File previousArchive, IProgressMonitor monitor)
+			throws IOException, CoreException {
+		if (previousArchive != null) {
+			setReusableEntries(entries, previousArchive);
+		}
+
+		ZipWriter writer = new ZipWriter(zipFile);
+		ExecutorService executor = threads > 1 ? getExecutor() : null;
+		LinkedList<PendingEntry> pending = new LinkedList<PendingEntry>();
+		boolean written = false;
+		try {
+			int maxPending = threads * ENTRIES_AHEAD_PER_THREAD;
+			long pendingBytes = 0;
+			for (PendingEntry entry : entries) {
+				checkCanceled(monitor);
+				long bufferedSize = entry.getBufferedSize();
+				if (bufferedSize < 0) {
+					// Written directly to the archive once the entries before
+					// it are written
+					while (!pending.isEmpty()) {
+						writer.write(getResult(pending.removeFirst().result));
+					}
+					pendingBytes = 0;
+					writer.write(entry, level, policy);
+					continue;
+				}
+				while (!pending.isEmpty()
+						&& (pending.size() >= maxPending || pendingBytes + bufferedSize > MAX_PENDING_BYTES)) {
+					PendingEntry first = pending.removeFirst();
+					pendingBytes -= first.getBufferedSize();
+					writer.write(getResult(first.result));
+				}
+				entry.result = compress(entry, executor);
+				pending.addLast(entry);
+				pendingBytes += bufferedSize;
+			}
+			while (!pending.isEmpty()) {
+				checkCanceled(monitor);
+				writer.write(getResult(pending.removeFirst().result));
+			}
+			writer.finish();
+			written = true;
+		}
+		finally {
+			// Entries compressed ahead of a failure are no longer needed
+			for (PendingEntry entry : pending) {
+				entry.result.cancel(true);
+			}
+			writer.close();
+			if (!written) {
+				zipFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Writes the entries with {@link ZipOutputStream}, which adds Zip64
+	 * extensions where needed. Entries are compressed on the calling thread.
+	 * Content that the policy stores is written without compression, but as
+	 * deflated entries, as the sizes and CRC of stored entries must be known
+	 * before their data is written.
+	 */
+	private void writeZip64(List<PendingEntry> entries, File zipFile, IProgressMonitor monitor) throws IOException,
+			CoreException {
+		ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile), BUFFER));
+		boolean written = false;
+		try {
+			byte[] buffer = new byte[BUFFER];
+			for (PendingEntry entry : entries) {
+				checkCanceled(monitor);
+				ZipEntry zipEntry = new ZipEntry(entry.name);
+				zipEntry.setTime(entry.time);
+				if (entry.file == null) {
+					out.putNextEntry(zipEntry);
+					out.closeEntry();
+					continue;
+				}
+				InputStream input = getContents(entry.file);
+				try {
+					int read = readFully(input, buffer);
+					boolean stored = policy.isStored(entry.name) || policy.isStored(buffer, read);
+					out.setLevel(stored ? Deflater.NO_COMPRESSION : level);
+					out.putNextEntry(zipEntry);
+					for (; read > 0; read = readFully(input, buffer)) {
+						out.write(buffer, 0, read);
+					}
+					out.closeEntry();
+				}
+				finally {
+					input.close();
+				}
+			}
+			out.finish();
+			written = true;
+		}
+		finally {
+			out.close();
+			if (!written) {
+				zipFile.delete();
+			}
+		}
+	}
+
+	private Future<CompressedEntry> compress(final PendingEntry entry, ExecutorService executor) {
+		Callable<CompressedEntry> task = new Callable<CompressedEntry>() {
+			public CompressedEntry call() throws Exception {
+				return entry.compress(level, policy);
+			}
+		};
+		if (executor != null && entry.file != null) {
+			return executor.submit(task);
+		}
+		// Folders and single-threaded writes are handled on the calling
+		// thread
+		FutureTask<CompressedEntry> future = new FutureTask<CompressedEntry>(task);
+		future.run();
+		return future;
+	}
+
+	private static CompressedEntry getResult(Future<CompressedEntry> future) throws IOException, CoreException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause != null ? cause.getMessage() : e.getMessage());
+		}
+	}
+
+	private static void checkCanceled(IProgressMonitor monitor) {
+		if (monitor != null && monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	private static void collectEntries(List<IModuleResource> resources, Set<IModuleResource> filterInFiles,
+			List<PendingEntry> entries, Set<String> names) throws ZipException {
+		if (resources == null) {
+			return;
+		}
+		for (IModuleResource resource : resources) {
+			String name = CloudUtil.getZipRelativeName(resource);
+			if (resource instanceof IModuleFolder) {
+				long timeStamp = 0;
+				IContainer folder = (IContainer) resource.getAdapter(IContainer.class);
+				if (folder != null) {
+					timeStamp = folder.getLocalTimeStamp();
+				}
+				addEntry(new PendingEntry(name, null, getTime(timeStamp)), entries, names);
+				collectEntries(Arrays.asList(((IModuleFolder) resource).members()), filterInFiles, entries, names);
+				continue;
+			}
+
+			IModuleFile moduleFile = (IModuleFile) resource;
+			if (filterInFiles != null && !filterInFiles.contains(moduleFile)) {
+				continue;
+			}
+			addEntry(new PendingEntry(name, moduleFile, getTime(getTimeStamp(moduleFile))), entries, names);
+		}
+	}
+
+	/**
+	 * @return local time stamp of the file, or 0 if not known
+	 */
+	static long getTimeStamp(IModuleFile moduleFile) {
+		IFile iFile = (IFile) moduleFile.getAdapter(IFile.class);
+		if (iFile != null) {
+			return iFile.getLocalTimeStamp();
+		}
+		File file = (File) moduleFile.getAdapter(File.class);
+		return file != null ? file.lastModified() : 0;
+	}
+
+	/**
+	 * @return size of the file in bytes, or -1 if not known
+	 */
+	static long getSize(IModuleFile moduleFile) {
+		File file = (File) moduleFile.getAdapter(File.class);
+		if (file == null) {
+			IFile iFile = (IFile) moduleFile.getAdapter(IFile.class);
+			IPath location = iFile != null ? iFile.getLocation() : null;
+			file = location != null ? location.toFile() : null;
+		}
+		return file != null && file.isFile() ? file.length() : -1;
+	}
+
+	/**
+	 * Marks the entries of files that are unchanged since the previous
+	 * archive was written, so that they are copied from it.
+	 */
+	private static void setReusableEntries(List<PendingEntry> entries, File previousArchive) {
+		Map<String, ReusableEntry> previousEntries;
+		try {
+			previousEntries = readEntries(previousArchive);
+		}
+		catch (IOException e) {
+			// Compress all entries again
+			return;
+		}
+
+		// Time stamps in zip entries only have a resolution of two seconds, so
+		// a file that changed shortly after the previous archive was written
+		// could keep the same zip time stamp. Only files that have not changed
+		// for some time before the archive was written are reused.
+		long reusableBefore = previousArchive.lastModified() - DOS_TIME_RESOLUTION;
+		for (PendingEntry entry : entries) {
+			if (entry.file == null || entry.time >= reusableBefore) {
+				continue;
+			}
+			ReusableEntry previous = previousEntries.get(entry.name);
+			if (previous != null && previous.dosTime == toDosTime(entry.time) && previous.size >= 0
+					&& previous.size == getSize(entry.file)) {
+				entry.reusable = previous;
+			}
+		}
+	}
+
+	/**
+	 * Reads the central directory of an archive without Zip64 extensions.
+	 * @return entries by name
+	 */
+	private static Map<String, ReusableEntry> readEntries(File archive) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(archive, "r");
+		try {
+			long length = file.length();
+			if (length < END_LENGTH) {
+				throw new ZipException("Not a zip archive: " + archive.getName());
+			}
+			// Archive comments are not supported, so the end record is last
+			byte[] end = new byte[END_LENGTH];
+			file.seek(length - END_LENGTH);
+			file.readFully(end);
+			if (readInt(end, 0) != END_SIGNATURE) {
+				throw new ZipException("End of central directory not found: " + archive.getName());
+			}
+			long directorySize = readInt(end, 12);
+			long directoryOffset = readInt(end, 16);
+			if (directoryOffset + directorySize > length - END_LENGTH) {
+				throw new ZipException("Invalid central directory: " + archive.getName());
+			}
+
+			byte[] directory = new byte[(int) directorySize];
+			file.seek(directoryOffset);
+			file.readFully(directory);
+
+			Map<String, ReusableEntry> entries = new HashMap<String, ReusableEntry>();
+			int offset = 0;
+			while (offset + CENTRAL_HEADER_LENGTH <= directory.length) {
+				if (readInt(directory, offset) != CENTRAL_HEADER_SIGNATURE) {
+					throw new ZipException("Invalid central directory: " + archive.getName());
+				}
+				ReusableEntry entry = new ReusableEntry();
+				entry.archive = archive;
+				entry.method = readShort(directory, offset + 10);
+				entry.dosTime = (int) readInt(directory, offset + 12);
+				entry.crc = readInt(directory, offset + 16);
+				entry.compressedSize = readInt(directory, offset + 20);
+				entry.size = readInt(directory, offset + 24);
+				int nameLength = readShort(directory, offset + 28);
+				int extraLength = readShort(directory, offset + 30);
+				int commentLength = readShort(directory, offset + 32);
+				entry.headerOffset = readInt(directory, offset + 42);
+				if (offset + CENTRAL_HEADER_LENGTH + nameLength > directory.length) {
+					throw new ZipException("Invalid central directory: " + archive.getName());
+				}
+				String name = new String(directory, offset + CENTRAL_HEADER_LENGTH, nameLength, "UTF-8");
+				if (entry.method == STORED || entry.method == DEFLATED) {
+					entries.put(name, entry);
+				}
+				offset += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+			}
+			return entries;
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	private static int readShort(byte[] data, int offset) {
+		return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+	}
+
+	private static long readInt(byte[] data, int offset) {
+		return (readShort(data, offset) | (long) readShort(data, offset + 2) << 16) & 0xFFFFFFFFL;
+	}
+
+	private static void addEntry(PendingEntry entry, List<PendingEntry> entries, Set<String> names)
+			throws ZipException {
+		if (!names.add(entry.name)) {
+			throw new ZipException("duplicate entry: " + entry.name);
+		}
+		entries.add(entry);
+	}
+
+	/**
+	 * @return the given time stamp, or 0 if it is not valid
+	 */
+	private static long getTime(long timeStamp) {
+		return timeStamp != IResource.NULL_STAMP && timeStamp > 0 ? timeStamp : 0;
+	}
+
+	/**
+	 * Converts a Java time to the MS-DOS date and time format used in zip
+	 * archives, in the local time zone, like {@link java.util.zip.ZipEntry}.
+	 */
+	static int toDosTime(long time) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+				| calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+				| calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+	}
+
+	private static InputStream getContents(IModuleFile moduleFile) throws IOException, CoreException {
+		IFile iFile = (IFile) moduleFile.getAdapter(IFile.class);
+		if (iFile != null) {
+			return iFile.getContents();
+		}
+		File file = (File) moduleFile.getAdapter(File.class);
+		if (file == null) {
+			throw new IOException("No contents found for " + moduleFile.getName());
+		}
+		return new FileInputStream(file);
+	}
+
+	/**
+	 * Reads into the buffer until it is full or the end of the stream is
+	 * reached, so that data is always compressed in the same chunks.
+	 */
+	private static int readFully(InputStream input, byte[] buffer) throws IOException {
+		int total = 0;
+		while (total < buffer.length) {
+			int read = input.read(buffer, total, buffer.length - total);
+			if (read < 0) {
+				break;
+			}
+			total += read;
+		}
+		return total;
+	}
+
+	private static class PendingEntry {
+
+		final String name;
+
+		final IModuleFile file;
+
+		long time;
+
+		/**
+		 * Entry in the previous archive that can be copied, or null
+		 */
+		ReusableEntry reusable;
+
+		/**
+		 * Entry compressed ahead of being written, or null
+		 */
+		Future<CompressedEntry> result;
+
+		PendingEntry(String name, IModuleFile file, long time) {
+			this.name = name;
+			this.file = file;
+			this.time = time;
+		}
+
+		/**
+		 * @return bytes held in memory for the entry from when it is
+		 * compressed until it is written, or -1 if the entry is too large to
+		 * be held in memory and is written directly to the archive
+		 */
+		long getBufferedSize() {
+			if (file == null) {
+				return 0;
+			}
+			long size = reusable != null ? reusable.compressedSize : getSize(file);
+			return size >= 0 && size <= MAX_BUFFERED_ENTRY_SIZE ? size : -1;
+		}
+
+		CompressedEntry compress(int level, ArchiveCompressionPolicy policy) throws IOException, CoreException {
+			if (file == null) {
+				return new CompressedEntry(name, time, STORED, 0, 0, 0, null);
+			}
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			if (reusable != null) {
+				reusable.copyTo(data, name);
+				return reusable.toEntry(name, time, data);
+			}
+			CompressedEntry entry = writeData(data, level, policy);
+			if (entry.method == DEFLATED && entry.compressedSize >= entry.size) {
+				// Content that did not look compressed, but is
+				data.reset();
+				entry = writeStored(data);
+			}
+			return new CompressedEntry(entry, data);
+		}
+
+		/**
+		 * Writes the content of the file to the given output, deflated unless
+		 * the policy stores it.
+		 * @return entry of the written content, without data
+		 */
+		CompressedEntry writeData(OutputStream out, int level, ArchiveCompressionPolicy policy) throws IOException,
+				CoreException {
+			if (policy.isStored(name)) {
+				return writeStored(out);
+			}
+
+			CRC32 crc = new CRC32();
+			Deflater deflater = new Deflater(level, true);
+			long size = 0;
+			long compressedSize = 0;
+			InputStream input = getContents(file);
+			try {
+				byte[] buffer = new byte[BUFFER];
+				byte[] output = new byte[BUFFER];
+				int read = readFully(input, buffer);
+				if (policy.isStored(buffer, read)) {
+					return store(input, buffer, read, out);
+				}
+				for (; read > 0; read = readFully(input, buffer)) {
+					crc.update(buffer, 0, read);
+					size += read;
+					deflater.setInput(buffer, 0, read);
+					while (!deflater.needsInput()) {
+						int length = deflater.deflate(output, 0, output.length);
+						out.write(output, 0, length);
+						compressedSize += length;
+					}
+				}
+				deflater.finish();
+				while (!deflater.finished()) {
+					int length = deflater.deflate(output, 0, output.length);
+					out.write(output, 0, length);
+					compressedSize += length;
+				}
+			}
+			finally {
+				deflater.end();
+				input.close();
+			}
+			return new CompressedEntry(name, time, DEFLATED, crc.getValue(), size, compressedSize, null);
+		}
+
+		/**
+		 * Writes the content of the file to the given output without
+		 * compressing it.
+		 * @return entry of the written content, without data
+		 */
+		CompressedEntry writeStored(OutputStream out) throws IOException, CoreException {
+			InputStream input = getContents(file);
+			try {
+				byte[] buffer = new byte[BUFFER];
+				return store(input, buffer, readFully(input, buffer), out);
+			}
+			finally {
+				input.close();
+			}
+		}
+
+		/**
+		 * Writes the rest of the content without compressing it, after the
+		 * given bytes that were already read.
+		 */
+		private CompressedEntry store(InputStream input, byte[] buffer, int read, OutputStream out)
+				throws IOException {
+			CRC32 crc = new CRC32();
+			long size = 0;
+			for (; read > 0; read = readFully(input, buffer)) {
+				crc.update(buffer, 0, read);
+				out.write(buffer, 0, read);
+				size += read;
+			}
+			return new CompressedEntry(name, time, STORED, crc.getValue(), size, size, null);
+		}
+	}
+
+	/**
+	 * Entry of a previous archive, whose compressed data can be copied to
+	 * the new archive.
+	 */
+	private static class ReusableEntry {
+
+		File archive;
+
+		int method;
+
+		int dosTime;
+
+		long crc;
+
+		long compressedSize;
+
+		long size;
+
+		long headerOffset;
+
+		CompressedEntry toEntry(String name, long time, ByteArrayOutputStream data) {
+			return new CompressedEntry(name, time, method, crc, size, compressedSize, data);
+		}
+
+		/**
+		 * Copies the compressed data of the entry to the given output.
+		 */
+		void copyTo(OutputStream out, String name) throws IOException {
+			RandomAccessFile file = new RandomAccessFile(archive, "r");
+			try {
+				byte[] header = new byte[LOCAL_HEADER_LENGTH];
+				file.seek(headerOffset);
+				file.readFully(header);
+				if (readInt(header, 0) != LOCAL_HEADER_SIGNATURE) {
+					throw new ZipException("Invalid local header for " + name + " in " + archive.getName());
+				}
+				file.seek(headerOffset + LOCAL_HEADER_LENGTH + readShort(header, 26) + readShort(header, 28));
+
+				byte[] buffer = new byte[BUFFER];
+				long remaining = compressedSize;
+				while (remaining > 0) {
+					int read = file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+					if (read < 0) {
+						throw new ZipException("Truncated entry " + name + " in " + archive.getName());
+					}
+					out.write(buffer, 0, read);
+					remaining -= read;
+				}
+			}
+			finally {
+				file.close();
+			}
+		}
+	}
+
+	private static class CompressedEntry {
+
+		final byte[] name;
+
+		final int dosTime;
+
+		final int method;
+
+		final long crc;
+
+		final long size;
+
+		final long compressedSize;
+
+		/**
+		 * Compressed data, or null if the entry has no data or its data is
+		 * written directly to the archive
+		 */
+		final ByteArrayOutputStream data;
+
+		CompressedEntry(String name, long time, int method, long crc, long size, long compressedSize,
+				ByteArrayOutputStream data) {
+			try {
+				this.name = name.getBytes("UTF-8");
+			}
+			catch (UnsupportedEncodingException e) {
+				// UTF-8 is always supported
+				throw new IllegalStateException(e);
+			}
+			this.dosTime = toDosTime(time);
+			this.method = method;
+			this.crc = crc;
+			this.size = size;
+			this.compressedSize = compressedSize;
+			this.data = data;
+		}
+
+		CompressedEntry(CompressedEntry entry, ByteArrayOutputStream data) {
+			this.name = entry.name;
+			this.dosTime = entry.dosTime;
+			this.method = entry.method;
+			this.crc = entry.crc;
+			this.size = entry.size;
+			this.compressedSize = entry.compressedSize;
+			this.data = data;
+		}
+
+		int getVersionNeeded() {
+			return method == DEFLATED ? 20 : 10;
+		}
+	}
+
+	/**
+	 * Writes entries that are already compressed, followed by the central
+	 * directory.
+	 */
+	private static class ZipWriter {
+
+		private final FileOutputStream fileOut;
+
+		private final OutputStream out;
+
+		private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+		private long offset;
+
+		private int entries;
+
+		ZipWriter(File zipFile) throws IOException {
+			this.fileOut = new FileOutputStream(zipFile);
+			this.out = new BufferedOutputStream(fileOut, BUFFER);
+		}
+
+		void write(CompressedEntry entry) throws IOException {
+			checkSize(entry);
+			long headerOffset = offset;
+			writeLocalHeader(out, entry);
+			if (entry.data != null) {
+				entry.data.writeTo(out);
+			}
+			addEntry(entry, headerOffset);
+		}
+
+		/**
+		 * Compresses or copies the entry directly to the archive, rather than
+		 * writing it from memory.
+		 */
+		void write(PendingEntry pending, int level, ArchiveCompressionPolicy policy) throws IOException,
+				CoreException {
+			long headerOffset = offset;
+			if (pending.reusable != null) {
+				CompressedEntry entry = pending.reusable.toEntry(pending.name, pending.time, null);
+				checkSize(entry);
+				writeLocalHeader(out, entry);
+				pending.reusable.copyTo(out, pending.name);
+				addEntry(entry, headerOffset);
+				return;
+			}
+
+			// The CRC and sizes are only known once the data is written, so
+			// the local header is written again afterwards
+			CompressedEntry entry = new CompressedEntry(pending.name, pending.time, STORED, 0, 0, 0, null);
+			writeLocalHeader(out, entry);
+			long dataOffset = headerOffset + LOCAL_HEADER_LENGTH + entry.name.length;
+			FileChannel channel = fileOut.getChannel();
+			entry = pending.writeData(out, level, policy);
+			out.flush();
+			if (entry.method == DEFLATED && entry.compressedSize >= entry.size) {
+				// Content that did not look compressed, but is
+				channel.truncate(dataOffset);
+				entry = pending.writeStored(out);
+				out.flush();
+			}
+			checkSize(entry);
+
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			writeLocalHeader(header, entry);
+			ByteBuffer buffer = ByteBuffer.wrap(header.toByteArray());
+			long position = headerOffset;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			addEntry(entry, headerOffset);
+		}
+
+		void finish() throws IOException {
+			long centralDirectoryOffset = offset;
+			centralDirectory.writeTo(out);
+			writeInt(out, END_SIGNATURE);
+			writeShort(out, 0);
+			writeShort(out, 0);
+			writeShort(out, entries);
+			writeShort(out, entries);
+			writeInt(out, centralDirectory.size());
+			writeInt(out, centralDirectoryOffset);
+			writeShort(out, 0);
+			out.flush();
+		}
+
+		void close() throws IOException {
+			out.close();
+		}
+
+		private static void checkSize(CompressedEntry entry) throws IOException {
+			if (entry.size > MAX_ZIP_SIZE || entry.compressedSize > MAX_ZIP_SIZE) {
+				throw new Zip64RequiredException("Entry too large for a zip archive without Zip64 extensions: "
+						+ new String(entry.name, "UTF-8"));
+			}
+		}
+
+		private static void writeLocalHeader(OutputStream out, CompressedEntry entry) throws IOException {
+			writeInt(out, LOCAL_HEADER_SIGNATURE);
+			writeShort(out, entry.getVersionNeeded());
+			writeShort(out, UTF8_FLAG);
+			writeShort(out, entry.method);
+			writeInt(out, entry.dosTime);
+			writeInt(out, entry.crc);
+			writeInt(out, entry.compressedSize);
+			writeInt(out, entry.size);
+			writeShort(out, entry.name.length);
+			writeShort(out, 0);
+			out.write(entry.name);
+		}
+
+		/**
+		 * Adds the entry, whose local header and data were written at the
+		 * given offset, to the central directory.
+		 */
+		private void addEntry(CompressedEntry entry, long headerOffset) throws IOException {
+			offset = headerOffset + LOCAL_HEADER_LENGTH + entry.name.length + entry.compressedSize;
+			if (offset > MAX_ZIP_SIZE || entries >= MAX_ZIP_ENTRIES) {
+				throw new Zip64RequiredException("Archive too large for a zip archive without Zip64 extensions");
+			}
+
+			writeInt(centralDirectory, CENTRAL_HEADER_SIGNATURE);
+			writeShort(centralDirectory, 20);
+			writeShort(centralDirectory, entry.getVersionNeeded());
+			writeShort(centralDirectory, UTF8_FLAG);
+			writeShort(centralDirectory, entry.method);
+			writeInt(centralDirectory, entry.dosTime);
+			writeInt(centralDirectory, entry.crc);
+			writeInt(centralDirectory, entry.compressedSize);
+			writeInt(centralDirectory, entry.size);
+			writeShort(centralDirectory, entry.name.length);
+			// Extra field, comment, disk number, internal and external
+			// attributes
+			writeShort(centralDirectory, 0);
+			writeShort(centralDirectory, 0);
+			writeShort(centralDirectory, 0);
+			writeShort(centralDirectory, 0);
+			writeInt(centralDirectory, 0);
+			writeInt(centralDirectory, headerOffset);
+			centralDirectory.write(entry.name);
+			entries++;
+		}
+
+		private static void writeShort(OutputStream out, int value) throws IOException {
+			out.write(value & 0xFF);
+			out.write((value >>> 8) & 0xFF);
+		}
+
+		private static void writeInt(OutputStream out, long value) throws IOException {
+			out.write((int) (value & 0xFF));
+			out.write((int) ((value >>> 8) & 0xFF));
+			out.write((int) ((value >>> 16) & 0xFF));
+			out.write((int) ((value >>> 24) & 0xFF));
+		}
+	}
+
+	/**
+	 * Thrown when an archive turns out to need Zip64 extensions while it is
+	 * written.
+	 */
+	private static class Zip64RequiredException extends ZipException {
+
+		private static final long serialVersionUID = 1L;
+
+		Zip64RequiredException(String message) {
+			super(message);
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Cloud Foundry archive compression " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
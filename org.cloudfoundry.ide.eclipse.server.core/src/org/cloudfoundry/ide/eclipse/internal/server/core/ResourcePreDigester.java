@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.cloudfoundry.ide.eclipse.internal.server.core.DeployedResourceCache.CachedDeployedApplication;
+import org.cloudfoundry.ide.eclipse.internal.server.core.DeployedResourceCache.DeployedResourceEntry;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.wst.server.core.IModule;
+import org.eclipse.wst.server.core.internal.Server;
+import org.eclipse.wst.server.core.model.IModuleFile;
+import org.eclipse.wst.server.core.model.IModuleFolder;
+import org.eclipse.wst.server.core.model.IModuleResource;
+
+/**
+ * Computes the sha1 digests of files of deployed applications in the
+ * background as the files are saved or built, and adds them to the
+ * {@link DeployedResourceCache}, so that the next incremental publish finds
+ * them already computed.
+ * <p/>
+ * Changed files are queued and digested by a low priority job, after a short
+ * delay so that repeated saves of the same file are digested once. Only files
+ * of projects that are deployed to a connected Cloud Foundry server are
+ * digested. The queue is bounded: files changed while it is full are left to
+ * be digested when the application is published.
+ * <p/>
+ * Digests computed in the background are only used by a publish if the file
+ * has not changed since, judging by its size and modification time. Digests
+ * are also added to the {@link FileDigestStore}, so that a file shared by
+ * several applications is only digested once.
+ */
+@SuppressWarnings("restriction")
+public class ResourcePreDigester implements IResourceChangeListener {
+
+	/**
+	 * Maximum number of changed files waiting to be digested.
+	 */
+	public static final int MAX_QUEUED_FILES = 10000;
+
+	/**
+	 * Time in milliseconds to wait for further changes before digesting
+	 * changed files.
+	 */
+	public static final long DELAY = 1000;
+
+	private static final int BUFFER = 65536;
+
+	private final DeployedResourceCache cache;
+
+	private final FileDigestStore digestStore;
+
+	private final Set<IFile> queue = new HashSet<IFile>();
+
+	private final DigestJob job = new DigestJob();
+
+	private int digested;
+
+	private int dropped;
+
+	public ResourcePreDigester(DeployedResourceCache cache, FileDigestStore digestStore) {
+		this.cache = cache;
+		this.digestStore = digestStore;
+	}
+
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta == null || !hasConnectedServer()) {
+			return;
+		}
+
+		final List<IFile> changed = new ArrayList<IFile>();
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta delta) throws CoreException {
+					IResource resource = delta.getResource();
+					if (resource.getType() == IResource.FILE) {
+						boolean contentChanged = delta.getKind() == IResourceDelta.CHANGED
+								&& (delta.getFlags() & IResourceDelta.CONTENT) != 0;
+						if (delta.getKind() == IResourceDelta.ADDED || contentChanged) {
+							changed.add((IFile) resource);
+						}
+						return false;
+					}
+					return !resource.isTeamPrivateMember();
+				}
+			});
+		}
+		catch (CoreException e) {
+			CloudFoundryPlugin.log(e);
+			return;
+		}
+		queue(changed);
+	}
+
+	/**
+	 * Adds files to the queue of files to digest, and schedules the digest
+	 * job.
+	 */
+	public void queue(List<IFile> files) {
+		if (files.isEmpty()) {
+			return;
+		}
+		synchronized (queue) {
+			for (IFile file : files) {
+				if (queue.size() >= MAX_QUEUED_FILES) {
+					dropped++;
+				}
+				else {
+					queue.add(file);
+				}
+			}
+		}
+		job.schedule(DELAY);
+	}
+
+	/**
+	 * Cancels pending digests. Must be invoked once the digester is no longer
+	 * registered as a listener.
+	 */
+	public void dispose() {
+		job.cancel();
+		synchronized (queue) {
+			queue.clear();
+		}
+	}
+
+	/**
+	 * @return number of files digested in the background
+	 */
+	public int getDigestedCount() {
+		synchronized (queue) {
+			return digested;
+		}
+	}
+
+	/**
+	 * @return number of changed files that were not queued because the queue
+	 * was full
+	 */
+	public int getDroppedCount() {
+		synchronized (queue) {
+			return dropped;
+		}
+	}
+
+	protected boolean hasConnectedServer() {
+		for (CloudFoundryServer cloudServer : CloudServerUtil.getCloudServers()) {
+			if (cloudServer.isConnected()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Digests the queued files that belong to applications deployed to
+	 * connected servers.
+	 */
+	protected void digestQueuedFiles(IProgressMonitor monitor) {
+		Set<IFile> files;
+		synchronized (queue) {
+			files = new HashSet<IFile>(queue);
+			queue.clear();
+		}
+		Set<IProject> projects = new HashSet<IProject>();
+		for (IFile file : files) {
+			projects.add(file.getProject());
+		}
+
+		for (CloudFoundryServer cloudServer : CloudServerUtil.getCloudServers()) {
+			if (!cloudServer.isConnected()) {
+				continue;
+			}
+			Server server = (Server) cloudServer.getServer();
+			for (CloudFoundryApplicationModule appModule : cloudServer.getExistingCloudModules()) {
+				if (monitor.isCanceled()) {
+					return;
+				}
+				IModule module = appModule.getLocalModule();
+				String appName = appModule.getDeployedApplicationName();
+				if (appModule.getApplication() == null || appName == null || module == null
+						|| !projects.contains(module.getProject())) {
+					continue;
+				}
+				CachedDeployedApplication appID = new CachedDeployedApplication(appName, cloudServer.getServerId());
+				digest(appID, server.getResources(new IModule[] { module }), files, monitor);
+			}
+		}
+	}
+
+	private void digest(CachedDeployedApplication appID, IModuleResource[] resources, Set<IFile> files,
+			IProgressMonitor monitor) {
+		for (IModuleResource resource : resources) {
+			if (monitor.isCanceled()) {
+				return;
+			}
+			if (resource instanceof IModuleFolder) {
+				digest(appID, ((IModuleFolder) resource).members(), files, monitor);
+			}
+			else if (resource instanceof IModuleFile) {
+				IFile iFile = (IFile) resource.getAdapter(IFile.class);
+				if (iFile == null || !files.contains(iFile)) {
+					continue;
+				}
+				IPath location = iFile.getLocation();
+				if (location == null) {
+					continue;
+				}
+				File file = location.toFile();
+				String name = CloudUtil.getZipRelativeName(resource);
+				DeployedResourceEntry entry = cache.getEntry(appID, name);
+				if (entry != null && entry.isCurrent(file)) {
+					continue;
+				}
+				try {
+					// Time stamp taken before reading, so that a change while
+					// reading makes the digest out of date
+					long timeStamp = file.lastModified();
+					long size = file.length();
+					byte[] sha1 = digestStore.getSha1(file);
+					if (sha1 == null) {
+						sha1 = getSha1(file);
+						digestStore.add(file, size, timeStamp, sha1);
+						synchronized (queue) {
+							digested++;
+						}
+					}
+					cache.add(appID, new DeployedResourceEntry(sha1, size, name, timeStamp));
+				}
+				catch (IOException e) {
+					// The file is digested again when it is published
+				}
+			}
+		}
+	}
+
+	static byte[] getSha1(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e) {
+			// SHA-1 is always available
+			throw new IllegalStateException(e);
+		}
+		InputStream input = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[BUFFER];
+			int read;
+			while ((read = input.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally {
+			input.close();
+		}
+		return digest.digest();
+	}
+
+	private class DigestJob extends Job {
+
+		public DigestJob() {
+			super("Computing digests of changed Cloud Foundry application files");
+			setSystem(true);
+			setPriority(DECORATE);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			digestQueuedFiles(monitor);
+			return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+	}
+}
@@ -1,7 +1,16 @@
 package org.cloudfoundry.ide.eclipse.internal.server.core;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*******************************************************************************
  * Copyright (c) 2013 GoPivotal, Inc.
@@ -17,13 +26,47 @@ import java.util.concurrent.CopyOnWriteArrayList;
 /**
  * Fires server refresh events. Only one handler is active per workbench runtime
  * session.
- * 
+ * <p/>
+ * Events are delivered asynchronously on a dedicated dispatch thread, so that
+ * the thread firing an event, typically a background refresh, is not blocked
+ * by listeners. Listeners must therefore return quickly, and perform requests
+ * to the server or UI updates asynchronously, as a slow listener delays the
+ * delivery of all events.
+ * <p/>
+ * The first event of a type for a server is delivered right away, and opens a
+ * short coalescing window. Events of the same type for the same server that
+ * are fired within the window are delivered once, with the most recent event,
+ * when the window ends. If too many windows are open because listeners are
+ * slow, further events are deferred until a window closes, and deferred events
+ * of the same type for the same server are merged as well. No event is
+ * dropped.
+ * <p/>
+ * Events are therefore not always delivered in the order they were fired. An
+ * event merged into a pending event is delivered when the window of its type
+ * and server ends, which may be before or after events of other types fired
+ * in between. Listeners must not rely on the relative order of events of
+ * different types.
+ *
  */
 public class ServerEventHandler {
 
+	/**
+	 * Time in milliseconds after the delivery of an event during which further
+	 * events of the same type for the same server are coalesced into one
+	 * event.
+	 */
+	public static final long COALESCING_WINDOW = 200;
+
+	/**
+	 * Maximum number of open coalescing windows, i.e. of distinct types and
+	 * servers for which events are being delivered. Events of further types
+	 * and servers are deferred until a window closes.
+	 */
+	public static final int MAX_PENDING_EVENTS = 256;
+
 	private static ServerEventHandler handler;
 
-	public static ServerEventHandler getDefault() {
+	public static synchronized ServerEventHandler getDefault() {
 		if (handler == null) {
 			handler = new ServerEventHandler();
 		}
@@ -32,6 +75,29 @@ public class ServerEventHandler {
 
 	private final List<CloudServerListener> applicationListeners = new CopyOnWriteArrayList<CloudServerListener>();
 
+	/**
+	 * Open coalescing windows, keyed by server and event type, with the event
+	 * to deliver when the window ends, if any. Also guards the deferred events
+	 * and the creation and disposal of the dispatcher.
+	 */
+	private final Map<EventKey, CloudServerEvent> pendingEvents = new HashMap<EventKey, CloudServerEvent>();
+
+	/**
+	 * Events fired while too many windows were open, in the order they were
+	 * first fired.
+	 */
+	private final Map<EventKey, CloudServerEvent> deferredEvents = new LinkedHashMap<EventKey, CloudServerEvent>();
+
+	private ScheduledExecutorService dispatcher;
+
+	private final AtomicLong firedCount = new AtomicLong();
+
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	private final AtomicLong deferredCount = new AtomicLong();
+
+	private final AtomicLong dispatchedCount = new AtomicLong();
+
 	public void addServerListener(CloudServerListener listener) {
 		applicationListeners.add(listener);
 	}
@@ -56,10 +122,200 @@ public class ServerEventHandler {
 		fireServerEvent(new CloudServerEvent(server, CloudServerEvent.EVENT_SERVER_REFRESHED));
 	}
 
+	/**
+	 *
+	 * @return number of events fired since the handler was created.
+	 */
+	public long getFiredCount() {
+		return firedCount.get();
+	}
+
+	/**
+	 *
+	 * @return number of fired events that were merged into an event already
+	 * pending delivery.
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 *
+	 * @return number of fired events that were deferred because too many
+	 * coalescing windows were open, excluding events merged into an event
+	 * that was already deferred.
+	 */
+	public long getDeferredCount() {
+		return deferredCount.get();
+	}
+
+	/**
+	 *
+	 * @return number of events delivered to listeners.
+	 */
+	public long getDispatchedCount() {
+		return dispatchedCount.get();
+	}
+
+	/**
+	 * Stops the dispatch thread. Pending events are discarded.
+	 */
+	public void dispose() {
+		synchronized (pendingEvents) {
+			pendingEvents.clear();
+			deferredEvents.clear();
+			if (dispatcher != null) {
+				dispatcher.shutdownNow();
+				dispatcher = null;
+			}
+		}
+	}
+
 	private void fireServerEvent(CloudServerEvent event) {
+		firedCount.incrementAndGet();
+		EventKey key = new EventKey(event);
+
+		synchronized (pendingEvents) {
+			if (pendingEvents.containsKey(key)) {
+				// Deliver the most recent event when the window ends
+				if (pendingEvents.put(key, event) != null) {
+					coalescedCount.incrementAndGet();
+				}
+			}
+			else if (deferredEvents.containsKey(key)) {
+				deferredEvents.put(key, event);
+				coalescedCount.incrementAndGet();
+			}
+			else if (pendingEvents.size() >= MAX_PENDING_EVENTS) {
+				deferredEvents.put(key, event);
+				deferredCount.incrementAndGet();
+			}
+			else {
+				openWindow(key, event);
+			}
+		}
+	}
+
+	/**
+	 * Delivers an event right away and opens its coalescing window. Must be
+	 * invoked while holding the pending events lock.
+	 */
+	private void openWindow(EventKey key, CloudServerEvent event) {
+		pendingEvents.put(key, null);
+		ScheduledExecutorService executor = getDispatcher();
+		executor.execute(new DispatchTask(event));
+		executor.schedule(new WindowTask(key), COALESCING_WINDOW, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Must be invoked while holding the pending events lock.
+	 */
+	private ScheduledExecutorService getDispatcher() {
+		if (dispatcher == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Cloud Foundry server event dispatcher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			dispatcher = executor;
+		}
+		return dispatcher;
+	}
+
+	protected void dispatch(CloudServerEvent event) {
+		dispatchedCount.incrementAndGet();
 		CloudServerListener[] listeners = applicationListeners.toArray(new CloudServerListener[0]);
 		for (CloudServerListener listener : listeners) {
-			listener.serverChanged(event);
+			try {
+				listener.serverChanged(event);
+			}
+			catch (RuntimeException e) {
+				// Do not let a failing listener prevent delivery to the others
+				CloudFoundryPlugin.logError(e);
+			}
+		}
+	}
+
+	private class DispatchTask implements Runnable {
+
+		private final CloudServerEvent event;
+
+		public DispatchTask(CloudServerEvent event) {
+			this.event = event;
+		}
+
+		public void run() {
+			dispatch(event);
+		}
+	}
+
+	/**
+	 * Ends a coalescing window. Delivers the event fired within the window,
+	 * if any, which opens a new window, or otherwise closes the window and
+	 * opens the window of the oldest deferred event.
+	 */
+	private class WindowTask implements Runnable {
+
+		private final EventKey key;
+
+		public WindowTask(EventKey key) {
+			this.key = key;
+		}
+
+		public void run() {
+			CloudServerEvent event;
+			synchronized (pendingEvents) {
+				if (!pendingEvents.containsKey(key) || dispatcher == null) {
+					// Disposed
+					return;
+				}
+				event = pendingEvents.remove(key);
+				if (event != null) {
+					openWindow(key, event);
+				}
+				else if (!deferredEvents.isEmpty()) {
+					Iterator<Map.Entry<EventKey, CloudServerEvent>> iterator = deferredEvents.entrySet().iterator();
+					Map.Entry<EventKey, CloudServerEvent> deferred = iterator.next();
+					iterator.remove();
+					openWindow(deferred.getKey(), deferred.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Identifies events that can be coalesced: events of the same type for
+	 * the same server.
+	 */
+	private static class EventKey {
+
+		private final Object server;
+
+		private final int type;
+
+		public EventKey(CloudServerEvent event) {
+			// Different working copies of the same server share the server ID
+			String serverId = event.getServer().getServerId();
+			this.server = serverId != null ? serverId : event.getServer();
+			this.type = event.getType();
+		}
+
+		public int hashCode() {
+			return 31 * server.hashCode() + type;
+		}
+
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof EventKey)) {
+				return false;
+			}
+			EventKey other = (EventKey) obj;
+			return type == other.type && server.equals(other.server);
 		}
 	}
 }
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.wst.server.core.model.IModuleResource;
+
+/**
+ * Keeps the war files built for full publishes of applications, so that an
+ * application whose module did not change since its war was last built, e.g.
+ * when it is deployed again after a service binding change, is pushed
+ * without building its war again.
+ * <p/>
+ * Each war is identified by a fingerprint of the names, sizes and time stamps
+ * of the module's resources, which is computed without reading the files.
+ * Wars are written deterministically, so the same resources always produce
+ * the same war. When a module changes, the new war is written copying the
+ * entries of unchanged files from the previous war of the module, and the
+ * previous war is deleted.
+ * <p/>
+ * Wars are kept separately for each server, so that building the war of a
+ * module again for one server does not delete a war that is still uploaded,
+ * or uploaded again after a failure, to another server.
+ * <p/>
+ * The total size of the cached wars is bounded. When the bound is exceeded,
+ * the least recently used wars of other modules are deleted.
+ * <p/>
+ * Wars of different modules are built concurrently. Only requests for the
+ * war of the same module on the same server wait for each other.
+ */
+public class WarFileCache {
+
+	/**
+	 * Default maximum total size in bytes of the cached wars.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+	private static final String WAR_EXTENSION = ".war";
+
+	private static final String TEMP_EXTENSION = ".tmp";
+
+	private static WarFileCache cache;
+
+	private final File root;
+
+	private final long maxSize;
+
+	private final AtomicInteger reused = new AtomicInteger();
+
+	private final AtomicInteger written = new AtomicInteger();
+
+	/**
+	 * Locks by cache folder, held while the war of a module is looked up or
+	 * built.
+	 */
+	private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * Guards the deletion of wars by {@link #evict(File)} and the
+	 * {@link #building} folders.
+	 */
+	private final Object evictionLock = new Object();
+
+	/**
+	 * Names of the folders in which a war is being built, which are skipped
+	 * when evicting wars, as their previous war is still read.
+	 */
+	private final Set<String> building = new HashSet<String>();
+
+	/**
+	 * @param root folder in which wars are kept. Created if it does not
+	 * exist.
+	 */
+	public WarFileCache(File root) {
+		this(root, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param root folder in which wars are kept. Created if it does not
+	 * exist.
+	 * @param maxSize maximum total size in bytes of the cached wars. The most
+	 * recently used war is kept even if it is larger.
+	 */
+	public WarFileCache(File root, long maxSize) {
+		this.root = root;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return cache in the plug-in state location, or in the temporary
+	 * folder if the plug-in is not running
+	 */
+	public static synchronized WarFileCache getDefault() {
+		if (cache == null) {
+			File root;
+			CloudFoundryPlugin plugin = CloudFoundryPlugin.getDefault();
+			if (plugin != null) {
+				root = plugin.getStateLocation().append("warFiles").toFile();
+			}
+			else {
+				root = new File(System.getProperty("java.io.tmpdir"), "cloudfoundryWarFiles");
+			}
+			cache = new WarFileCache(root);
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns the war for the given module resources, building it if the
+	 * resources changed since the war was last built. The returned file must
+	 * not be modified or deleted by the caller.
+	 * @param serverId identifies the server the war is published to
+	 * @param moduleId identifies the module, e.g. the module id
+	 * @param resources resources of the module, including the jars of its
+	 * child modules
+	 * @param monitor may be null
+	 * @return war with the given resources
+	 * @throws CoreException if the war could not be written
+	 */
+	public File getWar(String serverId, String moduleId, List<IModuleResource> resources, IProgressMonitor monitor)
+			throws CoreException {
+		String key = ModuleJarCache.toHex(ModuleJarCache.digest(serverId, moduleId));
+		File folder = new File(root, key);
+		String fingerprint = ModuleJarCache.toHex(ModuleJarCache.getDigest(resources));
+		File war = new File(folder, fingerprint + WAR_EXTENSION);
+		synchronized (getLock(key)) {
+			synchronized (evictionLock) {
+				if (war.isFile()) {
+					reused.incrementAndGet();
+					// Marks the war as recently used
+					war.setLastModified(System.currentTimeMillis());
+					return war;
+				}
+				if (!folder.isDirectory() && !folder.mkdirs()) {
+					throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID, NLS.bind(
+							"Failed to create folder {0}", folder.getAbsolutePath())));
+				}
+				building.add(key);
+			}
+			try {
+				build(folder, war, fingerprint, resources, monitor);
+			}
+			finally {
+				synchronized (evictionLock) {
+					building.remove(key);
+				}
+			}
+		}
+		evict(war);
+		return war;
+	}
+
+	private Object getLock(String key) {
+		Object lock = locks.get(key);
+		if (lock == null) {
+			lock = new Object();
+			Object existing = locks.putIfAbsent(key, lock);
+			if (existing != null) {
+				lock = existing;
+			}
+		}
+		return lock;
+	}
+
+	private void build(File folder, File war, String fingerprint, List<IModuleResource> resources,
+			IProgressMonitor monitor) throws CoreException {
+		File previous = null;
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().endsWith(WAR_EXTENSION)) {
+					previous = file;
+				}
+			}
+		}
+
+		File temp = new File(folder, fingerprint + TEMP_EXTENSION);
+		try {
+			write(resources, temp, previous, monitor);
+		}
+		catch (IOException e) {
+			temp.delete();
+			throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID, NLS.bind(
+					"Failed to create war file: {0}", e.getMessage()), e));
+		}
+		if (!temp.renameTo(war)) {
+			temp.delete();
+			throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID, NLS.bind(
+					"Failed to create war file: {0} could not be renamed", temp.getAbsolutePath())));
+		}
+		written.incrementAndGet();
+
+		// Only the latest war of each module is kept
+		files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (!file.equals(war)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the war with the given resources. Entries are compressed in
+	 * parallel, as deflating large applications on a single thread is the
+	 * bulk of the publish time.
+	 * @param resources resources of the module
+	 * @param war file to write
+	 * @param previous previous war of the module whose unchanged entries are
+	 * copied, or null
+	 * @param monitor may be null
+	 */
+	protected void write(List<IModuleResource> resources, File war, File previous, IProgressMonitor monitor)
+			throws IOException, CoreException {
+		new ParallelWarWriter().write(resources, war, null, previous, monitor);
+	}
+
+	/**
+	 * Deletes the least recently used wars until the total size of the
+	 * cached wars is within the bound.
+	 * Wars of modules whose war is being built are kept, as they are still
+	 * read.
+	 * @param current war that is kept regardless of its size
+	 */
+	private void evict(File current) {
+		synchronized (evictionLock) {
+			evictWars(current);
+		}
+	}
+
+	private void evictWars(File current) {
+		List<File> wars = new ArrayList<File>();
+		long size = 0;
+		File[] folders = root.listFiles();
+		if (folders == null) {
+			return;
+		}
+		for (File folder : folders) {
+			if (building.contains(folder.getName())) {
+				continue;
+			}
+			File[] files = folder.listFiles();
+			if (files == null) {
+				continue;
+			}
+			for (File file : files) {
+				if (file.getName().endsWith(WAR_EXTENSION)) {
+					wars.add(file);
+					size += file.length();
+				}
+			}
+		}
+		if (size <= maxSize) {
+			return;
+		}
+
+		Collections.sort(wars, new Comparator<File>() {
+			public int compare(File file1, File file2) {
+				long time1 = file1.lastModified();
+				long time2 = file2.lastModified();
+				return time1 < time2 ? -1 : (time1 == time2 ? 0 : 1);
+			}
+		});
+		for (File war : wars) {
+			if (size <= maxSize) {
+				break;
+			}
+			if (war.equals(current)) {
+				continue;
+			}
+			long length = war.length();
+			if (war.delete()) {
+				size -= length;
+				war.getParentFile().delete();
+			}
+		}
+	}
+
+	/**
+	 * @return number of wars reused since the cache was created
+	 */
+	public int getReusedCount() {
+		return reused.get();
+	}
+
+	/**
+	 * @return number of wars written since the cache was created
+	 */
+	public int getWrittenCount() {
+		return written.get();
+	}
+}
@@ -24,16 +24,23 @@ import org.eclipse.core.runtime.IProgressMonitor;
  * A check is also performed on the progress monitor, if it is cancelled before
  * the maximum number of attempts is reached, the operation is cancelled,
  * regardless of whether a valid result was obtained or not.
+ * <p/>
+ * The number of attempts and the waiting period between them are determined
+ * by a {@link RetryPolicy}.
  */
 public abstract class AbstractWaitWithProgressJob<T> {
 
-	private final int attempts;
-
-	private final long sleepTime;
+	private final RetryPolicy retryPolicy;
 
+	/**
+	 * Waits a fixed time between attempts.
+	 */
 	public AbstractWaitWithProgressJob(int attempts, long sleepTime) {
-		this.attempts = attempts;
-		this.sleepTime = sleepTime;
+		this(RetryPolicy.fixed(attempts, sleepTime));
+	}
+
+	public AbstractWaitWithProgressJob(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
 	}
 
 	/**
@@ -66,9 +73,10 @@ public abstract class AbstractWaitWithProgressJob<T> {
 		Throwable lastError = null;
 
 		T result = null;
-		int i = 0;
-		while (i < attempts && !monitor.isCanceled()) {
+		RetryPolicy.Execution execution = retryPolicy.newExecution();
+		while (!monitor.isCanceled()) {
 			boolean reattempt = false;
+			Throwable error = null;
 			// Two conditions which results in a reattempt:
 			// 1. Result is not valid
 			// 2. Exception is thrown and an exception handler decides that a
@@ -80,21 +88,17 @@ public abstract class AbstractWaitWithProgressJob<T> {
 			}
 			catch (Throwable th) {
 				lastError = th;
+				error = th;
 				reattempt = shouldRetryOnError(lastError);
 			}
 
-			if (reattempt) {
-				try {
-					Thread.sleep(sleepTime);
-				}
-				catch (InterruptedException e) {
-					// Ignore and proceed
-				}
+			if (!reattempt) {
+				break;
 			}
-			else {
+			long delay = execution.getRetryDelay(error);
+			if (delay < 0 || !execution.await(delay, monitor)) {
 				break;
 			}
-			i++;
 		}
 
 		// Only throw exception if an error was generated and an invalid result
@@ -10,8 +10,10 @@
  *******************************************************************************/
 package org.cloudfoundry.ide.eclipse.internal.server.core.client;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
 
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.cloudfoundry.client.lib.domain.CloudService;
@@ -32,6 +34,13 @@ import org.cloudfoundry.ide.eclipse.internal.server.core.application.Environment
  * <p/>
  * However, values specific to the Eclipse plug-in should not be persisted in an
  * app's manifest file.
+ * <p/>
+ * Copies share their lists (URIs, services and environment variables) with
+ * the info they were copied from until either list is modified, at which
+ * point the modified list copies its elements. Copying an info therefore does
+ * not copy its lists, although modifying the lists of a copy never affects
+ * the original, and vice versa. A list passed to a setter is owned by the info
+ * once the info has been copied.
  */
 public class ApplicationDeploymentInfo {
 
@@ -199,26 +208,14 @@ public class ApplicationDeploymentInfo {
 		setInstances(info.getInstances());
 		setArchive(info.getArchive());
 
-		if (info.getServices() != null) {
-			setServices(new ArrayList<CloudService>(info.getServices()));
-		}
-		else {
-			setServices(null);
-		}
+		info.services = toShared(info.services);
+		setServices(share(info.services));
 
-		if (info.getUris() != null) {
-			setUris(new ArrayList<String>(info.getUris()));
-		}
-		else {
-			setUris(null);
-		}
+		info.uris = toShared(info.uris);
+		setUris(share(info.uris));
 
-		if (info.getEnvVariables() != null) {
-			setEnvVariables(new ArrayList<EnvironmentVariable>(info.getEnvVariables()));
-		}
-		else {
-			setEnvVariables(null);
-		}
+		info.envVars = toShared(info.envVars);
+		setEnvVariables(share(info.envVars));
 	}
 
 	/**
@@ -237,18 +234,103 @@ public class ApplicationDeploymentInfo {
 		info.setInstances(getInstances());
 		info.setArchive(getArchive());
 
-		if (getServices() != null) {
-			info.setServices(new ArrayList<CloudService>(getServices()));
+		services = toShared(services);
+		info.setServices(share(services));
+
+		uris = toShared(uris);
+		info.setUris(share(uris));
+
+		envVars = toShared(envVars);
+		info.setEnvVariables(share(envVars));
+
+		return info;
+	}
+
+	/**
+	 * @return the given list if it is null or already shareable, or a
+	 * shareable list with its elements
+	 */
+	private static <E> List<E> toShared(List<E> list) {
+		return list == null || list instanceof SharedList ? list : new SharedList<E>(list);
+	}
+
+	/**
+	 * @param list null or a list returned by {@link #toShared(List)}
+	 * @return a list sharing the elements of the given list
+	 */
+	private static <E> List<E> share(List<E> list) {
+		return list != null ? ((SharedList<E>) list).share() : null;
+	}
+
+	/**
+	 * List that shares its elements with the lists copied from it until
+	 * either is modified.
+	 */
+	private static class SharedList<E> extends AbstractList<E> implements RandomAccess {
+
+		private Elements<E> elements;
+
+		SharedList(List<E> values) {
+			this.elements = new Elements<E>(new ArrayList<E>(values));
 		}
 
-		if (getUris() != null) {
-			info.setUris(new ArrayList<String>(getUris()));
+		private SharedList(Elements<E> elements) {
+			this.elements = elements;
 		}
 
-		if (getEnvVariables() != null) {
-			info.setEnvVariables(new ArrayList<EnvironmentVariable>(getEnvVariables()));
+		SharedList<E> share() {
+			elements.shared = true;
+			return new SharedList<E>(elements);
 		}
 
-		return info;
+		@Override
+		public E get(int index) {
+			return elements.values.get(index);
+		}
+
+		@Override
+		public int size() {
+			return elements.values.size();
+		}
+
+		@Override
+		public E set(int index, E element) {
+			return getWritableValues().set(index, element);
+		}
+
+		@Override
+		public void add(int index, E element) {
+			getWritableValues().add(index, element);
+			modCount++;
+		}
+
+		@Override
+		public E remove(int index) {
+			E removed = getWritableValues().remove(index);
+			modCount++;
+			return removed;
+		}
+
+		private List<E> getWritableValues() {
+			if (elements.shared) {
+				elements = new Elements<E>(new ArrayList<E>(elements.values));
+			}
+			return elements.values;
+		}
+	}
+
+	private static class Elements<E> {
+
+		final List<E> values;
+
+		/**
+		 * True once other lists may read the values, which are then no longer
+		 * modified.
+		 */
+		volatile boolean shared;
+
+		Elements(List<E> values) {
+			this.values = values;
+		}
 	}
 }
@@ -0,0 +1,430 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.cloudfoundry.client.lib.domain.ApplicationStats;
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.InstancesInfo;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudErrorUtil;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Collects the cloud application, application stats and instances info of
+ * deployed applications. The three requests for an application are sent
+ * concurrently, and applications are collected concurrently as well, using a
+ * bounded pool of threads.
+ * <p/>
+ * Collected values are cached for a short time, so that the editor, debugger
+ * and other views refreshing the same application at about the same time share
+ * one set of requests. Requests for an application that is already being
+ * collected are not sent again; callers wait for the ongoing collection
+ * instead. Forced refreshes, e.g. after an application is started or stopped,
+ * only wait for collections that began after the refresh was requested.
+ */
+public class ApplicationStatsCollector {
+
+	/**
+	 * Time in milliseconds during which collected values are reused.
+	 */
+	public static final long CACHE_TTL = 2000;
+
+	/**
+	 * Maximum number of concurrent requests to the server.
+	 */
+	public static final int MAX_CONCURRENT_REQUESTS = 6;
+
+	private static final long CANCEL_CHECK_INTERVAL = 200;
+
+	private final CloudFoundryServerBehaviour behaviour;
+
+	private final ConcurrentMap<String, ApplicationInstanceStats> cache = new ConcurrentHashMap<String, ApplicationInstanceStats>();
+
+	private final ConcurrentMap<String, PendingCollection> inFlight = new ConcurrentHashMap<String, PendingCollection>();
+
+	private ThreadPoolExecutor executor;
+
+	public ApplicationStatsCollector(CloudFoundryServerBehaviour behaviour) {
+		this.behaviour = behaviour;
+	}
+
+	/**
+	 * Collects the values for the given application, or returns recently
+	 * collected values.
+	 * @param appName deployed name of the application
+	 * @param forceRefresh if true, cached values and collections started
+	 * before this call are not used, so that the returned values reflect any
+	 * change made before the call. Collections started after this call, e.g.
+	 * by another forced refresh, are still joined.
+	 * @param monitor
+	 * @return non-null collected values. Errors from individual requests are
+	 * available from the returned values.
+	 * @throws OperationCanceledException if the monitor is cancelled while
+	 * waiting
+	 */
+	public ApplicationInstanceStats collect(String appName, boolean forceRefresh, IProgressMonitor monitor) {
+		if (forceRefresh) {
+			invalidate(appName);
+		}
+		else {
+			ApplicationInstanceStats cached = getCached(appName);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		return startCollection(appName).await(monitor);
+	}
+
+	/**
+	 * Collects the values for all the given applications concurrently.
+	 * Recently collected values are reused.
+	 * @param appNames deployed names of the applications
+	 * @param monitor
+	 * @return non-null map of collected values, keyed by application name, in
+	 * the order of the given names.
+	 * @throws OperationCanceledException if the monitor is cancelled while
+	 * waiting
+	 */
+	public Map<String, ApplicationInstanceStats> collectAll(Collection<String> appNames, IProgressMonitor monitor) {
+		Map<String, ApplicationInstanceStats> collected = new LinkedHashMap<String, ApplicationInstanceStats>();
+		Map<String, PendingCollection> started = new LinkedHashMap<String, PendingCollection>();
+
+		// Start all collections first, so that requests for different
+		// applications run concurrently
+		for (String appName : appNames) {
+			ApplicationInstanceStats cached = getCached(appName);
+			if (cached != null) {
+				collected.put(appName, cached);
+			}
+			else {
+				started.put(appName, startCollection(appName));
+			}
+		}
+
+		for (Map.Entry<String, PendingCollection> entry : started.entrySet()) {
+			collected.put(entry.getKey(), entry.getValue().await(monitor));
+		}
+		return collected;
+	}
+
+	/**
+	 * Discards cached values for the given application, for example after
+	 * the application has been started or stopped. Collections that are
+	 * ongoing complete for the callers already waiting for them, but their
+	 * values are not cached, and later callers start a new collection.
+	 */
+	public void invalidate(String appName) {
+		if (appName != null) {
+			synchronized (cache) {
+				cache.remove(appName);
+				inFlight.remove(appName);
+			}
+		}
+	}
+
+	/**
+	 * Discards all cached values and stops the request threads.
+	 */
+	public synchronized void dispose() {
+		cache.clear();
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	protected ApplicationInstanceStats getCached(String appName) {
+		ApplicationInstanceStats cached = cache.get(appName);
+		if (cached != null && System.currentTimeMillis() - cached.getTimestamp() < getCacheTTL()) {
+			return cached;
+		}
+		return null;
+	}
+
+	/**
+	 * @return time in milliseconds during which collected values are reused
+	 */
+	protected long getCacheTTL() {
+		return CACHE_TTL;
+	}
+
+	protected CloudApplication requestApplication(String appName) throws CoreException {
+		return behaviour.getApplication(appName, null);
+	}
+
+	protected ApplicationStats requestApplicationStats(String appName) throws CoreException {
+		return behaviour.getApplicationStats(appName, null);
+	}
+
+	protected InstancesInfo requestInstancesInfo(String appName) throws CoreException {
+		return behaviour.getInstancesInfo(appName, null);
+	}
+
+	protected PendingCollection startCollection(final String appName) {
+		PendingCollection newCollection = new PendingCollection(appName);
+		PendingCollection collection = inFlight.putIfAbsent(appName, newCollection);
+		while (collection != null) {
+			if (!collection.isStale()) {
+				return collection;
+			}
+			// A collection that completed without any caller waiting for it,
+			// for example because the caller was cancelled
+			if (inFlight.replace(appName, collection, newCollection)) {
+				break;
+			}
+			collection = inFlight.putIfAbsent(appName, newCollection);
+		}
+
+		try {
+			ThreadPoolExecutor executor = getExecutor();
+			newCollection.application = executor.submit(new Callable<CloudApplication>() {
+				public CloudApplication call() throws Exception {
+					return requestApplication(appName);
+				}
+			});
+			newCollection.stats = executor.submit(new Callable<ApplicationStats>() {
+				public ApplicationStats call() throws Exception {
+					return requestApplicationStats(appName);
+				}
+			});
+			newCollection.instances = executor.submit(new Callable<InstancesInfo>() {
+				public InstancesInfo call() throws Exception {
+					return requestInstancesInfo(appName);
+				}
+			});
+		}
+		finally {
+			// Release waiting callers even if requests could not be submitted
+			newCollection.started();
+		}
+		return newCollection;
+	}
+
+	protected synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(MAX_CONCURRENT_REQUESTS, MAX_CONCURRENT_REQUESTS, 30, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "Cloud Foundry application stats");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	/**
+	 * Ongoing collection of values for one application.
+	 */
+	protected class PendingCollection {
+
+		private final String appName;
+
+		private Future<CloudApplication> application;
+
+		private Future<ApplicationStats> stats;
+
+		private Future<InstancesInfo> instances;
+
+		private boolean started;
+
+		private ApplicationInstanceStats result;
+
+		private final long created = System.currentTimeMillis();
+
+		PendingCollection(String appName) {
+			this.appName = appName;
+		}
+
+		synchronized boolean isStale() {
+			return started && System.currentTimeMillis() - created > getCacheTTL() && isDone(application)
+					&& isDone(stats) && isDone(instances);
+		}
+
+		private boolean isDone(Future<?> future) {
+			return future == null || future.isDone();
+		}
+
+		synchronized void started() {
+			started = true;
+			notifyAll();
+		}
+
+		ApplicationInstanceStats await(IProgressMonitor monitor) {
+			synchronized (this) {
+				while (!started) {
+					checkCanceled(monitor);
+					try {
+						wait(CANCEL_CHECK_INTERVAL);
+					}
+					catch (InterruptedException e) {
+						throw new OperationCanceledException();
+					}
+				}
+				if (result != null) {
+					return result;
+				}
+			}
+
+			CoreException[] errors = new CoreException[3];
+			CloudApplication app = (CloudApplication) get(application, 0, errors, monitor);
+			ApplicationStats appStats = (ApplicationStats) get(stats, 1, errors, monitor);
+			InstancesInfo info = (InstancesInfo) get(instances, 2, errors, monitor);
+
+			synchronized (this) {
+				if (result == null) {
+					result = new ApplicationInstanceStats(appName, app, appStats, info, errors[0], errors[1],
+							errors[2]);
+					// Values of a collection that was invalidated, or replaced
+					// by a forced refresh, are not cached
+					synchronized (cache) {
+						if (inFlight.remove(appName, this)) {
+							cache.put(appName, result);
+						}
+					}
+				}
+				return result;
+			}
+		}
+
+		private Object get(Future<?> future, int index, CoreException[] errors, IProgressMonitor monitor) {
+			if (future == null) {
+				errors[index] = CloudErrorUtil.toCoreException("Unable to send request for " + appName);
+				return null;
+			}
+			while (true) {
+				checkCanceled(monitor);
+				try {
+					return future.get(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+				catch (TimeoutException e) {
+					// Check for cancellation and wait again
+				}
+				catch (InterruptedException e) {
+					throw new OperationCanceledException();
+				}
+				catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					errors[index] = cause instanceof CoreException ? (CoreException) cause : CloudErrorUtil
+							.toCoreException(cause);
+					return null;
+				}
+				catch (CancellationException e) {
+					errors[index] = CloudErrorUtil.toCoreException("Request cancelled for " + appName);
+					return null;
+				}
+			}
+		}
+
+		private void checkCanceled(IProgressMonitor monitor) {
+			if (monitor != null && monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+		}
+	}
+
+	/**
+	 * Values collected for one application at a given time.
+	 */
+	public static class ApplicationInstanceStats {
+
+		private final String appName;
+
+		private final CloudApplication application;
+
+		private final ApplicationStats stats;
+
+		private final InstancesInfo instancesInfo;
+
+		private final CoreException applicationError;
+
+		private final CoreException statsError;
+
+		private final CoreException instancesError;
+
+		private final long timestamp;
+
+		public ApplicationInstanceStats(String appName, CloudApplication application, ApplicationStats stats,
+				InstancesInfo instancesInfo, CoreException applicationError, CoreException statsError,
+				CoreException instancesError) {
+			this.appName = appName;
+			this.application = application;
+			this.stats = stats;
+			this.instancesInfo = instancesInfo;
+			this.applicationError = applicationError;
+			this.statsError = statsError;
+			this.instancesError = instancesError;
+			this.timestamp = System.currentTimeMillis();
+		}
+
+		public String getAppName() {
+			return appName;
+		}
+
+		/**
+		 *
+		 * @return cloud application, or null if it could not be retrieved, for
+		 * example if the application is not deployed.
+		 */
+		public CloudApplication getApplication() {
+			return application;
+		}
+
+		public ApplicationStats getStats() {
+			return stats;
+		}
+
+		public InstancesInfo getInstancesInfo() {
+			return instancesInfo;
+		}
+
+		public CoreException getApplicationError() {
+			return applicationError;
+		}
+
+		/**
+		 *
+		 * @return the first error that occurred while retrieving the
+		 * application stats or instances info, or null if both were retrieved.
+		 */
+		public CoreException getStatsError() {
+			return statsError != null ? statsError : instancesError;
+		}
+
+		/**
+		 *
+		 * @return time when the values were collected, in milliseconds since
+		 * the epoch.
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.zip.ZipException;
+
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryPlugin;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RetryPolicy.RetryCondition;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Uploads an application archive that has already been prepared, retrying
+ * transient failures (e.g. dropped connections or gateway errors) with
+ * backoff. Retries send the whole archive again, but it is not generated or
+ * hashed again.
+ * <p/>
+ * Subclasses implement {@link #upload(IProgressMonitor)} for a specific
+ * target.
+ */
+public abstract class ArchiveUpload {
+
+	/**
+	 * Base interval in milliseconds before the first retry.
+	 */
+	public static final long DEFAULT_RETRY_INTERVAL = 2000;
+
+	/**
+	 * Maximum interval in milliseconds between retries.
+	 */
+	public static final long DEFAULT_MAX_RETRY_INTERVAL = 30000;
+
+	/**
+	 * Maximum number of attempts, including the first.
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+	/**
+	 * Accepts errors that may not occur again if the upload is retried.
+	 */
+	public static final RetryCondition TRANSIENT_ERRORS = new RetryCondition() {
+		public boolean shouldRetry(Throwable error) {
+			return isTransient(error);
+		}
+	};
+
+	private final RetryPolicy retryPolicy;
+
+	private int attempts;
+
+	/**
+	 * Uses the default retry policy.
+	 */
+	protected ArchiveUpload() {
+		this(getDefaultRetryPolicy());
+	}
+
+	/**
+	 * @param retryPolicy determines the backoff and number of attempts. Only
+	 * transient errors are retried, whatever the policy's condition.
+	 */
+	protected ArchiveUpload(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	public static RetryPolicy getDefaultRetryPolicy() {
+		return new RetryPolicy(DEFAULT_RETRY_INTERVAL, DEFAULT_MAX_RETRY_INTERVAL, RetryPolicy.DEFAULT_MULTIPLIER,
+				RetryPolicy.DEFAULT_JITTER, DEFAULT_MAX_ATTEMPTS, ClientRequestOperation.DEPLOYMENT_TIMEOUT,
+				TRANSIENT_ERRORS);
+	}
+
+	/**
+	 * Uploads the archive, retrying transient failures.
+	 * @param monitor may be null
+	 * @throws IOException if the last attempt failed with an I/O error
+	 * @throws OperationCanceledException if the monitor was cancelled while
+	 * waiting to retry
+	 */
+	public void run(IProgressMonitor monitor) throws IOException {
+		attempts = 0;
+		RetryPolicy.Execution execution = retryPolicy.newExecution();
+		while (true) {
+			attempts++;
+			try {
+				upload(monitor);
+				return;
+			}
+			catch (IOException e) {
+				if (!awaitRetry(e, execution, monitor)) {
+					throw e;
+				}
+			}
+			catch (RuntimeException e) {
+				if (!awaitRetry(e, execution, monitor)) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits before the next attempt.
+	 * @return false if the upload should not be attempted again
+	 */
+	private boolean awaitRetry(Throwable error, RetryPolicy.Execution execution, IProgressMonitor monitor) {
+		if (!isTransient(error)) {
+			return false;
+		}
+		long delay = execution.getRetryDelay(error);
+		if (delay < 0) {
+			return false;
+		}
+		CloudFoundryPlugin.trace("Upload attempt " + attempts + " failed, retrying in " + delay + " ms: "
+				+ error.getMessage());
+		if (!execution.await(delay, monitor)) {
+			throw new OperationCanceledException();
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @return number of attempts made by the last run
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Sends the whole archive.
+	 * @param monitor may be null
+	 * @throws IOException if the upload failed
+	 */
+	protected abstract void upload(IProgressMonitor monitor) throws IOException;
+
+	/**
+	 * @return true if the error, or one of its causes, is an I/O error other
+	 * than a missing or invalid local file, or a gateway or availability
+	 * error reported by the server
+	 */
+	public static boolean isTransient(Throwable error) {
+		for (Throwable current = error; current != null; current = current.getCause()) {
+			if (current instanceof FileNotFoundException || current instanceof ZipException) {
+				return false;
+			}
+			if (current instanceof IOException || current instanceof ResourceAccessException) {
+				return true;
+			}
+			if (current instanceof HttpStatusCodeException) {
+				HttpStatus status = ((HttpStatusCodeException) current).getStatusCode();
+				return status == HttpStatus.REQUEST_TIMEOUT || status == HttpStatus.BAD_GATEWAY
+						|| status == HttpStatus.SERVICE_UNAVAILABLE || status == HttpStatus.GATEWAY_TIMEOUT;
+			}
+			if (current.getCause() == current) {
+				break;
+			}
+		}
+		return false;
+	}
+}
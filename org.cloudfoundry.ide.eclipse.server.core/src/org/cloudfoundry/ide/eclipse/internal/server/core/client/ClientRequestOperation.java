@@ -20,6 +20,11 @@ import org.eclipse.core.runtime.SubMonitor;
  * Performs a CF client call, and times out if the call fails due to errors, as
  * well as proxy checks prior to sending the request. Also handles any errors
  * thrown when calling the client.
+ * <p/>
+ * Errors for which {@link #getWaitInterval(Throwable, SubMonitor)} returns an
+ * interval are retried according to a {@link RetryPolicy}: the interval grows
+ * exponentially with each retry and is jittered, and no retry is started
+ * after the request timeout or once the progress monitor is cancelled.
  */
 public abstract class ClientRequestOperation<T> {
 
@@ -46,11 +51,21 @@ public abstract class ClientRequestOperation<T> {
 
 	private final CloudFoundryOperations client;
 
-	private long timeLeft;
+	private final RetryPolicy retryPolicy;
 
 	public ClientRequestOperation(CloudFoundryOperations client, long requestTimeOut) {
-		this.timeLeft = requestTimeOut;
+		this(client, getDefaultRetryPolicy(requestTimeOut));
+	}
+
+	/**
+	 * @param client
+	 * @param retryPolicy determines the backoff and deadline of retries. The
+	 * intervals returned by {@link #getWaitInterval(Throwable, SubMonitor)}
+	 * are used as base intervals.
+	 */
+	public ClientRequestOperation(CloudFoundryOperations client, RetryPolicy retryPolicy) {
 		this.client = client;
+		this.retryPolicy = retryPolicy;
 	}
 
 	/**
@@ -60,8 +75,17 @@ public abstract class ClientRequestOperation<T> {
 	 * @param client
 	 */
 	public ClientRequestOperation(CloudFoundryOperations client) {
-		this.timeLeft = 0;
-		this.client = client;
+		this(client, RetryPolicy.fixed(1, 0));
+	}
+
+	/**
+	 * @param requestTimeOut time in milliseconds after which no further
+	 * attempts are made. If 0 or less, the request is only attempted once.
+	 * @return retry policy used by client request operations by default
+	 */
+	public static RetryPolicy getDefaultRetryPolicy(long requestTimeOut) {
+		return requestTimeOut > 0 ? RetryPolicy.exponential(ONE_SECOND_INTERVAL, MEDIUM_INTERVAL, requestTimeOut)
+				: RetryPolicy.fixed(1, 0);
 	}
 
 	abstract protected T doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException;
@@ -69,11 +93,9 @@ public abstract class ClientRequestOperation<T> {
 	public T run(SubMonitor progress) throws CoreException {
 
 		Throwable error = null;
+		RetryPolicy.Execution execution = retryPolicy.newExecution();
 
-		boolean reattempt = true;
-		while (reattempt) {
-
-			long interval = -1;
+		while (true) {
 
 			try {
 				return doRun(client, progress);
@@ -82,21 +104,14 @@ public abstract class ClientRequestOperation<T> {
 				error = e;
 			}
 
-			interval = getWaitInterval(error, progress);
-			timeLeft -= interval;
-
-			if (interval > 0 && timeLeft >= 0) {
-
-				try {
-					Thread.sleep(interval);
-				}
-				catch (InterruptedException e) {
-					// Ignore, continue with the next iteration
-				}
-
-				reattempt = true;
+			long interval = getWaitInterval(error, progress);
+			if (interval <= 0) {
+				break;
 			}
-			else {
+
+			// If the wait is cancelled, fail with the last error
+			long delay = execution.getRetryDelay(error, interval);
+			if (delay < 0 || !execution.await(delay, progress)) {
 				break;
 			}
 		}
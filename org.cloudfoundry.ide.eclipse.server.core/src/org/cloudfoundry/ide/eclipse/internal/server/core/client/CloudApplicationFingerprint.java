@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.Staging;
+
+/**
+ * Snapshot of the {@link CloudApplication} properties that are used to resolve
+ * an {@link ApplicationDeploymentInfo}. Two fingerprints are equal if the
+ * deployment information resolved from their respective cloud applications
+ * would be the same, which allows the application module to skip resolving and
+ * merging the deployment information again when a refresh returns an unchanged
+ * application.
+ * <p/>
+ * Runtime properties that are not part of the deployment information, like
+ * the application state or the number of running instances, are not part of
+ * the fingerprint.
+ */
+public class CloudApplicationFingerprint {
+
+	private final String name;
+
+	private final int memory;
+
+	private final int instances;
+
+	private final String buildpackUrl;
+
+	private final String command;
+
+	private final List<String> uris;
+
+	private final List<String> services;
+
+	private final List<String> env;
+
+	private final Date updated;
+
+	private final int hashCode;
+
+	public CloudApplicationFingerprint(CloudApplication application) {
+		this.name = application.getName();
+		this.memory = application.getMemory();
+		this.instances = application.getInstances();
+
+		Staging staging = application.getStaging();
+		this.buildpackUrl = staging != null ? staging.getBuildpackUrl() : null;
+		this.command = staging != null ? staging.getCommand() : null;
+
+		this.uris = copy(application.getUris());
+		this.services = copy(application.getServices());
+		this.env = copy(application.getEnv());
+		this.updated = application.getMeta() != null ? application.getMeta().getUpdated() : null;
+
+		this.hashCode = computeHashCode();
+	}
+
+	protected static List<String> copy(List<String> values) {
+		return values != null ? new ArrayList<String>(values) : null;
+	}
+
+	protected int computeHashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((name == null) ? 0 : name.hashCode());
+		result = prime * result + memory;
+		result = prime * result + instances;
+		result = prime * result + ((buildpackUrl == null) ? 0 : buildpackUrl.hashCode());
+		result = prime * result + ((command == null) ? 0 : command.hashCode());
+		result = prime * result + ((uris == null) ? 0 : uris.hashCode());
+		result = prime * result + ((services == null) ? 0 : services.hashCode());
+		result = prime * result + ((env == null) ? 0 : env.hashCode());
+		result = prime * result + ((updated == null) ? 0 : updated.hashCode());
+		return result;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CloudApplicationFingerprint)) {
+			return false;
+		}
+		CloudApplicationFingerprint other = (CloudApplicationFingerprint) obj;
+		return hashCode == other.hashCode && memory == other.memory && instances == other.instances
+				&& equal(name, other.name) && equal(buildpackUrl, other.buildpackUrl)
+				&& equal(command, other.command) && equal(uris, other.uris) && equal(services, other.services)
+				&& equal(env, other.env) && equal(updated, other.updated);
+	}
+
+	private static boolean equal(Object first, Object second) {
+		return first == null ? second == null : first.equals(second);
+	}
+
+}
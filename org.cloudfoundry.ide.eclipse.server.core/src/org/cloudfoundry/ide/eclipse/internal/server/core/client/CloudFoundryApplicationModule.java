@@ -130,6 +130,13 @@ public class CloudFoundryApplicationModule extends ExternalModule {
 
 	private ApplicationDeploymentInfo deploymentInfo;
 
+	/**
+	 * Fingerprint of the cloud application from which the current deployment
+	 * info was resolved. Null if the deployment info was not resolved from a
+	 * cloud application, or was modified afterward.
+	 */
+	private CloudApplicationFingerprint applicationFingerprint;
+
 	private StartingInfo startingInfo;
 
 	private IModule localModule;
@@ -236,7 +243,9 @@ public class CloudFoundryApplicationModule extends ExternalModule {
 	 * Changes to the copy will have no effect. To make changes to the
 	 * deployment information, request a working copy, and save it. See
 	 * {@link #getDeploymentInfoWorkingCopy()}
-	 * 
+	 * <p/>
+	 * The copy shares its lists with the module's deployment info until
+	 * either is modified, so requesting it does not copy the lists.
 	 * <p/>
 	 * If null, it means that the application is not currently deployed in the
 	 * server, or the plugin has not yet determined if the application is
@@ -360,6 +369,15 @@ public class CloudFoundryApplicationModule extends ExternalModule {
 		this.application = cloudApplication;
 
 		if (application != null) {
+
+			// Skip resolving the deployment info again if the cloud
+			// application properties from which it is resolved have not
+			// changed since the last time it was set.
+			CloudApplicationFingerprint fingerprint = new CloudApplicationFingerprint(application);
+			if (deploymentInfo != null && fingerprint.equals(applicationFingerprint)) {
+				return;
+			}
+
 			// Update the deployment info so that it reflects the actual
 			// deployed
 			// application. Note that Eclipse-specific properties are retained
@@ -371,7 +389,9 @@ public class CloudFoundryApplicationModule extends ExternalModule {
 			ApplicationDeploymentInfo cloudApplicationInfo = resolveDeployedApplicationInformation();
 			if (cloudApplicationInfo != null) {
 
-				ApplicationDeploymentInfo currentInfo = getDeploymentInfo();
+				// The current info is only read, so there is no need to copy
+				// it.
+				ApplicationDeploymentInfo currentInfo = deploymentInfo;
 
 				if (currentInfo != null) {
 					// Merge the two, where current Eclipse-specific info
@@ -383,9 +403,13 @@ public class CloudFoundryApplicationModule extends ExternalModule {
 				}
 
 				internalSetDeploymentInfo(cloudApplicationInfo);
+				applicationFingerprint = fingerprint;
 			}
 
 		}
+		else {
+			applicationFingerprint = null;
+		}
 
 	}
 
@@ -401,6 +425,9 @@ public class CloudFoundryApplicationModule extends ExternalModule {
 	 */
 	private void internalSetDeploymentInfo(ApplicationDeploymentInfo deploymentInfo) {
 		this.deploymentInfo = deploymentInfo;
+		// Any new deployment info invalidates the fingerprint of the cloud
+		// application it may have been resolved from
+		this.applicationFingerprint = null;
 		// Note that last Deployment info may be null (e.g. when deleting an
 		// application). Only update the appliation ID if setting a new last
 		// deployment info, since
@@ -12,6 +12,9 @@ package org.cloudfoundry.ide.eclipse.internal.server.core.client;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.cloudfoundry.client.lib.CloudCredentials;
 import org.cloudfoundry.client.lib.CloudFoundryClient;
@@ -20,6 +23,8 @@ import org.cloudfoundry.client.lib.HttpProxyConfiguration;
 import org.cloudfoundry.client.lib.domain.CloudSpace;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryPlugin;
 import org.cloudfoundry.ide.eclipse.internal.uaa.UaaAwareCloudFoundryClient;
+import org.eclipse.core.net.proxy.IProxyChangeEvent;
+import org.eclipse.core.net.proxy.IProxyChangeListener;
 import org.eclipse.core.net.proxy.IProxyData;
 import org.eclipse.core.net.proxy.IProxyService;
 import org.springframework.ide.eclipse.uaa.UaaPlugin;
@@ -31,6 +36,9 @@ import org.springframework.ide.eclipse.uaa.UaaPlugin;
  * or getting a list of organisations and spaces. Request wrappers do various
  * operations prior to invoking client API, including automatic client login and
  * proxy setting handling.
+ * <p/>
+ * All clients created by the factory share the connections of the
+ * {@link PooledHttpTransport}.
  * 
  * @see org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryServerBehaviour.Request
  * 
@@ -40,6 +48,27 @@ public class CloudFoundryClientFactory {
 
 	private static CloudFoundryClientFactory sessionFactory = null;
 
+	/**
+	 * Proxies resolved from the proxy service, keyed by URL. Cleared whenever
+	 * the proxy service reports a change in proxy settings.
+	 */
+	private static final ConcurrentMap<String, ResolvedProxy> resolvedProxies = new ConcurrentHashMap<String, ResolvedProxy>();
+
+	/**
+	 * Incremented on each change in proxy settings, so that proxies resolved
+	 * while settings change are not cached.
+	 */
+	private static final AtomicLong proxyChanges = new AtomicLong();
+
+	private static IProxyService listenedProxyService;
+
+	private static final IProxyChangeListener proxyChangeListener = new IProxyChangeListener() {
+		public void proxyInfoChanged(IProxyChangeEvent event) {
+			proxyChanges.incrementAndGet();
+			resolvedProxies.clear();
+		}
+	};
+
 	public static CloudFoundryClientFactory getDefault() {
 		if (sessionFactory == null) {
 			sessionFactory = new CloudFoundryClientFactory();
@@ -68,11 +97,23 @@ public class CloudFoundryClientFactory {
 			// client
 			// creation
 			HttpProxyConfiguration proxyConfiguration = getProxy(url);
-			return session != null ? new CloudFoundryClient(credentials, url, session) : new CloudFoundryClient(
-					credentials, url, proxyConfiguration);
+			return usePooledTransport(session != null ? new CloudFoundryClient(credentials, url, session)
+					: new CloudFoundryClient(credentials, url, proxyConfiguration), proxyConfiguration);
 		}
 	}
 
+	/**
+	 * Makes the given client use the shared pooled HTTP transport.
+	 * @param client
+	 * @param proxyConfiguration proxy the client should use, may be null
+	 * @return the given client
+	 */
+	protected static CloudFoundryOperations usePooledTransport(CloudFoundryOperations client,
+			HttpProxyConfiguration proxyConfiguration) {
+		PooledHttpTransport.getDefault().install(client, proxyConfiguration);
+		return client;
+	}
+
 	/**
 	 * For testing purposes only.
 	 * @param userName
@@ -93,7 +134,7 @@ public class CloudFoundryClientFactory {
 		// therefore it is not critical to set the proxy in the client on client
 		// creation
 		HttpProxyConfiguration proxyConfiguration = getProxy(url);
-		return new CloudFoundryClient(url, proxyConfiguration);
+		return usePooledTransport(new CloudFoundryClient(url, proxyConfiguration), proxyConfiguration);
 	}
 
 	protected static CloudCredentials getCredentials(String userName, String password) {
@@ -117,9 +158,9 @@ public class CloudFoundryClientFactory {
 				// If proxy is not updated now, it will still be updated on each
 				// client request, so setting the proxy right now is not
 				// critical
-				return session != null ? new UaaAwareCloudFoundryClient(UaaPlugin.getUaaService(), credentials, url,
-						session) : new UaaAwareCloudFoundryClient(UaaPlugin.getUaaService(), credentials, url,
-						proxyConfiguration);
+				return usePooledTransport(session != null ? new UaaAwareCloudFoundryClient(UaaPlugin.getUaaService(),
+						credentials, url, session) : new UaaAwareCloudFoundryClient(UaaPlugin.getUaaService(),
+						credentials, url, proxyConfiguration), proxyConfiguration);
 			}
 			catch (MalformedURLException e) {
 				CloudFoundryPlugin.logError("Failed to obtain Cloud Foundry operations for " + url.toString(), e);
@@ -132,6 +173,25 @@ public class CloudFoundryClientFactory {
 		return protocol.toUpperCase();
 	}
 
+	/**
+	 * Returns the proxy to use for the given URL. Proxies are resolved once
+	 * per URL, and resolved again only after the proxy settings change.
+	 * @param url
+	 * @return proxy for the given URL, or null if no proxy should be used
+	 * @throws MalformedURLException if the URL is invalid and the proxy has
+	 * not been resolved yet
+	 */
+	public static HttpProxyConfiguration getProxy(String url) throws MalformedURLException {
+		if (url == null) {
+			return null;
+		}
+		ResolvedProxy resolved = resolvedProxies.get(url);
+		if (resolved != null) {
+			return resolved.getConfiguration();
+		}
+		return getProxy(new URL(url), url);
+	}
+
 	public static HttpProxyConfiguration getProxy(URL url) {
 
 		// URL must be set and have a valid protocol in order to determine
@@ -139,48 +199,112 @@ public class CloudFoundryClientFactory {
 		if (url == null || url.getProtocol() == null) {
 			return null;
 		}
+
+		String key = url.toString();
+		ResolvedProxy resolved = resolvedProxies.get(key);
+		if (resolved != null) {
+			return resolved.getConfiguration();
+		}
+		return getProxy(url, key);
+	}
+
+	/**
+	 * Returns the proxy to use for the given URL as resolved by the given
+	 * proxy service, instead of the proxy service of the plugin. Proxies are
+	 * cached as by {@link #getProxy(URL)}. For testing purposes only.
+	 * @param url
+	 * @param proxyService
+	 * @return proxy for the given URL, or null if no proxy should be used
+	 */
+	public static HttpProxyConfiguration getProxy(URL url, IProxyService proxyService) {
+		if (url == null || url.getProtocol() == null) {
+			return null;
+		}
+		if (proxyService != null) {
+			// Proxies resolved by another proxy service must not be used
+			listenToProxyChanges(proxyService);
+		}
+		String key = url.toString();
+		ResolvedProxy resolved = resolvedProxies.get(key);
+		if (resolved != null) {
+			return resolved.getConfiguration();
+		}
+		return getProxy(url, key, proxyService);
+	}
+
+	private static HttpProxyConfiguration getProxy(URL url, String key) {
+		if (url.getProtocol() == null) {
+			return null;
+		}
+
 		// In certain cases, the activator would have stopped and the plugin may
 		// no longer be available. Usually onl happens on shutdown.
-
 		CloudFoundryPlugin plugin = CloudFoundryPlugin.getDefault();
+		IProxyService proxyService = plugin != null ? plugin.getProxyService() : null;
+		return getProxy(url, key, proxyService);
+	}
 
-		if (plugin != null) {
-			IProxyService proxyService = plugin.getProxyService();
-
-			// Only set proxies IF proxies are enabled (i.e a user has selected
-			// MANUAL provider configuration in network preferences. If it is
-			// direct,
-			// then skip proxy settings.
-			if (proxyService != null && proxyService.isProxiesEnabled()) {
-				IProxyData[] existingProxies = proxyService.getProxyData();
-
-				if (existingProxies != null) {
-
-					// Now determine the protocol to obtain the correct proxy
-					// type
-					String normalisedURLProtocol = getNormalisedProtocol(url.getProtocol());
-
-					// Resolve the correct proxy data type based on the URL
-					// protocol
-					String[] proxyDataTypes = { IProxyData.HTTP_PROXY_TYPE, IProxyData.HTTPS_PROXY_TYPE,
-							IProxyData.SOCKS_PROXY_TYPE };
-					String matchedProxyData = null;
-					for (String proxyDataType : proxyDataTypes) {
-						String normalised = getNormalisedProtocol(proxyDataType);
-						if (normalised.equals(normalisedURLProtocol)) {
-							matchedProxyData = proxyDataType;
-							break;
-						}
+	private static HttpProxyConfiguration getProxy(URL url, String key, IProxyService proxyService) {
+		long changes = proxyChanges.get();
+		HttpProxyConfiguration configuration = resolveProxy(url, proxyService);
+
+		// Only cache the proxy if changes in proxy settings are notified
+		if (proxyService != null) {
+			listenToProxyChanges(proxyService);
+			resolvedProxies.put(key, new ResolvedProxy(configuration));
+			if (proxyChanges.get() != changes) {
+				resolvedProxies.remove(key);
+			}
+		}
+		return configuration;
+	}
+
+	private static synchronized void listenToProxyChanges(IProxyService proxyService) {
+		if (listenedProxyService != proxyService) {
+			if (listenedProxyService != null) {
+				listenedProxyService.removeProxyChangeListener(proxyChangeListener);
+			}
+			proxyChanges.incrementAndGet();
+			resolvedProxies.clear();
+			proxyService.addProxyChangeListener(proxyChangeListener);
+			listenedProxyService = proxyService;
+		}
+	}
+
+	protected static HttpProxyConfiguration resolveProxy(URL url, IProxyService proxyService) {
+		// Only set proxies IF proxies are enabled (i.e a user has selected
+		// MANUAL provider configuration in network preferences. If it is
+		// direct,
+		// then skip proxy settings.
+		if (proxyService != null && proxyService.isProxiesEnabled()) {
+			IProxyData[] existingProxies = proxyService.getProxyData();
+
+			if (existingProxies != null) {
+
+				// Now determine the protocol to obtain the correct proxy
+				// type
+				String normalisedURLProtocol = getNormalisedProtocol(url.getProtocol());
+
+				// Resolve the correct proxy data type based on the URL
+				// protocol
+				String[] proxyDataTypes = { IProxyData.HTTP_PROXY_TYPE, IProxyData.HTTPS_PROXY_TYPE,
+						IProxyData.SOCKS_PROXY_TYPE };
+				String matchedProxyData = null;
+				for (String proxyDataType : proxyDataTypes) {
+					String normalised = getNormalisedProtocol(proxyDataType);
+					if (normalised.equals(normalisedURLProtocol)) {
+						matchedProxyData = proxyDataType;
+						break;
 					}
+				}
 
-					if (matchedProxyData != null) {
-						for (IProxyData data : existingProxies) {
+				if (matchedProxyData != null) {
+					for (IProxyData data : existingProxies) {
 
-							if (matchedProxyData.equals(data.getType())) {
-								int proxyPort = data.getPort();
-								String proxyHost = data.getHost();
-								return proxyHost != null ? new HttpProxyConfiguration(proxyHost, proxyPort) : null;
-							}
+						if (matchedProxyData.equals(data.getType())) {
+							int proxyPort = data.getPort();
+							String proxyHost = data.getHost();
+							return proxyHost != null ? new HttpProxyConfiguration(proxyHost, proxyPort) : null;
 						}
 					}
 				}
@@ -190,4 +314,20 @@ public class CloudFoundryClientFactory {
 		return null;
 
 	}
+
+	/**
+	 * Resolved proxy for a URL, which may be null if no proxy is used.
+	 */
+	private static class ResolvedProxy {
+
+		private final HttpProxyConfiguration configuration;
+
+		ResolvedProxy(HttpProxyConfiguration configuration) {
+			this.configuration = configuration;
+		}
+
+		HttpProxyConfiguration getConfiguration() {
+			return configuration;
+		}
+	}
 }
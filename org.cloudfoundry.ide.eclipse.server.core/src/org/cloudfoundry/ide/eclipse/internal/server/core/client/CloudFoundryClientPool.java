@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cloudfoundry.client.lib.CloudCredentials;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryLoginHandler;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+/**
+ * Pool of authenticated clients that are not tied to a server behaviour, for
+ * example clients used to look up orgs and spaces while a server is being
+ * created. Clients are keyed by server URL and credentials, and are reused as
+ * long as their access token is valid, so that consecutive look-ups do not log
+ * in again. Passwords are not kept in the keys, which only hold a digest of
+ * the credentials salted per pool.
+ * <p/>
+ * Validating credentials must not use pooled clients, as a pooled client may
+ * still be authorised after the password was changed. Use
+ * {@link #login(String, CloudCredentials, IProgressMonitor)} instead.
+ * <p/>
+ * Tokens of clients that are still in use are renewed in the background
+ * shortly before they expire. Clients that have not been used for
+ * {@link #IDLE_TIMEOUT} are discarded.
+ */
+public class CloudFoundryClientPool {
+
+	/**
+	 * Time in milliseconds before a token expires during which the token is
+	 * no longer used, and is renewed if the client is still in use.
+	 */
+	public static final long TOKEN_EXPIRY_MARGIN = 60 * 1000;
+
+	/**
+	 * Time in milliseconds after which clients that have not been used are
+	 * discarded.
+	 */
+	public static final long IDLE_TIMEOUT = 10 * 60 * 1000;
+
+	/**
+	 * Time in milliseconds between checks for expiring tokens and idle
+	 * clients.
+	 */
+	public static final long CHECK_INTERVAL = 30 * 1000;
+
+	private static final int LOGIN_ATTEMPTS = 5;
+
+	private static final long LOGIN_RETRY_INTERVAL = 5000;
+
+	private static CloudFoundryClientPool pool;
+
+	public static synchronized CloudFoundryClientPool getDefault() {
+		if (pool == null) {
+			pool = new CloudFoundryClientPool();
+		}
+		return pool;
+	}
+
+	/**
+	 * Disposes the pool returned by {@link #getDefault()}, if it was created.
+	 */
+	public static synchronized void disposeDefault() {
+		if (pool != null) {
+			pool.dispose();
+			pool = null;
+		}
+	}
+
+	private final Map<ClientKey, PooledClient> clients = new HashMap<ClientKey, PooledClient>();
+
+	private final byte[] salt;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private MaintenanceJob maintenanceJob;
+
+	public CloudFoundryClientPool() {
+		salt = new byte[16];
+		new SecureRandom().nextBytes(salt);
+	}
+
+	/**
+	 * Returns an authenticated client for the given URL and credentials,
+	 * which is not tied to a cloud space. A pooled client is returned if its
+	 * token is still valid. Otherwise, a new client is created and logged in.
+	 * @param url server URL
+	 * @param credentials must not be null
+	 * @param monitor
+	 * @return non-null authenticated client
+	 * @throws CoreException if the client could not be created or login
+	 * failed
+	 */
+	public CloudFoundryOperations getClient(String url, CloudCredentials credentials, IProgressMonitor monitor)
+			throws CoreException {
+		ClientKey key = new ClientKey(url, credentials, salt);
+		synchronized (clients) {
+			PooledClient pooled = clients.get(key);
+			if (pooled != null && pooled.isTokenValid()) {
+				hits.incrementAndGet();
+				pooled.lastUsed = System.currentTimeMillis();
+				return pooled.operations;
+			}
+			clients.remove(key);
+		}
+		misses.incrementAndGet();
+
+		// Log in outside the lock, so that look-ups for other servers are not
+		// blocked
+		PooledClient pooled = createClient(url, credentials, monitor);
+
+		synchronized (clients) {
+			clients.put(key, pooled);
+		}
+		scheduleMaintenance();
+		return pooled.operations;
+	}
+
+	/**
+	 * Creates a client for the given URL and credentials and logs it in,
+	 * without taking it from or adding it to the pool.
+	 * @param url server URL
+	 * @param credentials must not be null
+	 * @param monitor
+	 * @return non-null authenticated client
+	 * @throws CoreException if the client could not be created or login
+	 * failed
+	 */
+	public CloudFoundryOperations login(String url, CloudCredentials credentials, IProgressMonitor monitor)
+			throws CoreException {
+		return createClient(url, credentials, monitor).operations;
+	}
+
+	/**
+	 * Creates a client for the given URL and credentials, not tied to a cloud
+	 * space, and logs it in.
+	 */
+	protected PooledClient createClient(String url, CloudCredentials credentials, IProgressMonitor monitor)
+			throws CoreException {
+		CloudFoundryOperations operations = CloudFoundryServerBehaviour.createClient(url, credentials, null);
+		CloudFoundryLoginHandler handler = new CloudFoundryLoginHandler(operations, url);
+		handler.updateProxyInClient(operations);
+		OAuth2AccessToken token = handler.login(monitor, LOGIN_ATTEMPTS, LOGIN_RETRY_INTERVAL);
+		return new PooledClient(operations, handler, token);
+	}
+
+	/**
+	 * Discards the pooled client for the given URL and credentials, for
+	 * example after a request failed because the client is no longer
+	 * authorised.
+	 */
+	public void invalidate(String url, CloudCredentials credentials) {
+		synchronized (clients) {
+			clients.remove(new ClientKey(url, credentials, salt));
+		}
+	}
+
+	public void clear() {
+		synchronized (clients) {
+			clients.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (clients) {
+			return clients.size();
+		}
+	}
+
+	/**
+	 *
+	 * @return number of requests for a client served by a pooled client
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 *
+	 * @return number of requests for a client that required a login
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Discards all pooled clients and stops background token renewal.
+	 */
+	public void dispose() {
+		clear();
+		MaintenanceJob job;
+		synchronized (this) {
+			job = maintenanceJob;
+			maintenanceJob = null;
+		}
+		if (job != null) {
+			job.cancel();
+		}
+	}
+
+	protected synchronized void scheduleMaintenance() {
+		if (maintenanceJob == null) {
+			maintenanceJob = new MaintenanceJob();
+		}
+		if (maintenanceJob.getState() == Job.NONE) {
+			maintenanceJob.schedule(CHECK_INTERVAL);
+		}
+	}
+
+	/**
+	 * Discards idle clients, and renews the tokens of clients in use that
+	 * are about to expire.
+	 * @return true if clients remain in the pool
+	 */
+	protected boolean maintain(IProgressMonitor monitor) {
+		List<PooledClient> toRenew = new ArrayList<PooledClient>();
+		long now = System.currentTimeMillis();
+		long idleTimeout = getIdleTimeout();
+		synchronized (clients) {
+			for (Iterator<PooledClient> it = clients.values().iterator(); it.hasNext();) {
+				PooledClient pooled = it.next();
+				if (now - pooled.lastUsed > idleTimeout) {
+					it.remove();
+				}
+				else if (pooled.isTokenExpiring(now + CHECK_INTERVAL)) {
+					toRenew.add(pooled);
+				}
+			}
+		}
+
+		for (PooledClient pooled : toRenew) {
+			if (monitor.isCanceled()) {
+				break;
+			}
+			try {
+				pooled.token = pooled.renew(monitor);
+			}
+			catch (CoreException e) {
+				// Log in again on next use
+				pooled.token = null;
+				pooled.expired = true;
+			}
+		}
+
+		synchronized (clients) {
+			return !clients.isEmpty();
+		}
+	}
+
+	/**
+	 * @return time in milliseconds after which clients that have not been
+	 * used are discarded
+	 */
+	protected long getIdleTimeout() {
+		return IDLE_TIMEOUT;
+	}
+
+	/**
+	 * Logged in client, with the token it was last given.
+	 */
+	protected static class PooledClient {
+
+		final CloudFoundryOperations operations;
+
+		final CloudFoundryLoginHandler handler;
+
+		volatile OAuth2AccessToken token;
+
+		volatile boolean expired;
+
+		volatile long lastUsed;
+
+		/**
+		 * @param operations logged in client
+		 * @param handler used to renew the token. May be null if the token
+		 * does not expire.
+		 * @param token may be null if the token does not expire
+		 */
+		public PooledClient(CloudFoundryOperations operations, CloudFoundryLoginHandler handler,
+				OAuth2AccessToken token) {
+			this.operations = operations;
+			this.handler = handler;
+			this.token = token;
+			this.lastUsed = System.currentTimeMillis();
+		}
+
+		OAuth2AccessToken renew(IProgressMonitor monitor) throws CoreException {
+			return handler != null ? handler.login(monitor) : token;
+		}
+
+		boolean isTokenValid() {
+			return !expired && !isTokenExpiring(System.currentTimeMillis());
+		}
+
+		/**
+		 * @return true if the token expires within the expiry margin of the
+		 * given time. Tokens without an expiration never expire.
+		 */
+		boolean isTokenExpiring(long time) {
+			OAuth2AccessToken currentToken = token;
+			return currentToken != null && currentToken.getExpiration() != null
+					&& currentToken.getExpiration().getTime() - time < TOKEN_EXPIRY_MARGIN;
+		}
+	}
+
+	/**
+	 * Identifies pooled clients by URL, user name and a salted digest of the
+	 * credentials, so that the keys do not hold passwords.
+	 */
+	private static class ClientKey {
+
+		private final String url;
+
+		private final String userName;
+
+		private final byte[] credentialsDigest;
+
+		ClientKey(String url, CloudCredentials credentials, byte[] salt) {
+			this.url = url;
+			this.userName = credentials.getEmail();
+			this.credentialsDigest = digest(salt, credentials.getEmail(), credentials.getPassword());
+		}
+
+		private static byte[] digest(byte[] salt, String userName, String password) {
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				digest.update(salt);
+				digest.update(String.valueOf(userName).getBytes("UTF-8"));
+				digest.update((byte) 0);
+				digest.update(String.valueOf(password).getBytes("UTF-8"));
+				return digest.digest();
+			}
+			catch (NoSuchAlgorithmException e) {
+				// SHA-256 is always available
+				throw new IllegalStateException(e);
+			}
+			catch (UnsupportedEncodingException e) {
+				// UTF-8 is always supported
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			int result = 31 + (url == null ? 0 : url.hashCode());
+			result = 31 * result + (userName == null ? 0 : userName.hashCode());
+			return 31 * result + Arrays.hashCode(credentialsDigest);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ClientKey)) {
+				return false;
+			}
+			ClientKey other = (ClientKey) obj;
+			return equal(url, other.url) && equal(userName, other.userName)
+					&& Arrays.equals(credentialsDigest, other.credentialsDigest);
+		}
+
+		private static boolean equal(String value1, String value2) {
+			return value1 == null ? value2 == null : value1.equals(value2);
+		}
+	}
+
+	private class MaintenanceJob extends Job {
+
+		public MaintenanceJob() {
+			super("Renewing Cloud Foundry access tokens");
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			if (maintain(monitor) && !monitor.isCanceled()) {
+				schedule(CHECK_INTERVAL);
+			}
+			return Status.OK_STATUS;
+		}
+	}
+}
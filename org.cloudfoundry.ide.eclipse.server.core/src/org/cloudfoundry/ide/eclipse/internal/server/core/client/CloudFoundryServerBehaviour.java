@@ -46,12 +46,15 @@ import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryLoginHandle
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryPlugin;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryServer;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudUtil;
+import org.cloudfoundry.ide.eclipse.internal.server.core.DeployedResourceCache.CachedDeployedApplication;
 import org.cloudfoundry.ide.eclipse.internal.server.core.DeploymentConfiguration;
 import org.cloudfoundry.ide.eclipse.internal.server.core.ModuleResourceDeltaWrapper;
 import org.cloudfoundry.ide.eclipse.internal.server.core.ServerEventHandler;
 import org.cloudfoundry.ide.eclipse.internal.server.core.application.ApplicationRegistry;
 import org.cloudfoundry.ide.eclipse.internal.server.core.application.EnvironmentVariable;
 import org.cloudfoundry.ide.eclipse.internal.server.core.application.IApplicationDelegate;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ApplicationStatsCollector.ApplicationInstanceStats;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.PublishMetrics.Phase;
 import org.cloudfoundry.ide.eclipse.internal.server.core.debug.CloudFoundryProperties;
 import org.cloudfoundry.ide.eclipse.internal.server.core.debug.DebugCommandBuilder;
 import org.cloudfoundry.ide.eclipse.internal.server.core.debug.DebugModeType;
@@ -61,6 +64,7 @@ import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
@@ -123,6 +127,16 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 	private CloudApplicationUrlLookup applicationUrlLookup;
 
+	private final PublishMetricsHistory publishHistory = new PublishMetricsHistory();
+
+	private final ApplicationStatsCollector statsCollector = new ApplicationStatsCollector(this);
+
+	private final ResourceUsageSampler usageSampler = new ResourceUsageSampler(this);
+
+	private final RequestMetrics requestMetrics = new RequestMetrics();
+
+	private final ContinuousDeployer continuousDeployer = new ContinuousDeployer(this);
+
 	private final boolean REFRESH_MODULES[] = { false };
 
 	/*
@@ -211,7 +225,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		ServerEventHandler.getDefault().fireServicesUpdated(getCloudFoundryServer());
 	}
 
-	public synchronized List<CloudDomain> getDomainsFromOrgs(IProgressMonitor monitor) throws CoreException {
+	public List<CloudDomain> getDomainsFromOrgs(IProgressMonitor monitor) throws CoreException {
 		return new Request<List<CloudDomain>>("Getting domains for orgs") {
 			@Override
 			protected List<CloudDomain> doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
@@ -221,7 +235,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 	}
 
-	public synchronized List<CloudDomain> getDomainsForSpace(IProgressMonitor monitor) throws CoreException {
+	public List<CloudDomain> getDomainsForSpace(IProgressMonitor monitor) throws CoreException {
 		return new Request<List<CloudDomain>>("Getting domains for current space") {
 			@Override
 			protected List<CloudDomain> doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
@@ -297,6 +311,10 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 					cloudServer.removeApplication(appModule);
 
+					// Cached resource entries for the deleted application
+					// are no longer needed
+					invalidateDeployedResources(cloudServer, appModule.getDeployedApplicationName());
+
 					// Be sure the cloud application mapping is removed
 					// in case other components still have a reference to
 					// the
@@ -360,6 +378,85 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		return applicationUrlLookup;
 	}
 
+	/**
+	 * 
+	 * @return non-null history of timings and counters recorded for the most
+	 * recent application push, start and restart operations in this server.
+	 */
+	public PublishMetricsHistory getPublishHistory() {
+		return publishHistory;
+	}
+
+	/**
+	 * 
+	 * @return non-null collector of application instance stats, shared by
+	 * all components that display or use application stats for this server.
+	 */
+	public ApplicationStatsCollector getApplicationStatsCollector() {
+		return statsCollector;
+	}
+
+	/**
+	 * 
+	 * @return non-null sampler of the resource usage of application
+	 * instances over time. It only samples applications that are explicitly
+	 * watched.
+	 */
+	public ResourceUsageSampler getResourceUsageSampler() {
+		return usageSampler;
+	}
+
+	/**
+	 * 
+	 * @return non-null latency, error and retry metrics of all requests sent
+	 * to the server through this behaviour.
+	 */
+	public RequestMetrics getRequestMetrics() {
+		return requestMetrics;
+	}
+
+	/**
+	 * 
+	 * @return non-null deployer that pushes the local changes of applications
+	 * in continuous deploy mode as they are saved or built.
+	 */
+	public ContinuousDeployer getContinuousDeployer() {
+		return continuousDeployer;
+	}
+
+	/**
+	 * Completes the given metrics and adds them to the publish history, if any
+	 * timings were recorded. A summary is sent to the callback so that it can
+	 * be displayed to the user.
+	 */
+	protected void publishCompleted(CloudFoundryApplicationModule appModule, PublishMetrics metrics,
+			boolean successful) {
+		metrics.complete(successful);
+		if (!metrics.hasPhases()) {
+			return;
+		}
+		publishHistory.add(metrics);
+		CloudFoundryPlugin.trace(metrics.getSummary());
+		try {
+			CloudFoundryPlugin.getCallback().publishCompleted(getCloudFoundryServer(), appModule, metrics);
+		}
+		catch (CoreException e) {
+			CloudFoundryPlugin.logError(e);
+		}
+	}
+
+	/**
+	 * Removes any cached deployed resource entries for the given application
+	 * in the given server.
+	 */
+	protected void invalidateDeployedResources(CloudFoundryServer cloudServer, String appName) {
+		CloudFoundryPlugin plugin = CloudFoundryPlugin.getDefault();
+		if (plugin != null) {
+			plugin.getDeployedResourcesCache().invalidate(
+					new CachedDeployedApplication(appName, cloudServer.getServerId()));
+		}
+	}
+
 	protected List<IModuleResource> getChangedResources(IModuleResourceDelta[] deltas) {
 		List<IModuleResource> changed = new ArrayList<IModuleResource>();
 		if (deltas != null) {
@@ -420,6 +517,9 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		super.dispose();
 		getServer().removeServerListener(serverListener);
 		closeCaldecottTunnelsAsynch();
+		statsCollector.dispose();
+		usageSampler.stop();
+		continuousDeployer.dispose();
 	}
 
 	/**
@@ -457,7 +557,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	public ApplicationStats getApplicationStats(final String applicationId, IProgressMonitor monitor)
 			throws CoreException {
 		return new StagingAwareRequest<ApplicationStats>(NLS.bind("Getting application statistics for {0}",
-				applicationId)) {
+				applicationId), applicationId) {
 			@Override
 			protected ApplicationStats doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
 				return client.getApplicationStats(applicationId);
@@ -466,7 +566,8 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	}
 
 	public InstancesInfo getInstancesInfo(final String applicationId, IProgressMonitor monitor) throws CoreException {
-		return new StagingAwareRequest<InstancesInfo>(NLS.bind("Getting application statistics for {0}", applicationId)) {
+		return new StagingAwareRequest<InstancesInfo>(NLS.bind("Getting application statistics for {0}", applicationId),
+				applicationId) {
 			@Override
 			protected InstancesInfo doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
 				return client.getApplicationInstances(applicationId);
@@ -1338,6 +1439,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	protected void initialize(IProgressMonitor monitor) {
 		super.initialize(monitor);
 		getServer().addServerListener(serverListener, ServerEvent.SERVER_CHANGE);
+		continuousDeployer.start();
 	}
 
 	@Override
@@ -1466,16 +1568,18 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 			CloudFoundryApplicationModule appModule = getCloudFoundryServer().getExistingCloudModule(module);
 
 			if (appModule != null) {
-				try {
-					// Update the CloudApplication in the cloud module.
-					CloudApplication application = getApplication(appModule.getDeployedApplicationName(), monitor);
-					appModule.setCloudApplication(application);
-				}
-				catch (CoreException e) {
-					// application is not deployed to server yet
+				// The cloud application, stats and instances are retrieved
+				// concurrently, or reused if recently retrieved.
+				ApplicationInstanceStats collected = statsCollector.collect(appModule.getDeployedApplicationName(),
+						false, monitor);
+
+				// Update the CloudApplication in the cloud module. If not
+				// available, the application is not deployed to server yet
+				if (collected.getApplication() != null) {
+					appModule.setCloudApplication(collected.getApplication());
 				}
 
-				internalUpdateApplicationInstanceStats(appModule, monitor);
+				updateApplicationInstanceStats(appModule, collected);
 			}
 
 		}
@@ -1499,11 +1603,32 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		}
 
 		if (appModule.getApplication() != null) {
-			// refresh application stats
-			ApplicationStats stats = getApplicationStats(appModule.getDeployedApplicationName(), monitor);
-			InstancesInfo info = getInstancesInfo(appModule.getDeployedApplicationName(), monitor);
-			appModule.setApplicationStats(stats);
-			appModule.setInstancesInfo(info);
+			// refresh application stats. Cached stats are not used as the
+			// application state may have just changed.
+			ApplicationInstanceStats collected = statsCollector.collect(appModule.getDeployedApplicationName(), true,
+					monitor);
+			updateApplicationInstanceStats(appModule, collected);
+		}
+		else {
+			appModule.setApplicationStats(null);
+		}
+	}
+
+	/**
+	 * Sets the collected application stats and instances info in the given
+	 * cloud application module. It does not update the Cloud app module ->
+	 * cloud application mapping.
+	 * @throws CoreException if the stats or instances info could not be
+	 * retrieved from the server
+	 */
+	protected void updateApplicationInstanceStats(CloudFoundryApplicationModule appModule,
+			ApplicationInstanceStats collected) throws CoreException {
+		if (appModule.getApplication() != null) {
+			if (collected.getStatsError() != null) {
+				throw collected.getStatsError();
+			}
+			appModule.setApplicationStats(collected.getStats());
+			appModule.setInstancesInfo(collected.getInstancesInfo());
 		}
 		else {
 			appModule.setApplicationStats(null);
@@ -1599,7 +1724,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		return createClient(location, new CloudCredentials(userName, password), cloudSpace);
 	}
 
-	private static CloudFoundryOperations createClient(String location, CloudCredentials credentials,
+	public static CloudFoundryOperations createClient(String location, CloudCredentials credentials,
 			CloudFoundrySpace cloudSpace) throws CoreException {
 
 		URL url;
@@ -1671,6 +1796,9 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 	 * In addition, all requests are performed in a sub monitor, therefore
 	 * submonitor operations like creating a new child to track progress worked
 	 * should be used.
+	 * <p/>
+	 * The duration, attempts and outcome of each request are recorded in the
+	 * behaviour's {@link RequestMetrics}.
 	 * 
 	 * @param <T>
 	 * 
@@ -1679,13 +1807,31 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 		private final String label;
 
+		private final String appName;
+
+		private int attempts;
+
+		private long clientNanos;
+
+		private long bytesTransferred;
+
 		public Request() {
 			this("");
 		}
 
 		public Request(String label) {
+			this(label, null);
+		}
+
+		/**
+		 * @param label
+		 * @param appName application the request is for, used to record
+		 * request metrics per application. May be null.
+		 */
+		public Request(String label, String appName) {
 			Assert.isNotNull(label);
 			this.label = label;
+			this.appName = appName;
 		}
 
 		/**
@@ -1696,6 +1842,37 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		 * the client operation.
 		 */
 		public T run(IProgressMonitor monitor) throws CoreException {
+			attempts = 0;
+			clientNanos = 0;
+			bytesTransferred = 0;
+			long start = System.nanoTime();
+			Throwable error = null;
+			try {
+				return runRequest(monitor);
+			}
+			catch (CoreException e) {
+				error = e;
+				throw e;
+			}
+			catch (RuntimeException e) {
+				error = e;
+				throw e;
+			}
+			finally {
+				requestMetrics.record(requestMetrics.getOperationName(getClass(), label), appName, System.nanoTime()
+						- start, clientNanos, Math.max(0, attempts - 1), bytesTransferred, error);
+			}
+		}
+
+		/**
+		 * Records the number of bytes sent or received by the request, if
+		 * known.
+		 */
+		protected void addBytesTransferred(long bytes) {
+			bytesTransferred += bytes;
+		}
+
+		private T runRequest(IProgressMonitor monitor) throws CoreException {
 			CloudFoundryServer cloudServer = getCloudFoundryServer();
 
 			if (cloudServer.getUsername() == null || cloudServer.getUsername().length() == 0
@@ -1722,7 +1899,13 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 				// if unauthorised/forbidden exception is thrown, and client
 				// login is
 				// attempted again.
-				result = runAsClientRequestCheckConnection(client, cloudServer, subProgress);
+				long clientStart = System.nanoTime();
+				try {
+					result = runAsClientRequestCheckConnection(client, cloudServer, subProgress);
+				}
+				finally {
+					clientNanos += System.nanoTime() - clientStart;
+				}
 
 				succeeded = true;
 
@@ -1810,12 +1993,23 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 				@Override
 				protected T doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
-					return Request.this.doRun(client, progress);
+					return Request.this.runAttempt(client, progress);
 				}
 
 			}.run(subProgress);
 		}
 
+		/**
+		 * Performs one attempt of the client calls of the request. Operations
+		 * that reattempt the request should call this rather than
+		 * {@link #doRun(CloudFoundryOperations, SubMonitor)}, so that retries
+		 * are recorded.
+		 */
+		protected T runAttempt(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
+			attempts++;
+			return doRun(client, progress);
+		}
+
 		protected abstract T doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException;
 
 	}
@@ -1855,7 +2049,15 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		}
 
 		public StagingAwareRequest(String label, long requestTimeOut) {
-			super(label);
+			this(label, null, requestTimeOut);
+		}
+
+		public StagingAwareRequest(String label, String appName) {
+			this(label, appName, ClientRequestOperation.DEFAULT_CF_CLIENT_REQUEST_TIMEOUT);
+		}
+
+		public StagingAwareRequest(String label, String appName, long requestTimeOut) {
+			super(label, appName);
 			this.requestTimeOut = requestTimeOut > 0 ? requestTimeOut
 					: ClientRequestOperation.DEFAULT_CF_CLIENT_REQUEST_TIMEOUT;
 		}
@@ -1865,7 +2067,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 				@Override
 				protected T doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
-					return StagingAwareRequest.this.doRun(client, progress);
+					return StagingAwareRequest.this.runAttempt(client, progress);
 				}
 
 			}.run(subProgress);
@@ -1897,7 +2099,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 				@Override
 				protected T doRun(CloudFoundryOperations client, SubMonitor progress) throws CoreException {
-					return AppInStoppedStateAwareRequest.this.doRun(client, progress);
+					return AppInStoppedStateAwareRequest.this.runAttempt(client, progress);
 				}
 
 			}.run(subProgress);
@@ -1925,6 +2127,8 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 		private CloudFoundryApplicationModule appModule;
 
+		private PublishMetrics publishMetrics;
+
 		protected ApplicationOperation(IModule[] modules) {
 			super(CloudFoundryServerBehaviour.this);
 			this.modules = modules;
@@ -1934,6 +2138,15 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 			return appModule;
 		}
 
+		/**
+		 * 
+		 * @return metrics recorded for the current operation. Non-null once
+		 * the application has been prepared for deployment.
+		 */
+		protected PublishMetrics getPublishMetrics() {
+			return publishMetrics;
+		}
+
 		protected void performOperation(IProgressMonitor monitor) throws CoreException {
 
 			appModule = prepareForDeployment(monitor);
@@ -1945,6 +2158,9 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 						+ validationStatus.getMessage());
 			}
 
+			publishMetrics = new PublishMetrics(appModule.getDeployedApplicationName());
+			boolean successful = false;
+
 			// Operation cancelled exceptions after an application has been
 			// prepared for deployment should not be logged.
 			try {
@@ -1981,11 +2197,15 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 					CloudFoundryPlugin.logError(e);
 				}
 
+				successful = true;
 			}
 			catch (OperationCanceledException e) {
 				// ignore so webtools does not show an exception
 				((Server) getServer()).setModuleState(modules, IServer.STATE_UNKNOWN);
 			}
+			finally {
+				publishCompleted(appModule, publishMetrics, successful);
+			}
 
 		}
 
@@ -2035,10 +2255,11 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		 * @param monitor
 		 * @throws CoreException if error creating the application
 		 */
-		protected void pushApplication(CloudFoundryOperations client, final CloudFoundryApplicationModule appModule,
-				File warFile, ApplicationArchive applicationArchive, IProgressMonitor monitor) throws CoreException {
+		protected void pushApplication(final CloudFoundryOperations client,
+				final CloudFoundryApplicationModule appModule, final File warFile,
+				final ApplicationArchive applicationArchive, IProgressMonitor monitor) throws CoreException {
 
-			String appName = appModule.getDeploymentInfo().getDeploymentName();
+			final String appName = appModule.getDeploymentInfo().getDeploymentName();
 
 			try {
 				List<CloudApplication> existingApps = client.getApplications();
@@ -2063,11 +2284,26 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 					}
 					client.createApplication(appName, staging, appModule.getDeploymentInfo().getMemory(), uris,
 							services);
+
+					// Match results recorded for a previous application with
+					// the same name do not apply to the new application
+					if (applicationArchive instanceof CachingApplicationArchive) {
+						((CachingApplicationArchive) applicationArchive).requireFullResourceMatch();
+					}
 				}
 
-				// 2. Now push the application content.
+				// 2. Now push the application content. The archive is
+				// prepared once. Transient upload failures only send it
+				// again.
 				if (warFile != null) {
-					client.uploadApplication(appName, warFile);
+					new ArchiveUpload() {
+						@Override
+						protected void upload(IProgressMonitor monitor) throws IOException {
+							UploadMetricsCallback callback = new UploadMetricsCallback(null);
+							client.uploadApplication(appName, warFile, callback);
+							callback.uploadCompleted();
+						}
+					}.run(monitor);
 				}
 				else if (applicationArchive != null) {
 					// Handle the incremental publish case separately as it
@@ -2078,20 +2314,20 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 					// the server determines the list of missing file names.
 					if (applicationArchive instanceof CachingApplicationArchive) {
 						final CachingApplicationArchive cachingArchive = (CachingApplicationArchive) applicationArchive;
-						client.uploadApplication(appName, cachingArchive, new UploadStatusCallback() {
-
-							public void onProcessMatchedResources(int length) {
-
-							}
-
-							public void onMatchedFileNames(Set<String> matchedFileNames) {
-								cachingArchive.generatePartialWarFile(matchedFileNames);
+						cachingArchive.setPublishMetrics(getPublishMetrics());
+						new ArchiveUpload() {
+							@Override
+							protected void upload(IProgressMonitor monitor) throws IOException {
+								if (getAttempts() > 1) {
+									cachingArchive.prepareRetry();
+								}
+								UploadMetricsCallback callback = new UploadMetricsCallback(cachingArchive);
+								client.uploadApplication(appName, cachingArchive, callback);
+								callback.uploadCompleted();
 							}
+						}.run(monitor);
 
-							public void onCheckResources() {
-
-							}
-						});
+						cachingArchive.recordResourceMatch();
 
 						// Once the application has run, do a clean up of the
 						// sha1
@@ -2099,7 +2335,14 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 					}
 					else {
-						client.uploadApplication(appName, applicationArchive);
+						new ArchiveUpload() {
+							@Override
+							protected void upload(IProgressMonitor monitor) throws IOException {
+								UploadMetricsCallback callback = new UploadMetricsCallback(null);
+								client.uploadApplication(appName, applicationArchive, callback);
+								callback.uploadCompleted();
+							}
+						}.run(monitor);
 					}
 				}
 				else {
@@ -2126,6 +2369,64 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		 */
 		protected abstract void performDeployment(CloudFoundryApplicationModule appModule, IProgressMonitor monitor)
 				throws CoreException;
+
+		/**
+		 * Upload callback that records the resource match, partial war
+		 * generation and upload timings in the operation's publish metrics.
+		 * For incremental publishing, it also generates the partial war file
+		 * once the server has indicated the resources it already has.
+		 */
+		protected class UploadMetricsCallback implements UploadStatusCallback {
+
+			private final CachingApplicationArchive cachingArchive;
+
+			private final long uploadStart;
+
+			private final long sha1NanosAtStart;
+
+			private long payloadStart = -1;
+
+			/**
+			 * @param cachingArchive archive for which a partial war file
+			 * should be generated. May be null.
+			 */
+			public UploadMetricsCallback(CachingApplicationArchive cachingArchive) {
+				this.cachingArchive = cachingArchive;
+				this.uploadStart = System.nanoTime();
+				this.sha1NanosAtStart = getPublishMetrics().getPhaseNanos(Phase.SHA1);
+			}
+
+			public void onCheckResources() {
+				// SHA-1 digests are computed lazily while the resource match
+				// request is built. Only count the time not already recorded
+				// for the SHA-1 phase.
+				long sha1Nanos = getPublishMetrics().getPhaseNanos(Phase.SHA1) - sha1NanosAtStart;
+				getPublishMetrics().addPhaseNanos(Phase.RESOURCE_MATCH, System.nanoTime() - uploadStart - sha1Nanos);
+			}
+
+			public void onMatchedFileNames(Set<String> matchedFileNames) {
+				if (cachingArchive != null) {
+					long start = System.nanoTime();
+					cachingArchive.generatePartialWarFile(matchedFileNames);
+					getPublishMetrics().addPhaseTime(Phase.PARTIAL_WAR, start);
+				}
+			}
+
+			public void onProcessMatchedResources(int length) {
+				getPublishMetrics().addBytesUploaded(length);
+				payloadStart = System.nanoTime();
+			}
+
+			/**
+			 * Records the upload timing. Should be invoked once the client has
+			 * successfully uploaded the application.
+			 */
+			public void uploadCompleted() {
+				if (payloadStart >= 0) {
+					getPublishMetrics().addPhaseTime(Phase.UPLOAD, payloadStart);
+				}
+			}
+		}
 	}
 
 	protected boolean hasChildModules(IModule[] modules) {
@@ -2215,6 +2516,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 				if (!modules[0].isExternal()) {
 
+					long archiveStart = System.nanoTime();
 					final ApplicationArchive applicationArchive = generateApplicationArchiveFile(
 							appModule.getDeploymentInfo(), appModule, modules, server, monitor);
 					File warFile = null;
@@ -2228,6 +2530,8 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 						CloudFoundryPlugin.trace("War file " + warFile.getName() + " created");
 					}
+					getPublishMetrics().addPhaseTime(Phase.ARCHIVE, archiveStart);
+
 					// Tell webtools the module has been published
 					setModulePublishState(modules, IServer.PUBLISH_STATE_NONE);
 
@@ -2249,12 +2553,15 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 					final File warFileFin = warFile;
 					final CloudFoundryApplicationModule appModuleFin = appModule;
 					// Now push the application resources to the server
-					new Request<Void>("Pushing the application: " + deploymentName) {
+					new Request<Void>("Pushing the application: " + deploymentName, deploymentName) {
 						@Override
 						protected Void doRun(final CloudFoundryOperations client, SubMonitor progress)
 								throws CoreException {
 
 							pushApplication(client, appModuleFin, warFileFin, applicationArchive, progress);
+							if (warFileFin != null) {
+								addBytesTransferred(warFileFin.length());
+							}
 
 							CloudFoundryPlugin.trace("Application " + deploymentName
 									+ " pushed to Cloud Foundry server.");
@@ -2358,16 +2665,11 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 		}
 
 		// If no application archive was provided,then attempt an incremental
-		// publish. Incremental publish is only supported for apps without child
-		// modules.
-		if (archive == null && deploymentInfo.isIncrementalPublish() && !hasChildModules(modules)) {
+		// publish. Child modules are included as jars.
+		if (archive == null && deploymentInfo.isIncrementalPublish()) {
 			// Determine if an incremental publish
 			// should
 			// occur
-			// For the time being support incremental
-			// publish
-			// only if the app does not have child
-			// modules
 			// To compute incremental deltas locally,
 			// modules must be provided
 			// Computes deltas locally before publishing
@@ -2378,23 +2680,77 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 			// only on incremental
 			// builds
 
-			archive = getIncrementalPublishArchive(deploymentInfo, modules);
+			archive = getIncrementalPublishArchive(deploymentInfo, modules, server, monitor);
 		}
 		return archive;
 
 	}
 
 	protected ApplicationArchive getIncrementalPublishArchive(final ApplicationDeploymentInfo deploymentInfo,
-			IModule[] modules) {
-		IModuleResource[] allResources = getResources(modules);
+			IModule[] modules, Server server, IProgressMonitor monitor) throws CoreException {
+		List<IModuleResource> allResources = new ArrayList<IModuleResource>(Arrays.asList(getResources(modules)));
 		IModuleResourceDelta[] deltas = getPublishedResourceDelta(modules);
 		List<IModuleResource> changedResources = getChangedResources(deltas);
-		ApplicationArchive moduleArchive = new CachingApplicationArchive(Arrays.asList(allResources), changedResources,
-				modules[0], deploymentInfo.getDeploymentName());
+		if (hasChildModules(modules)) {
+			addChildModuleJars(modules, server, allResources, changedResources, monitor);
+		}
+		ApplicationArchive moduleArchive = new CachingApplicationArchive(allResources, changedResources, modules[0],
+				deploymentInfo.getDeploymentName(), getCloudFoundryServer().getServerId());
 
 		return moduleArchive;
 	}
 
+	/**
+	 * Adds the jars of the child modules of a web module to its resources, as
+	 * WEB-INF/lib entries. The jar of a child module is marked as changed if
+	 * the child module has resource deltas, or if the jar was assembled
+	 * again, so that the jar's sha1 is computed again. Unchanged jars are
+	 * left out of the upload by the resource match like any other resource.
+	 */
+	protected void addChildModuleJars(IModule[] modules, Server server, List<IModuleResource> allResources,
+			List<IModuleResource> changedResources, IProgressMonitor monitor) throws CoreException {
+		List<IStatus> result = new ArrayList<IStatus>();
+		Set<IModule> assembled = new HashSet<IModule>();
+		Map<IModule, IModuleResource> jars = CloudUtil.getChildModuleJars(modules, server, result, assembled,
+				monitor);
+		if (!result.isEmpty()) {
+			throw new CoreException(new MultiStatus(CloudFoundryPlugin.PLUGIN_ID, 0, result.toArray(new IStatus[0]),
+					NLS.bind("Publishing of ''{0}'' failed", modules[0].getName()), null));
+		}
+		// Jars assembled again are changed regardless of their deltas
+		Set<IModule> changedModules = new HashSet<IModule>(assembled);
+		for (IModule child : jars.keySet()) {
+			if (!changedModules.contains(child)) {
+				IModule[] childModules = new IModule[modules.length + 1];
+				System.arraycopy(modules, 0, childModules, 0, modules.length);
+				childModules[modules.length] = child;
+				if (!getChangedResources(getPublishedResourceDelta(childModules)).isEmpty()) {
+					changedModules.add(child);
+				}
+			}
+		}
+		addChildModuleJars(jars, changedModules, allResources, changedResources);
+	}
+
+	/**
+	 * Adds the given jars of child modules to the resources of a web module,
+	 * and the jars of the given changed child modules to its changed
+	 * resources.
+	 * @param jars jar resources by child module
+	 * @param changedModules child modules whose jar changed
+	 * @param allResources resources of the web module
+	 * @param changedResources changed resources of the web module
+	 */
+	public static void addChildModuleJars(Map<IModule, IModuleResource> jars, Set<IModule> changedModules,
+			List<IModuleResource> allResources, List<IModuleResource> changedResources) {
+		for (Map.Entry<IModule, IModuleResource> entry : jars.entrySet()) {
+			allResources.add(entry.getValue());
+			if (changedModules.contains(entry.getKey())) {
+				changedResources.add(entry.getValue());
+			}
+		}
+	}
+
 	/**
 	 * 
 	 * Attempts to start an application. It does not create an application, or
@@ -2448,12 +2804,13 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 					CloudFoundryPlugin.getCallback().applicationAboutToStart(getCloudFoundryServer(), cloudModule);
 
-					new Request<Void>("Starting application " + deploymentName) {
+					new Request<Void>("Starting application " + deploymentName, deploymentName) {
 						@Override
 						protected Void doRun(final CloudFoundryOperations client, SubMonitor progress)
 								throws CoreException {
 							CloudFoundryPlugin.trace("Application " + deploymentName + " starting");
 
+							long stagingStart = System.nanoTime();
 							switch (cloudModule.getDeploymentInfo().getDeploymentMode()) {
 							case DEBUG:
 								// Only launch in Suspend mode
@@ -2475,6 +2832,7 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 
 								break;
 							}
+							getPublishMetrics().addPhaseTime(Phase.STAGING, stagingStart);
 							return null;
 						}
 					}.run(monitor);
@@ -2483,14 +2841,17 @@ public class CloudFoundryServerBehaviour extends ServerBehaviourDelegate {
 					// staging related issues when checking if an app has
 					// started or not
 					new StagingAwareRequest<Void>("Waiting for application to start: " + deploymentName,
-							ClientRequestOperation.DEPLOYMENT_TIMEOUT) {
+							deploymentName, ClientRequestOperation.DEPLOYMENT_TIMEOUT) {
 						@Override
 						protected Void doRun(final CloudFoundryOperations client, SubMonitor progress)
 								throws CoreException {
 
 							// Now verify that the application did start
+							long waitStart = System.nanoTime();
 							try {
-								if (!waitForStart(client, deploymentName, progress)) {
+								boolean started = waitForStart(client, deploymentName, progress);
+								getPublishMetrics().addPhaseTime(Phase.WAIT_FOR_START, waitStart);
+								if (!started) {
 									server.setModuleState(modules, IServer.STATE_STOPPED);
 
 									throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID,
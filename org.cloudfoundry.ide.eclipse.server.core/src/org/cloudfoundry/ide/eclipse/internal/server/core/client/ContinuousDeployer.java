@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryPlugin;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryServer;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudUtil;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ModuleCache.ServerData;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.wst.server.core.IModule;
+import org.eclipse.wst.server.core.internal.Server;
+import org.eclipse.wst.server.core.model.IModuleFile;
+import org.eclipse.wst.server.core.model.IModuleFolder;
+import org.eclipse.wst.server.core.model.IModuleResource;
+
+/**
+ * Pushes the local changes of applications in continuous deploy mode as they
+ * are saved or built, so that the user does not have to update and restart
+ * the application manually.
+ * <p/>
+ * Changes to the files of an application's project are collected until no
+ * further change occurs for {@link #QUIET_PERIOD}, and then pushed at once
+ * through an incremental publish, after which the application is restarted,
+ * as with Update and Restart. A push that is still running when further
+ * changes occur is cancelled, and the changes of both are pushed together.
+ * A push that failed is attempted again with exponential backoff, up to a
+ * maximum number of attempts, after which its changes are pushed with the
+ * next changes.
+ * <p/>
+ * Continuous deploy mode is enabled per deployed application, and lasts for
+ * the current session. Only applications that are already deployed are
+ * pushed.
+ */
+@SuppressWarnings("restriction")
+public class ContinuousDeployer implements IResourceChangeListener {
+
+	/**
+	 * Time in milliseconds without further changes after which changes are
+	 * pushed.
+	 */
+	public static final long QUIET_PERIOD = 1500;
+
+	/**
+	 * Determines when failed pushes are attempted again.
+	 */
+	public static final RetryPolicy RETRY_POLICY = RetryPolicy.exponential(5 * 1000, 5 * 60 * 1000, 0)
+			.withMaxAttempts(6);
+
+	private final CloudFoundryServerBehaviour behaviour;
+
+	private final Map<String, DeployJob> jobs = new HashMap<String, DeployJob>();
+
+	private boolean listening;
+
+	public ContinuousDeployer(CloudFoundryServerBehaviour behaviour) {
+		this.behaviour = behaviour;
+	}
+
+	/**
+	 * Starts watching the applications that were put in continuous deploy
+	 * mode earlier in the session, if any.
+	 */
+	public void start() {
+		ServerData data = getServerData();
+		if (data != null && !data.getContinuousDeployApplications().isEmpty()) {
+			addListener();
+		}
+	}
+
+	/**
+	 * Enables or disables continuous deploy mode for an application. Pending
+	 * changes of an application for which it is disabled are not pushed.
+	 * @param appModule deployed application
+	 * @param enabled
+	 */
+	public void setEnabled(CloudFoundryApplicationModule appModule, boolean enabled) {
+		ServerData data = getServerData();
+		String appName = appModule.getDeployedApplicationName();
+		if (data == null || appName == null) {
+			return;
+		}
+		data.setContinuousDeploy(appName, enabled);
+		if (enabled) {
+			addListener();
+		}
+		else {
+			DeployJob job;
+			synchronized (this) {
+				job = jobs.remove(appName);
+			}
+			if (job != null) {
+				job.cancel();
+			}
+			if (data.getContinuousDeployApplications().isEmpty()) {
+				removeListener();
+			}
+		}
+	}
+
+	public boolean isEnabled(CloudFoundryApplicationModule appModule) {
+		ServerData data = getServerData();
+		String appName = appModule.getDeployedApplicationName();
+		return data != null && appName != null && data.isContinuousDeploy(appName);
+	}
+
+	/**
+	 * Stops watching changes and cancels pending pushes. Applications remain
+	 * in continuous deploy mode, so that they are watched again by the next
+	 * deployer of the server.
+	 */
+	public void dispose() {
+		removeListener();
+		Collection<DeployJob> pending;
+		synchronized (this) {
+			pending = new ArrayList<DeployJob>(jobs.values());
+			jobs.clear();
+		}
+		for (DeployJob job : pending) {
+			job.cancel();
+		}
+	}
+
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		ServerData data = getServerData();
+		if (delta == null || data == null) {
+			return;
+		}
+		CloudFoundryServer cloudServer;
+		try {
+			cloudServer = behaviour.getCloudFoundryServer();
+		}
+		catch (CoreException e) {
+			return;
+		}
+		if (!cloudServer.isConnected()) {
+			return;
+		}
+
+		for (String appName : data.getContinuousDeployApplications()) {
+			CloudFoundryApplicationModule appModule;
+			try {
+				appModule = cloudServer.getExistingCloudModule(appName);
+			}
+			catch (CoreException e) {
+				continue;
+			}
+			IProject project = appModule != null ? CloudUtil.getProject(appModule) : null;
+			IResourceDelta projectDelta = project != null ? delta.findMember(project.getFullPath()) : null;
+			if (projectDelta == null) {
+				continue;
+			}
+
+			final Set<IFile> changed = new HashSet<IFile>();
+			final boolean[] removed = { false };
+			try {
+				projectDelta.accept(new IResourceDeltaVisitor() {
+					public boolean visit(IResourceDelta delta) throws CoreException {
+						IResource resource = delta.getResource();
+						if (resource.getType() == IResource.FILE) {
+							if (delta.getKind() == IResourceDelta.REMOVED) {
+								removed[0] = true;
+							}
+							else if (delta.getKind() == IResourceDelta.ADDED
+									|| (delta.getFlags() & IResourceDelta.CONTENT) != 0) {
+								changed.add((IFile) resource);
+							}
+							return false;
+						}
+						return !resource.isTeamPrivateMember();
+					}
+				});
+			}
+			catch (CoreException e) {
+				CloudFoundryPlugin.log(e);
+				continue;
+			}
+			if (!changed.isEmpty() || removed[0]) {
+				getJob(appName).changed(changed, removed[0]);
+			}
+		}
+	}
+
+	protected synchronized DeployJob getJob(String appName) {
+		DeployJob job = jobs.get(appName);
+		if (job == null) {
+			job = new DeployJob(appName);
+			jobs.put(appName, job);
+		}
+		return job;
+	}
+
+	/**
+	 * Pushes the changes of an application and restarts it. Running instances
+	 * only serve pushed resources once the application is staged again, so
+	 * the application is restarted whatever changed.
+	 * @param appName deployed application name
+	 * @param changed files changed since the last push
+	 * @param removed true if files were removed since the last push
+	 * @throws CoreException if the push failed
+	 */
+	protected void deploy(String appName, Set<IFile> changed, boolean removed, IProgressMonitor monitor)
+			throws CoreException {
+		CloudFoundryServer cloudServer = behaviour.getCloudFoundryServer();
+		CloudFoundryApplicationModule appModule = cloudServer.getExistingCloudModule(appName);
+		if (!cloudServer.isConnected() || appModule == null || appModule.getApplication() == null
+				|| appModule.getLocalModule() == null) {
+			return;
+		}
+		IModule[] modules = new IModule[] { appModule.getLocalModule() };
+
+		// Only files that are part of the application are pushed, e.g.
+		// build output rather than sources
+		IModuleResource[] resources = ((Server) behaviour.getServer()).getResources(modules);
+		if (!removed && !containsChanged(resources, changed)) {
+			return;
+		}
+
+		if (CloudFoundryPlugin.isTracing()) {
+			List<String> changedNames = new ArrayList<String>();
+			collectChangedNames(resources, changed, changedNames);
+			CloudFoundryPlugin.trace("Continuous deploy of " + appName + ": " + changedNames + " changed");
+		}
+		behaviour.getUpdateRestartOperation(modules, true).run(monitor);
+	}
+
+	private boolean containsChanged(IModuleResource[] resources, Set<IFile> changed) {
+		for (IModuleResource resource : resources) {
+			if (resource instanceof IModuleFolder) {
+				if (containsChanged(((IModuleFolder) resource).members(), changed)) {
+					return true;
+				}
+			}
+			else if (resource instanceof IModuleFile) {
+				IFile file = (IFile) resource.getAdapter(IFile.class);
+				if (file != null && changed.contains(file)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void collectChangedNames(IModuleResource[] resources, Set<IFile> changed, List<String> changedNames) {
+		for (IModuleResource resource : resources) {
+			if (resource instanceof IModuleFolder) {
+				collectChangedNames(((IModuleFolder) resource).members(), changed, changedNames);
+			}
+			else if (resource instanceof IModuleFile) {
+				IFile file = (IFile) resource.getAdapter(IFile.class);
+				if (file != null && changed.contains(file)) {
+					changedNames.add(CloudUtil.getZipRelativeName(resource));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return time in milliseconds without further changes after which
+	 * changes are pushed
+	 */
+	protected long getQuietPeriod() {
+		return QUIET_PERIOD;
+	}
+
+	/**
+	 * @return policy that determines when failed pushes are attempted again
+	 */
+	protected RetryPolicy getRetryPolicy() {
+		return RETRY_POLICY;
+	}
+
+	private ServerData getServerData() {
+		return CloudFoundryPlugin.getModuleCache().getData(behaviour.getServer());
+	}
+
+	private synchronized void addListener() {
+		if (!listening) {
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+			listening = true;
+		}
+	}
+
+	private synchronized void removeListener() {
+		if (listening) {
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+			listening = false;
+		}
+	}
+
+	/**
+	 * Collects the changes of one application and pushes them once no
+	 * further change occurred for the quiet period.
+	 */
+	public class DeployJob extends Job {
+
+		private final String appName;
+
+		private final Set<IFile> changed = new HashSet<IFile>();
+
+		private boolean removed;
+
+		private long lastChange;
+
+		/**
+		 * Attempts since the last successful push, or null if the last push
+		 * succeeded.
+		 */
+		private RetryPolicy.Execution retries;
+
+		public DeployJob(String appName) {
+			super("Continuous deploy of " + appName);
+			this.appName = appName;
+			setSystem(true);
+		}
+
+		/**
+		 * Adds changes to push, and cancels a push that is in progress, as it
+		 * is superseded by the push of all changes.
+		 */
+		public void changed(Set<IFile> files, boolean filesRemoved) {
+			synchronized (this) {
+				changed.addAll(files);
+				removed |= filesRemoved;
+				lastChange = System.currentTimeMillis();
+			}
+			if (getState() == RUNNING) {
+				cancel();
+			}
+			schedule(getQuietPeriod());
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			Set<IFile> files;
+			boolean filesRemoved;
+			synchronized (this) {
+				long wait = lastChange + getQuietPeriod() - System.currentTimeMillis();
+				if (wait > 0) {
+					schedule(wait);
+					return Status.OK_STATUS;
+				}
+				files = new HashSet<IFile>(changed);
+				filesRemoved = removed;
+				changed.clear();
+				removed = false;
+			}
+
+			boolean pushed = false;
+			long retryDelay = -1;
+			try {
+				deploy(appName, files, filesRemoved, monitor);
+				pushed = !monitor.isCanceled();
+			}
+			catch (OperationCanceledException e) {
+				// Superseded by a push of further changes
+			}
+			catch (CoreException e) {
+				CloudFoundryPlugin.logError(e);
+				retryDelay = getRetryDelay(e);
+			}
+			finally {
+				synchronized (this) {
+					if (pushed) {
+						retries = null;
+					}
+					else {
+						// Changes that were not pushed are pushed by the next
+						// attempt, together with any further changes
+						changed.addAll(files);
+						removed |= filesRemoved;
+					}
+				}
+			}
+			// A cancelled job is either disabled or already rescheduled for
+			// further changes
+			if (retryDelay >= 0 && !monitor.isCanceled()) {
+				schedule(retryDelay);
+			}
+			return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+
+		/**
+		 * @return time in milliseconds before a failed push is attempted
+		 * again, or -1 if its changes are only pushed with the next changes
+		 */
+		private synchronized long getRetryDelay(CoreException error) {
+			if (retries == null) {
+				retries = getRetryPolicy().newExecution();
+			}
+			long delay = retries.getRetryDelay(error);
+			if (delay < 0) {
+				retries = null;
+			}
+			return delay;
+		}
+	}
+}
@@ -26,8 +26,9 @@ public abstract class DeploymentInfoWorkingCopy extends ApplicationDeploymentInf
 		super(appModule.getDeployedApplicationName());
 		this.appModule = appModule;
 
-		if (appModule.getDeploymentInfo() != null) {
-			setInfo(appModule.getDeploymentInfo());
+		ApplicationDeploymentInfo info = appModule.getDeploymentInfo();
+		if (info != null) {
+			setInfo(info);
 		}
 		else {
 			setInfo(appModule.getDefaultDeploymentInfo());
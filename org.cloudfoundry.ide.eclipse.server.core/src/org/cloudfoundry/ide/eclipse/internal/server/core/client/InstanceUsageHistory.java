@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+/**
+ * Fixed-size history of resource usage samples for one application instance.
+ * Samples are kept in primitive ring buffers, so recording a sample does not
+ * allocate. Once the history is full, the oldest sample is overwritten.
+ * <p/>
+ * Memory and disk usage are recorded in bytes, and CPU usage in percent.
+ */
+public class InstanceUsageHistory {
+
+	public enum Metric {
+		CPU("CPU"),
+
+		MEMORY("Memory"),
+
+		DISK("Disk");
+
+		private final String label;
+
+		private Metric(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	public static final int DEFAULT_CAPACITY = 120;
+
+	private final String appName;
+
+	private final String instanceId;
+
+	private final long[] times;
+
+	private final double[][] values;
+
+	private int next;
+
+	private int size;
+
+	public InstanceUsageHistory(String appName, String instanceId) {
+		this(appName, instanceId, DEFAULT_CAPACITY);
+	}
+
+	public InstanceUsageHistory(String appName, String instanceId, int capacity) {
+		this.appName = appName;
+		this.instanceId = instanceId;
+		int actualCapacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+		this.times = new long[actualCapacity];
+		this.values = new double[Metric.values().length][actualCapacity];
+	}
+
+	public String getAppName() {
+		return appName;
+	}
+
+	public String getInstanceId() {
+		return instanceId;
+	}
+
+	public int getCapacity() {
+		return times.length;
+	}
+
+	public synchronized void add(long time, double cpu, double memory, double disk) {
+		times[next] = time;
+		values[Metric.CPU.ordinal()][next] = cpu;
+		values[Metric.MEMORY.ordinal()][next] = memory;
+		values[Metric.DISK.ordinal()][next] = disk;
+		next = (next + 1) % times.length;
+		if (size < times.length) {
+			size++;
+		}
+	}
+
+	/**
+	 *
+	 * @return number of samples currently recorded
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @return non-null copy of the sample times, oldest first
+	 */
+	public synchronized long[] getTimes() {
+		long[] copy = new long[size];
+		int start = getOldestIndex();
+		for (int i = 0; i < size; i++) {
+			copy[i] = times[(start + i) % times.length];
+		}
+		return copy;
+	}
+
+	/**
+	 *
+	 * @return non-null copy of the recorded values of the given metric, oldest
+	 * first
+	 */
+	public synchronized double[] getValues(Metric metric) {
+		double[] source = values[metric.ordinal()];
+		double[] copy = new double[size];
+		int start = getOldestIndex();
+		for (int i = 0; i < size; i++) {
+			copy[i] = source[(start + i) % source.length];
+		}
+		return copy;
+	}
+
+	/**
+	 *
+	 * @return most recent value of the given metric, or 0 if no samples are
+	 * recorded
+	 */
+	public synchronized double getLatest(Metric metric) {
+		if (size == 0) {
+			return 0;
+		}
+		return values[metric.ordinal()][getLatestIndex()];
+	}
+
+	/**
+	 *
+	 * @return time of the most recent sample in milliseconds since the epoch,
+	 * or -1 if no samples are recorded
+	 */
+	public synchronized long getLatestTime() {
+		if (size == 0) {
+			return -1;
+		}
+		return times[getLatestIndex()];
+	}
+
+	/**
+	 *
+	 * @return largest recorded value of the given metric, or 0 if no samples
+	 * are recorded
+	 */
+	public synchronized double getMax(Metric metric) {
+		double[] source = values[metric.ordinal()];
+		double max = 0;
+		int start = getOldestIndex();
+		for (int i = 0; i < size; i++) {
+			max = Math.max(max, source[(start + i) % source.length]);
+		}
+		return max;
+	}
+
+	private int getOldestIndex() {
+		return size < times.length ? 0 : next;
+	}
+
+	private int getLatestIndex() {
+		return (next - 1 + times.length) % times.length;
+	}
+
+	public String toString() {
+		return appName + '#' + instanceId;
+	}
+}
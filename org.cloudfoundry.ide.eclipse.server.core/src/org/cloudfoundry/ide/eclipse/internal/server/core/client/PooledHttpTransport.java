@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.cloudfoundry.client.lib.CloudFoundryClient;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.HttpProxyConfiguration;
+import org.cloudfoundry.client.lib.rest.CloudControllerClientImpl;
+import org.cloudfoundry.client.lib.util.RestUtil;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.CommonsClientHttpRequestFactory;
+
+/**
+ * HTTP transport shared by all clients created by the
+ * {@link CloudFoundryClientFactory}. All requests go through a single pool of
+ * persistent (keep-alive) connections, rather than a pool per client that is
+ * discarded each time the client's proxy settings are updated.
+ * <p/>
+ * The maximum number of connections per route (host and proxy) and in total
+ * can be set with the {@link #MAX_CONNECTIONS_PER_ROUTE_PROPERTY} and
+ * {@link #MAX_CONNECTIONS_PROPERTY} system properties. As most requests go to
+ * the cloud controller of a few servers, the limit per route is what bounds
+ * the number of concurrent requests. Requests wait for a free connection when
+ * the limit is reached, for at most the time set with the
+ * {@link #ACQUISITION_TIMEOUT_PROPERTY} system property, after which they fail
+ * rather than hang. Connections that stay idle for longer than
+ * {@link #IDLE_TIMEOUT} are closed in the background.
+ * <p/>
+ * The number of requests served by a pooled connection and the number of new
+ * connections opened are recorded, to check how effective the pool is.
+ */
+public class PooledHttpTransport {
+
+	public static final String MAX_CONNECTIONS_PER_ROUTE_PROPERTY = "org.cloudfoundry.ide.eclipse.http.maxConnectionsPerRoute";
+
+	public static final String MAX_CONNECTIONS_PROPERTY = "org.cloudfoundry.ide.eclipse.http.maxConnections";
+
+	public static final String ACQUISITION_TIMEOUT_PROPERTY = "org.cloudfoundry.ide.eclipse.http.acquisitionTimeout";
+
+	/**
+	 * Enough for the requests of the application operations, stats refreshes
+	 * and console polling of a server that run at the same time.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 50;
+
+	/**
+	 * Default time in milliseconds a request waits for a free connection.
+	 */
+	public static final long DEFAULT_ACQUISITION_TIMEOUT = 30 * 1000;
+
+	/**
+	 * Time in milliseconds after which idle connections are closed.
+	 */
+	public static final long IDLE_TIMEOUT = 60 * 1000;
+
+	/**
+	 * Time in milliseconds between checks for idle connections.
+	 */
+	public static final long CHECK_INTERVAL = 30 * 1000;
+
+	private static PooledHttpTransport transport;
+
+	public static synchronized PooledHttpTransport getDefault() {
+		if (transport == null) {
+			transport = new PooledHttpTransport(Integer.getInteger(MAX_CONNECTIONS_PER_ROUTE_PROPERTY,
+					DEFAULT_MAX_CONNECTIONS_PER_ROUTE), Integer.getInteger(MAX_CONNECTIONS_PROPERTY,
+					DEFAULT_MAX_CONNECTIONS), Long.getLong(ACQUISITION_TIMEOUT_PROPERTY, DEFAULT_ACQUISITION_TIMEOUT));
+		}
+		return transport;
+	}
+
+	private final MeteredConnectionManager connectionManager;
+
+	private final PooledRestUtil restUtil = new PooledRestUtil();
+
+	private final IdleConnectionJob idleConnectionJob = new IdleConnectionJob();
+
+	private final AtomicLong reusedConnections = new AtomicLong();
+
+	private final AtomicLong newConnections = new AtomicLong();
+
+	private final long acquisitionTimeout;
+
+	private boolean installFailed;
+
+	public PooledHttpTransport(int maxConnectionsPerRoute, int maxConnections) {
+		this(maxConnectionsPerRoute, maxConnections, DEFAULT_ACQUISITION_TIMEOUT);
+	}
+
+	/**
+	 * @param maxConnectionsPerRoute maximum number of connections per host
+	 * and proxy
+	 * @param maxConnections maximum number of connections in total
+	 * @param acquisitionTimeout time in milliseconds a request waits for a
+	 * free connection when the maximum is reached. Must be positive.
+	 */
+	public PooledHttpTransport(int maxConnectionsPerRoute, int maxConnections, long acquisitionTimeout) {
+		this.acquisitionTimeout = acquisitionTimeout > 0 ? acquisitionTimeout : DEFAULT_ACQUISITION_TIMEOUT;
+		connectionManager = new MeteredConnectionManager();
+		HttpConnectionManagerParams params = connectionManager.getParams();
+		params.setDefaultMaxConnectionsPerHost(maxConnectionsPerRoute);
+		params.setMaxTotalConnections(maxConnections);
+		// Servers may close keep-alive connections at any time
+		params.setStaleCheckingEnabled(true);
+	}
+
+	/**
+	 * Creates a request factory that uses the shared connection pool. Clients
+	 * using different proxies may share the pool, as connections are pooled
+	 * per route.
+	 * @param proxyConfiguration may be null if no proxy is used
+	 * @return non-null request factory
+	 */
+	public ClientHttpRequestFactory createRequestFactory(HttpProxyConfiguration proxyConfiguration) {
+		HttpClient httpClient = new HttpClient(connectionManager);
+		// Zero would wait forever for a free connection
+		httpClient.getParams().setConnectionManagerTimeout(acquisitionTimeout);
+		if (proxyConfiguration != null) {
+			httpClient.getHostConfiguration().setProxy(proxyConfiguration.getProxyHost(),
+					proxyConfiguration.getProxyPort());
+		}
+		return new CommonsClientHttpRequestFactory(httpClient);
+	}
+
+	/**
+	 * Makes the given client send its requests through the shared connection
+	 * pool, including requests sent after its proxy settings are updated. The
+	 * client library does not allow a transport to be passed to the client,
+	 * so the transport of the client's controller is replaced. If this fails,
+	 * for example with a different version of the client library, the client
+	 * keeps its own transport.
+	 * @param client client to configure. Only {@link CloudFoundryClient} are
+	 * supported.
+	 * @param proxyConfiguration proxy the client uses, may be null
+	 * @return true if the client now uses the shared connection pool
+	 */
+	public boolean install(CloudFoundryOperations client, HttpProxyConfiguration proxyConfiguration) {
+		if (!(client instanceof CloudFoundryClient)) {
+			return false;
+		}
+		synchronized (this) {
+			if (installFailed) {
+				return false;
+			}
+		}
+		try {
+			Field controllerField = CloudFoundryClient.class.getDeclaredField("cc");
+			controllerField.setAccessible(true);
+			Object controller = controllerField.get(client);
+			if (!(controller instanceof CloudControllerClientImpl)) {
+				return false;
+			}
+
+			Field restUtilField = CloudControllerClientImpl.class.getDeclaredField("restUtil");
+			restUtilField.setAccessible(true);
+			restUtilField.set(controller, restUtil);
+
+			// Replaces the client's request factory with one from the
+			// pooled rest util
+			((CloudControllerClientImpl) controller).updateHttpProxyConfiguration(proxyConfiguration);
+			return true;
+		}
+		catch (NoSuchFieldException e) {
+			logInstallFailure(e);
+		}
+		catch (IllegalAccessException e) {
+			logInstallFailure(e);
+		}
+		catch (SecurityException e) {
+			logInstallFailure(e);
+		}
+		return false;
+	}
+
+	private synchronized void logInstallFailure(Exception e) {
+		// Only log once, as the same failure applies to all clients
+		if (!installFailed) {
+			installFailed = true;
+			CloudFoundryPlugin.logError("Failed to configure pooled HTTP connections for Cloud Foundry clients", e);
+		}
+	}
+
+	/**
+	 *
+	 * @return number of requests served by a connection that was already open
+	 */
+	public long getReusedConnectionCount() {
+		return reusedConnections.get();
+	}
+
+	/**
+	 *
+	 * @return number of requests that required a new connection
+	 */
+	public long getNewConnectionCount() {
+		return newConnections.get();
+	}
+
+	/**
+	 *
+	 * @return number of open connections in the pool, whether in use or idle
+	 */
+	public int getConnectionsInPool() {
+		return connectionManager.getConnectionsInPool();
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return connectionManager.getParams().getDefaultMaxConnectionsPerHost();
+	}
+
+	public int getMaxConnections() {
+		return connectionManager.getParams().getMaxTotalConnections();
+	}
+
+	/**
+	 *
+	 * @return time in milliseconds a request waits for a free connection
+	 */
+	public long getAcquisitionTimeout() {
+		return acquisitionTimeout;
+	}
+
+	/**
+	 * Closes all pooled connections and stops closing idle connections in the
+	 * background.
+	 */
+	public void dispose() {
+		idleConnectionJob.cancel();
+		connectionManager.shutdown();
+	}
+
+	/**
+	 * Closes connections that have been idle for longer than
+	 * {@link #IDLE_TIMEOUT}.
+	 * @return true if connections remain in the pool
+	 */
+	protected boolean closeIdleConnections() {
+		connectionManager.closeIdleConnections(IDLE_TIMEOUT);
+		connectionManager.deleteClosedConnections();
+		return connectionManager.getConnectionsInPool() > 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Reused connections: " + getReusedConnectionCount() + ", new connections: " + getNewConnectionCount()
+				+ ", connections in pool: " + getConnectionsInPool();
+	}
+
+	/**
+	 * Connection manager that records whether connections handed out to
+	 * requests were already open.
+	 */
+	private class MeteredConnectionManager extends MultiThreadedHttpConnectionManager {
+
+		@Override
+		public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+				throws ConnectionPoolTimeoutException {
+			HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+			if (connection.isOpen()) {
+				reusedConnections.incrementAndGet();
+			}
+			else {
+				newConnections.incrementAndGet();
+			}
+			if (idleConnectionJob.getState() == Job.NONE) {
+				idleConnectionJob.schedule(CHECK_INTERVAL);
+			}
+			return connection;
+		}
+	}
+
+	private class PooledRestUtil extends RestUtil {
+
+		@Override
+		public ClientHttpRequestFactory createRequestFactory(HttpProxyConfiguration httpProxyConfiguration) {
+			return PooledHttpTransport.this.createRequestFactory(httpProxyConfiguration);
+		}
+	}
+
+	private class IdleConnectionJob extends Job {
+
+		public IdleConnectionJob() {
+			super("Closing idle Cloud Foundry connections");
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			if (closeIdleConnections() && !monitor.isCanceled()) {
+				schedule(CHECK_INTERVAL);
+			}
+			return Status.OK_STATUS;
+		}
+	}
+}
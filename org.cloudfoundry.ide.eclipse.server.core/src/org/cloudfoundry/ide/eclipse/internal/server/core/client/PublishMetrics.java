@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and counters recorded while an application is pushed, started or
+ * restarted. Durations are accumulated per {@link Phase}, so a phase that is
+ * reattempted (e.g. after a login failure) reports the total time spent in
+ * all attempts.
+ * <p/>
+ * Values may be recorded from different threads while the publish operation
+ * is running. Once the operation completes, the metrics are no longer
+ * modified.
+ */
+public class PublishMetrics {
+
+	public enum Phase {
+		ARCHIVE("Archive generation"),
+
+		SHA1("SHA-1 computation"),
+
+		RESOURCE_MATCH("Resource match"),
+
+		PARTIAL_WAR("Partial war generation"),
+
+		UPLOAD("Upload"),
+
+		STAGING("Staging"),
+
+		WAIT_FOR_START("Waiting for start");
+
+		private final String label;
+
+		private Phase(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	private final String appName;
+
+	private final long startTime;
+
+	private final long startNanos;
+
+	private final AtomicLong[] phaseNanos = new AtomicLong[Phase.values().length];
+
+	private final AtomicLong bytesHashed = new AtomicLong();
+
+	private final AtomicLong bytesUploaded = new AtomicLong();
+
+	private final AtomicInteger filesSkipped = new AtomicInteger();
+
+	private volatile long totalNanos = -1;
+
+	private volatile boolean successful;
+
+	public PublishMetrics(String appName) {
+		this.appName = appName;
+		this.startTime = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+		for (int i = 0; i < phaseNanos.length; i++) {
+			phaseNanos[i] = new AtomicLong();
+		}
+	}
+
+	public String getAppName() {
+		return appName;
+	}
+
+	/**
+	 *
+	 * @return time when the publish operation started, in milliseconds since
+	 * the epoch.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Adds the time elapsed since the given start time, as obtained from
+	 * {@link System#nanoTime()}, to the given phase.
+	 */
+	public void addPhaseTime(Phase phase, long startNanos) {
+		addPhaseNanos(phase, System.nanoTime() - startNanos);
+	}
+
+	public void addPhaseNanos(Phase phase, long nanos) {
+		if (nanos > 0) {
+			phaseNanos[phase.ordinal()].addAndGet(nanos);
+		}
+	}
+
+	public long getPhaseNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()].get();
+	}
+
+	public long getPhaseMillis(Phase phase) {
+		return getPhaseNanos(phase) / 1000000;
+	}
+
+	public void addBytesHashed(long bytes) {
+		if (bytes > 0) {
+			bytesHashed.addAndGet(bytes);
+		}
+	}
+
+	public long getBytesHashed() {
+		return bytesHashed.get();
+	}
+
+	public void addBytesUploaded(long bytes) {
+		if (bytes > 0) {
+			bytesUploaded.addAndGet(bytes);
+		}
+	}
+
+	/**
+	 *
+	 * @return uncompressed size of the resources uploaded to the server
+	 */
+	public long getBytesUploaded() {
+		return bytesUploaded.get();
+	}
+
+	/**
+	 * Records a file whose SHA-1 digest and size were obtained from the
+	 * deployed resources cache rather than computed.
+	 */
+	public void incrementFilesSkipped() {
+		filesSkipped.incrementAndGet();
+	}
+
+	public int getFilesSkipped() {
+		return filesSkipped.get();
+	}
+
+	/**
+	 * Marks the publish operation as completed.
+	 * @param successful true if the application was published, and started
+	 * if requested, without errors.
+	 */
+	public void complete(boolean successful) {
+		this.successful = successful;
+		this.totalNanos = System.nanoTime() - startNanos;
+	}
+
+	public boolean isCompleted() {
+		return totalNanos >= 0;
+	}
+
+	public boolean isSuccessful() {
+		return successful;
+	}
+
+	/**
+	 *
+	 * @return total duration of the publish operation in milliseconds, or the
+	 * time elapsed so far if it has not completed yet.
+	 */
+	public long getTotalMillis() {
+		long nanos = totalNanos >= 0 ? totalNanos : System.nanoTime() - startNanos;
+		return nanos / 1000000;
+	}
+
+	/**
+	 *
+	 * @return true if time was recorded for at least one phase
+	 */
+	public boolean hasPhases() {
+		for (AtomicLong nanos : phaseNanos) {
+			if (nanos.get() > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @return multi-line, human-readable summary of the metrics. Phases in
+	 * which no time was spent are omitted.
+	 */
+	public String getSummary() {
+		StringBuilder summary = new StringBuilder();
+		summary.append("Publish summary for ").append(appName).append(": ").append(getTotalMillis()).append(" ms");
+		if (isCompleted() && !successful) {
+			summary.append(" (failed)");
+		}
+		summary.append('\n');
+		for (Phase phase : Phase.values()) {
+			long nanos = getPhaseNanos(phase);
+			if (nanos > 0) {
+				summary.append("  ").append(phase.getLabel()).append(": ").append(nanos / 1000000).append(" ms")
+						.append('\n');
+			}
+		}
+		summary.append("  Bytes hashed: ").append(getBytesHashed()).append('\n');
+		summary.append("  Bytes uploaded: ").append(getBytesUploaded()).append('\n');
+		summary.append("  Files skipped by cache: ").append(getFilesSkipped()).append('\n');
+		return summary.toString();
+	}
+
+	public String toString() {
+		return getSummary();
+	}
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Keeps the metrics of the most recent publish operations in a server. Oldest
+ * metrics are discarded once the history is full.
+ */
+public class PublishMetricsHistory {
+
+	public static final int DEFAULT_SIZE = 20;
+
+	private final LinkedList<PublishMetrics> history = new LinkedList<PublishMetrics>();
+
+	private final int size;
+
+	public PublishMetricsHistory() {
+		this(DEFAULT_SIZE);
+	}
+
+	public PublishMetricsHistory(int size) {
+		this.size = size > 0 ? size : DEFAULT_SIZE;
+	}
+
+	public synchronized void add(PublishMetrics metrics) {
+		if (metrics == null) {
+			return;
+		}
+		history.addFirst(metrics);
+		while (history.size() > size) {
+			history.removeLast();
+		}
+	}
+
+	/**
+	 *
+	 * @return non-null copy of the recorded metrics, most recent first.
+	 */
+	public synchronized List<PublishMetrics> getMetrics() {
+		return new ArrayList<PublishMetrics>(history);
+	}
+
+	/**
+	 *
+	 * @return most recent metrics for the given application, or null if none
+	 * are recorded.
+	 */
+	public synchronized PublishMetrics getLatest(String appName) {
+		for (PublishMetrics metrics : history) {
+			if (metrics.getAppName() != null && metrics.getAppName().equals(appName)) {
+				return metrics;
+			}
+		}
+		return null;
+	}
+
+	public synchronized void clear() {
+		history.clear();
+	}
+}
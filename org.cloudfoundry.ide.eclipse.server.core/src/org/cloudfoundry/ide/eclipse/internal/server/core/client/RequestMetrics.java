@@ -0,0 +1,636 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Records the latency, failures, retries and transferred bytes of the
+ * requests sent by a server behaviour, per operation and application.
+ * Recording is thread-safe and cheap enough to be done for every request:
+ * counters are striped across threads, and latencies are kept in a histogram
+ * with fixed buckets rather than as individual samples.
+ * <p/>
+ * Each request records both its total duration and the time spent in client
+ * calls, so that time spent in the plugin (e.g. logging in, updating server
+ * state) can be told apart from time spent waiting for the Cloud Controller.
+ * Failures are classified as network, Cloud Controller or plugin errors.
+ * <p/>
+ * The number of operation and application pairs is bounded, so that metrics
+ * of applications that are deleted or renamed do not accumulate. When the
+ * bound is exceeded, the metrics of the application whose requests were
+ * recorded least recently are discarded. Metrics of requests that are not
+ * specific to an application are always kept.
+ * <p/>
+ * Recorded metrics can be read at any time through a {@link Snapshot}.
+ */
+public class RequestMetrics {
+
+	public enum ErrorCategory {
+		/**
+		 * The Cloud Controller could not be reached, or the connection failed.
+		 */
+		NETWORK,
+		/**
+		 * The Cloud Controller returned an error.
+		 */
+		CONTROLLER,
+		/**
+		 * Any other error, raised by the plugin or the client library.
+		 */
+		PLUGIN,
+		/**
+		 * The request was canceled.
+		 */
+		CANCELED
+	}
+
+	/**
+	 * Upper bounds in milliseconds of the latency histogram buckets. Requests
+	 * that take longer fall in a last, unbounded bucket.
+	 */
+	static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000,
+			100000, 200000, 500000 };
+
+	/**
+	 * Default maximum number of operation and application pairs for which
+	 * metrics are kept.
+	 */
+	public static final int DEFAULT_MAX_APPLICATION_METRICS = 1000;
+
+	private static final int DEFAULT_STRIPES = getStripes(Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Operation names of request classes. Kept per instance, so that the
+	 * classes are not referenced once the server behaviour is disposed.
+	 */
+	private final ConcurrentMap<Class<?>, String> operationNames = new ConcurrentHashMap<Class<?>, String>();
+
+	private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+
+	private final AtomicInteger applicationMetricsCount = new AtomicInteger();
+
+	private final Object evictionLock = new Object();
+
+	private final int maxApplicationMetrics;
+
+	private volatile long since = System.currentTimeMillis();
+
+	public RequestMetrics() {
+		this(DEFAULT_MAX_APPLICATION_METRICS);
+	}
+
+	/**
+	 * @param maxApplicationMetrics maximum number of operation and
+	 * application pairs for which metrics are kept
+	 */
+	public RequestMetrics(int maxApplicationMetrics) {
+		this.maxApplicationMetrics = maxApplicationMetrics > 0 ? maxApplicationMetrics
+				: DEFAULT_MAX_APPLICATION_METRICS;
+	}
+
+	/**
+	 * Records a completed request.
+	 * @param operation name of the operation, e.g. the behaviour method that
+	 * sent the request
+	 * @param appName application the request is for, or null if it is not
+	 * specific to an application
+	 * @param totalNanos total duration of the request
+	 * @param clientNanos time spent in client calls, including retries
+	 * @param retries number of times the client calls were attempted again
+	 * @param bytes number of bytes sent or received, if known
+	 * @param error error that made the request fail, or null if it succeeded
+	 */
+	public void record(String operation, String appName, long totalNanos, long clientNanos, int retries,
+			long bytes, Throwable error) {
+		String key = appName != null ? operation + '\u0000' + appName : operation;
+		OperationMetrics metrics = operations.get(key);
+		if (metrics == null) {
+			metrics = new OperationMetrics(operation, appName);
+			OperationMetrics existing = operations.putIfAbsent(key, metrics);
+			if (existing != null) {
+				metrics = existing;
+			}
+			else if (appName != null && applicationMetricsCount.incrementAndGet() > maxApplicationMetrics) {
+				evict(key);
+			}
+		}
+		metrics.record(totalNanos, clientNanos, retries, bytes, error != null ? getErrorCategory(error) : null);
+	}
+
+	/**
+	 *
+	 * @return non-null copy of the metrics recorded so far, ordered by
+	 * operation and application name
+	 */
+	public Snapshot getSnapshot() {
+		List<OperationSnapshot> snapshots = new ArrayList<OperationSnapshot>();
+		for (OperationMetrics metrics : operations.values()) {
+			snapshots.add(metrics.getSnapshot());
+		}
+		Collections.sort(snapshots, new Comparator<OperationSnapshot>() {
+			public int compare(OperationSnapshot snapshot1, OperationSnapshot snapshot2) {
+				int result = snapshot1.getOperation().compareTo(snapshot2.getOperation());
+				if (result != 0) {
+					return result;
+				}
+				String app1 = snapshot1.getAppName() != null ? snapshot1.getAppName() : "";
+				String app2 = snapshot2.getAppName() != null ? snapshot2.getAppName() : "";
+				return app1.compareTo(app2);
+			}
+		});
+		return new Snapshot(since, System.currentTimeMillis(), snapshots);
+	}
+
+	/**
+	 * Discards all recorded metrics.
+	 */
+	public void reset() {
+		synchronized (evictionLock) {
+			operations.clear();
+			applicationMetricsCount.set(0);
+		}
+		since = System.currentTimeMillis();
+	}
+
+	/**
+	 * Discards the metrics of the applications whose requests were recorded
+	 * least recently, other than the given key being added, until the number
+	 * of operation and application pairs is within the bound. The pairs are
+	 * counted again, so that a count left inaccurate by a concurrent reset is
+	 * corrected.
+	 */
+	private void evict(String current) {
+		synchronized (evictionLock) {
+			while (true) {
+				int count = 0;
+				String leastRecent = null;
+				long leastRecorded = Long.MAX_VALUE;
+				for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+					OperationMetrics metrics = entry.getValue();
+					if (metrics.appName == null) {
+						continue;
+					}
+					count++;
+					if (!entry.getKey().equals(current) && metrics.lastRecorded < leastRecorded) {
+						leastRecorded = metrics.lastRecorded;
+						leastRecent = entry.getKey();
+					}
+				}
+				if (count <= maxApplicationMetrics || leastRecent == null) {
+					applicationMetricsCount.set(count);
+					return;
+				}
+				operations.remove(leastRecent);
+			}
+		}
+	}
+
+	/**
+	 * Determines whether an error was caused by the network, the Cloud
+	 * Controller or the plugin, by looking at the error and its causes.
+	 */
+	public static ErrorCategory getErrorCategory(Throwable error) {
+		Throwable current = error;
+		// Guard against cause cycles
+		for (int depth = 0; current != null && depth < 20; depth++) {
+			if (current instanceof OperationCanceledException) {
+				return ErrorCategory.CANCELED;
+			}
+			if (current instanceof HttpStatusCodeException) {
+				return ErrorCategory.CONTROLLER;
+			}
+			if (current instanceof IOException || current instanceof ResourceAccessException) {
+				return ErrorCategory.NETWORK;
+			}
+			Throwable cause = current.getCause();
+			if (cause == null && current instanceof CoreException) {
+				cause = ((CoreException) current).getStatus().getException();
+			}
+			current = cause != current ? cause : null;
+		}
+		return ErrorCategory.PLUGIN;
+	}
+
+	/**
+	 * Returns a name for the operation performed by requests of the given
+	 * class. Requests are usually anonymous classes declared in the method
+	 * that sends them, in which case the method name is used.
+	 * @param requestClass
+	 * @param label used if no name can be derived from the class, may be null
+	 * @return non-null operation name
+	 */
+	public String getOperationName(Class<?> requestClass, String label) {
+		String name = operationNames.get(requestClass);
+		if (name == null) {
+			Method method = requestClass.getEnclosingMethod();
+			name = method != null ? method.getName() : requestClass.getSimpleName();
+			if (name.length() == 0) {
+				name = label != null && label.length() > 0 ? label : requestClass.getName();
+			}
+			operationNames.put(requestClass, name);
+		}
+		return name;
+	}
+
+	static int getBucket(long millis) {
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			if (millis <= BUCKET_BOUNDS[i]) {
+				return i;
+			}
+		}
+		return BUCKET_BOUNDS.length;
+	}
+
+	static int getStripes(int processors) {
+		int stripes = 1;
+		while (stripes < processors && stripes < 64) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+
+	/**
+	 * Counter that spreads updates from different threads over separate
+	 * cells, so that threads updating it concurrently rarely contend on the
+	 * same cell. Reading the counter sums all cells.
+	 */
+	public static class StripedCounter {
+
+		/**
+		 * Cells are spaced out so that each stripe is on its own cache line.
+		 */
+		private static final int PADDING = 8;
+
+		private final AtomicLongArray cells;
+
+		private final int mask;
+
+		public StripedCounter() {
+			this(DEFAULT_STRIPES);
+		}
+
+		/**
+		 * @param stripes number of stripes, rounded up to a power of two
+		 */
+		public StripedCounter(int stripes) {
+			int size = getStripes(stripes);
+			this.mask = size - 1;
+			this.cells = new AtomicLongArray(size * PADDING);
+		}
+
+		public void add(long delta) {
+			long id = Thread.currentThread().getId();
+			int hash = (int) (id ^ (id >>> 32));
+			hash ^= hash >>> 16;
+			cells.addAndGet((hash & mask) * PADDING, delta);
+		}
+
+		public void increment() {
+			add(1);
+		}
+
+		public long get() {
+			long sum = 0;
+			for (int i = 0; i < cells.length(); i += PADDING) {
+				sum += cells.get(i);
+			}
+			return sum;
+		}
+	}
+
+	private static class OperationMetrics {
+
+		private final String operation;
+
+		private final String appName;
+
+		private final StripedCounter count = new StripedCounter();
+
+		private final StripedCounter retries = new StripedCounter();
+
+		private final StripedCounter bytes = new StripedCounter();
+
+		private final StripedCounter totalNanos = new StripedCounter();
+
+		private final StripedCounter clientNanos = new StripedCounter();
+
+		private final StripedCounter[] errors = new StripedCounter[ErrorCategory.values().length];
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		/**
+		 * Time in milliseconds when a request was last recorded, used to
+		 * discard the metrics of applications that are no longer used.
+		 */
+		private volatile long lastRecorded;
+
+		OperationMetrics(String operation, String appName) {
+			this.operation = operation;
+			this.appName = appName;
+			for (int i = 0; i < errors.length; i++) {
+				errors[i] = new StripedCounter();
+			}
+		}
+
+		void record(long total, long client, int retryCount, long byteCount, ErrorCategory error) {
+			lastRecorded = System.currentTimeMillis();
+			count.increment();
+			totalNanos.add(total);
+			clientNanos.add(client);
+			if (retryCount > 0) {
+				retries.add(retryCount);
+			}
+			if (byteCount > 0) {
+				bytes.add(byteCount);
+			}
+			if (error != null) {
+				errors[error.ordinal()].increment();
+			}
+			buckets.incrementAndGet(getBucket(total / 1000000));
+
+			long max = maxNanos.get();
+			while (total > max && !maxNanos.compareAndSet(max, total)) {
+				max = maxNanos.get();
+			}
+		}
+
+		OperationSnapshot getSnapshot() {
+			long[] errorCounts = new long[errors.length];
+			for (int i = 0; i < errors.length; i++) {
+				errorCounts[i] = errors[i].get();
+			}
+			long[] bucketCounts = new long[buckets.length()];
+			for (int i = 0; i < bucketCounts.length; i++) {
+				bucketCounts[i] = buckets.get(i);
+			}
+			return new OperationSnapshot(operation, appName, count.get(), retries.get(), bytes.get(),
+					totalNanos.get() / 1000000, clientNanos.get() / 1000000, maxNanos.get() / 1000000,
+					errorCounts, bucketCounts);
+		}
+	}
+
+	/**
+	 * Metrics recorded for one operation and application.
+	 */
+	public static class OperationSnapshot {
+
+		private final String operation;
+
+		private final String appName;
+
+		private final long count;
+
+		private final long retries;
+
+		private final long bytes;
+
+		private final long totalMillis;
+
+		private final long clientMillis;
+
+		private final long maxMillis;
+
+		private final long[] errors;
+
+		private final long[] buckets;
+
+		OperationSnapshot(String operation, String appName, long count, long retries, long bytes, long totalMillis,
+				long clientMillis, long maxMillis, long[] errors, long[] buckets) {
+			this.operation = operation;
+			this.appName = appName;
+			this.count = count;
+			this.retries = retries;
+			this.bytes = bytes;
+			this.totalMillis = totalMillis;
+			this.clientMillis = clientMillis;
+			this.maxMillis = maxMillis;
+			this.errors = errors;
+			this.buckets = buckets;
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		/**
+		 * @return application name, or null for requests that are not
+		 * specific to an application
+		 */
+		public String getAppName() {
+			return appName;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getRetries() {
+			return retries;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getTotalMillis() {
+			return totalMillis;
+		}
+
+		/**
+		 * @return time spent in client calls, in milliseconds
+		 */
+		public long getClientMillis() {
+			return clientMillis;
+		}
+
+		/**
+		 * @return time spent in the plugin outside of client calls, in
+		 * milliseconds
+		 */
+		public long getPluginMillis() {
+			return Math.max(0, totalMillis - clientMillis);
+		}
+
+		public long getMaxMillis() {
+			return maxMillis;
+		}
+
+		public long getMeanMillis() {
+			return count > 0 ? totalMillis / count : 0;
+		}
+
+		public long getErrors(ErrorCategory category) {
+			return errors[category.ordinal()];
+		}
+
+		/**
+		 * @return number of failed requests, excluding canceled requests
+		 */
+		public long getFailures() {
+			long failures = 0;
+			for (ErrorCategory category : ErrorCategory.values()) {
+				if (category != ErrorCategory.CANCELED) {
+					failures += errors[category.ordinal()];
+				}
+			}
+			return failures;
+		}
+
+		/**
+		 * Estimates a latency percentile from the histogram. The estimate is
+		 * the upper bound of the bucket that contains the percentile, or the
+		 * maximum latency if it falls in the last bucket.
+		 * @param percentile between 0 and 100
+		 * @return latency in milliseconds
+		 */
+		public long getPercentileMillis(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(percentile / 100 * count);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					return i < BUCKET_BOUNDS.length ? Math.min(BUCKET_BOUNDS[i], maxMillis) : maxMillis;
+				}
+			}
+			return maxMillis;
+		}
+
+		/**
+		 * @return copy of the number of requests per latency bucket, with
+		 * bounds as in {@link RequestMetrics#getBucketBounds()}
+		 */
+		public long[] getBuckets() {
+			return buckets.clone();
+		}
+	}
+
+	/**
+	 * Copy of all recorded metrics at a point in time.
+	 */
+	public static class Snapshot {
+
+		private static final String SEPARATOR = ",";
+
+		private final long since;
+
+		private final long timestamp;
+
+		private final List<OperationSnapshot> operations;
+
+		Snapshot(long since, long timestamp, List<OperationSnapshot> operations) {
+			this.since = since;
+			this.timestamp = timestamp;
+			this.operations = Collections.unmodifiableList(operations);
+		}
+
+		/**
+		 * @return time since when metrics were recorded, in milliseconds
+		 * since the epoch
+		 */
+		public long getSince() {
+			return since;
+		}
+
+		/**
+		 * @return time when the snapshot was taken, in milliseconds since the
+		 * epoch
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * @return non-null, unmodifiable list of metrics per operation and
+		 * application
+		 */
+		public List<OperationSnapshot> getOperations() {
+			return operations;
+		}
+
+		/**
+		 * Exports the snapshot as comma separated values, one line per
+		 * operation and application, preceded by a header line. Times are in
+		 * milliseconds.
+		 */
+		public String toCSV() {
+			StringBuilder csv = new StringBuilder();
+			csv.append("operation,application,count,retries,bytes,total,client,plugin,mean,p50,p90,p99,max");
+			for (ErrorCategory category : ErrorCategory.values()) {
+				csv.append(SEPARATOR).append(category.name().toLowerCase()).append("_errors");
+			}
+			csv.append('\n');
+
+			for (OperationSnapshot operation : operations) {
+				csv.append(escape(operation.getOperation())).append(SEPARATOR);
+				csv.append(operation.getAppName() != null ? escape(operation.getAppName()) : "").append(SEPARATOR);
+				csv.append(operation.getCount()).append(SEPARATOR);
+				csv.append(operation.getRetries()).append(SEPARATOR);
+				csv.append(operation.getBytes()).append(SEPARATOR);
+				csv.append(operation.getTotalMillis()).append(SEPARATOR);
+				csv.append(operation.getClientMillis()).append(SEPARATOR);
+				csv.append(operation.getPluginMillis()).append(SEPARATOR);
+				csv.append(operation.getMeanMillis()).append(SEPARATOR);
+				csv.append(operation.getPercentileMillis(50)).append(SEPARATOR);
+				csv.append(operation.getPercentileMillis(90)).append(SEPARATOR);
+				csv.append(operation.getPercentileMillis(99)).append(SEPARATOR);
+				csv.append(operation.getMaxMillis());
+				for (ErrorCategory category : ErrorCategory.values()) {
+					csv.append(SEPARATOR).append(operation.getErrors(category));
+				}
+				csv.append('\n');
+			}
+			return csv.toString();
+		}
+
+		private static String escape(String value) {
+			if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+				return value;
+			}
+			return '"' + value.replace("\"", "\"\"") + '"';
+		}
+
+		@Override
+		public String toString() {
+			return toCSV();
+		}
+	}
+
+	/**
+	 * @return copy of the upper bounds in milliseconds of the latency
+	 * histogram buckets. The last bucket, which has no upper bound, is not
+	 * included.
+	 */
+	public static long[] getBucketBounds() {
+		return BUCKET_BOUNDS.clone();
+	}
+}
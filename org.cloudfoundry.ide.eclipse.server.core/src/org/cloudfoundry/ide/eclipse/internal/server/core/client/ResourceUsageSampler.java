@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.cloudfoundry.client.lib.domain.ApplicationStats;
+import org.cloudfoundry.client.lib.domain.InstanceStats;
+import org.cloudfoundry.client.lib.domain.InstanceStats.Usage;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryPlugin;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ApplicationStatsCollector.ApplicationInstanceStats;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.InstanceUsageHistory.Metric;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.wst.server.core.IServer;
+
+/**
+ * Periodically samples the resource usage of the instances of a set of watched
+ * applications, and keeps a fixed-size {@link InstanceUsageHistory} per
+ * instance. Sampling only runs while at least one application is watched and
+ * the server is connected.
+ * <p/>
+ * The interval between sampling rounds grows with the number of watched
+ * applications, so that watching a whole space does not flood the server with
+ * stats requests.
+ */
+public class ResourceUsageSampler {
+
+	/**
+	 * Notified on the sampling thread after each sampling round.
+	 */
+	public interface ResourceUsageListener {
+		public void samplesUpdated(ResourceUsageSampler sampler);
+	}
+
+	/**
+	 * Minimum time in milliseconds between two sampling rounds.
+	 */
+	public static final long MIN_INTERVAL = 5000;
+
+	/**
+	 * Maximum time in milliseconds between two sampling rounds.
+	 */
+	public static final long MAX_INTERVAL = 60000;
+
+	/**
+	 * Time in milliseconds added to the interval for each watched application.
+	 */
+	public static final long INTERVAL_PER_APPLICATION = 250;
+
+	private final CloudFoundryServerBehaviour behaviour;
+
+	private final int capacity;
+
+	private final Set<String> watchedApps = new LinkedHashSet<String>();
+
+	private final ConcurrentMap<String, ConcurrentMap<String, InstanceUsageHistory>> histories = new ConcurrentHashMap<String, ConcurrentMap<String, InstanceUsageHistory>>();
+
+	private final List<ResourceUsageListener> listeners = new CopyOnWriteArrayList<ResourceUsageListener>();
+
+	private SamplingJob job;
+
+	public ResourceUsageSampler(CloudFoundryServerBehaviour behaviour) {
+		this(behaviour, InstanceUsageHistory.DEFAULT_CAPACITY);
+	}
+
+	public ResourceUsageSampler(CloudFoundryServerBehaviour behaviour, int capacity) {
+		this.behaviour = behaviour;
+		this.capacity = capacity;
+	}
+
+	public void addListener(ResourceUsageListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(ResourceUsageListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Replaces the set of watched applications, and starts sampling if it is
+	 * not already running. Histories of applications that are no longer
+	 * watched are discarded.
+	 * @param appNames deployed names of the applications to watch. If empty,
+	 * sampling stops.
+	 */
+	public void watch(Collection<String> appNames) {
+		Set<String> watched;
+		synchronized (watchedApps) {
+			watchedApps.clear();
+			watchedApps.addAll(appNames);
+			watched = new HashSet<String>(watchedApps);
+		}
+		histories.keySet().retainAll(watched);
+
+		if (watched.isEmpty()) {
+			stop();
+		}
+		else {
+			getJob().reschedule(0);
+		}
+	}
+
+	/**
+	 * Stops sampling and discards all recorded histories.
+	 */
+	public void stop() {
+		synchronized (watchedApps) {
+			watchedApps.clear();
+		}
+		SamplingJob currentJob;
+		synchronized (this) {
+			currentJob = job;
+		}
+		if (currentJob != null) {
+			currentJob.stop();
+		}
+		histories.clear();
+	}
+
+	/**
+	 *
+	 * @return non-null copy of the watched application names
+	 */
+	public List<String> getWatchedApplications() {
+		synchronized (watchedApps) {
+			return new ArrayList<String>(watchedApps);
+		}
+	}
+
+	/**
+	 *
+	 * @return time in milliseconds between sampling rounds for the current
+	 * number of watched applications
+	 */
+	public long getInterval() {
+		return getInterval(getWatchedApplications().size());
+	}
+
+	public static long getInterval(int watchedApplications) {
+		long interval = watchedApplications * INTERVAL_PER_APPLICATION;
+		return Math.min(MAX_INTERVAL, Math.max(MIN_INTERVAL, interval));
+	}
+
+	/**
+	 *
+	 * @return non-null list of the histories of all sampled instances, ordered
+	 * by application name and instance ID.
+	 */
+	public List<InstanceUsageHistory> getHistories() {
+		List<InstanceUsageHistory> all = new ArrayList<InstanceUsageHistory>();
+		for (Map<String, InstanceUsageHistory> appHistories : histories.values()) {
+			all.addAll(appHistories.values());
+		}
+		Collections.sort(all, new Comparator<InstanceUsageHistory>() {
+			public int compare(InstanceUsageHistory history1, InstanceUsageHistory history2) {
+				int result = history1.getAppName().compareTo(history2.getAppName());
+				return result != 0 ? result : compareInstanceIds(history1.getInstanceId(),
+						history2.getInstanceId());
+			}
+		});
+		return all;
+	}
+
+	/**
+	 *
+	 * @return non-null list of at most the given number of instances with the
+	 * highest latest value of the given metric, highest first.
+	 */
+	public List<InstanceUsageHistory> getTopConsumers(final Metric metric, int count) {
+		if (count <= 0) {
+			return Collections.emptyList();
+		}
+		Comparator<InstanceUsageHistory> ascending = new Comparator<InstanceUsageHistory>() {
+			public int compare(InstanceUsageHistory history1, InstanceUsageHistory history2) {
+				return Double.compare(history1.getLatest(metric), history2.getLatest(metric));
+			}
+		};
+
+		// Keep only the top entries, rather than sorting all instances
+		PriorityQueue<InstanceUsageHistory> top = new PriorityQueue<InstanceUsageHistory>(count, ascending);
+		for (Map<String, InstanceUsageHistory> appHistories : histories.values()) {
+			for (InstanceUsageHistory history : appHistories.values()) {
+				if (history.size() == 0) {
+					continue;
+				}
+				if (top.size() < count) {
+					top.add(history);
+				}
+				else if (ascending.compare(history, top.peek()) > 0) {
+					top.poll();
+					top.add(history);
+				}
+			}
+		}
+
+		List<InstanceUsageHistory> result = new ArrayList<InstanceUsageHistory>(top);
+		Collections.sort(result, Collections.reverseOrder(ascending));
+		return result;
+	}
+
+	/**
+	 * Samples the resource usage of all watched applications once. Errors for
+	 * individual applications, for example if an application is stopped, do
+	 * not prevent other applications from being sampled.
+	 */
+	protected void sample(IProgressMonitor monitor) {
+		// Stats are collected concurrently, and shared with the editor and
+		// debugger if they were collected recently
+		Map<String, ApplicationInstanceStats> collected = behaviour.getApplicationStatsCollector().collectAll(
+				getWatchedApplications(), monitor);
+		for (ApplicationInstanceStats appStats : collected.values()) {
+			// Application may be stopped or deleted if its stats could not be
+			// collected. Keep its history until it is no longer watched.
+			if (appStats.getStatsError() == null) {
+				record(appStats.getAppName(), appStats.getStats());
+			}
+		}
+
+		for (ResourceUsageListener listener : listeners) {
+			try {
+				listener.samplesUpdated(this);
+			}
+			catch (RuntimeException e) {
+				CloudFoundryPlugin.logError(e);
+			}
+		}
+	}
+
+	protected void record(String appName, ApplicationStats stats) {
+		boolean watched;
+		synchronized (watchedApps) {
+			watched = watchedApps.contains(appName);
+		}
+		if (!watched || stats == null || stats.getRecords() == null) {
+			return;
+		}
+
+		ConcurrentMap<String, InstanceUsageHistory> appHistories = histories.get(appName);
+		if (appHistories == null) {
+			appHistories = new ConcurrentHashMap<String, InstanceUsageHistory>();
+			ConcurrentMap<String, InstanceUsageHistory> existing = histories.putIfAbsent(appName, appHistories);
+			if (existing != null) {
+				appHistories = existing;
+			}
+		}
+
+		long time = System.currentTimeMillis();
+		Set<String> sampledInstances = new HashSet<String>();
+		for (InstanceStats instanceStats : stats.getRecords()) {
+			String instanceId = instanceStats.getId();
+			if (instanceId == null) {
+				continue;
+			}
+			sampledInstances.add(instanceId);
+
+			InstanceUsageHistory history = appHistories.get(instanceId);
+			if (history == null) {
+				history = new InstanceUsageHistory(appName, instanceId, capacity);
+				appHistories.put(instanceId, history);
+			}
+
+			Usage usage = instanceStats.getUsage();
+			if (usage != null) {
+				// Memory usage is reported in kilobytes, disk usage in bytes
+				history.add(time, usage.getCpu(), usage.getMem() * 1024, usage.getDisk());
+			}
+			else {
+				history.add(time, 0, 0, 0);
+			}
+		}
+
+		// Discard instances that no longer exist, e.g. after scaling down
+		appHistories.keySet().retainAll(sampledInstances);
+	}
+
+	protected synchronized SamplingJob getJob() {
+		if (job == null) {
+			job = new SamplingJob();
+		}
+		return job;
+	}
+
+	private static int compareInstanceIds(String id1, String id2) {
+		try {
+			return Integer.valueOf(id1).compareTo(Integer.valueOf(id2));
+		}
+		catch (NumberFormatException e) {
+			return id1.compareTo(id2);
+		}
+	}
+
+	class SamplingJob extends Job {
+
+		private long interval = -1;
+
+		public SamplingJob() {
+			super("Sampling application resource usage");
+			setSystem(true);
+		}
+
+		/**
+		 * Schedules the job after the given delay.
+		 * @param delay if -1, the job is not scheduled any further.
+		 */
+		public void reschedule(long delay) {
+			synchronized (SamplingJob.this) {
+				this.interval = delay;
+				if (delay >= 0) {
+					schedule(delay);
+				}
+			}
+		}
+
+		public void stop() {
+			reschedule(-1);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			if (interval < 0) {
+				return Status.OK_STATUS;
+			}
+
+			try {
+				if (behaviour.getServer().getServerState() == IServer.STATE_STARTED) {
+					sample(monitor);
+				}
+			}
+			catch (OperationCanceledException e) {
+				return Status.CANCEL_STATUS;
+			}
+
+			synchronized (SamplingJob.this) {
+				if (interval >= 0) {
+					interval = getInterval();
+					schedule(interval);
+				}
+			}
+			return Status.OK_STATUS;
+		}
+	}
+}
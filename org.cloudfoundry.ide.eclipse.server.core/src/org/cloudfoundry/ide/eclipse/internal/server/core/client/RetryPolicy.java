@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core.client;
+
+import java.util.Random;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Determines whether and when a failed operation is attempted again. The wait
+ * before each retry grows exponentially from a base interval, up to a maximum
+ * interval, and is randomly shortened by up to a jitter fraction, so that
+ * many clients that failed at the same time (e.g. after a Cloud Controller
+ * outage) do not retry in lockstep.
+ * <p/>
+ * Retries stop when the maximum number of attempts is reached, when the next
+ * retry would start after the deadline, when the retry condition rejects the
+ * error, or when the progress monitor is cancelled.
+ * <p/>
+ * A policy is immutable and may be shared. Each run of an operation uses its
+ * own {@link Execution} to track attempts and the deadline.
+ */
+public class RetryPolicy {
+
+	/**
+	 * Decides whether an error may be retried.
+	 */
+	public interface RetryCondition {
+		public boolean shouldRetry(Throwable error);
+	}
+
+	public static final double DEFAULT_MULTIPLIER = 2;
+
+	public static final double DEFAULT_JITTER = 0.5;
+
+	/**
+	 * Maximum time in milliseconds between checks for cancellation while
+	 * waiting before a retry.
+	 */
+	static final long CANCELLATION_CHECK_INTERVAL = 100;
+
+	private static final Random RANDOM = new Random();
+
+	private final long interval;
+
+	private final long maxInterval;
+
+	private final double multiplier;
+
+	private final double jitter;
+
+	private final int maxAttempts;
+
+	private final long timeout;
+
+	private final RetryCondition condition;
+
+	/**
+	 * @param interval base interval in milliseconds before the first retry
+	 * @param maxInterval maximum interval in milliseconds between retries
+	 * @param multiplier factor by which the interval grows after each retry.
+	 * 1 for a fixed interval.
+	 * @param jitter fraction, between 0 and 1, by which each interval may be
+	 * randomly shortened. 0 for no jitter.
+	 * @param maxAttempts maximum number of attempts, including the first, or
+	 * 0 for no maximum
+	 * @param timeout time in milliseconds from the start of an execution
+	 * after which no more retries are started, or 0 for no deadline
+	 * @param condition errors that may be retried. If null, all errors may
+	 * be retried.
+	 */
+	public RetryPolicy(long interval, long maxInterval, double multiplier, double jitter, int maxAttempts,
+			long timeout, RetryCondition condition) {
+		this.interval = Math.max(0, interval);
+		this.maxInterval = Math.max(this.interval, maxInterval);
+		this.multiplier = Math.max(1, multiplier);
+		this.jitter = Math.min(1, Math.max(0, jitter));
+		this.maxAttempts = Math.max(0, maxAttempts);
+		this.timeout = Math.max(0, timeout);
+		this.condition = condition;
+	}
+
+	/**
+	 * Policy that retries any error with jittered exponential backoff,
+	 * until the given timeout.
+	 */
+	public static RetryPolicy exponential(long interval, long maxInterval, long timeout) {
+		return new RetryPolicy(interval, maxInterval, DEFAULT_MULTIPLIER, DEFAULT_JITTER, 0, timeout, null);
+	}
+
+	/**
+	 * Policy that waits a fixed interval between attempts, without jitter,
+	 * for example to poll for a state change.
+	 * @param maxAttempts maximum number of attempts, including the first.
+	 * Values less than 1 allow a single attempt, so that a fixed policy is
+	 * always bounded.
+	 */
+	public static RetryPolicy fixed(int maxAttempts, long interval) {
+		return new RetryPolicy(interval, interval, 1, 0, Math.max(1, maxAttempts), 0, null);
+	}
+
+	/**
+	 * @return copy of this policy that only retries errors accepted by the
+	 * given condition
+	 */
+	public RetryPolicy retryOn(RetryCondition condition) {
+		return new RetryPolicy(interval, maxInterval, multiplier, jitter, maxAttempts, timeout, condition);
+	}
+
+	/**
+	 * @return copy of this policy with the given deadline
+	 */
+	public RetryPolicy withTimeout(long timeout) {
+		return new RetryPolicy(interval, maxInterval, multiplier, jitter, maxAttempts, timeout, condition);
+	}
+
+	/**
+	 * @return copy of this policy with the given maximum number of attempts
+	 */
+	public RetryPolicy withMaxAttempts(int maxAttempts) {
+		return new RetryPolicy(interval, maxInterval, multiplier, jitter, maxAttempts, timeout, condition);
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public long getMaxInterval() {
+		return maxInterval;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public boolean shouldRetry(Throwable error) {
+		return condition == null || condition.shouldRetry(error);
+	}
+
+	/**
+	 * Starts tracking a run of an operation. The deadline, if any, starts
+	 * now.
+	 */
+	public Execution newExecution() {
+		return new Execution();
+	}
+
+	/**
+	 * Computes the wait before a retry.
+	 * @param baseInterval interval before the first retry, in milliseconds
+	 * @param retry number of retries already made
+	 * @return wait in milliseconds
+	 */
+	public long getDelay(long baseInterval, int retry) {
+		double delay = baseInterval;
+		for (int i = 0; i < retry && delay < maxInterval; i++) {
+			delay *= multiplier;
+		}
+		delay = Math.min(delay, Math.max(baseInterval, maxInterval));
+		return Math.round(delay * (1 - jitter * nextRandom()));
+	}
+
+	/**
+	 * @return random number between 0 (inclusive) and 1 (exclusive) used to
+	 * apply jitter
+	 */
+	protected double nextRandom() {
+		return RANDOM.nextDouble();
+	}
+
+	/**
+	 * Tracks the attempts and deadline of one run of an operation.
+	 */
+	public class Execution {
+
+		private final long deadline;
+
+		private int retries;
+
+		Execution() {
+			this.deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+		}
+
+		/**
+		 * Determines whether the operation should be attempted again after
+		 * the given error, using the policy's base interval.
+		 * @return time to wait in milliseconds before the next attempt, or -1
+		 * if the operation should not be attempted again
+		 */
+		public long getRetryDelay(Throwable error) {
+			return getRetryDelay(error, interval);
+		}
+
+		/**
+		 * Determines whether the operation should be attempted again after
+		 * the given error.
+		 * @param error error thrown by the last attempt. May be null if the
+		 * attempt failed without an error, e.g. if its result was invalid.
+		 * @param baseInterval interval before the first retry, in
+		 * milliseconds, for operations that determine the interval based on
+		 * the error
+		 * @return time to wait in milliseconds before the next attempt, or -1
+		 * if the operation should not be attempted again
+		 */
+		public long getRetryDelay(Throwable error, long baseInterval) {
+			if (error != null && !shouldRetry(error)) {
+				return -1;
+			}
+			if (maxAttempts > 0 && retries + 1 >= maxAttempts) {
+				return -1;
+			}
+			long delay = getDelay(baseInterval, retries);
+			if (deadline != Long.MAX_VALUE && System.currentTimeMillis() + delay > deadline) {
+				return -1;
+			}
+			retries++;
+			return delay;
+		}
+
+		/**
+		 * @return number of retries allowed so far
+		 */
+		public int getRetries() {
+			return retries;
+		}
+
+		/**
+		 * Waits the given time before the next attempt, checking for
+		 * cancellation in the meantime.
+		 * @param delay in milliseconds
+		 * @param monitor may be null
+		 * @return true if the wait completed, false if it was cancelled or
+		 * interrupted and the operation should not be attempted again
+		 */
+		public boolean await(long delay, IProgressMonitor monitor) {
+			long end = System.currentTimeMillis() + delay;
+			long remaining = delay;
+			while (remaining > 0) {
+				if (monitor != null && monitor.isCanceled()) {
+					return false;
+				}
+				try {
+					Thread.sleep(Math.min(remaining, CANCELLATION_CHECK_INTERVAL));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				remaining = end - System.currentTimeMillis();
+			}
+			return monitor == null || !monitor.isCanceled();
+		}
+	}
+}
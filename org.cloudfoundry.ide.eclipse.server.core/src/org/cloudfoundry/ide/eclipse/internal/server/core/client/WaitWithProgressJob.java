@@ -19,6 +19,10 @@ public abstract class WaitWithProgressJob extends AbstractWaitWithProgressJob<Bo
 		super(attempts, sleepTime);
 	}
 
+	public WaitWithProgressJob(RetryPolicy retryPolicy) {
+		super(retryPolicy);
+	}
+
 	@Override
 	protected Boolean runInWait(IProgressMonitor monitor) throws CoreException {
 		boolean result = internalRunInWait(monitor);
@@ -17,6 +17,7 @@ import org.cloudfoundry.client.lib.domain.InstanceInfo;
 import org.cloudfoundry.client.lib.domain.InstancesInfo;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryPlugin;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryServer;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ApplicationStatsCollector.ApplicationInstanceStats;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.WaitWithProgressJob;
 import org.eclipse.core.runtime.CoreException;
@@ -51,8 +52,15 @@ public class CloudFoundryDebugConnection {
 						List<DebugConnectionDescriptor> descriptors = null;
 						try {
 
-							InstancesInfo instancesInfo = cloudFoundryServer.getBehaviour().getInstancesInfo(
-									appModule.getDeployedApplicationName(), monitor);
+							// Instances are polled until they are launched, so
+							// values collected before this attempt are not used
+							ApplicationInstanceStats collected = cloudFoundryServer.getBehaviour()
+									.getApplicationStatsCollector()
+									.collect(appModule.getDeployedApplicationName(), true, monitor);
+							if (collected.getStatsError() != null) {
+								throw collected.getStatsError();
+							}
+							InstancesInfo instancesInfo = collected.getInstancesInfo();
 
 							if (instancesInfo != null) {
 								List<InstanceInfo> infos = instancesInfo.getInstances();
@@ -20,16 +20,16 @@ import org.cloudfoundry.client.lib.CloudFoundryOperations;
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.cloudfoundry.client.lib.domain.CloudSpace;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudErrorUtil;
-import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryLoginHandler;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryPlugin;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryServer;
-import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryServerBehaviour;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryClientPool;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.osgi.util.NLS;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.client.RestClientException;
 
 /**
@@ -43,6 +43,10 @@ import org.springframework.web.client.RestClientException;
  * is missing as a client that requires a CloudSpace has not yet been created,
  * and therefore an actual look-up is required to obtain the CloudSpace based on
  * the org and space names saved as server properties.
+ * <p/>
+ * Authenticated clients are obtained from the {@link CloudFoundryClientPool},
+ * so consecutive look-ups for the same account do not log in again, except
+ * for look-ups that validate the credentials.
  */
 public class CloudSpaceServerLookup {
 
@@ -115,39 +119,27 @@ public class CloudSpaceServerLookup {
 
 	public static CloudOrgsAndSpaces getCloudOrgsAndSpaces(CloudCredentials credentials, String url,
 			IProgressMonitor monitor) throws CoreException {
-		CloudFoundryOperations operations = CloudFoundryServerBehaviour.createClient(url, credentials.getEmail(),
-				credentials.getPassword());
-		try {
-			CloudOrgsAndSpaces orgsSpaces = null;
-			CloudFoundryLoginHandler handler = new CloudFoundryLoginHandler(operations, url);
-			handler.updateProxyInClient(operations);
-
-			// Attempt to log in
-			handler.login(monitor, 5, 5000);
-
-			try {
-				orgsSpaces = getCloudSpace(operations, monitor);
-
-			}
-			catch (CloudFoundryException cfe) {
-				throw CloudErrorUtil.toCoreException(cfe);
-			}
-			catch (RestClientException e) {
-				throw CloudErrorUtil.toCoreException(e);
-			}
-
-			return orgsSpaces;
+		return getCloudOrgsAndSpaces(credentials, url, true, monitor);
+	}
 
-		}
-		catch (CoreException ce) {
-			// Translate the cause to a user friendly message
-			String validationMessage = CloudErrorUtil.getV2ValidationErrorMessage(ce);
-			if (validationMessage != null) {
-				ce = new CoreException(CloudFoundryPlugin.getErrorStatus(validationMessage));
+	/**
+	 * @param credentials
+	 * @param url server URL
+	 * @param pooled false to log in with a new client rather than a pooled
+	 * one, for example when validating the credentials
+	 * @param monitor
+	 * @return orgs and spaces of the account, or null if it has none
+	 * @throws CoreException if the look-up failed
+	 */
+	public static CloudOrgsAndSpaces getCloudOrgsAndSpaces(CloudCredentials credentials, String url, boolean pooled,
+			IProgressMonitor monitor) throws CoreException {
+		return new LookupRequest<CloudOrgsAndSpaces>() {
+			@Override
+			protected CloudOrgsAndSpaces doRun(CloudFoundryOperations operations, IProgressMonitor monitor)
+					throws CoreException {
+				return getCloudSpace(operations, monitor);
 			}
-			throw ce;
-		}
-
+		}.run(url, credentials, pooled, monitor);
 	}
 
 	/**
@@ -163,40 +155,13 @@ public class CloudSpaceServerLookup {
 		// By creating a client without a session cloud space, retrieving a list
 		// of applications will
 		// retrieve all the apps for all the spaces.
-		String url = cloudServer.getUrl();
-		CloudCredentials credentials = getCredentials();
-		CloudFoundryOperations operations = CloudFoundryServerBehaviour.createClient(url, credentials.getEmail(),
-				credentials.getPassword());
-		try {
-			List<CloudApplication> apps = null;
-			CloudFoundryLoginHandler handler = new CloudFoundryLoginHandler(operations, url);
-			handler.updateProxyInClient(operations);
-
-			// Attempt to log in
-			handler.login(monitor, 5, 5000);
-
-			try {
-				apps = operations.getApplications();
-			}
-			catch (CloudFoundryException cfe) {
-				throw CloudErrorUtil.toCoreException(cfe);
-			}
-			catch (RestClientException e) {
-				throw CloudErrorUtil.toCoreException(e);
+		return new LookupRequest<List<CloudApplication>>() {
+			@Override
+			protected List<CloudApplication> doRun(CloudFoundryOperations operations, IProgressMonitor monitor)
+					throws CoreException {
+				return operations.getApplications();
 			}
-
-			return apps;
-
-		}
-		catch (CoreException ce) {
-			// Translate the cause to a user friendly message
-			String validationMessage = CloudErrorUtil.getV2ValidationErrorMessage(ce);
-			if (validationMessage != null) {
-				ce = new CoreException(CloudFoundryPlugin.getErrorStatus(validationMessage));
-			}
-			throw ce;
-		}
-
+		}.run(cloudServer.getUrl(), getCredentials(), true, monitor);
 	}
 
 	private static CloudOrgsAndSpaces getCloudSpace(CloudFoundryOperations operations, IProgressMonitor monitor)
@@ -235,4 +200,57 @@ public class CloudSpaceServerLookup {
 		}
 	}
 
+	/**
+	 * Performs a look-up with a client that is not tied to a cloud space. If a
+	 * pooled client is no longer authorised, for example because the password
+	 * was changed, the look-up is performed once more with a newly logged in
+	 * client.
+	 */
+	private static abstract class LookupRequest<T> {
+
+		public T run(String url, CloudCredentials credentials, boolean pooled, IProgressMonitor monitor)
+				throws CoreException {
+			CloudFoundryClientPool pool = CloudFoundryClientPool.getDefault();
+			try {
+				if (!pooled) {
+					return doRun(pool.login(url, credentials, monitor), monitor);
+				}
+				try {
+					return doRun(pool.getClient(url, credentials, monitor), monitor);
+				}
+				catch (CloudFoundryException cfe) {
+					if (!HttpStatus.UNAUTHORIZED.equals(cfe.getStatusCode())
+							&& !HttpStatus.FORBIDDEN.equals(cfe.getStatusCode())) {
+						throw cfe;
+					}
+					pool.invalidate(url, credentials);
+					return doRun(pool.getClient(url, credentials, monitor), monitor);
+				}
+			}
+			catch (CloudFoundryException cfe) {
+				throw translate(CloudErrorUtil.toCoreException(cfe));
+			}
+			catch (RestClientException e) {
+				throw translate(CloudErrorUtil.toCoreException(e));
+			}
+			catch (CoreException ce) {
+				throw translate(ce);
+			}
+		}
+
+		/**
+		 * Translates the cause to a user friendly message
+		 */
+		protected CoreException translate(CoreException ce) {
+			String validationMessage = CloudErrorUtil.getV2ValidationErrorMessage(ce);
+			if (validationMessage != null) {
+				return new CoreException(CloudFoundryPlugin.getErrorStatus(validationMessage));
+			}
+			return ce;
+		}
+
+		protected abstract T doRun(CloudFoundryOperations operations, IProgressMonitor monitor)
+				throws CoreException;
+	}
+
 }
@@ -68,7 +68,9 @@ public class UaaAwareCloudFoundryClient extends CloudFoundryClient implements Tr
 
 	/**
 	 * key: method name, value: sorted map of HTTP response code keys to count
-	 * of that response code
+	 * of that response code. Client methods may be called from several
+	 * threads, so access to this map and to the discovered app names is
+	 * synchronized on the client.
 	 */
 	private Map<String, SortedMap<Integer, Integer>> methodToResponses = new HashMap<String, SortedMap<Integer, Integer>>();
 
@@ -110,8 +112,10 @@ public class UaaAwareCloudFoundryClient extends CloudFoundryClient implements Tr
 
 	public void afterTransmission(TransmissionType type, boolean successful) {
 		if (type == TransmissionType.UPLOAD && successful) {
-			discoveredAppNames.clear();
-			methodToResponses.clear();
+			synchronized (this) {
+				discoveredAppNames.clear();
+				methodToResponses.clear();
+			}
 		}
 	}
 
@@ -122,8 +126,19 @@ public class UaaAwareCloudFoundryClient extends CloudFoundryClient implements Tr
 	}
 
 	private void flushToUaa() {
+		// Copy the recorded results, so that the UAA service is not called
+		// while holding the lock
+		Set<String> appNames;
+		Map<String, SortedMap<Integer, Integer>> responses = new HashMap<String, SortedMap<Integer, Integer>>();
+		synchronized (this) {
+			appNames = new HashSet<String>(discoveredAppNames);
+			for (Map.Entry<String, SortedMap<Integer, Integer>> entry : methodToResponses.entrySet()) {
+				responses.put(entry.getKey(), new TreeMap<Integer, Integer>(entry.getValue()));
+			}
+		}
+
 		// Store the app names being used
-		for (String appName : discoveredAppNames) {
+		for (String appName : appNames) {
 			uaaService.registerProductUsage(PRODUCT, appName);
 		}
 
@@ -151,8 +166,8 @@ public class UaaAwareCloudFoundryClient extends CloudFoundryClient implements Tr
 		registerFeatureUse(ccType, ccJson);
 
 		// Crate feature uses for each method name
-		for (String methodName : methodToResponses.keySet()) {
-			SortedMap<Integer, Integer> resultCounts = methodToResponses.get(methodName);
+		for (String methodName : responses.keySet()) {
+			SortedMap<Integer, Integer> resultCounts = responses.get(methodName);
 			Map<String, Object> methodCallInfo = new HashMap<String, Object>();
 			methodCallInfo.put("type", "method_call_info");
 			methodCallInfo.put("cc_hostname_sha256", JSONObject.escape(ccUrlHashed));
@@ -194,7 +209,7 @@ public class UaaAwareCloudFoundryClient extends CloudFoundryClient implements Tr
 		recordHttpResult(methodName, resultCode, null);
 	}
 
-	private void recordHttpResult(String methodName, int resultCode, String appName) {
+	private synchronized void recordHttpResult(String methodName, int resultCode, String appName) {
 		if (appName != null) {
 			discoveredAppNames.add(appName);
 		}
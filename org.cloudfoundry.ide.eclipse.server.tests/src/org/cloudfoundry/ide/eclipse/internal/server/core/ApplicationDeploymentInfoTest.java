@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.client.lib.domain.CloudService;
+import org.cloudfoundry.ide.eclipse.internal.server.core.application.EnvironmentVariable;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ApplicationDeploymentInfo;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.LocalCloudService;
+
+public class ApplicationDeploymentInfoTest extends TestCase {
+
+	public void testCopyDoesNotShareLists() throws Exception {
+		ApplicationDeploymentInfo info = createInfo();
+		ApplicationDeploymentInfo copy = info.copy();
+		assertLists(copy);
+
+		copy.getUris().add("copy.cloudfoundry.com");
+		copy.getServices().add(new LocalCloudService("copyService"));
+		copy.getEnvVariables().clear();
+		assertLists(info);
+
+		// Modifying the original after the copy does not affect the copy
+		copy = info.copy();
+		info.getUris().clear();
+		info.getServices().clear();
+		info.getEnvVariables().clear();
+		assertLists(copy);
+	}
+
+	public void testSetInfoDoesNotShareLists() throws Exception {
+		ApplicationDeploymentInfo info = createInfo();
+		ApplicationDeploymentInfo target = new ApplicationDeploymentInfo("target");
+		target.setInfo(info);
+		assertEquals("app", target.getDeploymentName());
+		assertLists(target);
+
+		target.getUris().clear();
+		target.getServices().clear();
+		target.getEnvVariables().clear();
+		assertLists(info);
+
+		target.setInfo(info);
+		info.getUris().clear();
+		info.getServices().clear();
+		info.getEnvVariables().clear();
+		assertLists(target);
+	}
+
+	public void testCopiesOfCopiesDoNotShareLists() throws Exception {
+		ApplicationDeploymentInfo info = createInfo();
+		ApplicationDeploymentInfo copy = info.copy();
+		ApplicationDeploymentInfo copyOfCopy = copy.copy();
+		ApplicationDeploymentInfo otherCopy = info.copy();
+
+		copy.getUris().set(0, "copy.cloudfoundry.com");
+		copy.getServices().remove(0);
+		copy.getEnvVariables().add(new EnvironmentVariable());
+		assertLists(info);
+		assertLists(copyOfCopy);
+		assertLists(otherCopy);
+
+		info.getUris().clear();
+		assertLists(copyOfCopy);
+		assertLists(otherCopy);
+		assertEquals(Arrays.asList("copy.cloudfoundry.com"), copy.getUris());
+		assertTrue(copy.getServices().isEmpty());
+		assertEquals(2, copy.getEnvVariables().size());
+	}
+
+	public void testNullLists() throws Exception {
+		ApplicationDeploymentInfo info = new ApplicationDeploymentInfo("app");
+		ApplicationDeploymentInfo copy = info.copy();
+		assertNull(copy.getUris());
+		assertNull(copy.getServices());
+		assertNull(copy.getEnvVariables());
+
+		ApplicationDeploymentInfo target = createInfo();
+		target.setInfo(info);
+		assertNull(target.getUris());
+		assertNull(target.getServices());
+		assertNull(target.getEnvVariables());
+	}
+
+	private static ApplicationDeploymentInfo createInfo() {
+		ApplicationDeploymentInfo info = new ApplicationDeploymentInfo("app");
+		info.setUris(new ArrayList<String>(Arrays.asList("app.cloudfoundry.com")));
+		List<CloudService> services = new ArrayList<CloudService>();
+		services.add(new LocalCloudService("service"));
+		info.setServices(services);
+		EnvironmentVariable variable = new EnvironmentVariable();
+		variable.setVariable("JAVA_OPTS");
+		variable.setValue("-Xmx256m");
+		List<EnvironmentVariable> variables = new ArrayList<EnvironmentVariable>();
+		variables.add(variable);
+		info.setEnvVariables(variables);
+		return info;
+	}
+
+	private static void assertLists(ApplicationDeploymentInfo info) {
+		assertEquals(Arrays.asList("app.cloudfoundry.com"), info.getUris());
+		assertEquals(Arrays.asList("service"), info.asServiceBindingList());
+		assertEquals(1, info.getEnvVariables().size());
+		assertEquals("JAVA_OPTS", info.getEnvVariables().get(0).getVariable());
+	}
+}
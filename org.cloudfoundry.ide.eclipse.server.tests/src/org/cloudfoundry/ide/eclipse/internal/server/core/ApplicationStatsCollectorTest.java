@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.client.lib.domain.ApplicationStats;
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.InstanceStats;
+import org.cloudfoundry.client.lib.domain.InstancesInfo;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ApplicationStatsCollector;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ApplicationStatsCollector.ApplicationInstanceStats;
+import org.eclipse.core.runtime.CoreException;
+
+public class ApplicationStatsCollectorTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private TestCollector collector;
+
+	@Override
+	protected void setUp() throws Exception {
+		collector = new TestCollector();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		collector.release();
+		collector.dispose();
+	}
+
+	public void testConcurrentCollectionsAreJoined() throws Exception {
+		collector.block();
+		CollectThread first = new CollectThread("app", false);
+		first.start();
+		collector.awaitRequests(1);
+		CollectThread second = new CollectThread("app", false);
+		second.start();
+
+		collector.release();
+		first.join(TIMEOUT);
+		second.join(TIMEOUT);
+		assertEquals(1, collector.getRequests());
+		assertSame(first.collected, second.collected);
+		assertSame(first.collected, collector.collect("app", false, null));
+	}
+
+	public void testForcedRefreshDoesNotJoinEarlierCollection() throws Exception {
+		collector.block();
+		CollectThread earlier = new CollectThread("app", false);
+		earlier.start();
+		collector.awaitRequests(1);
+
+		// E.g. refreshing the stats right after the application was started
+		CollectThread forced = new CollectThread("app", true);
+		forced.start();
+		collector.awaitRequests(2);
+
+		collector.release();
+		earlier.join(TIMEOUT);
+		forced.join(TIMEOUT);
+		assertNotNull(earlier.collected);
+		assertNotNull(forced.collected);
+		assertNotSame(earlier.collected, forced.collected);
+
+		// Values collected before the forced refresh are not cached
+		assertSame(forced.collected, collector.collect("app", false, null));
+		assertEquals(2, collector.getRequests());
+	}
+
+	public void testCachedValuesExpire() throws Exception {
+		collector.cacheTTL = 200;
+		ApplicationInstanceStats collected = collector.collect("app", false, null);
+		assertNotNull(collected.getStats());
+		assertNull(collected.getStatsError());
+		assertSame(collected, collector.collect("app", false, null));
+		assertEquals(1, collector.getRequests());
+
+		// Forced refreshes do not use cached values
+		ApplicationInstanceStats forced = collector.collect("app", true, null);
+		assertNotSame(collected, forced);
+		assertEquals(2, collector.getRequests());
+
+		Thread.sleep(2 * collector.cacheTTL);
+		assertNotSame(forced, collector.collect("app", false, null));
+		assertEquals(3, collector.getRequests());
+	}
+
+	public void testInvalidate() throws Exception {
+		ApplicationInstanceStats collected = collector.collect("app", false, null);
+		ApplicationInstanceStats other = collector.collect("other", false, null);
+		collector.invalidate("app");
+		assertNotSame(collected, collector.collect("app", false, null));
+		assertSame(other, collector.collect("other", false, null));
+	}
+
+	public void testCollectAll() throws Exception {
+		ApplicationInstanceStats cached = collector.collect("app1", false, null);
+		Map<String, ApplicationInstanceStats> collected = collector.collectAll(Arrays.asList("app1", "app2", "app3"),
+				null);
+		assertEquals(Arrays.asList("app1", "app2", "app3"), new ArrayList<String>(collected.keySet()));
+		assertSame(cached, collected.get("app1"));
+		assertEquals("app3", collected.get("app3").getAppName());
+		assertEquals(3, collector.getRequests());
+	}
+
+	private class CollectThread extends Thread {
+
+		private final String appName;
+
+		private final boolean forceRefresh;
+
+		volatile ApplicationInstanceStats collected;
+
+		CollectThread(String appName, boolean forceRefresh) {
+			this.appName = appName;
+			this.forceRefresh = forceRefresh;
+		}
+
+		@Override
+		public void run() {
+			collected = collector.collect(appName, forceRefresh, null);
+		}
+	}
+
+	/**
+	 * Returns new values for each request instead of sending requests to a
+	 * server. Requests for stats can be blocked until released.
+	 */
+	private static class TestCollector extends ApplicationStatsCollector {
+
+		private final AtomicInteger requests = new AtomicInteger();
+
+		private volatile CountDownLatch gate;
+
+		volatile long cacheTTL = CACHE_TTL;
+
+		TestCollector() {
+			super(null);
+		}
+
+		void block() {
+			gate = new CountDownLatch(1);
+		}
+
+		void release() {
+			CountDownLatch current = gate;
+			if (current != null) {
+				current.countDown();
+			}
+		}
+
+		int getRequests() {
+			return requests.get();
+		}
+
+		void awaitRequests(int count) throws InterruptedException {
+			long end = System.currentTimeMillis() + TIMEOUT;
+			while (requests.get() < count && System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+			assertEquals(count, requests.get());
+		}
+
+		@Override
+		protected long getCacheTTL() {
+			return cacheTTL;
+		}
+
+		@Override
+		protected CloudApplication requestApplication(String appName) throws CoreException {
+			return null;
+		}
+
+		@Override
+		protected ApplicationStats requestApplicationStats(String appName) throws CoreException {
+			requests.incrementAndGet();
+			CountDownLatch current = gate;
+			if (current != null) {
+				try {
+					current.await(TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return new ApplicationStats(Collections.<InstanceStats> emptyList());
+		}
+
+		@Override
+		protected InstancesInfo requestInstancesInfo(String appName) throws CoreException {
+			return new InstancesInfo(Collections.<Map<String, Object>> emptyList());
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ArchiveCompressionPolicyTest extends TestCase {
+
+	private final ArchiveCompressionPolicy policy = new ArchiveCompressionPolicy(true,
+			ArchiveCompressionPolicy.DEFAULT_STORED_EXTENSIONS, ArchiveCompressionPolicy.DEFAULT_ENTROPY_THRESHOLD);
+
+	public void testStoredExtensions() throws Exception {
+		assertTrue(policy.isStored("WEB-INF/lib/spring-core.jar"));
+		assertTrue(policy.isStored("images/Logo.PNG"));
+		assertFalse(policy.isStored("WEB-INF/classes/Test.class"));
+		assertFalse(policy.isStored("index.html"));
+		assertFalse(policy.isStored("lib.jar/README"));
+		assertFalse(ArchiveCompressionPolicy.DEFLATE_ALL.isStored("WEB-INF/lib/spring-core.jar"));
+	}
+
+	public void testSignatures() throws Exception {
+		byte[] zip = new byte[] { 'P', 'K', 3, 4, 20, 0 };
+		byte[] gzip = new byte[] { (byte) 0x1F, (byte) 0x8B, 8, 0 };
+		assertTrue(policy.isStored(zip, zip.length));
+		assertTrue(policy.isStored(gzip, gzip.length));
+		assertFalse(policy.isStored(zip, 3));
+		assertFalse(ArchiveCompressionPolicy.DEFLATE_ALL.isStored(zip, zip.length));
+	}
+
+	public void testEntropy() throws Exception {
+		Random random = new Random(0);
+		byte[] randomBytes = new byte[4096];
+		random.nextBytes(randomBytes);
+		byte[] text = new byte[4096];
+		for (int i = 0; i < text.length; i++) {
+			text[i] = (byte) ('a' + random.nextInt(26));
+		}
+
+		assertTrue(ArchiveCompressionPolicy.getEntropy(randomBytes, randomBytes.length) > 7.9);
+		assertTrue(ArchiveCompressionPolicy.getEntropy(text, text.length) < 5);
+		assertEquals(0.0, ArchiveCompressionPolicy.getEntropy(new byte[100], 100), 0.0);
+
+		assertTrue(policy.isStored(randomBytes, randomBytes.length));
+		assertFalse(policy.isStored(text, text.length));
+		// Too small to tell
+		assertFalse(policy.isStored(randomBytes, 100));
+	}
+}
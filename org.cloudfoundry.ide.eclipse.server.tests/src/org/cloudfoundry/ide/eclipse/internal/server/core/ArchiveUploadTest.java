@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipException;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ArchiveUpload;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RetryPolicy;
+import org.cloudfoundry.ide.eclipse.server.tests.util.FlakyUploadServer;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+
+public class ArchiveUploadTest extends TestCase {
+
+	private static final int ARCHIVE_SIZE = 256 * 1024;
+
+	private FlakyUploadServer server;
+
+	private byte[] archive;
+
+	@Override
+	protected void setUp() throws Exception {
+		archive = new byte[ARCHIVE_SIZE];
+		new Random(42).nextBytes(archive);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	public void testRetryAfterDroppedConnections() throws Exception {
+		server = new FlakyUploadServer(2, 64 * 1024);
+		server.start();
+
+		HttpArchiveUpload upload = new HttpArchiveUpload();
+		upload.run(null);
+
+		assertTrue(Arrays.equals(archive, server.getReceived()));
+		assertEquals(3, upload.getAttempts());
+		assertEquals(2, server.getDropped());
+		// The whole archive is sent again after each drop
+		assertEquals(ARCHIVE_SIZE + 2 * 64 * 1024, server.getBytesRead());
+	}
+
+	public void testGiveUpAfterMaxAttempts() throws Exception {
+		server = new FlakyUploadServer(10, 1024);
+		server.start();
+
+		HttpArchiveUpload upload = new HttpArchiveUpload();
+		try {
+			upload.run(null);
+			fail("Expected the upload to fail");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+		assertEquals(3, upload.getAttempts());
+		assertEquals(3, server.getUploads());
+	}
+
+	public void testPermanentErrorNotRetried() throws Exception {
+		final int[] attempts = { 0 };
+		ArchiveUpload upload = new ArchiveUpload(RetryPolicy.fixed(3, 10)) {
+			@Override
+			protected void upload(IProgressMonitor monitor) throws IOException {
+				attempts[0]++;
+				throw new CloudFoundryException(HttpStatus.BAD_REQUEST);
+			}
+		};
+		try {
+			upload.run(null);
+			fail("Expected the upload to fail");
+		}
+		catch (CloudFoundryException e) {
+			// Expected
+		}
+		assertEquals(1, attempts[0]);
+	}
+
+	public void testIsTransient() throws Exception {
+		assertTrue(ArchiveUpload.isTransient(new SocketException("Connection reset")));
+		assertTrue(ArchiveUpload.isTransient(new ResourceAccessException("I/O error")));
+		assertTrue(ArchiveUpload.isTransient(new RuntimeException(new IOException())));
+		assertTrue(ArchiveUpload.isTransient(new CloudFoundryException(HttpStatus.BAD_GATEWAY)));
+		assertTrue(ArchiveUpload.isTransient(new CloudFoundryException(HttpStatus.SERVICE_UNAVAILABLE)));
+
+		assertFalse(ArchiveUpload.isTransient(new FileNotFoundException()));
+		assertFalse(ArchiveUpload.isTransient(new ZipException()));
+		assertFalse(ArchiveUpload.isTransient(new CloudFoundryException(HttpStatus.FORBIDDEN)));
+		assertFalse(ArchiveUpload.isTransient(new IllegalStateException()));
+	}
+
+	/**
+	 * Uploads the archive to the flaky server with a PUT.
+	 */
+	private class HttpArchiveUpload extends ArchiveUpload {
+
+		HttpArchiveUpload() {
+			super(RetryPolicy.fixed(3, 10));
+		}
+
+		@Override
+		protected void upload(IProgressMonitor monitor) throws IOException {
+			HttpURLConnection connection = (HttpURLConnection) new URL(server.getUrl()).openConnection();
+			try {
+				connection.setRequestMethod("PUT");
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(archive.length);
+				OutputStream output = connection.getOutputStream();
+				output.write(archive);
+				output.close();
+				int status = connection.getResponseCode();
+				if (status != HttpURLConnection.HTTP_OK) {
+					throw new IOException("Upload failed with status " + status);
+				}
+			}
+			finally {
+				connection.disconnect();
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudApplication.AppState;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ApplicationDeploymentInfo;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.DeploymentInfoWorkingCopy;
+import org.cloudfoundry.ide.eclipse.internal.server.ui.ServerDescriptor;
+import org.cloudfoundry.ide.eclipse.internal.server.ui.ServerHandler;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.wst.server.core.IServer;
+
+public class CloudFoundryApplicationModuleTest extends TestCase {
+
+	private IServer server;
+
+	@Override
+	protected void setUp() throws Exception {
+		ServerDescriptor descriptor = new ServerDescriptor("server") {
+			{
+				setRuntimeTypeId("org.cloudfoundry.cloudfoundryserver.test.runtime.10");
+				setServerTypeId("org.cloudfoundry.cloudfoundryserver.test.10");
+				setRuntimeName("Cloud Foundry Test Runtime");
+				setServerName("Cloud Foundry Test Server");
+				setForceCreateRuntime(true);
+			}
+		};
+		server = new ServerHandler(descriptor).createServer(new NullProgressMonitor(), ServerHandler.ALWAYS_OVERWRITE);
+	}
+
+	public void testUnchangedApplicationIsNotResolvedAgain() throws Exception {
+		CountingApplicationModule appModule = new CountingApplicationModule("app", server);
+		appModule.setCloudApplication(createApplication(512, AppState.STARTED));
+		assertEquals(1, appModule.resolved);
+		assertEquals(512, appModule.getDeploymentInfo().getMemory());
+
+		// Runtime properties are not part of the deployment info
+		CloudApplication stopped = createApplication(512, AppState.STOPPED);
+		stopped.setRunningInstances(0);
+		appModule.setCloudApplication(stopped);
+		assertEquals(1, appModule.resolved);
+		assertSame(stopped, appModule.getApplication());
+
+		appModule.setCloudApplication(createApplication(1024, AppState.STARTED));
+		assertEquals(2, appModule.resolved);
+		assertEquals(1024, appModule.getDeploymentInfo().getMemory());
+	}
+
+	public void testModifiedDeploymentInfoIsResolvedAgain() throws Exception {
+		CountingApplicationModule appModule = new CountingApplicationModule("app", server);
+		appModule.setCloudApplication(createApplication(512, AppState.STARTED));
+		assertEquals(1, appModule.resolved);
+
+		DeploymentInfoWorkingCopy workingCopy = appModule.getDeploymentInfoWorkingCopy();
+		workingCopy.setMemory(256);
+		workingCopy.save();
+		assertEquals(256, appModule.getDeploymentInfo().getMemory());
+
+		// The saved info no longer reflects the cloud application
+		appModule.setCloudApplication(createApplication(512, AppState.STARTED));
+		assertEquals(2, appModule.resolved);
+		assertEquals(512, appModule.getDeploymentInfo().getMemory());
+
+		// Removing the cloud application mapping keeps the info, but it is
+		// resolved again once the application is mapped
+		appModule.setCloudApplication(null);
+		assertNotNull(appModule.getDeploymentInfo());
+		appModule.setCloudApplication(createApplication(512, AppState.STARTED));
+		assertEquals(3, appModule.resolved);
+	}
+
+	public void testDeploymentInfoCopyIsIndependent() throws Exception {
+		CountingApplicationModule appModule = new CountingApplicationModule("app", server);
+		appModule.setCloudApplication(createApplication(512, AppState.STARTED));
+
+		ApplicationDeploymentInfo info = appModule.getDeploymentInfo();
+		info.getUris().clear();
+		info.getServices().clear();
+		assertEquals(Arrays.asList("app.cloudfoundry.com"), appModule.getDeploymentInfo().getUris());
+		assertEquals(Arrays.asList("service"), appModule.getDeploymentInfo().asServiceBindingList());
+	}
+
+	private static CloudApplication createApplication(int memory, AppState state) {
+		return new CloudApplication("app", null, null, memory, 1, Arrays.asList("app.cloudfoundry.com"),
+				Collections.singletonList("service"), state);
+	}
+
+	/**
+	 * Counts the number of times the deployment info is resolved from the
+	 * cloud application.
+	 */
+	private static class CountingApplicationModule extends CloudFoundryApplicationModule {
+
+		int resolved;
+
+		CountingApplicationModule(String deployedApplicationName, IServer server) {
+			super(deployedApplicationName, server);
+		}
+
+		@Override
+		protected ApplicationDeploymentInfo resolveDeployedApplicationInformation() {
+			resolved++;
+			return super.resolveDeployedApplicationInformation();
+		}
+	}
+}
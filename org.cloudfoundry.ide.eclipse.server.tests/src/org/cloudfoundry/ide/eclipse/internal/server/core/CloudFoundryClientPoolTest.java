@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.client.lib.CloudCredentials;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryClientPool;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+public class CloudFoundryClientPoolTest extends TestCase {
+
+	private static final String URL = "http://api.cloudfoundry.com";
+
+	private TestPool pool;
+
+	@Override
+	protected void setUp() throws Exception {
+		pool = new TestPool();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		pool.dispose();
+	}
+
+	public void testClientsAreKeyedByUrlAndCredentials() throws Exception {
+		CloudFoundryOperations client = pool.getClient(URL, new CloudCredentials("user", "password"), null);
+		assertSame(client, pool.getClient(URL, new CloudCredentials("user", "password"), null));
+		assertEquals(1, pool.getHitCount());
+		assertEquals(1, pool.getMissCount());
+
+		assertNotSame(client, pool.getClient(URL, new CloudCredentials("user", "changed"), null));
+		assertNotSame(client, pool.getClient(URL, new CloudCredentials("other", "password"), null));
+		assertNotSame(client, pool.getClient("http://api.run.pivotal.io", new CloudCredentials("user", "password"),
+				null));
+		assertEquals(4, pool.size());
+		assertEquals(4, pool.getLogins());
+	}
+
+	public void testLoginDoesNotUsePool() throws Exception {
+		CloudFoundryOperations client = pool.getClient(URL, new CloudCredentials("user", "password"), null);
+		CloudFoundryOperations validated = pool.login(URL, new CloudCredentials("user", "password"), null);
+		assertNotSame(client, validated);
+		assertEquals(2, pool.getLogins());
+		assertEquals(1, pool.size());
+		assertSame(client, pool.getClient(URL, new CloudCredentials("user", "password"), null));
+	}
+
+	public void testInvalidate() throws Exception {
+		CloudFoundryOperations client = pool.getClient(URL, new CloudCredentials("user", "password"), null);
+		CloudFoundryOperations other = pool.getClient(URL, new CloudCredentials("other", "password"), null);
+
+		pool.invalidate(URL, new CloudCredentials("user", "password"));
+		assertEquals(1, pool.size());
+		assertNotSame(client, pool.getClient(URL, new CloudCredentials("user", "password"), null));
+		assertSame(other, pool.getClient(URL, new CloudCredentials("other", "password"), null));
+		assertEquals(3, pool.getLogins());
+	}
+
+	public void testIdleClientsAreDiscarded() throws Exception {
+		pool.idleTimeout = 200;
+		CloudFoundryOperations idle = pool.getClient(URL, new CloudCredentials("user", "password"), null);
+		Thread.sleep(2 * pool.idleTimeout);
+		CloudFoundryOperations used = pool.getClient(URL, new CloudCredentials("other", "password"), null);
+
+		// Clients in use remain in the pool
+		assertTrue(pool.runMaintenance());
+		assertEquals(1, pool.size());
+		assertSame(used, pool.getClient(URL, new CloudCredentials("other", "password"), null));
+		assertNotSame(idle, pool.getClient(URL, new CloudCredentials("user", "password"), null));
+		assertEquals(3, pool.getLogins());
+
+		pool.clear();
+		assertFalse(pool.runMaintenance());
+	}
+
+	/**
+	 * Returns new clients instead of logging in to a server.
+	 */
+	private static class TestPool extends CloudFoundryClientPool {
+
+		private final AtomicInteger logins = new AtomicInteger();
+
+		volatile long idleTimeout = IDLE_TIMEOUT;
+
+		int getLogins() {
+			return logins.get();
+		}
+
+		boolean runMaintenance() {
+			return maintain(new NullProgressMonitor());
+		}
+
+		@Override
+		protected long getIdleTimeout() {
+			return idleTimeout;
+		}
+
+		@Override
+		protected PooledClient createClient(String url, CloudCredentials credentials, IProgressMonitor monitor)
+				throws CoreException {
+			logins.incrementAndGet();
+			CloudFoundryOperations operations = (CloudFoundryOperations) Proxy.newProxyInstance(
+					CloudFoundryOperations.class.getClassLoader(), new Class<?>[] { CloudFoundryOperations.class },
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							if (method.getName().equals("equals")) {
+								return proxy == args[0];
+							}
+							if (method.getName().equals("hashCode")) {
+								return System.identityHashCode(proxy);
+							}
+							return null;
+						}
+					});
+			// Tokens that do not expire are never renewed
+			return new PooledClient(operations, null, null);
+		}
+	}
+}
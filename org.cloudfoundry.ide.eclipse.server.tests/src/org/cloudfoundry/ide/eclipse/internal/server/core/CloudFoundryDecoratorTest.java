@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.Collections;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
+import org.cloudfoundry.ide.eclipse.internal.server.ui.CloudFoundryDecorator;
+import org.cloudfoundry.ide.eclipse.internal.server.ui.CloudFoundryServerUiPlugin;
+import org.cloudfoundry.ide.eclipse.internal.server.ui.CloudUiUtil;
+import org.cloudfoundry.ide.eclipse.internal.server.ui.ServerDescriptor;
+import org.cloudfoundry.ide.eclipse.internal.server.ui.ServerHandler;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.wst.server.core.IModule;
+import org.eclipse.wst.server.core.IServer;
+import org.eclipse.wst.server.core.IServerWorkingCopy;
+
+public class CloudFoundryDecoratorTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private IServer server;
+
+	private CloudFoundryServer cloudServer;
+
+	private CountingDecorator decorator;
+
+	@Override
+	protected void setUp() throws Exception {
+		ServerDescriptor descriptor = new ServerDescriptor("server") {
+			{
+				setRuntimeTypeId("org.cloudfoundry.cloudfoundryserver.test.runtime.10");
+				setServerTypeId("org.cloudfoundry.cloudfoundryserver.test.10");
+				setRuntimeName("Cloud Foundry Test Runtime");
+				setServerName("Cloud Foundry Test Server");
+				setForceCreateRuntime(true);
+			}
+		};
+		server = new ServerHandler(descriptor).createServer(new NullProgressMonitor(), ServerHandler.ALWAYS_OVERWRITE);
+		cloudServer = (CloudFoundryServer) server.loadAdapter(CloudFoundryServer.class, null);
+		decorator = new CountingDecorator();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		decorator.dispose();
+	}
+
+	public void testServerSuffixIsCachedUntilServerChanges() throws Exception {
+		assertEquals(" - suffix 1", decorator.serverSuffix(server));
+		assertEquals(" - suffix 1", decorator.serverSuffix(server));
+		assertEquals(1, decorator.suffixes);
+
+		IServerWorkingCopy serverWC = server.createWorkingCopy();
+		CloudFoundryServer workingCopyServer = (CloudFoundryServer) serverWC.loadAdapter(CloudFoundryServer.class,
+				null);
+		workingCopyServer.setUsername("other");
+		serverWC.save(true, null);
+
+		assertEquals(" - suffix 2", decorator.serverSuffix(server));
+		assertEquals(2, decorator.suffixes);
+	}
+
+	public void testCloudModulesAreCachedUntilServerEvent() throws Exception {
+		IModule module = new CloudFoundryApplicationModule("app", server);
+		CloudFoundryApplicationModule cloudModule = decorator.cloudModule(cloudServer, server, module);
+		assertNotNull(cloudModule);
+		assertSame(cloudModule, decorator.cloudModule(cloudServer, server, module));
+		assertEquals(1, decorator.modules);
+		decorator.serverSuffix(server);
+
+		// Server events are delivered asynchronously, so the cached module
+		// remains in use until the event is delivered
+		ServerEventHandler.getDefault().fireServerRefreshed(cloudServer);
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (decorator.cloudModule(cloudServer, server, module) == cloudModule && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, decorator.modules);
+		assertEquals(" - suffix 2", decorator.serverSuffix(server));
+	}
+
+	public void testMissingCloudModulesAreNotCached() throws Exception {
+		IModule module = new CloudFoundryApplicationModule("app", server);
+		decorator.missingModules = true;
+		assertNull(decorator.cloudModule(cloudServer, server, module));
+		assertNull(decorator.cloudModule(cloudServer, server, module));
+		assertEquals(2, decorator.modules);
+	}
+
+	public void testCloudUrlsAreCachedUntilUserDefinedUrlsChange() throws Exception {
+		String serverTypeId = server.getServerType().getId();
+		Set<String> urls = decorator.cloudUrls(serverTypeId);
+		assertSame(urls, decorator.cloudUrls(serverTypeId));
+		assertEquals(1, decorator.urls);
+		decorator.serverSuffix(server);
+
+		IPreferenceStore preferences = CloudFoundryServerUiPlugin.getDefault().getPreferenceStore();
+		String property = CloudUiUtil.ATTR_USER_DEFINED_URLS + "." + serverTypeId;
+		String value = preferences.getString(property);
+		try {
+			preferences.setValue(property, value + "Test,http://api.test.com||");
+			assertNotSame(urls, decorator.cloudUrls(serverTypeId));
+			assertEquals(2, decorator.urls);
+			// Server suffixes include the URL if it is a known cloud URL
+			assertEquals(" - suffix 2", decorator.serverSuffix(server));
+		}
+		finally {
+			preferences.setValue(property, value);
+		}
+	}
+
+	/**
+	 * Counts the computations of cached values instead of deriving them from
+	 * the server.
+	 */
+	private static class CountingDecorator extends CloudFoundryDecorator {
+
+		int suffixes;
+
+		int urls;
+
+		int modules;
+
+		volatile boolean missingModules;
+
+		String serverSuffix(IServer server) {
+			return getServerSuffix(server);
+		}
+
+		Set<String> cloudUrls(String serverTypeId) {
+			return getCloudUrls(serverTypeId);
+		}
+
+		CloudFoundryApplicationModule cloudModule(CloudFoundryServer cloudServer, IServer server, IModule module) {
+			return getCloudModule(cloudServer, server, module);
+		}
+
+		@Override
+		protected synchronized String computeServerSuffix(IServer server) {
+			return " - suffix " + ++suffixes;
+		}
+
+		@Override
+		protected synchronized Set<String> computeCloudUrls(String serverTypeId) {
+			urls++;
+			return Collections.singleton("http://api.cloudfoundry.com");
+		}
+
+		@Override
+		protected synchronized CloudFoundryApplicationModule computeCloudModule(CloudFoundryServer cloudServer,
+				IModule module) {
+			modules++;
+			return missingModules ? null : new CloudFoundryApplicationModule(module.getName(), cloudServer.getServer());
+		}
+	}
+}
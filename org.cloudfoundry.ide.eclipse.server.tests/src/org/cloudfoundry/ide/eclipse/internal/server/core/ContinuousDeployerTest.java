@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ContinuousDeployer;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RetryPolicy;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+
+public class ContinuousDeployerTest extends TestCase {
+
+	private static final long QUIET_PERIOD = 200;
+
+	private static final long TIMEOUT = 10000;
+
+	private final IFile file1 = getFile("/app/a.html");
+
+	private final IFile file2 = getFile("/app/b.html");
+
+	private final IFile file3 = getFile("/app/c.html");
+
+	private RecordingDeployer deployer;
+
+	@Override
+	protected void setUp() throws Exception {
+		deployer = new RecordingDeployer();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		deployer.dispose();
+	}
+
+	public void testChangesInQuietPeriodArePushedOnce() throws Exception {
+		ContinuousDeployer.DeployJob job = deployer.getJob("app");
+		job.changed(Collections.singleton(file1), false);
+		Thread.sleep(QUIET_PERIOD / 2);
+		job.changed(Collections.singleton(file2), false);
+		Thread.sleep(QUIET_PERIOD / 2);
+		job.changed(Collections.singleton(file3), true);
+
+		deployer.awaitPushes(1);
+		job.join();
+		assertEquals(1, deployer.getPushes().size());
+		Push push = deployer.getPushes().get(0);
+		assertEquals(set(file1, file2, file3), push.files);
+		assertTrue(push.removed);
+	}
+
+	public void testChangesDuringPushCancelAndRequeue() throws Exception {
+		deployer.blockNextPush = true;
+		ContinuousDeployer.DeployJob job = deployer.getJob("app");
+		job.changed(Collections.singleton(file1), false);
+		deployer.awaitStarted(1);
+
+		// Cancels the running push, which is pushed again with the new
+		// changes
+		job.changed(Collections.singleton(file2), false);
+		deployer.awaitPushes(2);
+		job.join();
+
+		List<Push> pushes = deployer.getPushes();
+		assertEquals(2, pushes.size());
+		assertTrue(pushes.get(0).cancelled);
+		assertEquals(set(file1), pushes.get(0).files);
+		assertFalse(pushes.get(1).cancelled);
+		assertEquals(set(file1, file2), pushes.get(1).files);
+	}
+
+	public void testFailedPushIsRetried() throws Exception {
+		deployer.failedPushes = 1;
+		ContinuousDeployer.DeployJob job = deployer.getJob("app");
+		job.changed(Collections.singleton(file1), false);
+
+		// Attempted again without further changes
+		deployer.awaitPushes(2);
+		job.join();
+		List<Push> pushes = deployer.getPushes();
+		assertEquals(2, pushes.size());
+		assertEquals(set(file1), pushes.get(1).files);
+		assertTrue(pushes.get(1).end - pushes.get(0).end >= QUIET_PERIOD / 2);
+	}
+
+	public void testFailedPushIsRequeuedOnceRetriesAreExhausted() throws Exception {
+		// The retry policy allows one retry
+		deployer.failedPushes = 2;
+		ContinuousDeployer.DeployJob job = deployer.getJob("app");
+		job.changed(Collections.singleton(file1), false);
+		deployer.awaitPushes(2);
+		job.join();
+		assertEquals(2, deployer.getPushes().size());
+
+		job.changed(Collections.singleton(file2), false);
+		deployer.awaitPushes(3);
+		job.join();
+
+		List<Push> pushes = deployer.getPushes();
+		assertEquals(3, pushes.size());
+		assertEquals(set(file1, file2), pushes.get(2).files);
+	}
+
+	private static IFile getFile(String path) {
+		return ResourcesPlugin.getWorkspace().getRoot().getFile(new Path(path));
+	}
+
+	private static Set<IFile> set(IFile... files) {
+		Set<IFile> set = new HashSet<IFile>();
+		Collections.addAll(set, files);
+		return set;
+	}
+
+	private static class Push {
+
+		final Set<IFile> files;
+
+		final boolean removed;
+
+		boolean cancelled;
+
+		long end;
+
+		Push(Set<IFile> files, boolean removed) {
+			this.files = new HashSet<IFile>(files);
+			this.removed = removed;
+		}
+	}
+
+	/**
+	 * Records the pushes instead of deploying to a server.
+	 */
+	private static class RecordingDeployer extends ContinuousDeployer {
+
+		private final List<Push> pushes = new ArrayList<Push>();
+
+		private int started;
+
+		volatile boolean blockNextPush;
+
+		volatile int failedPushes;
+
+		RecordingDeployer() {
+			super(null);
+		}
+
+		@Override
+		protected DeployJob getJob(String appName) {
+			return super.getJob(appName);
+		}
+
+		@Override
+		protected long getQuietPeriod() {
+			return QUIET_PERIOD;
+		}
+
+		@Override
+		protected RetryPolicy getRetryPolicy() {
+			return new RetryPolicy(QUIET_PERIOD, QUIET_PERIOD, 1, 0, 2, 0, null);
+		}
+
+		@Override
+		protected void deploy(String appName, Set<IFile> changed, boolean removed, IProgressMonitor monitor)
+				throws CoreException {
+			Push push = new Push(changed, removed);
+			synchronized (this) {
+				started++;
+				notifyAll();
+			}
+			try {
+				if (blockNextPush) {
+					blockNextPush = false;
+					long end = System.currentTimeMillis() + TIMEOUT;
+					while (!monitor.isCanceled() && System.currentTimeMillis() < end) {
+						Thread.sleep(10);
+					}
+					push.cancelled = monitor.isCanceled();
+					throw new OperationCanceledException();
+				}
+				if (failedPushes > 0) {
+					failedPushes--;
+					throw new CoreException(new Status(IStatus.ERROR, CloudFoundryPlugin.PLUGIN_ID, "Push failed"));
+				}
+			}
+			catch (InterruptedException e) {
+				throw new OperationCanceledException();
+			}
+			finally {
+				push.end = System.currentTimeMillis();
+				synchronized (this) {
+					pushes.add(push);
+					notifyAll();
+				}
+			}
+		}
+
+		synchronized List<Push> getPushes() {
+			return new ArrayList<Push>(pushes);
+		}
+
+		synchronized void awaitStarted(int count) throws InterruptedException {
+			long end = System.currentTimeMillis() + TIMEOUT;
+			while (started < count && System.currentTimeMillis() < end) {
+				wait(100);
+			}
+			assertTrue("Push not started", started >= count);
+		}
+
+		synchronized void awaitPushes(int count) throws InterruptedException {
+			long end = System.currentTimeMillis() + TIMEOUT;
+			while (pushes.size() < count && System.currentTimeMillis() < end) {
+				wait(100);
+			}
+			assertTrue("Expected " + count + " pushes, got " + pushes.size(), pushes.size() >= count);
+		}
+	}
+}
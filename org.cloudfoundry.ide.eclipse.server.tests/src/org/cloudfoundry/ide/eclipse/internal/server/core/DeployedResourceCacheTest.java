@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.ide.eclipse.internal.server.core.DeployedResourceCache.CachedDeployedApplication;
+import org.cloudfoundry.ide.eclipse.internal.server.core.DeployedResourceCache.DeployedResourceEntry;
+
+public class DeployedResourceCacheTest extends TestCase {
+
+	private static final String SERVER_ID = "user@http://api.cloudfoundry.com";
+
+	public void testAddAndGetEntry() throws Exception {
+		DeployedResourceCache cache = new DeployedResourceCache();
+		CachedDeployedApplication app = new CachedDeployedApplication("app", SERVER_ID);
+		byte[] sha1 = sha1(1);
+
+		cache.add(app, new DeployedResourceEntry(sha1, 100, "WEB-INF/web.xml"));
+
+		DeployedResourceEntry entry = cache.getEntry(app, "WEB-INF/web.xml");
+		assertNotNull(entry);
+		assertTrue(Arrays.equals(sha1, entry.getSha1()));
+		assertEquals(100, entry.getFileSize());
+		assertNull(cache.getEntry(app, "index.html"));
+		assertNull(cache.getEntry(new CachedDeployedApplication("app", "other"), "WEB-INF/web.xml"));
+
+		// Updating an existing entry should not add a new one
+		cache.add(app, new DeployedResourceEntry(sha1(2), 200, "WEB-INF/web.xml"));
+		assertEquals(1, cache.getStatistics().getEntryCount());
+		assertEquals(200, cache.getEntry(app, "WEB-INF/web.xml").getFileSize());
+	}
+
+	public void testEntryIsCurrentForUnchangedFile() throws Exception {
+		File file = File.createTempFile("deployedResourceCacheTest", null);
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				out.write(new byte[10]);
+			}
+			finally {
+				out.close();
+			}
+			file.setLastModified(100000);
+
+			DeployedResourceCache cache = new DeployedResourceCache();
+			CachedDeployedApplication app = new CachedDeployedApplication("app", SERVER_ID);
+			cache.add(app, new DeployedResourceEntry(sha1(1), 10, "a", file.lastModified()));
+			cache.add(app, new DeployedResourceEntry(sha1(2), 10, "b"));
+
+			DeployedResourceEntry entry = cache.getEntry(app, "a");
+			assertEquals(file.lastModified(), entry.getTimeStamp());
+			assertTrue(entry.isCurrent(file));
+			// No time stamp recorded
+			assertFalse(cache.getEntry(app, "b").isCurrent(file));
+
+			file.setLastModified(200000);
+			assertFalse(entry.isCurrent(file));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	public void testEvictLeastRecentlyUsedApplication() throws Exception {
+		DeployedResourceCache cache = new DeployedResourceCache(4);
+		CachedDeployedApplication first = new CachedDeployedApplication("first", SERVER_ID);
+		CachedDeployedApplication second = new CachedDeployedApplication("second", SERVER_ID);
+		CachedDeployedApplication third = new CachedDeployedApplication("third", SERVER_ID);
+
+		cache.add(first, new DeployedResourceEntry(sha1(1), 1, "a"));
+		cache.add(first, new DeployedResourceEntry(sha1(2), 1, "b"));
+		cache.add(second, new DeployedResourceEntry(sha1(3), 1, "a"));
+		cache.add(second, new DeployedResourceEntry(sha1(4), 1, "b"));
+
+		// Access the first app so that the second one is least recently used
+		assertNotNull(cache.getEntry(first, "a"));
+
+		cache.add(third, new DeployedResourceEntry(sha1(5), 1, "a"));
+
+		assertNotNull(cache.getEntry(first, "a"));
+		assertNull(cache.getEntry(second, "a"));
+		assertNotNull(cache.getEntry(third, "a"));
+		assertEquals(3, cache.getStatistics().getEntryCount());
+	}
+
+	public void testInvalidate() throws Exception {
+		DeployedResourceCache cache = new DeployedResourceCache();
+		CachedDeployedApplication app = new CachedDeployedApplication("app", SERVER_ID);
+		CachedDeployedApplication otherServerApp = new CachedDeployedApplication("app", "other");
+
+		cache.add(app, new DeployedResourceEntry(sha1(1), 1, "a"));
+		cache.add(otherServerApp, new DeployedResourceEntry(sha1(1), 1, "a"));
+		assertEquals(2, cache.getStatistics().getApplicationCount());
+
+		cache.invalidateServer(SERVER_ID);
+		assertNull(cache.getEntry(app, "a"));
+		assertNotNull(cache.getEntry(otherServerApp, "a"));
+
+		cache.invalidate(otherServerApp);
+		assertEquals(0, cache.getStatistics().getEntryCount());
+		assertEquals(0, cache.getStatistics().getByteSize());
+	}
+
+	public void testRecordResourceMatch() throws Exception {
+		DeployedResourceCache cache = new DeployedResourceCache();
+		CachedDeployedApplication app = new CachedDeployedApplication("app", SERVER_ID);
+		DeployedResourceEntry known = new DeployedResourceEntry(sha1(1), 100000, "lib/known.jar");
+		DeployedResourceEntry notFound = new DeployedResourceEntry(sha1(2), 10, "index.html");
+		cache.add(app, known);
+		cache.add(app, notFound);
+
+		assertFalse(cache.canPrecheckResourceMatch(app));
+		assertEquals(DeployedResourceCache.MATCH_UNKNOWN, cache.getMatchState(app, "index.html"));
+
+		cache.recordResourceMatch(app, Arrays.asList(known, notFound),
+				new HashSet<String>(Arrays.asList("lib/known.jar")), true);
+		assertTrue(cache.canPrecheckResourceMatch(app));
+		assertEquals(DeployedResourceCache.MATCH_CONFIRMED, cache.getMatchState(app, "lib/known.jar"));
+		// Uploaded, so it is sent in the next match in case the server kept
+		// it
+		assertEquals(DeployedResourceCache.MATCH_UPLOADED, cache.getMatchState(app, "index.html"));
+
+		// Not kept by the server after it was uploaded
+		cache.recordResourceMatch(app, Arrays.asList(known, notFound),
+				new HashSet<String>(Arrays.asList("lib/known.jar")), true);
+		assertEquals(DeployedResourceCache.MATCH_NOT_FOUND, cache.getMatchState(app, "index.html"));
+
+		// Changed content resets the match state
+		cache.add(app, new DeployedResourceEntry(sha1(3), 12, "index.html"));
+		assertEquals(DeployedResourceCache.MATCH_UNKNOWN, cache.getMatchState(app, "index.html"));
+
+		// Server no longer has a confirmed resource
+		cache.recordResourceMatch(app, Arrays.asList(known), Collections.<String> emptySet(), false);
+		assertFalse(cache.canPrecheckResourceMatch(app));
+		assertEquals(DeployedResourceCache.MATCH_UNKNOWN, cache.getMatchState(app, "lib/known.jar"));
+	}
+
+	public void testUploadedResourceKeptByServerIsConfirmed() throws Exception {
+		DeployedResourceCache cache = new DeployedResourceCache();
+		CachedDeployedApplication app = new CachedDeployedApplication("app", SERVER_ID);
+		DeployedResourceEntry jar = new DeployedResourceEntry(sha1(1), 100000, "lib/new.jar");
+		cache.add(app, jar);
+
+		cache.recordResourceMatch(app, Arrays.asList(jar), Collections.<String> emptySet(), true);
+		assertEquals(DeployedResourceCache.MATCH_UPLOADED, cache.getMatchState(app, "lib/new.jar"));
+
+		// The server kept the uploaded jar, which is not uploaded again
+		cache.recordResourceMatch(app, Arrays.asList(jar), new HashSet<String>(Arrays.asList("lib/new.jar")), false);
+		assertEquals(DeployedResourceCache.MATCH_CONFIRMED, cache.getMatchState(app, "lib/new.jar"));
+		assertTrue(cache.canPrecheckResourceMatch(app));
+	}
+
+	public void testFullMatchRemovesDeletedEntries() throws Exception {
+		DeployedResourceCache cache = new DeployedResourceCache();
+		CachedDeployedApplication app = new CachedDeployedApplication("app", SERVER_ID);
+		DeployedResourceEntry[] entries = new DeployedResourceEntry[100];
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = new DeployedResourceEntry(sha1(i), i, "file" + i);
+			cache.add(app, entries[i]);
+		}
+		long byteSize = cache.getStatistics().getByteSize();
+		// The map of names to slots is part of the size
+		assertTrue(byteSize > 100 * (20 + 8 + 8 + 1 + 2 * "fileNN".length()));
+
+		// Partial matches do not remove entries
+		cache.recordResourceMatch(app, Arrays.asList(entries[0]), Collections.<String> emptySet(), false);
+		assertEquals(100, cache.getStatistics().getEntryCount());
+
+		// Files deleted from the application are no longer in full matches
+		cache.recordResourceMatch(app, Arrays.asList(entries[0], entries[99]),
+				new HashSet<String>(Arrays.asList("file99")), true);
+		assertEquals(2, cache.getStatistics().getEntryCount());
+		assertTrue(cache.getStatistics().getByteSize() < byteSize);
+		assertNull(cache.getEntry(app, "file50"));
+
+		DeployedResourceEntry entry = cache.getEntry(app, "file99");
+		assertTrue(Arrays.equals(sha1(99), entry.getSha1()));
+		assertEquals(99, entry.getFileSize());
+		assertEquals(DeployedResourceCache.MATCH_CONFIRMED, cache.getMatchState(app, "file99"));
+		assertEquals(DeployedResourceCache.MATCH_NOT_FOUND, cache.getMatchState(app, "file0"));
+
+		// Entries added after compaction get their own slots
+		cache.add(app, new DeployedResourceEntry(sha1(100), 100, "file100"));
+		assertEquals(100, cache.getEntry(app, "file100").getFileSize());
+		assertEquals(99, cache.getEntry(app, "file99").getFileSize());
+		assertEquals(3, cache.getStatistics().getEntryCount());
+	}
+
+	protected static byte[] sha1(int seed) {
+		byte[] sha1 = new byte[20];
+		Arrays.fill(sha1, (byte) seed);
+		return sha1;
+	}
+
+}
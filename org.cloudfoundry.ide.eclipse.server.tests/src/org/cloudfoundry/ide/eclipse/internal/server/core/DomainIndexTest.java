@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.client.lib.domain.CloudDomain;
+
+public class DomainIndexTest extends TestCase {
+
+	private static CloudDomain domain(String name) {
+		return new CloudDomain(null, name, null);
+	}
+
+	public void testFindDomain() throws Exception {
+		CloudDomain cfapps = domain("cfapps.io");
+		CloudDomain privateDomain = domain("apps.example.com");
+		DomainIndex index = new DomainIndex(Arrays.asList(cfapps, privateDomain, domain("example.com")));
+
+		assertSame(cfapps, index.findDomain("myapp.cfapps.io"));
+		assertSame(cfapps, index.findDomain("a.b.CFAPPS.io"));
+		assertSame(cfapps, index.findDomain("cfapps.io"));
+		assertSame(privateDomain, index.findDomain("myapp.apps.example.com"));
+		assertEquals("example.com", index.findDomain("myapp.example.com").getName());
+	}
+
+	public void testNoMatchingDomain() throws Exception {
+		DomainIndex index = new DomainIndex(Arrays.asList(domain("cfapps.io")));
+
+		assertNull(index.findDomain("myapp.example.io"));
+		// Domains only match on label boundaries
+		assertNull(index.findDomain("mycfapps.io"));
+		assertNull(index.findDomain(""));
+		assertNull(index.findDomain(null));
+		assertTrue(new DomainIndex(null).isEmpty());
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class FileDigestStoreTest extends TestCase {
+
+	private File tempDir;
+
+	@Override
+	protected void setUp() throws Exception {
+		tempDir = File.createTempFile("fileDigestStoreTest", null);
+		tempDir.delete();
+		tempDir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ParallelWarWriterTest.delete(tempDir);
+	}
+
+	public void testDigestIsSharedByPath() throws Exception {
+		File file = ParallelWarWriterTest.createFile(tempDir, "spring-core.jar", 100, new Random(0));
+		file.setLastModified(100000);
+		FileDigestStore store = new FileDigestStore();
+		byte[] sha1 = new byte[] { 1, 2, 3 };
+
+		assertNull(store.getSha1(file));
+		store.add(file, file.length(), file.lastModified(), sha1);
+
+		assertTrue(Arrays.equals(sha1, store.getSha1(file)));
+		// Same file through another path
+		File other = new File(new File(tempDir, "lib"), "../spring-core.jar");
+		new File(tempDir, "lib").mkdirs();
+		assertTrue(Arrays.equals(sha1, store.getSha1(other)));
+		assertEquals(2, store.getHits());
+		assertEquals(1, store.getMisses());
+	}
+
+	public void testChangedFileIsNotFound() throws Exception {
+		File file = ParallelWarWriterTest.createFile(tempDir, "app.jar", 100, new Random(0));
+		file.setLastModified(100000);
+		FileDigestStore store = new FileDigestStore();
+		store.add(file, file.length(), file.lastModified(), new byte[] { 1 });
+
+		file.setLastModified(200000);
+		assertNull(store.getSha1(file));
+
+		file.setLastModified(100000);
+		ParallelWarWriterTest.createFile(tempDir, "app.jar", 200, new Random(0));
+		file.setLastModified(100000);
+		assertNull(store.getSha1(file));
+	}
+
+	public void testLeastRecentlyUsedDigestIsEvicted() throws Exception {
+		FileDigestStore store = new FileDigestStore(2);
+		File first = ParallelWarWriterTest.createFile(tempDir, "first", 1, new Random(0));
+		File second = ParallelWarWriterTest.createFile(tempDir, "second", 1, new Random(0));
+		File third = ParallelWarWriterTest.createFile(tempDir, "third", 1, new Random(0));
+		store.add(first, first.length(), first.lastModified(), new byte[] { 1 });
+		store.add(second, second.length(), second.lastModified(), new byte[] { 2 });
+		assertNotNull(store.getSha1(first));
+
+		store.add(third, third.length(), third.lastModified(), new byte[] { 3 });
+		assertEquals(2, store.size());
+		assertNotNull(store.getSha1(first));
+		assertNull(store.getSha1(second));
+		assertNotNull(store.getSha1(third));
+	}
+}
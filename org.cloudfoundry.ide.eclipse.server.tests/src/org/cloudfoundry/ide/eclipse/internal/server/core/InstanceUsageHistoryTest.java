@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.InstanceUsageHistory;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.InstanceUsageHistory.Metric;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ResourceUsageSampler;
+
+public class InstanceUsageHistoryTest extends TestCase {
+
+	public void testEmptyHistory() throws Exception {
+		InstanceUsageHistory history = new InstanceUsageHistory("app", "0", 3);
+		assertEquals(0, history.size());
+		assertEquals(0, history.getValues(Metric.CPU).length);
+		assertEquals(0.0, history.getLatest(Metric.MEMORY));
+		assertEquals(-1, history.getLatestTime());
+	}
+
+	public void testRingBufferOverwritesOldestSample() throws Exception {
+		InstanceUsageHistory history = new InstanceUsageHistory("app", "0", 3);
+		history.add(1, 10, 100, 1000);
+		history.add(2, 20, 200, 2000);
+		assertEquals(2, history.size());
+		assertTrue(Arrays.equals(new double[] { 10, 20 }, history.getValues(Metric.CPU)));
+
+		history.add(3, 30, 300, 3000);
+		history.add(4, 40, 400, 4000);
+		assertEquals(3, history.size());
+		assertTrue(Arrays.equals(new long[] { 2, 3, 4 }, history.getTimes()));
+		assertTrue(Arrays.equals(new double[] { 20, 30, 40 }, history.getValues(Metric.CPU)));
+		assertTrue(Arrays.equals(new double[] { 200, 300, 400 }, history.getValues(Metric.MEMORY)));
+		assertEquals(4000.0, history.getLatest(Metric.DISK));
+		assertEquals(4, history.getLatestTime());
+		assertEquals(400.0, history.getMax(Metric.MEMORY));
+	}
+
+	public void testSamplingIntervalAdaptsToWatchedApplications() throws Exception {
+		assertEquals(ResourceUsageSampler.MIN_INTERVAL, ResourceUsageSampler.getInterval(1));
+		assertEquals(150 * ResourceUsageSampler.INTERVAL_PER_APPLICATION, ResourceUsageSampler.getInterval(150));
+		assertEquals(ResourceUsageSampler.MAX_INTERVAL, ResourceUsageSampler.getInterval(10000));
+	}
+}
@@ -0,0 +1,382 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryServerBehaviour;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.wst.server.core.IModule;
+import org.eclipse.wst.server.core.model.IModuleResource;
+import org.eclipse.wst.server.core.util.ModuleFile;
+
+public class ModuleJarCacheTest extends TestCase {
+
+	private static final String SERVER_ID = "server";
+
+	private static final long TIMEOUT = 10000;
+
+	private File tempDir;
+
+	private File moduleDir;
+
+	private ModuleJarCache cache;
+
+	@Override
+	protected void setUp() throws Exception {
+		tempDir = File.createTempFile("moduleJarCacheTest", null);
+		tempDir.delete();
+		moduleDir = new File(tempDir, "module");
+		moduleDir.mkdirs();
+		cache = new ModuleJarCache(new File(tempDir, "cache"));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ParallelWarWriterTest.delete(tempDir);
+	}
+
+	public void testUnchangedModuleIsReused() throws Exception {
+		List<IModuleResource> resources = createModule();
+		File jar = cache.getJar(SERVER_ID, "utility", resources, null);
+		byte[] content = ParallelWarWriterTest.read(jar);
+		long lastModified = System.currentTimeMillis() - 20000;
+		jar.setLastModified(lastModified);
+
+		assertEquals(jar, cache.getJar(SERVER_ID, "utility", resources, null));
+		assertTrue(Arrays.equals(content, ParallelWarWriterTest.read(jar)));
+		// Reusing the jar marks it as recently used
+		assertTrue(jar.lastModified() > lastModified);
+		assertEquals(1, cache.getReusedCount());
+		assertEquals(1, cache.getWrittenCount());
+
+		// Other modules have their own jar
+		assertFalse(jar.equals(cache.getJar(SERVER_ID, "other", resources, null)));
+	}
+
+	public void testChangedModuleIsRebuilt() throws Exception {
+		List<IModuleResource> resources = createModule();
+		File jar = cache.getJar(SERVER_ID, "utility", resources, null);
+
+		File changed = new File(moduleDir, "Class3.class");
+		FileOutputStream out = new FileOutputStream(changed);
+		try {
+			out.write("changed".getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+
+		File rebuilt = cache.getJar(SERVER_ID, "utility", resources, null);
+		assertFalse(jar.equals(rebuilt));
+		assertFalse(jar.exists());
+		assertEquals(2, cache.getWrittenCount());
+
+		ZipFile zipFile = new ZipFile(rebuilt);
+		try {
+			assertEquals("changed", new String(ParallelWarWriterTest.read(zipFile.getInputStream(zipFile
+					.getEntry("WEB-INF/classes/Class3.class"))), "UTF-8"));
+		}
+		finally {
+			zipFile.close();
+		}
+
+		// Entries copied from the previous jar are the same as if all
+		// entries were compressed again
+		File expected = new File(tempDir, "expected.jar");
+		new ParallelWarWriter(1).write(resources, expected, null, null);
+		assertTrue(Arrays.equals(ParallelWarWriterTest.read(expected), ParallelWarWriterTest.read(rebuilt)));
+	}
+
+	public void testModuleJarReportsWrite() throws Exception {
+		List<IModuleResource> resources = createModule();
+		assertTrue(cache.getModuleJar(SERVER_ID, "utility", resources, null).isWritten());
+		// Writes for other modules do not affect whether the jar of this
+		// module is reported as written
+		assertTrue(cache.getModuleJar(SERVER_ID, "other", resources, null).isWritten());
+		ModuleJarCache.ModuleJar jar = cache.getModuleJar(SERVER_ID, "utility", resources, null);
+		assertFalse(jar.isWritten());
+		assertEquals(cache.getJar(SERVER_ID, "utility", resources, null), jar.getFile());
+
+		new File(moduleDir, "Class3.class").setLastModified(System.currentTimeMillis());
+		assertTrue(cache.getModuleJar(SERVER_ID, "utility", resources, null).isWritten());
+	}
+
+	public void testOnlyChangedChildModuleJarsAreMarkedChanged() throws Exception {
+		File otherDir = new File(tempDir, "other");
+		otherDir.mkdirs();
+		Map<IModule, List<IModuleResource>> children = new LinkedHashMap<IModule, List<IModuleResource>>();
+		IModule changedChild = createChildModule("changed");
+		children.put(changedChild, createModule());
+		IModule unchangedChild = createChildModule("unchanged");
+		children.put(unchangedChild, createModule(otherDir));
+
+		// The first publish assembles all jars
+		List<IModuleResource> allResources = new ArrayList<IModuleResource>();
+		List<IModuleResource> changedResources = new ArrayList<IModuleResource>();
+		addChildModuleJars(children, allResources, changedResources);
+		assertEquals(2, allResources.size());
+		assertEquals(allResources, changedResources);
+
+		new File(moduleDir, "Class3.class").setLastModified(System.currentTimeMillis());
+		allResources.clear();
+		changedResources.clear();
+		addChildModuleJars(children, allResources, changedResources);
+		assertEquals(2, allResources.size());
+		assertEquals(1, changedResources.size());
+		assertSame(allResources.get(0), changedResources.get(0));
+		assertEquals("changed.jar", changedResources.get(0).getName());
+		assertEquals(1, cache.getReusedCount());
+		assertEquals(3, cache.getWrittenCount());
+	}
+
+	public void testJarsAreKeptPerServer() throws Exception {
+		List<IModuleResource> resources = createModule();
+		File jar = cache.getJar(SERVER_ID, "utility", resources, null);
+		File otherJar = cache.getJar("other", "utility", resources, null);
+		assertFalse(jar.equals(otherJar));
+
+		FileOutputStream out = new FileOutputStream(new File(moduleDir, "Class3.class"));
+		try {
+			out.write("changed".getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+
+		// Rebuilding the jar for one server keeps the jar of the other server
+		assertFalse(jar.equals(cache.getJar(SERVER_ID, "utility", resources, null)));
+		assertFalse(jar.exists());
+		assertTrue(otherJar.exists());
+	}
+
+	public void testFailedJarIsDeleted() throws Exception {
+		List<IModuleResource> resources = createModule();
+		File missing = new File(moduleDir, "missing.class");
+		resources.add(new ModuleFile(missing, missing.getName(), Path.EMPTY));
+		try {
+			cache.getJar(SERVER_ID, "utility", resources, null);
+			fail("Expected CoreException");
+		}
+		catch (CoreException e) {
+			// Expected
+		}
+		File[] serverFolders = new File(tempDir, "cache").listFiles();
+		assertEquals(1, serverFolders.length);
+		File[] folders = serverFolders[0].listFiles();
+		assertEquals(1, folders.length);
+		assertEquals(0, folders[0].listFiles().length);
+	}
+
+	public void testLeastRecentlyUsedJarsAreEvicted() throws Exception {
+		List<IModuleResource> resources = createModule();
+		File expected = new File(tempDir, "expected.jar");
+		new ParallelWarWriter(1).write(resources, expected, null, null);
+		cache = new ModuleJarCache(new File(tempDir, "cache"), 2 * expected.length());
+
+		long now = System.currentTimeMillis();
+		File jar1 = cache.getJar(SERVER_ID, "utility1", resources, null);
+		jar1.setLastModified(now - 20000);
+		File jar2 = cache.getJar("other", "utility2", resources, null);
+		jar2.setLastModified(now - 10000);
+
+		// Reusing the jar of utility1 makes it the most recently used
+		cache.getJar(SERVER_ID, "utility1", resources, null);
+		File jar3 = cache.getJar(SERVER_ID, "utility3", resources, null);
+		assertTrue(jar1.exists());
+		assertFalse(jar2.exists());
+		assertTrue(jar3.exists());
+
+		// The jar just written is kept even if it exceeds the bound
+		cache = new ModuleJarCache(new File(tempDir, "cache"), 1);
+		File jar4 = cache.getJar(SERVER_ID, "utility4", resources, null);
+		assertTrue(jar4.exists());
+		assertFalse(jar1.exists());
+		assertFalse(jar3.exists());
+	}
+
+	public void testJarsOfRemovedServersAndModulesAreDeleted() throws Exception {
+		List<IModuleResource> resources = createModule();
+		File jar1 = cache.getJar(SERVER_ID, "utility1", resources, null);
+		File jar2 = cache.getJar(SERVER_ID, "utility2", resources, null);
+		File otherJar = cache.getJar("other", "utility1", resources, null);
+
+		cache.remove(SERVER_ID, "utility1");
+		assertFalse(jar1.exists());
+		assertTrue(jar2.exists());
+		assertTrue(otherJar.exists());
+
+		cache.remove(SERVER_ID);
+		assertFalse(jar2.exists());
+		assertFalse(jar2.getParentFile().getParentFile().exists());
+		assertTrue(otherJar.exists());
+
+		// Removed jars are assembled again
+		assertTrue(cache.getModuleJar(SERVER_ID, "utility1", resources, null).isWritten());
+	}
+
+	public void testJarsOfOtherModulesAreAssembledConcurrently() throws Exception {
+		BlockingModuleJarCache cache = new BlockingModuleJarCache(new File(tempDir, "cache"));
+		List<IModuleResource> resources = createModule();
+		GetJarThread utility1 = new GetJarThread(cache, "utility1", resources);
+		utility1.start();
+		assertTrue("Jar not written", cache.blocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		// The same module waits for the jar being assembled
+		GetJarThread sameUtility = new GetJarThread(cache, "utility1", resources);
+		sameUtility.start();
+		sameUtility.join(200);
+		assertTrue(sameUtility.isAlive());
+
+		// Other modules do not
+		assertTrue(cache.getModuleJar(SERVER_ID, "utility2", resources, null).isWritten());
+
+		cache.released.countDown();
+		utility1.join(TIMEOUT);
+		sameUtility.join(TIMEOUT);
+		assertNull(utility1.error);
+		assertNull(sameUtility.error);
+		assertTrue(utility1.jar.isWritten());
+		assertFalse(sameUtility.jar.isWritten());
+		assertEquals(utility1.jar.getFile(), sameUtility.jar.getFile());
+		assertEquals(2, cache.getWrittenCount());
+	}
+
+	private class GetJarThread extends Thread {
+
+		private final ModuleJarCache cache;
+
+		private final String moduleId;
+
+		private final List<IModuleResource> resources;
+
+		volatile ModuleJarCache.ModuleJar jar;
+
+		volatile CoreException error;
+
+		GetJarThread(ModuleJarCache cache, String moduleId, List<IModuleResource> resources) {
+			this.cache = cache;
+			this.moduleId = moduleId;
+			this.resources = resources;
+		}
+
+		@Override
+		public void run() {
+			try {
+				jar = cache.getModuleJar(SERVER_ID, moduleId, resources, null);
+			}
+			catch (CoreException e) {
+				error = e;
+			}
+		}
+	}
+
+	/**
+	 * Blocks writing the first jar until released.
+	 */
+	private static class BlockingModuleJarCache extends ModuleJarCache {
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+
+		final CountDownLatch released = new CountDownLatch(1);
+
+		BlockingModuleJarCache(File root) {
+			super(root);
+		}
+
+		@Override
+		protected void write(List<IModuleResource> resources, File jar, File previous, IProgressMonitor monitor)
+				throws IOException, CoreException {
+			if (blocked.getCount() > 0) {
+				blocked.countDown();
+				try {
+					released.await(TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			super.write(resources, jar, previous, monitor);
+		}
+	}
+
+	/**
+	 * Adds the jars of the given child modules to the given resources, as
+	 * publishing a web module incrementally does. Jars are marked as changed
+	 * if they were assembled again.
+	 */
+	private void addChildModuleJars(Map<IModule, List<IModuleResource>> children,
+			List<IModuleResource> allResources, List<IModuleResource> changedResources) throws CoreException {
+		Map<IModule, IModuleResource> jars = new LinkedHashMap<IModule, IModuleResource>();
+		Set<IModule> assembled = new HashSet<IModule>();
+		for (Map.Entry<IModule, List<IModuleResource>> entry : children.entrySet()) {
+			IModule child = entry.getKey();
+			ModuleJarCache.ModuleJar jar = cache.getModuleJar(SERVER_ID, child.getId(), entry.getValue(), null);
+			jars.put(child, new ModuleFile(jar.getFile(), child.getName() + ".jar", new Path("WEB-INF/lib")));
+			if (jar.isWritten()) {
+				assembled.add(child);
+			}
+		}
+		CloudFoundryServerBehaviour.addChildModuleJars(jars, assembled, allResources, changedResources);
+	}
+
+	private static IModule createChildModule(final String name) {
+		return (IModule) Proxy.newProxyInstance(IModule.class.getClassLoader(), new Class<?>[] { IModule.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("equals")) {
+							return proxy == args[0];
+						}
+						if (method.getName().equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						}
+						if (method.getName().equals("getId") || method.getName().equals("getName")) {
+							return name;
+						}
+						return null;
+					}
+				});
+	}
+
+	private List<IModuleResource> createModule() throws Exception {
+		return createModule(moduleDir);
+	}
+
+	private List<IModuleResource> createModule(File dir) throws Exception {
+		List<IModuleResource> resources = ParallelWarWriterTest.createModule(dir, 20, 1, 1024);
+		// Files must not have changed just before the jar is written for
+		// their entries to be reused
+		long time = System.currentTimeMillis() - 60 * 1000;
+		for (File file : dir.listFiles()) {
+			file.setLastModified(time);
+		}
+		return resources;
+	}
+}
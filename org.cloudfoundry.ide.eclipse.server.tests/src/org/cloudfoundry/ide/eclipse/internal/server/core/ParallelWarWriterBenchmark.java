@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.wst.server.core.model.IModuleResource;
+
+/**
+ * Compares the time to write the WAR of a synthetic module with thousands of
+ * class files and a few large resources, with one thread and with one thread
+ * per processor. Not part of the regular test suite, as it takes a while and
+ * its results depend on the machine. Run it on its own as a JUnit plug-in
+ * test.
+ */
+public class ParallelWarWriterBenchmark extends TestCase {
+
+	private static final int CLASS_FILES = 5000;
+
+	private static final int LARGE_RESOURCES = 4;
+
+	private static final int LARGE_RESOURCE_SIZE = 32 * 1024 * 1024;
+
+	private static final int RUNS = 3;
+
+	private File tempDir;
+
+	@Override
+	protected void setUp() throws Exception {
+		tempDir = File.createTempFile("parallelWarWriterBenchmark", null);
+		tempDir.delete();
+		tempDir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ParallelWarWriterTest.delete(tempDir);
+	}
+
+	public void testBenchmark() throws Exception {
+		List<IModuleResource> resources = ParallelWarWriterTest.createModule(tempDir, CLASS_FILES, LARGE_RESOURCES,
+				LARGE_RESOURCE_SIZE);
+		int processors = Runtime.getRuntime().availableProcessors();
+
+		File sequential = new File(tempDir, "sequential.war");
+		File parallel = new File(tempDir, "parallel.war");
+
+		// Warm up, and read all files once so that both runs read from the
+		// file system cache
+		new ParallelWarWriter(processors).write(resources, parallel, null, null);
+
+		long sequentialTime = time(new ParallelWarWriter(1), resources, sequential);
+		long parallelTime = time(new ParallelWarWriter(processors), resources, parallel);
+
+		System.out.println(getName() + ": " + CLASS_FILES + " class files, " + LARGE_RESOURCES + " resources of "
+				+ LARGE_RESOURCE_SIZE / (1024 * 1024) + " MB, archive of " + parallel.length() / (1024 * 1024)
+				+ " MB");
+		System.out.println(getName() + ": 1 thread: " + sequentialTime + " ms, " + processors + " threads: "
+				+ parallelTime + " ms");
+
+		assertTrue(Arrays.equals(ParallelWarWriterTest.read(sequential), ParallelWarWriterTest.read(parallel)));
+	}
+
+	/**
+	 * @return best time of several runs, in milliseconds
+	 */
+	private static long time(ParallelWarWriter writer, List<IModuleResource> resources, File archive)
+			throws Exception {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			writer.write(resources, archive, null, null);
+			best = Math.min(best, (System.nanoTime() - start) / 1000000);
+		}
+		return best;
+	}
+}
@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.Path;
+import org.eclipse.wst.server.core.model.IModuleResource;
+import org.eclipse.wst.server.core.util.ModuleFile;
+import org.eclipse.wst.server.core.util.ModuleFolder;
+
+public class ParallelWarWriterTest extends TestCase {
+
+	protected File tempDir;
+
+	@Override
+	protected void setUp() throws Exception {
+		tempDir = File.createTempFile("parallelWarWriterTest", null);
+		tempDir.delete();
+		tempDir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(tempDir);
+	}
+
+	public void testArchiveIsIdenticalForAnyThreadCount() throws Exception {
+		List<IModuleResource> resources = createModule(tempDir, 200, 2, 64 * 1024);
+
+		File singleThreaded = new File(tempDir, "single.war");
+		new ParallelWarWriter(1).write(resources, singleThreaded, null, null);
+		byte[] expected = read(singleThreaded);
+
+		for (int threads : new int[] { 2, 3, 8 }) {
+			File archive = new File(tempDir, threads + ".war");
+			new ParallelWarWriter(threads).write(resources, archive, null, null);
+			assertTrue("Archive differs with " + threads + " threads", Arrays.equals(expected, read(archive)));
+		}
+	}
+
+	public void testArchiveContents() throws Exception {
+		List<IModuleResource> resources = createModule(tempDir, 10, 1, 1024);
+		File archive = new File(tempDir, "test.war");
+		new ParallelWarWriter(4).write(resources, archive, null, null);
+
+		ZipFile zipFile = new ZipFile(archive);
+		try {
+			List<String> names = new ArrayList<String>();
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				names.add(entry.getName());
+				if (!entry.isDirectory()) {
+					File source = new File(tempDir, new Path(entry.getName()).lastSegment());
+					assertTrue(Arrays.equals(read(source), read(zipFile.getInputStream(entry))));
+				}
+			}
+			assertEquals(13, names.size());
+			assertTrue(names.contains("WEB-INF/"));
+			assertTrue(names.contains("WEB-INF/classes/Class9.class"));
+			assertTrue(names.contains("resource0.bin"));
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	public void testFilterInFiles() throws Exception {
+		List<IModuleResource> resources = createModule(tempDir, 3, 1, 10);
+		Set<IModuleResource> filterIn = new HashSet<IModuleResource>();
+		filterIn.add(resources.get(1));
+
+		File archive = new File(tempDir, "partial.war");
+		new ParallelWarWriter(2).write(resources, archive, filterIn, null);
+
+		ZipFile zipFile = new ZipFile(archive);
+		try {
+			List<String> names = new ArrayList<String>();
+			for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+				names.add(entries.nextElement().getName());
+			}
+			// Folders are always included
+			assertEquals(Arrays.asList("WEB-INF/", "WEB-INF/classes/", "resource0.bin"), names);
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	public void testCompressedContentIsStored() throws Exception {
+		Random random = new Random(0);
+		byte[] content = new byte[100000];
+		random.nextBytes(content);
+		File jar = new File(tempDir, "lib.jar");
+		File bin = new File(tempDir, "random.bin");
+		for (File file : new File[] { jar, bin }) {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				out.write(content);
+			}
+			finally {
+				out.close();
+			}
+		}
+		File text = createFile(tempDir, "text.txt", 100000, random);
+
+		List<IModuleResource> resources = new ArrayList<IModuleResource>();
+		resources.add(new ModuleFile(jar, jar.getName(), new Path("WEB-INF/lib")));
+		resources.add(new ModuleFile(bin, bin.getName(), Path.EMPTY));
+		resources.add(new ModuleFile(text, text.getName(), Path.EMPTY));
+		File archive = new File(tempDir, "stored.war");
+		new ParallelWarWriter(2).write(resources, archive, null, null);
+
+		ZipFile zipFile = new ZipFile(archive);
+		try {
+			assertEquals(ZipEntry.STORED, zipFile.getEntry("WEB-INF/lib/lib.jar").getMethod());
+			assertEquals(ZipEntry.STORED, zipFile.getEntry("random.bin").getMethod());
+			assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("text.txt").getMethod());
+			assertTrue(Arrays.equals(content, read(zipFile.getInputStream(zipFile.getEntry("WEB-INF/lib/lib.jar")))));
+			assertTrue(Arrays.equals(read(text), read(zipFile.getInputStream(zipFile.getEntry("text.txt")))));
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	public void testLargeEntries() throws Exception {
+		List<IModuleResource> resources = createModule(tempDir, 50, 1, 3 * 1024 * 1024);
+		// Content that does not compress, which is stored after it was
+		// deflated directly to the archive
+		Random random = new Random(0);
+		byte[] content = new byte[2 * 1024 * 1024];
+		random.nextBytes(content);
+		File bin = new File(tempDir, "random.bin");
+		FileOutputStream out = new FileOutputStream(bin);
+		try {
+			out.write(content);
+		}
+		finally {
+			out.close();
+		}
+		resources.add(1, new ModuleFile(bin, bin.getName(), Path.EMPTY));
+		long time = System.currentTimeMillis() - 60 * 1000;
+		for (File file : tempDir.listFiles()) {
+			file.setLastModified(time);
+		}
+
+		File singleThreaded = new File(tempDir, "single.war");
+		new ParallelWarWriter(1, Deflater.DEFAULT_COMPRESSION, ArchiveCompressionPolicy.DEFLATE_ALL).write(resources,
+				singleThreaded, null, null);
+		byte[] expected = read(singleThreaded);
+		File archive = new File(tempDir, "large.war");
+		new ParallelWarWriter(4, Deflater.DEFAULT_COMPRESSION, ArchiveCompressionPolicy.DEFLATE_ALL).write(resources,
+				archive, null, null);
+		assertTrue(Arrays.equals(expected, read(archive)));
+
+		ZipFile zipFile = new ZipFile(archive);
+		try {
+			assertEquals(54, zipFile.size());
+			ZipEntry stored = zipFile.getEntry("random.bin");
+			assertEquals(ZipEntry.STORED, stored.getMethod());
+			assertTrue(Arrays.equals(content, read(zipFile.getInputStream(stored))));
+			ZipEntry deflated = zipFile.getEntry("resource0.bin");
+			assertEquals(ZipEntry.DEFLATED, deflated.getMethod());
+			assertTrue(Arrays.equals(read(new File(tempDir, "resource0.bin")), read(zipFile.getInputStream(deflated))));
+		}
+		finally {
+			zipFile.close();
+		}
+
+		// Large entries copied from the previous archive
+		File rebuilt = new File(tempDir, "rebuilt.war");
+		new ParallelWarWriter(4, Deflater.DEFAULT_COMPRESSION, ArchiveCompressionPolicy.DEFLATE_ALL).write(resources,
+				rebuilt, null, archive, null);
+		assertTrue(Arrays.equals(expected, read(rebuilt)));
+	}
+
+	public void testArchiveWithTooManyEntriesUsesZip64() throws Exception {
+		List<IModuleResource> resources = createModule(tempDir, 10, 1, 1024);
+		// Folder entries are enough to exceed the entry limit of zip
+		// archives without Zip64 extensions
+		int folderCount = 0xFFFF;
+		for (int i = 0; i < folderCount; i++) {
+			ModuleFolder folder = new ModuleFolder(null, "folder" + i, Path.EMPTY);
+			folder.setMembers(new IModuleResource[0]);
+			resources.add(folder);
+		}
+		File archive = new File(tempDir, "zip64.war");
+		new ParallelWarWriter(2).write(resources, archive, null, null);
+
+		ZipFile zipFile = new ZipFile(archive);
+		try {
+			assertEquals(13 + folderCount, zipFile.size());
+			assertNotNull(zipFile.getEntry("folder" + (folderCount - 1) + "/"));
+			ZipEntry entry = zipFile.getEntry("WEB-INF/classes/Class9.class");
+			assertTrue(Arrays.equals(read(new File(tempDir, "Class9.class")), read(zipFile.getInputStream(entry))));
+		}
+		finally {
+			zipFile.close();
+		}
+	}
+
+	public void testCompressionThreadsAreShared() throws Exception {
+		List<IModuleResource> resources = createModule(tempDir, 200, 1, 1024);
+		for (int i = 0; i < 5; i++) {
+			new ParallelWarWriter(8).write(resources, new File(tempDir, i + ".war"), null, null);
+		}
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("Cloud Foundry archive compression")) {
+				count++;
+			}
+		}
+		assertTrue(count + " compression threads", count <= Runtime.getRuntime().availableProcessors());
+	}
+
+	public void testDuplicateEntry() throws Exception {
+		File file = createFile(tempDir, "duplicate.txt", 10, new Random(0));
+		List<IModuleResource> resources = new ArrayList<IModuleResource>();
+		resources.add(new ModuleFile(file, file.getName(), Path.EMPTY));
+		resources.add(new ModuleFile(file, file.getName(), Path.EMPTY));
+		File archive = new File(tempDir, "duplicate.war");
+		try {
+			new ParallelWarWriter(2).write(resources, archive, null, null);
+			fail("Expected ZipException");
+		}
+		catch (ZipException e) {
+			// Expected
+		}
+		assertFalse(archive.exists());
+	}
+
+	/**
+	 * Creates a module with a WEB-INF/classes folder containing the given
+	 * number of class files, followed by the given number of resources at the
+	 * root of the module.
+	 */
+	static List<IModuleResource> createModule(File dir, int classCount, int resourceCount, int resourceSize)
+			throws IOException {
+		Random random = new Random(classCount);
+		ModuleFolder webInf = new ModuleFolder(null, "WEB-INF", Path.EMPTY);
+		ModuleFolder classes = new ModuleFolder(null, "classes", new Path("WEB-INF"));
+		webInf.setMembers(new IModuleResource[] { classes });
+
+		IModuleResource[] classFiles = new IModuleResource[classCount];
+		for (int i = 0; i < classCount; i++) {
+			File file = createFile(dir, "Class" + i + ".class", 1000 + random.nextInt(4000), random);
+			classFiles[i] = new ModuleFile(file, file.getName(), new Path("WEB-INF/classes"));
+		}
+		classes.setMembers(classFiles);
+
+		List<IModuleResource> resources = new ArrayList<IModuleResource>();
+		resources.add(webInf);
+		for (int i = 0; i < resourceCount; i++) {
+			File file = createFile(dir, "resource" + i + ".bin", resourceSize, random);
+			resources.add(new ModuleFile(file, file.getName(), Path.EMPTY));
+		}
+		return resources;
+	}
+
+	/**
+	 * Creates a file with compressible content, similar to class files.
+	 */
+	static File createFile(File dir, String name, int size, Random random) throws IOException {
+		byte[] content = new byte[size];
+		for (int i = 0; i < size; i++) {
+			content[i] = (byte) ('a' + random.nextInt(12));
+		}
+		File file = new File(dir, name);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		}
+		finally {
+			out.close();
+		}
+		return file;
+	}
+
+	static byte[] read(File file) throws IOException {
+		return read(new FileInputStream(file));
+	}
+
+	static byte[] read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.PooledHttpTransport;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+public class PooledHttpTransportTest extends TestCase {
+
+	private static final long ACQUISITION_TIMEOUT = 500;
+
+	private KeepAliveServer server;
+
+	private PooledHttpTransport transport;
+
+	private URI uri;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new KeepAliveServer();
+		server.start();
+		uri = new URI("http://127.0.0.1:" + server.getPort() + "/");
+		transport = new PooledHttpTransport(1, 1, ACQUISITION_TIMEOUT);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		transport.dispose();
+		server.stop();
+	}
+
+	public void testLimits() {
+		PooledHttpTransport limited = new PooledHttpTransport(3, 7, 1000);
+		try {
+			assertEquals(3, limited.getMaxConnectionsPerRoute());
+			assertEquals(7, limited.getMaxConnections());
+			assertEquals(1000, limited.getAcquisitionTimeout());
+		}
+		finally {
+			limited.dispose();
+		}
+
+		// Requests must not wait forever for a free connection
+		limited = new PooledHttpTransport(3, 7, 0);
+		try {
+			assertEquals(PooledHttpTransport.DEFAULT_ACQUISITION_TIMEOUT, limited.getAcquisitionTimeout());
+		}
+		finally {
+			limited.dispose();
+		}
+	}
+
+	public void testRequestFailsWhenPoolIsFull() throws Exception {
+		ClientHttpRequestFactory requestFactory = transport.createRequestFactory(null);
+		// Holds the only connection until the response is closed
+		ClientHttpResponse held = requestFactory.createRequest(uri, HttpMethod.GET).execute();
+		assertEquals(HttpStatus.OK, held.getStatusCode());
+		assertEquals(1, transport.getConnectionsInPool());
+
+		long start = System.currentTimeMillis();
+		try {
+			requestFactory.createRequest(uri, HttpMethod.GET).execute().close();
+			fail("Expected the request to time out waiting for a connection");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+		long waited = System.currentTimeMillis() - start;
+		assertTrue("Waited " + waited + " ms", waited >= ACQUISITION_TIMEOUT - 50);
+		assertTrue("Waited " + waited + " ms", waited < 10 * ACQUISITION_TIMEOUT);
+		assertEquals(1, server.getConnections());
+
+		// Once released, the connection is reused
+		held.close();
+		ClientHttpResponse response = requestFactory.createRequest(uri, HttpMethod.GET).execute();
+		try {
+			assertEquals(HttpStatus.OK, response.getStatusCode());
+		}
+		finally {
+			response.close();
+		}
+		assertEquals(1, transport.getNewConnectionCount());
+		assertEquals(1, transport.getReusedConnectionCount());
+		assertEquals(1, server.getConnections());
+	}
+
+	/**
+	 * Local server that answers all requests with a short body, keeping
+	 * connections open for further requests.
+	 */
+	private static class KeepAliveServer {
+
+		private ServerSocket serverSocket;
+
+		private int connections;
+
+		void start() throws IOException {
+			serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+			Thread thread = new Thread("Keep-alive server") {
+				@Override
+				public void run() {
+					while (!serverSocket.isClosed()) {
+						try {
+							final Socket socket = serverSocket.accept();
+							synchronized (KeepAliveServer.this) {
+								connections++;
+							}
+							Thread handler = new Thread("Keep-alive connection") {
+								@Override
+								public void run() {
+									handle(socket);
+								}
+							};
+							handler.setDaemon(true);
+							handler.start();
+						}
+						catch (IOException e) {
+							// Closed
+						}
+					}
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void stop() throws IOException {
+			if (serverSocket != null) {
+				serverSocket.close();
+			}
+		}
+
+		int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		synchronized int getConnections() {
+			return connections;
+		}
+
+		private void handle(Socket socket) {
+			try {
+				try {
+					InputStream input = socket.getInputStream();
+					OutputStream output = socket.getOutputStream();
+					while (readHeaders(input)) {
+						output.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes("US-ASCII"));
+						output.flush();
+					}
+				}
+				finally {
+					socket.close();
+				}
+			}
+			catch (IOException e) {
+				// The client went away
+			}
+		}
+
+		/**
+		 * @return false if the connection was closed before a request was
+		 * read
+		 */
+		private static boolean readHeaders(InputStream input) throws IOException {
+			// Requests without a body end with an empty line
+			int matched = 0;
+			int c;
+			while ((c = input.read()) >= 0) {
+				if (c == '\n') {
+					matched++;
+					if (matched == 2) {
+						return true;
+					}
+				}
+				else if (c != '\r') {
+					matched = 0;
+				}
+			}
+			return false;
+		}
+	}
+}
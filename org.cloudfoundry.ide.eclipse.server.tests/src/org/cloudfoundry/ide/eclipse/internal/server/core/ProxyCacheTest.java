@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.HttpProxyConfiguration;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryClientFactory;
+import org.eclipse.core.net.proxy.IProxyChangeListener;
+import org.eclipse.core.net.proxy.IProxyData;
+import org.eclipse.core.net.proxy.IProxyService;
+
+public class ProxyCacheTest extends TestCase {
+
+	private static final String URL = "http://api.cloudfoundry.com";
+
+	private static final long TIMEOUT = 10000;
+
+	private TestProxyService proxyService;
+
+	@Override
+	protected void setUp() throws Exception {
+		proxyService = new TestProxyService();
+		proxyService.host = "proxy.one";
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		// Proxies resolved by the test proxy service must not be used by other
+		// tests
+		CloudFoundryPlugin plugin = CloudFoundryPlugin.getDefault();
+		if (plugin != null) {
+			CloudFoundryClientFactory.getProxy(new URL(URL), plugin.getProxyService());
+		}
+	}
+
+	public void testProxiesAreResolvedOncePerUrl() throws Exception {
+		HttpProxyConfiguration proxy = CloudFoundryClientFactory.getProxy(new URL(URL), proxyService.service);
+		assertEquals("proxy.one", proxy.getProxyHost());
+		assertEquals(8080, proxy.getProxyPort());
+		assertSame(proxy, CloudFoundryClientFactory.getProxy(new URL(URL), proxyService.service));
+		assertEquals(1, proxyService.resolutions);
+
+		// HTTPS URLs use the HTTPS proxy, which is not set
+		assertNull(CloudFoundryClientFactory.getProxy(new URL("https://api.cloudfoundry.com"), proxyService.service));
+		assertEquals(2, proxyService.resolutions);
+	}
+
+	public void testProxyChangesArePickedUp() throws Exception {
+		assertEquals("proxy.one", CloudFoundryClientFactory.getProxy(new URL(URL), proxyService.service)
+				.getProxyHost());
+
+		proxyService.host = "proxy.two";
+		proxyService.fireProxyChange();
+		assertEquals("proxy.two", CloudFoundryClientFactory.getProxy(new URL(URL), proxyService.service)
+				.getProxyHost());
+		assertEquals(2, proxyService.resolutions);
+
+		proxyService.enabled = false;
+		proxyService.fireProxyChange();
+		assertNull(CloudFoundryClientFactory.getProxy(new URL(URL), proxyService.service));
+		assertEquals(3, proxyService.resolutions);
+	}
+
+	public void testUnchangedProxiesAreNotReapplied() throws Exception {
+		TestClient client = new TestClient();
+		TestLoginHandler handler = new TestLoginHandler(client.operations);
+		handler.proxy = new HttpProxyConfiguration("proxy.one", 8080);
+		assertTrue(handler.updateProxyInClient(client.operations));
+		assertFalse(handler.updateProxyInClient(client.operations));
+
+		// Equal proxies are not applied again
+		handler.proxy = new HttpProxyConfiguration("proxy.one", 8080);
+		assertFalse(handler.updateProxyInClient(client.operations));
+		assertEquals(1, client.updates);
+
+		handler.proxy = new HttpProxyConfiguration("proxy.one", 8081);
+		assertTrue(handler.updateProxyInClient(client.operations));
+		handler.proxy = null;
+		assertTrue(handler.updateProxyInClient(client.operations));
+		assertFalse(handler.updateProxyInClient(client.operations));
+		assertEquals(3, client.updates);
+
+		// The applied proxy is remembered per client
+		TestClient other = new TestClient();
+		assertTrue(handler.updateProxyInClient(other.operations));
+		assertEquals(1, other.updates);
+	}
+
+	public void testClientsAreReconfiguredIndependently() throws Exception {
+		final TestClient blocked = new TestClient();
+		blocked.block();
+		final TestLoginHandler handler = new TestLoginHandler(blocked.operations);
+		handler.proxy = new HttpProxyConfiguration("proxy.one", 8080);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					handler.updateProxyInClient(blocked.operations);
+				}
+				catch (Exception e) {
+					// Reported by the assertions below
+				}
+			}
+		};
+		thread.start();
+		try {
+			blocked.awaitBlocked();
+
+			// Not held up by the update of the blocked client
+			long start = System.currentTimeMillis();
+			TestClient other = new TestClient();
+			assertTrue(handler.updateProxyInClient(other.operations));
+			assertTrue(System.currentTimeMillis() - start < TIMEOUT / 2);
+		}
+		finally {
+			blocked.unblock();
+			thread.join(TIMEOUT);
+		}
+		assertEquals(1, blocked.updates);
+	}
+
+	/**
+	 * Sets the proxy of the test instead of resolving it from the proxy
+	 * service.
+	 */
+	private static class TestLoginHandler extends CloudFoundryLoginHandler {
+
+		volatile HttpProxyConfiguration proxy;
+
+		TestLoginHandler(CloudFoundryOperations operations) {
+			super(operations, URL);
+		}
+
+		@Override
+		protected HttpProxyConfiguration getProxy(String cloudURL) {
+			return proxy;
+		}
+	}
+
+	/**
+	 * Counts the proxy updates of a client. Updates can be blocked until
+	 * released.
+	 */
+	private static class TestClient {
+
+		final CloudFoundryOperations operations;
+
+		volatile int updates;
+
+		private volatile CountDownLatch blocked;
+
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		TestClient() {
+			operations = (CloudFoundryOperations) Proxy.newProxyInstance(
+					CloudFoundryOperations.class.getClassLoader(), new Class<?>[] { CloudFoundryOperations.class },
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							if (method.getName().equals("equals")) {
+								return proxy == args[0];
+							}
+							if (method.getName().equals("hashCode")) {
+								return System.identityHashCode(proxy);
+							}
+							if (method.getName().equals("updateHttpProxyConfiguration")) {
+								updates++;
+								CountDownLatch current = blocked;
+								if (current != null) {
+									current.countDown();
+									released.await(TIMEOUT, TimeUnit.MILLISECONDS);
+								}
+							}
+							return null;
+						}
+					});
+		}
+
+		void block() {
+			blocked = new CountDownLatch(1);
+		}
+
+		void awaitBlocked() throws InterruptedException {
+			assertTrue("Proxy not updated", blocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		}
+
+		void unblock() {
+			released.countDown();
+		}
+	}
+
+	/**
+	 * Proxy service with a single HTTP proxy, which counts how often proxies
+	 * are resolved.
+	 */
+	private static class TestProxyService {
+
+		final IProxyService service;
+
+		volatile String host;
+
+		volatile boolean enabled = true;
+
+		volatile int resolutions;
+
+		private volatile IProxyChangeListener listener;
+
+		TestProxyService() {
+			service = (IProxyService) Proxy.newProxyInstance(IProxyService.class.getClassLoader(),
+					new Class<?>[] { IProxyService.class }, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							String name = method.getName();
+							if (name.equals("equals")) {
+								return proxy == args[0];
+							}
+							if (name.equals("hashCode")) {
+								return System.identityHashCode(proxy);
+							}
+							if (name.equals("isProxiesEnabled")) {
+								return enabled;
+							}
+							if (name.equals("getProxyData") && (args == null || args.length == 0)) {
+								resolutions++;
+								return new IProxyData[] { createProxyData(host) };
+							}
+							if (name.equals("addProxyChangeListener")) {
+								listener = (IProxyChangeListener) args[0];
+							}
+							else if (name.equals("removeProxyChangeListener")) {
+								listener = null;
+							}
+							return null;
+						}
+					});
+		}
+
+		void fireProxyChange() {
+			IProxyChangeListener current = listener;
+			assertNotNull("No listener for proxy changes", current);
+			current.proxyInfoChanged(null);
+		}
+
+		private static IProxyData createProxyData(final String host) {
+			return (IProxyData) Proxy.newProxyInstance(IProxyData.class.getClassLoader(),
+					new Class<?>[] { IProxyData.class }, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							String name = method.getName();
+							if (name.equals("getType")) {
+								return IProxyData.HTTP_PROXY_TYPE;
+							}
+							if (name.equals("getHost")) {
+								return host;
+							}
+							if (name.equals("getPort")) {
+								return 8080;
+							}
+							return null;
+						}
+					});
+		}
+	}
+}
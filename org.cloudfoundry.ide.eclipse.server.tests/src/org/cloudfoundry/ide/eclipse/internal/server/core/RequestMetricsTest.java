@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RequestMetrics;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RequestMetrics.ErrorCategory;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RequestMetrics.OperationSnapshot;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RequestMetrics.StripedCounter;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+
+public class RequestMetricsTest extends TestCase {
+
+	private static final long MILLIS = 1000000;
+
+	public void testStripedCounterSumsConcurrentUpdates() throws Exception {
+		final StripedCounter counter = new StripedCounter(4);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						counter.increment();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(8000, counter.get());
+	}
+
+	public void testRecordsPerOperationAndApplication() throws Exception {
+		RequestMetrics metrics = new RequestMetrics();
+		metrics.record("getApplicationStats", "app1", 10 * MILLIS, 8 * MILLIS, 0, 0, null);
+		metrics.record("getApplicationStats", "app1", 30 * MILLIS, 20 * MILLIS, 2, 0, null);
+		metrics.record("getApplicationStats", "app2", 5 * MILLIS, 5 * MILLIS, 0, 0, null);
+		metrics.record("getApplications", null, 100 * MILLIS, 90 * MILLIS, 0, 100, new CloudFoundryException(
+				HttpStatus.INTERNAL_SERVER_ERROR));
+
+		List<OperationSnapshot> operations = metrics.getSnapshot().getOperations();
+		assertEquals(3, operations.size());
+
+		OperationSnapshot app1 = operations.get(0);
+		assertEquals("getApplicationStats", app1.getOperation());
+		assertEquals("app1", app1.getAppName());
+		assertEquals(2, app1.getCount());
+		assertEquals(2, app1.getRetries());
+		assertEquals(40, app1.getTotalMillis());
+		assertEquals(28, app1.getClientMillis());
+		assertEquals(12, app1.getPluginMillis());
+		assertEquals(30, app1.getMaxMillis());
+		assertEquals(0, app1.getFailures());
+
+		assertEquals("app2", operations.get(1).getAppName());
+
+		OperationSnapshot applications = operations.get(2);
+		assertNull(applications.getAppName());
+		assertEquals(100, applications.getBytes());
+		assertEquals(1, applications.getFailures());
+		assertEquals(1, applications.getErrors(ErrorCategory.CONTROLLER));
+
+		metrics.reset();
+		assertTrue(metrics.getSnapshot().getOperations().isEmpty());
+	}
+
+	public void testPercentilesFromHistogram() throws Exception {
+		RequestMetrics metrics = new RequestMetrics();
+		for (int i = 0; i < 90; i++) {
+			metrics.record("op", null, 3 * MILLIS, 0, 0, 0, null);
+		}
+		for (int i = 0; i < 10; i++) {
+			metrics.record("op", null, 1500 * MILLIS, 0, 0, 0, null);
+		}
+		OperationSnapshot snapshot = metrics.getSnapshot().getOperations().get(0);
+		assertEquals(5, snapshot.getPercentileMillis(50));
+		assertEquals(5, snapshot.getPercentileMillis(90));
+		assertEquals(1500, snapshot.getPercentileMillis(99));
+	}
+
+	public void testErrorCategories() throws Exception {
+		assertEquals(ErrorCategory.NETWORK,
+				RequestMetrics.getErrorCategory(CloudErrorUtil.toCoreException(new IOException())));
+		assertEquals(ErrorCategory.NETWORK,
+				RequestMetrics.getErrorCategory(new ResourceAccessException("Connection refused")));
+		assertEquals(ErrorCategory.CONTROLLER,
+				RequestMetrics.getErrorCategory(CloudErrorUtil.toCoreException(new CloudFoundryException(
+						HttpStatus.NOT_FOUND))));
+		assertEquals(ErrorCategory.CANCELED, RequestMetrics.getErrorCategory(new OperationCanceledException()));
+		assertEquals(ErrorCategory.PLUGIN, RequestMetrics.getErrorCategory(new NullPointerException()));
+	}
+
+	public void testLeastRecentApplicationsAreDiscarded() throws Exception {
+		RequestMetrics metrics = new RequestMetrics(2);
+		metrics.record("getApplications", null, MILLIS, 0, 0, 0, null);
+		metrics.record("getApplicationStats", "app1", MILLIS, 0, 0, 0, null);
+		Thread.sleep(10);
+		metrics.record("getApplicationStats", "app2", MILLIS, 0, 0, 0, null);
+		Thread.sleep(10);
+		// Makes app1 the most recently recorded application
+		metrics.record("getApplicationStats", "app1", MILLIS, 0, 0, 0, null);
+		Thread.sleep(10);
+		metrics.record("getApplicationStats", "app3", MILLIS, 0, 0, 0, null);
+
+		List<OperationSnapshot> operations = metrics.getSnapshot().getOperations();
+		assertEquals(3, operations.size());
+		assertEquals("app1", operations.get(0).getAppName());
+		assertEquals(2, operations.get(0).getCount());
+		assertEquals("app3", operations.get(1).getAppName());
+		// Requests that are not specific to an application are kept
+		assertNull(operations.get(2).getAppName());
+
+		metrics.reset();
+		metrics.record("getApplicationStats", "app1", MILLIS, 0, 0, 0, null);
+		metrics.record("getApplicationStats", "app2", MILLIS, 0, 0, 0, null);
+		assertEquals(2, metrics.getSnapshot().getOperations().size());
+	}
+
+	public void testOperationNames() throws Exception {
+		RequestMetrics metrics = new RequestMetrics();
+		Runnable request = new Runnable() {
+			public void run() {
+			}
+		};
+		// Anonymous requests are named after the method that declares them
+		assertEquals("testOperationNames", metrics.getOperationName(request.getClass(), "label"));
+		assertEquals("RequestMetricsTest", metrics.getOperationName(RequestMetricsTest.class, "label"));
+	}
+
+	public void testCSVExport() throws Exception {
+		RequestMetrics metrics = new RequestMetrics();
+		metrics.record("deleteModules", "my,app", 2 * MILLIS, MILLIS, 0, 0, null);
+		String[] lines = metrics.getSnapshot().toCSV().split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].startsWith("operation,application,count"));
+		assertTrue(lines[1].startsWith("deleteModules,\"my,app\",1,"));
+	}
+}
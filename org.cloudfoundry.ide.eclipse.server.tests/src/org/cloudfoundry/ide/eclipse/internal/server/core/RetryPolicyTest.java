@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RetryPolicy;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RetryPolicy.Execution;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.RetryPolicy.RetryCondition;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+public class RetryPolicyTest extends TestCase {
+
+	public void testExponentialBackoffIsCapped() throws Exception {
+		RetryPolicy policy = new FixedRandomPolicy(1000, 5000, 0, 0);
+		assertEquals(1000, policy.getDelay(1000, 0));
+		assertEquals(2000, policy.getDelay(1000, 1));
+		assertEquals(4000, policy.getDelay(1000, 2));
+		assertEquals(5000, policy.getDelay(1000, 3));
+		assertEquals(5000, policy.getDelay(1000, 30));
+	}
+
+	public void testJitterShortensDelay() throws Exception {
+		assertEquals(1000, new FixedRandomPolicy(1000, 5000, 0.5, 0).getDelay(1000, 0));
+		assertEquals(750, new FixedRandomPolicy(1000, 5000, 0.5, 0.5).getDelay(1000, 0));
+		assertEquals(1500, new FixedRandomPolicy(1000, 5000, 0.5, 0.5).getDelay(1000, 1));
+	}
+
+	public void testMaxAttempts() throws Exception {
+		Execution execution = RetryPolicy.fixed(3, 10).newExecution();
+		assertEquals(10, execution.getRetryDelay(new Exception()));
+		assertEquals(10, execution.getRetryDelay(new Exception()));
+		assertEquals(-1, execution.getRetryDelay(new Exception()));
+		assertEquals(2, execution.getRetries());
+	}
+
+	public void testFixedPolicyIsBounded() throws Exception {
+		assertEquals(1, RetryPolicy.fixed(0, 10).getMaxAttempts());
+		assertEquals(1, RetryPolicy.fixed(-1, 10).getMaxAttempts());
+		assertEquals(-1, RetryPolicy.fixed(0, 10).newExecution().getRetryDelay(new Exception()));
+	}
+
+	public void testDeadline() throws Exception {
+		Execution execution = RetryPolicy.exponential(1000, 1000, 500).newExecution();
+		assertEquals(-1, execution.getRetryDelay(new Exception()));
+	}
+
+	public void testRetryCondition() throws Exception {
+		RetryPolicy policy = RetryPolicy.fixed(3, 10).retryOn(new RetryCondition() {
+			public boolean shouldRetry(Throwable error) {
+				return error instanceof IllegalStateException;
+			}
+		});
+		Execution execution = policy.newExecution();
+		assertEquals(-1, execution.getRetryDelay(new IllegalArgumentException()));
+		assertEquals(10, execution.getRetryDelay(new IllegalStateException()));
+	}
+
+	public void testCancelledWaitStops() throws Exception {
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		long start = System.currentTimeMillis();
+		assertFalse(RetryPolicy.fixed(1, 10000).newExecution().await(10000, monitor));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	private static class FixedRandomPolicy extends RetryPolicy {
+
+		private final double random;
+
+		FixedRandomPolicy(long interval, long maxInterval, double jitter, double random) {
+			super(interval, maxInterval, DEFAULT_MULTIPLIER, jitter, 0, 0, null);
+			this.random = random;
+		}
+
+		@Override
+		protected double nextRandom() {
+			return random;
+		}
+	}
+}
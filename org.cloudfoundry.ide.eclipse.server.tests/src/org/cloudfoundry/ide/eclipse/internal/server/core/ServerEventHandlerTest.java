@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.cloudfoundry.ide.eclipse.internal.server.ui.ServerDescriptor;
+import org.cloudfoundry.ide.eclipse.internal.server.ui.ServerHandler;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.wst.server.core.IServer;
+import org.eclipse.wst.server.core.IServerWorkingCopy;
+
+public class ServerEventHandlerTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private ServerEventHandler handler;
+
+	private RecordingListener listener;
+
+	private CloudFoundryServer cloudServer;
+
+	private CloudFoundryServer workingCopyServer;
+
+	@Override
+	protected void setUp() throws Exception {
+		ServerDescriptor descriptor = new ServerDescriptor("server") {
+			{
+				setRuntimeTypeId("org.cloudfoundry.cloudfoundryserver.test.runtime.10");
+				setServerTypeId("org.cloudfoundry.cloudfoundryserver.test.10");
+				setRuntimeName("Cloud Foundry Test Runtime");
+				setServerName("Cloud Foundry Test Server");
+				setForceCreateRuntime(true);
+			}
+		};
+		IServer server = new ServerHandler(descriptor).createServer(new NullProgressMonitor(),
+				ServerHandler.ALWAYS_OVERWRITE);
+		IServerWorkingCopy serverWC = server.createWorkingCopy();
+		workingCopyServer = (CloudFoundryServer) serverWC.loadAdapter(CloudFoundryServer.class, null);
+		workingCopyServer.setUrl("http://api.cloudfoundry.com");
+		workingCopyServer.setUsername("user");
+		serverWC.save(true, null);
+		cloudServer = (CloudFoundryServer) server.loadAdapter(CloudFoundryServer.class, null);
+
+		handler = new ServerEventHandler();
+		listener = new RecordingListener();
+		handler.addServerListener(listener);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		listener.unblock();
+		handler.dispose();
+	}
+
+	public void testFirstEventIsDeliveredRightAway() throws Exception {
+		long start = System.currentTimeMillis();
+		handler.fireServerRefreshed(cloudServer);
+		awaitDispatched(1);
+		assertTrue(System.currentTimeMillis() - start < ServerEventHandler.COALESCING_WINDOW);
+		assertEquals(0, handler.getCoalescedCount());
+	}
+
+	public void testEventsOfSameTypeAreCoalesced() throws Exception {
+		// Both instances have the same server ID
+		assertEquals(cloudServer.getServerId(), workingCopyServer.getServerId());
+		assertNotSame(cloudServer, workingCopyServer);
+
+		// Keeps the dispatch thread busy so that the following events are
+		// fired within the coalescing window
+		listener.blockNextEvent();
+		handler.firePasswordUpdated(cloudServer);
+		listener.awaitBlocked();
+
+		handler.fireServerRefreshed(workingCopyServer);
+		handler.fireServicesUpdated(cloudServer);
+		handler.fireServerRefreshed(workingCopyServer);
+		handler.fireServerRefreshed(cloudServer);
+
+		listener.unblock();
+		awaitDispatched(4);
+		Thread.sleep(2 * ServerEventHandler.COALESCING_WINDOW);
+		assertEquals(5, handler.getFiredCount());
+		assertEquals(1, handler.getCoalescedCount());
+		assertEquals(4, handler.getDispatchedCount());
+		assertEquals(0, handler.getDeferredCount());
+
+		List<CloudServerEvent> events = listener.getEvents();
+		assertEquals(4, events.size());
+		// The first refresh is delivered right away, and the most recent one
+		// when its window ends
+		assertEquals(CloudServerEvent.EVENT_SERVER_REFRESHED, events.get(1).getType());
+		assertSame(workingCopyServer, events.get(1).getServer());
+		assertEquals(CloudServerEvent.EVENT_UPDATE_SERVICES, events.get(2).getType());
+		assertEquals(CloudServerEvent.EVENT_SERVER_REFRESHED, events.get(3).getType());
+		assertSame(cloudServer, events.get(3).getServer());
+	}
+
+	public void testEventsAfterWindowAreDeliveredAgain() throws Exception {
+		handler.fireServerRefreshed(cloudServer);
+		awaitDispatched(1);
+		Thread.sleep(2 * ServerEventHandler.COALESCING_WINDOW);
+
+		long start = System.currentTimeMillis();
+		handler.fireServerRefreshed(cloudServer);
+		awaitDispatched(2);
+		assertTrue(System.currentTimeMillis() - start < ServerEventHandler.COALESCING_WINDOW);
+
+		assertEquals(0, handler.getCoalescedCount());
+		assertEquals(2, listener.getEvents().size());
+	}
+
+	public void testEventsAreDeferredWhenTooManyArePending() throws Exception {
+		// Keeps the dispatch thread busy so that the windows of the following
+		// events stay open
+		listener.blockNextEvent();
+		handler.fireServerRefreshed(cloudServer);
+		listener.awaitBlocked();
+
+		// Each server ID and event type has its own window
+		int count = ServerEventHandler.MAX_PENDING_EVENTS + 10;
+		for (int i = 0; i < count; i++) {
+			workingCopyServer.setUsername("user" + i);
+			handler.fireInstancesUpdated(workingCopyServer);
+		}
+		assertEquals(11, handler.getDeferredCount());
+
+		// Deferred events are coalesced as well
+		handler.fireInstancesUpdated(workingCopyServer);
+		assertEquals(11, handler.getDeferredCount());
+		assertEquals(1, handler.getCoalescedCount());
+
+		// All events are delivered once windows close
+		listener.unblock();
+		awaitDispatched(1 + count);
+		Thread.sleep(2 * ServerEventHandler.COALESCING_WINDOW);
+		assertEquals(1 + count, listener.getEvents().size());
+		assertEquals(1 + count, handler.getDispatchedCount());
+	}
+
+	private void awaitDispatched(long count) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (handler.getDispatchedCount() < count && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, handler.getDispatchedCount());
+	}
+
+	private static class RecordingListener implements CloudServerListener {
+
+		private final List<CloudServerEvent> events = new ArrayList<CloudServerEvent>();
+
+		private final CountDownLatch blocked = new CountDownLatch(1);
+
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		private volatile boolean blockNextEvent;
+
+		public void serverChanged(CloudServerEvent event) {
+			synchronized (this) {
+				events.add(event);
+			}
+			if (blockNextEvent) {
+				blockNextEvent = false;
+				blocked.countDown();
+				try {
+					released.await(TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		synchronized List<CloudServerEvent> getEvents() {
+			return new ArrayList<CloudServerEvent>(events);
+		}
+
+		void blockNextEvent() {
+			blockNextEvent = true;
+		}
+
+		void awaitBlocked() throws InterruptedException {
+			assertTrue("Event not delivered", blocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		}
+
+		void unblock() {
+			released.countDown();
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.wst.server.core.model.IModuleResource;
+
+public class WarFileCacheTest extends TestCase {
+
+	private static final String SERVER_ID = "server";
+
+	private static final long TIMEOUT = 10000;
+
+	private File tempDir;
+
+	private File moduleDir;
+
+	@Override
+	protected void setUp() throws Exception {
+		tempDir = File.createTempFile("warFileCacheTest", null);
+		tempDir.delete();
+		moduleDir = new File(tempDir, "module");
+		moduleDir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ParallelWarWriterTest.delete(tempDir);
+	}
+
+	public void testUnchangedModuleIsReused() throws Exception {
+		WarFileCache cache = new WarFileCache(new File(tempDir, "cache"));
+		List<IModuleResource> resources = createModule();
+		File war = cache.getWar(SERVER_ID, "app", resources, null);
+		byte[] content = ParallelWarWriterTest.read(war);
+
+		assertEquals(war, cache.getWar(SERVER_ID, "app", resources, null));
+		assertTrue(Arrays.equals(content, ParallelWarWriterTest.read(war)));
+		assertEquals(1, cache.getReusedCount());
+		assertEquals(1, cache.getWrittenCount());
+
+		// Other modules have their own war
+		assertFalse(war.equals(cache.getWar(SERVER_ID, "other", resources, null)));
+	}
+
+	public void testChangedModuleIsRebuilt() throws Exception {
+		WarFileCache cache = new WarFileCache(new File(tempDir, "cache"));
+		List<IModuleResource> resources = createModule();
+		File war = cache.getWar(SERVER_ID, "app", resources, null);
+
+		FileOutputStream out = new FileOutputStream(new File(moduleDir, "Class3.class"));
+		try {
+			out.write("changed".getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+
+		File rebuilt = cache.getWar(SERVER_ID, "app", resources, null);
+		assertFalse(war.equals(rebuilt));
+		assertFalse(war.exists());
+		assertEquals(2, cache.getWrittenCount());
+
+		// The same as a war built from scratch
+		File expected = new File(tempDir, "expected.war");
+		new ParallelWarWriter(1).write(resources, expected, null, null);
+		assertTrue(Arrays.equals(ParallelWarWriterTest.read(expected), ParallelWarWriterTest.read(rebuilt)));
+	}
+
+	public void testWarsAreKeptPerServer() throws Exception {
+		WarFileCache cache = new WarFileCache(new File(tempDir, "cache"));
+		List<IModuleResource> resources = createModule();
+		File war = cache.getWar(SERVER_ID, "app", resources, null);
+		File otherWar = cache.getWar("other", "app", resources, null);
+		assertFalse(war.equals(otherWar));
+
+		FileOutputStream out = new FileOutputStream(new File(moduleDir, "Class3.class"));
+		try {
+			out.write("changed".getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+
+		// Rebuilding the war for one server keeps the war that may still be
+		// uploaded to the other server
+		assertFalse(war.equals(cache.getWar(SERVER_ID, "app", resources, null)));
+		assertFalse(war.exists());
+		assertTrue(otherWar.exists());
+	}
+
+	public void testLeastRecentlyUsedWarsAreEvicted() throws Exception {
+		List<IModuleResource> resources = createModule();
+		File expected = new File(tempDir, "expected.war");
+		new ParallelWarWriter(1).write(resources, expected, null, null);
+		WarFileCache cache = new WarFileCache(new File(tempDir, "cache"), 2 * expected.length());
+
+		long now = System.currentTimeMillis();
+		File war1 = cache.getWar(SERVER_ID, "app1", resources, null);
+		war1.setLastModified(now - 20000);
+		File war2 = cache.getWar(SERVER_ID, "app2", resources, null);
+		war2.setLastModified(now - 10000);
+
+		// Reusing the war of app1 makes it the most recently used
+		cache.getWar(SERVER_ID, "app1", resources, null);
+		File war3 = cache.getWar(SERVER_ID, "app3", resources, null);
+		assertTrue(war1.exists());
+		assertFalse(war2.exists());
+		assertTrue(war3.exists());
+
+		// The war just written is kept even if it exceeds the bound
+		cache = new WarFileCache(new File(tempDir, "cache"), 1);
+		File war4 = cache.getWar(SERVER_ID, "app4", resources, null);
+		assertTrue(war4.exists());
+		assertFalse(war1.exists());
+		assertFalse(war3.exists());
+	}
+
+	public void testWarsOfOtherModulesAreBuiltConcurrently() throws Exception {
+		BlockingWarFileCache cache = new BlockingWarFileCache(new File(tempDir, "cache"));
+		List<IModuleResource> resources = createModule();
+		GetWarThread app1 = new GetWarThread(cache, "app1", resources);
+		app1.start();
+		assertTrue("War not written", cache.blocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		// The same module waits for the war being built
+		GetWarThread sameApp = new GetWarThread(cache, "app1", resources);
+		sameApp.start();
+		sameApp.join(200);
+		assertTrue(sameApp.isAlive());
+
+		// Other modules do not
+		File war2 = cache.getWar(SERVER_ID, "app2", resources, null);
+		assertTrue(war2.exists());
+
+		cache.released.countDown();
+		app1.join(TIMEOUT);
+		sameApp.join(TIMEOUT);
+		assertNull(app1.error);
+		assertNull(sameApp.error);
+		assertEquals(app1.war, sameApp.war);
+		assertTrue(app1.war.exists());
+		assertEquals(2, cache.getWrittenCount());
+		assertEquals(1, cache.getReusedCount());
+	}
+
+	private class GetWarThread extends Thread {
+
+		private final WarFileCache cache;
+
+		private final String moduleId;
+
+		private final List<IModuleResource> resources;
+
+		volatile File war;
+
+		volatile CoreException error;
+
+		GetWarThread(WarFileCache cache, String moduleId, List<IModuleResource> resources) {
+			this.cache = cache;
+			this.moduleId = moduleId;
+			this.resources = resources;
+		}
+
+		@Override
+		public void run() {
+			try {
+				war = cache.getWar(SERVER_ID, moduleId, resources, null);
+			}
+			catch (CoreException e) {
+				error = e;
+			}
+		}
+	}
+
+	/**
+	 * Blocks writing the first war until released.
+	 */
+	private static class BlockingWarFileCache extends WarFileCache {
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+
+		final CountDownLatch released = new CountDownLatch(1);
+
+		BlockingWarFileCache(File root) {
+			super(root);
+		}
+
+		@Override
+		protected void write(List<IModuleResource> resources, File war, File previous, IProgressMonitor monitor)
+				throws IOException, CoreException {
+			if (blocked.getCount() > 0) {
+				blocked.countDown();
+				try {
+					released.await(TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			super.write(resources, war, previous, monitor);
+		}
+	}
+
+	private List<IModuleResource> createModule() throws Exception {
+		List<IModuleResource> resources = ParallelWarWriterTest.createModule(moduleDir, 20, 1, 1024);
+		// Files must not have changed just before the war is written for
+		// their entries to be reused
+		long time = System.currentTimeMillis() - 60 * 1000;
+		for (File file : moduleDir.listFiles()) {
+			file.setLastModified(time);
+		}
+		return resources;
+	}
+}
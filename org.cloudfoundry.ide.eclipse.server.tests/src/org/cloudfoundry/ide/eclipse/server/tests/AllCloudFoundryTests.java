@@ -13,15 +13,35 @@ package org.cloudfoundry.ide.eclipse.server.tests;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import org.cloudfoundry.ide.eclipse.internal.server.core.ApplicationDeploymentInfoTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ApplicationStatsCollectorTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ArchiveCompressionPolicyTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ArchiveUploadTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryApplicationModuleTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryClientPoolTest;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryClientTest;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryConsoleTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryDecoratorTest;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryProxyTest;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryServerBehaviourTest;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryServerTest;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryServicesTest;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudUtilTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ContinuousDeployerTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.DeployedResourceCacheTest;
 import org.cloudfoundry.ide.eclipse.internal.server.core.DeploymentURLTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.DomainIndexTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.FileDigestStoreTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.InstanceUsageHistoryTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ModuleJarCacheTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ParallelWarWriterTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.PooledHttpTransportTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ProxyCacheTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.RequestMetricsTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.RetryPolicyTest;
 import org.cloudfoundry.ide.eclipse.internal.server.core.ServerCredentialsStoreTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ServerEventHandlerTest;
+import org.cloudfoundry.ide.eclipse.internal.server.core.WarFileCacheTest;
 import org.cloudfoundry.ide.eclipse.server.tests.sts.util.ManagedTestSuite;
 import org.cloudfoundry.ide.eclipse.server.tests.sts.util.StsTestUtil;
 
@@ -58,9 +78,29 @@ public class AllCloudFoundryTests {
 		suite.addTestSuite(CloudFoundryProxyTest.class);
 		suite.addTestSuite(ServerCredentialsStoreTest.class);
 		suite.addTestSuite(CloudFoundryServerTest.class);
+		suite.addTestSuite(ServerEventHandlerTest.class);
+		suite.addTestSuite(CloudFoundryDecoratorTest.class);
+		suite.addTestSuite(CloudFoundryApplicationModuleTest.class);
+		suite.addTestSuite(ApplicationDeploymentInfoTest.class);
 		suite.addTestSuite(CloudUtilTest.class);
+		suite.addTestSuite(ParallelWarWriterTest.class);
+		suite.addTestSuite(ArchiveCompressionPolicyTest.class);
+		suite.addTestSuite(ModuleJarCacheTest.class);
+		suite.addTestSuite(WarFileCacheTest.class);
+		suite.addTestSuite(DeployedResourceCacheTest.class);
+		suite.addTestSuite(FileDigestStoreTest.class);
+		suite.addTestSuite(ContinuousDeployerTest.class);
+		suite.addTestSuite(ApplicationStatsCollectorTest.class);
+		suite.addTestSuite(InstanceUsageHistoryTest.class);
+		suite.addTestSuite(RequestMetricsTest.class);
+		suite.addTestSuite(RetryPolicyTest.class);
+		suite.addTestSuite(ArchiveUploadTest.class);
+		suite.addTestSuite(PooledHttpTransportTest.class);
+		suite.addTestSuite(CloudFoundryClientPoolTest.class);
+		suite.addTestSuite(ProxyCacheTest.class);
 
 		suite.addTestSuite(DeploymentURLTest.class);
+		suite.addTestSuite(DomainIndexTest.class);
 		suite.addTestSuite(CloudFoundryServicesTest.class);
 		suite.addTestSuite(CloudFoundryConsoleTest.class);
 		suite.addTestSuite(CloudFoundryClientTest.class);
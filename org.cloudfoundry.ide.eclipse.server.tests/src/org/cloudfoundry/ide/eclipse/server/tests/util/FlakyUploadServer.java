@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.server.tests.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Local stand-in for an upload server, which drops the connection part way
+ * through the first uploads. Uploads are sent with PUT, and each upload
+ * replaces the bytes received by the previous one.
+ * <p/>
+ * Connections are handled one at a time, and closed after each request.
+ */
+public class FlakyUploadServer {
+
+	private final int droppedUploads;
+
+	private final int dropAfter;
+
+	private ServerSocket serverSocket;
+
+	private Thread thread;
+
+	private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+	private int uploads;
+
+	private int dropped;
+
+	private long bytesRead;
+
+	/**
+	 * @param droppedUploads number of uploads for which the connection is
+	 * dropped
+	 * @param dropAfter number of bytes of the request body read before the
+	 * connection is dropped
+	 */
+	public FlakyUploadServer(int droppedUploads, int dropAfter) {
+		this.droppedUploads = droppedUploads;
+		this.dropAfter = dropAfter;
+	}
+
+	public void start() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		thread = new Thread("Flaky upload server") {
+			@Override
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					try {
+						Socket socket = serverSocket.accept();
+						try {
+							handle(socket);
+						}
+						finally {
+							socket.close();
+						}
+					}
+					catch (IOException e) {
+						// Closed, or the client went away
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() throws Exception {
+		if (serverSocket != null) {
+			serverSocket.close();
+			thread.join(5000);
+		}
+	}
+
+	public String getUrl() {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/upload";
+	}
+
+	public synchronized byte[] getReceived() {
+		return received.toByteArray();
+	}
+
+	/**
+	 * @return number of PUT requests received, including dropped ones
+	 */
+	public synchronized int getUploads() {
+		return uploads;
+	}
+
+	public synchronized int getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return number of request body bytes read over all uploads
+	 */
+	public synchronized long getBytesRead() {
+		return bytesRead;
+	}
+
+	protected void handle(Socket socket) throws IOException {
+		InputStream input = socket.getInputStream();
+		String requestLine = readLine(input);
+		if (requestLine == null) {
+			return;
+		}
+		Map<String, String> headers = new HashMap<String, String>();
+		String line;
+		while ((line = readLine(input)) != null && line.length() > 0) {
+			int index = line.indexOf(':');
+			if (index > 0) {
+				headers.put(line.substring(0, index).trim().toLowerCase(Locale.ENGLISH), line.substring(index + 1)
+						.trim());
+			}
+		}
+
+		OutputStream output = socket.getOutputStream();
+		if (!requestLine.startsWith("PUT ")) {
+			respond(output, "405 Method Not Allowed");
+			return;
+		}
+
+		long length = Long.parseLong(headers.get("content-length"));
+		boolean drop;
+		synchronized (this) {
+			uploads++;
+			drop = uploads <= droppedUploads;
+			received.reset();
+		}
+
+		byte[] buffer = new byte[8192];
+		long remaining = drop ? Math.min(length, dropAfter) : length;
+		while (remaining > 0) {
+			int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (read < 0) {
+				return;
+			}
+			synchronized (this) {
+				received.write(buffer, 0, read);
+				bytesRead += read;
+			}
+			remaining -= read;
+		}
+
+		if (drop) {
+			synchronized (this) {
+				dropped++;
+			}
+			try {
+				// Reset the connection rather than closing it gracefully
+				socket.setSoLinger(true, 0);
+			}
+			catch (SocketException e) {
+				// Closed anyway
+			}
+			return;
+		}
+		respond(output, "200 OK");
+	}
+
+	private static void respond(OutputStream output, String status) throws IOException {
+		StringBuilder response = new StringBuilder();
+		response.append("HTTP/1.1 ").append(status).append("\r\n");
+		response.append("Content-Length: 0\r\n");
+		response.append("Connection: close\r\n\r\n");
+		output.write(response.toString().getBytes("US-ASCII"));
+		output.flush();
+	}
+
+	private static String readLine(InputStream input) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = input.read()) >= 0) {
+			if (c == '\n') {
+				int length = line.length();
+				return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line
+						.toString();
+			}
+			line.append((char) c);
+		}
+		return line.length() > 0 ? line.toString() : null;
+	}
+}
@@ -10,7 +10,10 @@
  *******************************************************************************/
 package org.cloudfoundry.ide.eclipse.internal.server.ui;
 
-import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.cloudfoundry.client.lib.domain.CloudApplication;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryBrandingExtensionPoint.CloudServerURL;
@@ -20,6 +23,8 @@ import org.cloudfoundry.ide.eclipse.internal.server.core.CloudServerListener;
 import org.cloudfoundry.ide.eclipse.internal.server.core.ServerEventHandler;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
 import org.cloudfoundry.ide.eclipse.internal.server.core.spaces.CloudFoundrySpace;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.jface.viewers.IDecoration;
 import org.eclipse.jface.viewers.ILightweightLabelDecorator;
 import org.eclipse.jface.viewers.LabelProvider;
@@ -28,11 +33,28 @@ import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.wst.server.core.IModule;
 import org.eclipse.wst.server.core.IServer;
+import org.eclipse.wst.server.core.IServerLifecycleListener;
 import org.eclipse.wst.server.core.IServerType;
+import org.eclipse.wst.server.core.ServerCore;
 import org.eclipse.wst.server.core.internal.Server;
 import org.eclipse.wst.server.ui.internal.view.servers.ModuleServer;
 
 /**
+ * Decorates Cloud Foundry servers and their modules in the Servers view.
+ * <p/>
+ * Decorations are computed on the UI thread on every label update, so the
+ * data they are derived from is cached: the server suffix per server, the
+ * known cloud URLs per server type, and the cloud module resolved for each
+ * server module. Cached data is discarded when the server changes, a Cloud
+ * Foundry server event is fired for it, or the user-defined cloud URLs
+ * change.
+ * <p/>
+ * Server changes and preference changes discard cached data right away.
+ * Cloud Foundry server events are delivered asynchronously, and events fired
+ * in quick succession are coalesced, so decorations derived from the cloud
+ * modules may be stale for up to {@link ServerEventHandler#COALESCING_WINDOW}
+ * (200 ms) after a module changes, or longer if other listeners are slow.
+ * 
  * @author Christian Dupuis
  * @author Terry Denney
  * @author Steffen Pingel
@@ -42,9 +64,32 @@ public class CloudFoundryDecorator extends LabelProvider implements ILightweight
 
 	private final CloudServerListener listener;
 
+	private final IServerLifecycleListener serverLifecycleListener;
+
+	private final IPropertyChangeListener preferenceListener;
+
+	/**
+	 * Server decoration suffix, keyed by server ID
+	 */
+	private final Map<String, String> serverSuffixes = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Known cloud URLs, including user-defined URLs, keyed by server type ID
+	 */
+	private final Map<String, Set<String>> cloudUrls = new ConcurrentHashMap<String, Set<String>>();
+
+	/**
+	 * Cloud modules, keyed by server ID and then module ID
+	 */
+	private final Map<String, Map<String, CloudFoundryApplicationModule>> cloudModules = new ConcurrentHashMap<String, Map<String, CloudFoundryApplicationModule>>();
+
 	public CloudFoundryDecorator() {
 		this.listener = new CloudServerListener() {
 			public void serverChanged(final CloudServerEvent event) {
+				IServer server = event.getServer() != null ? event.getServer().getServer() : null;
+				if (server != null) {
+					invalidate(server.getId());
+				}
 				Display.getDefault().asyncExec(new Runnable() {
 					public void run() {
 						LabelProviderChangedEvent labelEvent = new LabelProviderChangedEvent(CloudFoundryDecorator.this);
@@ -54,6 +99,32 @@ public class CloudFoundryDecorator extends LabelProvider implements ILightweight
 			}
 		};
 		ServerEventHandler.getDefault().addServerListener(listener);
+
+		this.serverLifecycleListener = new IServerLifecycleListener() {
+			public void serverAdded(IServer server) {
+				invalidate(server.getId());
+			}
+
+			public void serverChanged(IServer server) {
+				// e.g. the URL or space changed
+				invalidate(server.getId());
+			}
+
+			public void serverRemoved(IServer server) {
+				invalidate(server.getId());
+			}
+		};
+		ServerCore.addServerLifecycleListener(serverLifecycleListener);
+
+		this.preferenceListener = new IPropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent event) {
+				if (event.getProperty().startsWith(CloudUiUtil.ATTR_USER_DEFINED_URLS)) {
+					cloudUrls.clear();
+					serverSuffixes.clear();
+				}
+			}
+		};
+		CloudFoundryServerUiPlugin.getDefault().getPreferenceStore().addPropertyChangeListener(preferenceListener);
 	}
 
 	public void decorate(Object element, IDecoration decoration) {
@@ -68,7 +139,7 @@ public class CloudFoundryDecorator extends LabelProvider implements ILightweight
 						return;
 
 					}
-					CloudFoundryApplicationModule module = server.getExistingCloudModule(modules[0]);
+					CloudFoundryApplicationModule module = getCloudModule(server, s, modules[0]);
 
 					// module may no longer exist
 					if (module == null) {
@@ -105,29 +176,9 @@ public class CloudFoundryDecorator extends LabelProvider implements ILightweight
 		else if (element instanceof Server) {
 			Server server = (Server) element;
 			if (isCloudFoundryServerType(server)) {
-				CloudFoundryServer cfServer = getCloudFoundryServer(server);
-				if (cfServer != null && cfServer.getUsername() != null) {
-					// decoration.addSuffix(NLS.bind("  [{0}, {1}]",
-					// cfServer.getUsername(), cfServer.getUrl()));
-					if (cfServer.hasCloudSpace()) {
-						CloudFoundrySpace clSpace = cfServer.getCloudFoundrySpace();
-						if (clSpace != null) {
-							decoration
-									.addSuffix(NLS.bind(" - {0} - {1}", clSpace.getOrgName(), clSpace.getSpaceName()));
-
-						}
-					}
-					List<CloudServerURL> cloudUrls = CloudUiUtil.getAllUrls(cfServer.getBehaviour().getServer()
-							.getServerType().getId());
-					String url = cfServer.getUrl();
-					// decoration.addSuffix(NLS.bind("  {0}",
-					// cfServer.getUsername()));
-					for (CloudServerURL cloudUrl : cloudUrls) {
-						if (cloudUrl.getUrl().equals(url)) {
-							decoration.addSuffix(NLS.bind(" - {0}", cloudUrl.getUrl()));
-							break;
-						}
-					}
+				String suffix = getServerSuffix(server);
+				if (suffix.length() > 0) {
+					decoration.addSuffix(suffix);
 				}
 			}
 		}
@@ -137,6 +188,124 @@ public class CloudFoundryDecorator extends LabelProvider implements ILightweight
 	public void dispose() {
 		super.dispose();
 		ServerEventHandler.getDefault().removeServerListener(listener);
+		ServerCore.removeServerLifecycleListener(serverLifecycleListener);
+		if (CloudFoundryServerUiPlugin.getDefault() != null) {
+			CloudFoundryServerUiPlugin.getDefault().getPreferenceStore()
+					.removePropertyChangeListener(preferenceListener);
+		}
+		serverSuffixes.clear();
+		cloudUrls.clear();
+		cloudModules.clear();
+	}
+
+	protected void invalidate(String serverId) {
+		if (serverId != null) {
+			serverSuffixes.remove(serverId);
+			cloudModules.remove(serverId);
+		}
+	}
+
+	/**
+	 * 
+	 * @return the cloud module for the given server module, resolved once
+	 * until the server changes. Null if the module does not exist.
+	 */
+	protected CloudFoundryApplicationModule getCloudModule(CloudFoundryServer cloudServer, IServer server,
+			IModule module) {
+		Map<String, CloudFoundryApplicationModule> serverModules = cloudModules.get(server.getId());
+		if (serverModules == null) {
+			serverModules = new ConcurrentHashMap<String, CloudFoundryApplicationModule>();
+			cloudModules.put(server.getId(), serverModules);
+		}
+		CloudFoundryApplicationModule cloudModule = serverModules.get(module.getId());
+		if (cloudModule == null) {
+			cloudModule = computeCloudModule(cloudServer, module);
+			// Do not cache missing modules, as they may be created later
+			if (cloudModule != null) {
+				serverModules.put(module.getId(), cloudModule);
+			}
+		}
+		return cloudModule;
+	}
+
+	/**
+	 * 
+	 * @return the cloud module for the given server module, or null if it
+	 * does not exist.
+	 */
+	protected CloudFoundryApplicationModule computeCloudModule(CloudFoundryServer cloudServer, IModule module) {
+		return cloudServer.getExistingCloudModule(module);
+	}
+
+	/**
+	 * 
+	 * @return non-null suffix for the given server, computed once until the
+	 * server changes, or empty string if the server is not decorated.
+	 */
+	protected String getServerSuffix(IServer server) {
+		String suffix = serverSuffixes.get(server.getId());
+		if (suffix == null) {
+			suffix = computeServerSuffix(server);
+			serverSuffixes.put(server.getId(), suffix);
+		}
+		return suffix;
+	}
+
+	/**
+	 * 
+	 * @return non-null suffix for the given server, or empty string if the
+	 * server is not decorated.
+	 */
+	protected String computeServerSuffix(IServer server) {
+		StringBuilder suffix = new StringBuilder();
+		CloudFoundryServer cfServer = getCloudFoundryServer(server);
+		if (cfServer != null && cfServer.getUsername() != null) {
+			// decoration.addSuffix(NLS.bind("  [{0}, {1}]",
+			// cfServer.getUsername(), cfServer.getUrl()));
+			if (cfServer.hasCloudSpace()) {
+				CloudFoundrySpace clSpace = cfServer.getCloudFoundrySpace();
+				if (clSpace != null) {
+					suffix.append(NLS.bind(" - {0} - {1}", clSpace.getOrgName(), clSpace.getSpaceName()));
+
+				}
+			}
+			String url = cfServer.getUrl();
+			// decoration.addSuffix(NLS.bind("  {0}",
+			// cfServer.getUsername()));
+			if (url != null && getCloudUrls(server.getServerType().getId()).contains(url)) {
+				suffix.append(NLS.bind(" - {0}", url));
+			}
+		}
+		return suffix.toString();
+	}
+
+	/**
+	 * 
+	 * @return known cloud URLs of the given server type, loaded once until
+	 * the user-defined URLs change.
+	 */
+	protected Set<String> getCloudUrls(String serverTypeId) {
+		Set<String> urls = cloudUrls.get(serverTypeId);
+		if (urls == null) {
+			urls = computeCloudUrls(serverTypeId);
+			cloudUrls.put(serverTypeId, urls);
+		}
+		return urls;
+	}
+
+	/**
+	 * 
+	 * @return known cloud URLs of the given server type, including
+	 * user-defined URLs.
+	 */
+	protected Set<String> computeCloudUrls(String serverTypeId) {
+		Set<String> urls = new HashSet<String>();
+		for (CloudServerURL cloudUrl : CloudUiUtil.getAllUrls(serverTypeId)) {
+			if (cloudUrl != null && cloudUrl.getUrl() != null) {
+				urls.add(cloudUrl.getUrl());
+			}
+		}
+		return urls;
 	}
 
 	private CloudFoundryServer getCloudFoundryServer(IServer server) {
@@ -16,10 +16,12 @@ import java.util.List;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryCallback;
 import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryServer;
 import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.PublishMetrics;
 import org.cloudfoundry.ide.eclipse.internal.server.core.tunnel.CaldecottTunnelDescriptor;
 import org.cloudfoundry.ide.eclipse.internal.server.ui.console.ConsoleContents;
 import org.cloudfoundry.ide.eclipse.internal.server.ui.console.ConsoleManager;
 import org.cloudfoundry.ide.eclipse.internal.server.ui.console.PreApplicationStartConsoleContent;
+import org.cloudfoundry.ide.eclipse.internal.server.ui.console.PublishSummaryConsoleContent;
 import org.cloudfoundry.ide.eclipse.internal.server.ui.tunnel.CaldecottUIHelper;
 import org.cloudfoundry.ide.eclipse.internal.server.ui.wizards.CloudFoundryCredentialsWizard;
 import org.cloudfoundry.ide.eclipse.internal.server.ui.wizards.DeleteServicesWizard;
@@ -74,6 +76,21 @@ public class CloudFoundryUiCallback extends CloudFoundryCallback {
 		}
 	}
 
+	@Override
+	public void publishCompleted(CloudFoundryServer server, CloudFoundryApplicationModule cloudModule,
+			PublishMetrics metrics) {
+		if (cloudModule == null || cloudModule.getApplication() == null || metrics == null) {
+			return;
+		}
+		// Only append the summary to a console that is already open for the
+		// first instance, as the application may not have been started.
+		boolean show = false;
+		boolean clearConsole = false;
+		ConsoleManager.getInstance().startConsole(server,
+				new ConsoleContents(new PublishSummaryConsoleContent(metrics.getSummary())),
+				cloudModule.getApplication(), 0, show, clearConsole);
+	}
+
 	@Override
 	public void applicationStarting(final CloudFoundryServer server, final CloudFoundryApplicationModule cloudModule) {
 
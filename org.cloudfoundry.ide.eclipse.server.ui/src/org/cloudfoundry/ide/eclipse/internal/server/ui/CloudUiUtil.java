@@ -294,8 +294,10 @@ public class CloudUiUtil {
 					if (displayURL) {
 						url = getUrlFromDisplayText(urlText);
 					}
+					// Called when validating the credentials, so a pooled
+					// client that is still logged in must not be used
 					supportsSpaces[0] = CloudSpaceServerLookup.getCloudOrgsAndSpaces(new CloudCredentials(userName,
-							password), url, monitor);
+							password), url, false, monitor);
 				}
 			};
 			if (context != null) {
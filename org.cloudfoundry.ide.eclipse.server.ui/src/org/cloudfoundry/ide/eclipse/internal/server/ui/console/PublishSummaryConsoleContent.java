@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.ui.console;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.swt.SWT;
+import org.eclipse.ui.console.IOConsoleOutputStream;
+
+/**
+ * Console content that writes the timings and counters of a completed publish
+ * operation once. It does not perform any network I/O.
+ *
+ */
+public class PublishSummaryConsoleContent implements IConsoleContent {
+
+	private final String summary;
+
+	public PublishSummaryConsoleContent(String summary) {
+		this.summary = summary;
+	}
+
+	public ICloudFoundryConsoleOutputStream getOutputStream(IOConsoleOutputStream consoleOutputStream) {
+
+		ConsoleOutputStream cfStream = new ConsoleOutputStream(consoleOutputStream, null) {
+			private boolean once = true;
+
+			private static final String ID = "Publish Summary";
+
+			@Override
+			protected String getContent(IProgressMonitor monitor) throws CoreException {
+				if (once) {
+					once = false;
+					requestStreamClose(true);
+					return summary + '\n';
+				}
+				return null;
+			}
+
+			protected String getID() {
+				return ID;
+			}
+
+			protected int getStreamColour() {
+				return SWT.COLOR_DARK_BLUE;
+			}
+		};
+
+		cfStream.initialiseStream();
+
+		return cfStream;
+	}
+
+}
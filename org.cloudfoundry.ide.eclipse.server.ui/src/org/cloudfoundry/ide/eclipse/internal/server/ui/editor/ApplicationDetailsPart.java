@@ -168,6 +168,8 @@ public class ApplicationDetailsPart extends AbstractFormPart implements IDetails
 
 	private Button saveManifest;
 
+	private Button continuousDeployButton;
+
 	private Combo memoryCombo;
 
 	/**
@@ -509,6 +511,13 @@ public class ApplicationDetailsPart extends AbstractFormPart implements IDetails
 		instancesViewer.setInput(null);
 
 		memoryCombo.setEnabled(cloudApplication != null);
+
+		// Only applications deployed from a workspace project can be pushed
+		// as they change
+		continuousDeployButton.setEnabled(cloudApplication != null && appModule.getLocalModule() != null
+				&& !appModule.getLocalModule().isExternal());
+		continuousDeployButton.setSelection(serverBehaviour.getContinuousDeployer().isEnabled(appModule));
+
 		if (cloudApplication != null) {
 			int appMemory = appModule.getApplication().getMemory();
 
@@ -798,6 +807,26 @@ public class ApplicationDetailsPart extends AbstractFormPart implements IDetails
 			}
 		});
 
+		createLabel(client, "Continuous deploy:", SWT.CENTER);
+		continuousDeployButton = toolkit.createButton(client, "Update and restart when changes are saved",
+				SWT.CHECK);
+		GridDataFactory.fillDefaults().align(SWT.LEFT, SWT.CENTER).applyTo(continuousDeployButton);
+		continuousDeployButton.setEnabled(false);
+		continuousDeployButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				if (canUpdate) {
+					try {
+						CloudFoundryApplicationModule appModule = getExistingApplication();
+						serverBehaviour.getContinuousDeployer().setEnabled(appModule,
+								continuousDeployButton.getSelection());
+					}
+					catch (CoreException ce) {
+						logApplicationModuleFailureError("Unable to change continuous deploy mode");
+					}
+				}
+			}
+		});
+
 	}
 
 	private void createGeneralSectionRestartRequired(Composite parent) {
@@ -441,13 +441,16 @@ public class CloudFoundryAccountSection extends ServerEditorSection implements C
 	public void serverChanged(CloudServerEvent event) {
 		if (event.getType() == CloudServerEvent.EVENT_UPDATE_PASSWORD) {
 			cfServer = event.getServer();
+			final CloudFoundryServer server = cfServer;
 
-			Display.getDefault().syncExec(new Runnable() {
+			// Events are delivered on a shared dispatch thread, which must not
+			// wait for the UI thread
+			Display.getDefault().asyncExec(new Runnable() {
 
 				public void run() {
 					if (passwordText != null && !passwordText.isDisposed()
-							&& !passwordText.getText().equals(cfServer.getPassword())) {
-						passwordText.setText(cfServer.getPassword());
+							&& !passwordText.getText().equals(server.getPassword())) {
+						passwordText.setText(server.getPassword());
 					}
 				}
 			});
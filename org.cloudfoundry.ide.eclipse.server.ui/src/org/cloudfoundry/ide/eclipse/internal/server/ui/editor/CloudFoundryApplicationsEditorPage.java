@@ -25,6 +25,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.IMessageProvider;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.TableViewer;
@@ -55,11 +56,11 @@ public class CloudFoundryApplicationsEditorPage extends ServerEditorPart {
 
 	private ServerListener serverListener;
 
-	private List<CloudService> services;
+	private volatile List<CloudService> services;
 
 	private ScrolledForm sform;
 
-	private int[] applicationMemoryChoices;
+	private volatile int[] applicationMemoryChoices;
 
 	private final int MAX_ERROR_MESSAGE = 100;
 
@@ -177,18 +178,8 @@ public class CloudFoundryApplicationsEditorPage extends ServerEditorPart {
 
 	private class ServerListener implements CloudServerListener, IServerListener {
 		public void serverChanged(final CloudServerEvent event) {
-			if (event.getType() == CloudServerEvent.EVENT_UPDATE_SERVICES) {
-				// refresh services
-				try {
-					setServices(cloudServer.getBehaviour().getServices(null));
-				}
-				catch (CoreException e) {
-					// FIXME: error handling
-				}
-			}
-
 			// ignore EVENT_UPDATE_INSTANCES as refresh will be called after
-			// instances are updated
+			// instances are updated. The refresh also updates the services.
 			if (event.getType() != CloudServerEvent.EVENT_UPDATE_INSTANCES) {
 				refresh(cloudServer.getServer());
 			}
@@ -201,12 +192,17 @@ public class CloudFoundryApplicationsEditorPage extends ServerEditorPart {
 			}
 		}
 
+		/**
+		 * Requests the services and memory choices in a background job, so
+		 * that neither the thread delivering the event nor the UI thread waits
+		 * for the server, and then refreshes the editor.
+		 */
 		private void refresh(final IServer server) {
 
-			UIJob job = new UIJob("Refreshing editor") {
+			Job job = new Job("Refreshing editor") {
 
 				@Override
-				public IStatus runInUIThread(IProgressMonitor monitor) {
+				protected IStatus run(IProgressMonitor monitor) {
 					try {
 						if (server != null) {
 							CloudFoundryServer cloudServer = (CloudFoundryServer) server.loadAdapter(
@@ -219,14 +215,11 @@ public class CloudFoundryApplicationsEditorPage extends ServerEditorPart {
 
 							}
 						}
-
-						if (mform != null && mform.getForm() != null && !mform.getForm().isDisposed()) {
-							masterDetailsBlock.refreshUI(RefreshArea.ALL);
-						}
 					}
 					catch (CoreException e) {
 						return e.getStatus();
 					}
+					refreshUI();
 					return Status.OK_STATUS;
 				}
 			};
@@ -234,6 +227,22 @@ public class CloudFoundryApplicationsEditorPage extends ServerEditorPart {
 			job.schedule();
 
 		}
+
+		private void refreshUI() {
+
+			UIJob job = new UIJob("Refreshing editor") {
+
+				@Override
+				public IStatus runInUIThread(IProgressMonitor monitor) {
+					if (mform != null && mform.getForm() != null && !mform.getForm().isDisposed()) {
+						masterDetailsBlock.refreshUI(RefreshArea.ALL);
+					}
+					return Status.OK_STATUS;
+				}
+			};
+
+			job.schedule();
+		}
 	}
 
 }
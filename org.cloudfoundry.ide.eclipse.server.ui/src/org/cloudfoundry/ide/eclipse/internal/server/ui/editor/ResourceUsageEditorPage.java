@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2013 GoPivotal, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     GoPivotal, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.cloudfoundry.ide.eclipse.internal.server.ui.editor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudFoundryServer;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudServerEvent;
+import org.cloudfoundry.ide.eclipse.internal.server.core.CloudServerListener;
+import org.cloudfoundry.ide.eclipse.internal.server.core.ServerEventHandler;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.CloudFoundryApplicationModule;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.InstanceUsageHistory;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.InstanceUsageHistory.Metric;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ResourceUsageSampler;
+import org.cloudfoundry.ide.eclipse.internal.server.core.client.ResourceUsageSampler.ResourceUsageListener;
+import org.cloudfoundry.ide.eclipse.internal.server.ui.CloudFoundryImages;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jface.dialogs.IMessageProvider;
+import org.eclipse.jface.layout.GridDataFactory;
+import org.eclipse.jface.layout.GridLayoutFactory;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.ui.forms.ManagedForm;
+import org.eclipse.ui.forms.widgets.FormToolkit;
+import org.eclipse.ui.forms.widgets.ScrolledForm;
+import org.eclipse.ui.forms.widgets.Section;
+import org.eclipse.ui.progress.UIJob;
+import org.eclipse.wst.server.ui.editor.ServerEditorPart;
+
+/**
+ * Shows the CPU, memory and disk usage over time of all instances of the
+ * applications deployed in the server, as sampled by the server's
+ * {@link ResourceUsageSampler}, along with the instances using the most
+ * resources. Applications are only sampled while the page is open.
+ */
+public class ResourceUsageEditorPage extends ServerEditorPart {
+
+	private static final int TOP_CONSUMERS = 5;
+
+	private static final int SPARKLINE_WIDTH = 120;
+
+	private static final int VALUE_WIDTH = 60;
+
+	private static final Metric[] COLUMN_METRICS = { Metric.CPU, Metric.MEMORY, Metric.DISK };
+
+	private static final int FIRST_METRIC_COLUMN = 2;
+
+	private CloudFoundryServer cloudServer;
+
+	private ManagedForm mform;
+
+	private ScrolledForm sform;
+
+	private Table instancesTable;
+
+	private Label[] topConsumerLabels;
+
+	private UsageListener usageListener;
+
+	private UIJob refreshJob;
+
+	@Override
+	public void createPartControl(Composite parent) {
+		mform = new ManagedForm(parent);
+		FormToolkit toolkit = getFormToolkit(parent.getDisplay());
+
+		sform = mform.getForm();
+		sform.getForm().setText("Resource Usage");
+		sform.getForm().setImage(CloudFoundryImages.getImage(CloudFoundryImages.OBJ_APPLICATION));
+		toolkit.decorateFormHeading(sform.getForm());
+
+		Composite body = sform.getBody();
+		body.setLayout(new GridLayout());
+
+		cloudServer = (CloudFoundryServer) getServer().getOriginal().loadAdapter(CloudFoundryServer.class, null);
+
+		createTopConsumersSection(toolkit, body);
+		createInstancesSection(toolkit, body);
+
+		usageListener = new UsageListener();
+		ServerEventHandler.getDefault().addServerListener(usageListener);
+		if (cloudServer != null) {
+			getSampler().addListener(usageListener);
+			updateWatchedApplications();
+		}
+	}
+
+	@Override
+	public void dispose() {
+		ServerEventHandler.getDefault().removeServerListener(usageListener);
+		if (cloudServer != null) {
+			ResourceUsageSampler sampler = getSampler();
+			sampler.removeListener(usageListener);
+			sampler.stop();
+		}
+		if (mform != null) {
+			mform.dispose();
+			mform = null;
+		}
+		super.dispose();
+	}
+
+	@Override
+	public void setFocus() {
+		if (instancesTable != null && !instancesTable.isDisposed()) {
+			instancesTable.setFocus();
+		}
+	}
+
+	protected ResourceUsageSampler getSampler() {
+		return cloudServer.getBehaviour().getResourceUsageSampler();
+	}
+
+	protected void updateWatchedApplications() {
+		List<String> appNames = new ArrayList<String>();
+		for (CloudFoundryApplicationModule appModule : cloudServer.getExistingCloudModules()) {
+			if (appModule.getApplication() != null) {
+				appNames.add(appModule.getDeployedApplicationName());
+			}
+		}
+		getSampler().watch(appNames);
+	}
+
+	private void createTopConsumersSection(FormToolkit toolkit, Composite parent) {
+		Section section = toolkit.createSection(parent, Section.TITLE_BAR);
+		section.setLayout(new GridLayout());
+		GridDataFactory.fillDefaults().grab(true, false).applyTo(section);
+		section.setText("Top Consumers");
+
+		Composite client = toolkit.createComposite(section);
+		client.setLayout(new GridLayout(2, false));
+		GridDataFactory.fillDefaults().grab(true, false).applyTo(client);
+		section.setClient(client);
+
+		topConsumerLabels = new Label[COLUMN_METRICS.length];
+		for (int i = 0; i < COLUMN_METRICS.length; i++) {
+			toolkit.createLabel(client, COLUMN_METRICS[i].getLabel() + ":");
+			topConsumerLabels[i] = toolkit.createLabel(client, "");
+			GridDataFactory.fillDefaults().grab(true, false).applyTo(topConsumerLabels[i]);
+		}
+	}
+
+	private void createInstancesSection(FormToolkit toolkit, Composite parent) {
+		Section section = toolkit.createSection(parent, Section.TITLE_BAR);
+		section.setLayout(new GridLayout());
+		GridDataFactory.fillDefaults().grab(true, true).applyTo(section);
+		section.setText("Instances");
+
+		Composite client = toolkit.createComposite(section);
+		GridLayoutFactory.fillDefaults().applyTo(client);
+		GridDataFactory.fillDefaults().grab(true, true).applyTo(client);
+		section.setClient(client);
+
+		instancesTable = toolkit.createTable(client, SWT.BORDER | SWT.FULL_SELECTION);
+		instancesTable.setHeaderVisible(true);
+		instancesTable.setLinesVisible(true);
+		GridDataFactory.fillDefaults().grab(true, true).hint(SWT.DEFAULT, 200).applyTo(instancesTable);
+
+		createColumn("Application", 150);
+		createColumn("ID", 30);
+		for (Metric metric : COLUMN_METRICS) {
+			createColumn(metric.getLabel(), SPARKLINE_WIDTH + VALUE_WIDTH);
+		}
+
+		// Sparklines are painted over the empty metric cells
+		instancesTable.addListener(SWT.PaintItem, new Listener() {
+			public void handleEvent(Event event) {
+				int metricIndex = event.index - FIRST_METRIC_COLUMN;
+				if (metricIndex >= 0 && metricIndex < COLUMN_METRICS.length
+						&& event.item.getData() instanceof InstanceUsageHistory) {
+					paintUsage(event.gc, ((TableItem) event.item).getBounds(event.index),
+							(InstanceUsageHistory) event.item.getData(), COLUMN_METRICS[metricIndex]);
+				}
+			}
+		});
+	}
+
+	private void createColumn(String name, int width) {
+		TableColumn column = new TableColumn(instancesTable, SWT.NONE);
+		column.setText(name);
+		column.setWidth(width);
+	}
+
+	private void paintUsage(GC gc, Rectangle bounds, InstanceUsageHistory history, Metric metric) {
+		double[] values = history.getValues(metric);
+		String text = format(metric, history.getLatest(metric));
+		Point textExtent = gc.textExtent(text);
+
+		int lineWidth = Math.max(0, bounds.width - textExtent.x - 8);
+		int lineHeight = Math.max(1, bounds.height - 4);
+		if (values.length > 1 && lineWidth > 1) {
+			double max = metric == Metric.CPU ? Math.max(100, history.getMax(metric)) : history.getMax(metric);
+			if (max <= 0) {
+				max = 1;
+			}
+			int[] points = new int[values.length * 2];
+			for (int i = 0; i < values.length; i++) {
+				points[2 * i] = bounds.x + 2 + (int) ((long) i * (lineWidth - 1) / (values.length - 1));
+				points[2 * i + 1] = bounds.y + 2 + lineHeight - (int) Math.round(values[i] / max * lineHeight);
+			}
+			gc.setForeground(instancesTable.getDisplay().getSystemColor(SWT.COLOR_DARK_BLUE));
+			gc.drawPolyline(points);
+		}
+
+		gc.setForeground(instancesTable.getDisplay().getSystemColor(SWT.COLOR_LIST_FOREGROUND));
+		gc.drawText(text, bounds.x + bounds.width - textExtent.x - 4, bounds.y + (bounds.height - textExtent.y) / 2,
+				true);
+	}
+
+	protected void refreshUI() {
+		if (sform == null || sform.isDisposed() || cloudServer == null) {
+			return;
+		}
+		ResourceUsageSampler sampler = getSampler();
+
+		for (int i = 0; i < COLUMN_METRICS.length; i++) {
+			StringBuilder text = new StringBuilder();
+			for (InstanceUsageHistory history : sampler.getTopConsumers(COLUMN_METRICS[i], TOP_CONSUMERS)) {
+				if (text.length() > 0) {
+					text.append(", ");
+				}
+				text.append(history.getAppName()).append('#').append(history.getInstanceId()).append(" (")
+						.append(format(COLUMN_METRICS[i], history.getLatest(COLUMN_METRICS[i]))).append(')');
+			}
+			topConsumerLabels[i].setText(text.toString());
+		}
+
+		List<InstanceUsageHistory> histories = sampler.getHistories();
+		instancesTable.setRedraw(false);
+		try {
+			instancesTable.setItemCount(histories.size());
+			for (int i = 0; i < histories.size(); i++) {
+				InstanceUsageHistory history = histories.get(i);
+				TableItem item = instancesTable.getItem(i);
+				item.setData(history);
+				item.setText(new String[] { history.getAppName(), history.getInstanceId(), "", "", "" });
+			}
+		}
+		finally {
+			instancesTable.setRedraw(true);
+		}
+
+		sform.setMessage(
+				histories.isEmpty() ? null : "Sampling every " + sampler.getInterval() / 1000 + " seconds",
+				IMessageProvider.NONE);
+		sform.getForm().layout(true, true);
+	}
+
+	private static String format(Metric metric, double value) {
+		if (metric == Metric.CPU) {
+			return Math.round(value * 10) / 10.0 + "%";
+		}
+		// Memory and disk are in bytes
+		return Math.round(value * 10 / (1024 * 1024)) / 10.0 + "M";
+	}
+
+	private synchronized void scheduleRefresh() {
+		if (refreshJob == null) {
+			refreshJob = new UIJob("Refreshing resource usage") {
+
+				@Override
+				public IStatus runInUIThread(IProgressMonitor monitor) {
+					refreshUI();
+					return Status.OK_STATUS;
+				}
+			};
+			refreshJob.setSystem(true);
+		}
+		refreshJob.schedule();
+	}
+
+	private class UsageListener implements ResourceUsageListener, CloudServerListener {
+
+		public void samplesUpdated(ResourceUsageSampler sampler) {
+			scheduleRefresh();
+		}
+
+		public void serverChanged(CloudServerEvent event) {
+			// Applications may have been deployed or deleted
+			if (event.getType() == CloudServerEvent.EVENT_SERVER_REFRESHED && cloudServer != null
+					&& cloudServer.getServer().equals(event.getServer().getServer())) {
+				updateWatchedApplications();
+			}
+		}
+	}
+}
@@ -79,7 +79,7 @@ public abstract class AbstractURLWizardPage extends PartsWizardPage {
 			public void run(IProgressMonitor coreRunnerMonitor) throws CoreException {
 				SubMonitor subProgress = SubMonitor.convert(coreRunnerMonitor, operationLabel, 100);
 				try {
-					urlLookup.refreshDomains(subProgress);
+					urlLookup.updateDomains(subProgress);
 					refreshedDomains = true;
 					// Must launch this again in the UI thread AFTER
 					// the refresh occurs.